@@ -0,0 +1,41 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sets that are being imported in this Goobi instance. Imports started in the GUI and by the REST endpoint claim their set here before they
+ * read any file, so that a set is never imported twice at the same time, even if the imports run in different plugin instances.
+ */
+public final class ActiveSets {
+
+    private static final Set<String> SETS = ConcurrentHashMap.newKeySet();
+
+    private ActiveSets() {
+    }
+
+    /**
+     * @param set title of the set
+     * @return true if the set was claimed, false if it is already being imported
+     */
+    public static boolean claim(String set) {
+        return SETS.add(set);
+    }
+
+    /**
+     * release a set after its import ended or could not be started
+     *
+     * @param set title of the set
+     */
+    public static void release(String set) {
+        SETS.remove(set);
+    }
+
+    /**
+     * @param set title of the set
+     * @return true if the set is being imported
+     */
+    public static boolean isActive(String set) {
+        return SETS.contains(set);
+    }
+}
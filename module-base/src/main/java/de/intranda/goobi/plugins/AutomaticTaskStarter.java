@@ -0,0 +1,107 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+
+import de.sub.goobi.helper.ScriptThreadWithoutHibernate;
+import de.sub.goobi.helper.enums.StepStatus;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Starts the open automatic tasks of processes whose import is finished. The tasks are started on own threads, so that the import can continue
+ * with the next year in the meantime. At most the configured number of processes run their tasks at the same time, the tasks of one process are
+ * started one after the other.
+ */
+@Log4j2
+public class AutomaticTaskStarter {
+
+    /**
+     * runs a single automatic task and returns when it is finished or handed over to the message queue
+     */
+    public interface TaskRunner {
+        void run(Step step) throws InterruptedException;
+    }
+
+    @Getter
+    private int threads;
+
+    private ExecutorService executor;
+    private IntFunction<Process> processLoader;
+    private TaskRunner taskRunner;
+
+    /**
+     * @param threads maximum number of processes whose tasks run at the same time
+     */
+    public AutomaticTaskStarter(int threads) {
+        this(threads, ProcessManager::getProcessById, AutomaticTaskStarter::runTask);
+    }
+
+    /**
+     * @param threads maximum number of processes whose tasks run at the same time
+     * @param processLoader loads the current state of a process by its id, returns null if the process does not exist
+     * @param taskRunner runs a single task
+     */
+    public AutomaticTaskStarter(int threads, IntFunction<Process> processLoader, TaskRunner taskRunner) {
+        this.threads = Math.max(1, threads);
+        this.processLoader = processLoader;
+        this.taskRunner = taskRunner;
+        executor = Executors.newFixedThreadPool(this.threads);
+    }
+
+    /**
+     * schedule the start of all open automatic tasks of the input process
+     *
+     * @param processId id of the process whose METS file is completely written
+     * @return true if the tasks are scheduled, false if the starter is already shut down
+     */
+    public boolean submit(int processId) {
+        if (executor.isShutdown()) {
+            log.error("Automatic tasks of process with ID " + processId + " are not started, the import is already finished");
+            return false;
+        }
+        executor.submit(() -> startOpenAutomaticTasks(processId));
+        return true;
+    }
+
+    /**
+     * start all tasks that are already scheduled, but do not accept any new ones
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void startOpenAutomaticTasks(int processId) {
+        try {
+            // reload the process to get the current state of its tasks
+            Process process = processLoader.apply(processId);
+            if (process == null) {
+                log.error("Process with ID " + processId + " not found, automatic tasks are not started");
+                return;
+            }
+            for (Step s : process.getSchritteList()) {
+                if (StepStatus.OPEN.equals(s.getBearbeitungsstatusEnum()) && s.isTypAutomatisch()) {
+                    log.debug("Starting automatic task '" + s.getTitel() + "' of process " + process.getTitel());
+                    taskRunner.run(s);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // the executor would keep the exception in a future that nobody reads
+            log.error("Error while starting the automatic tasks of process with ID " + processId, e);
+        }
+    }
+
+    private static void runTask(Step step) throws InterruptedException {
+        ScriptThreadWithoutHibernate myThread = new ScriptThreadWithoutHibernate(step);
+        myThread.startOrPutToQueue();
+        // tasks that are put into the message queue are not alive, only tasks running on own threads are waited for
+        myThread.join();
+    }
+}
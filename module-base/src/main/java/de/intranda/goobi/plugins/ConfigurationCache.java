@@ -0,0 +1,85 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+
+/**
+ * Keeps the parsed content of a configuration file until the file changes. Each access only reads the modification time and the size of the file.
+ * If one of them changed, the content is hashed, and the file is only parsed again if the hash differs, so that touching or copying an unchanged
+ * file does not invalidate the cache. Files that do not exist are parsed at each access.
+ *
+ * All methods are thread safe.
+ *
+ * @param <T> type of the parsed content
+ */
+public class ConfigurationCache<T> {
+
+    @Getter
+    private final Path file;
+    private final Supplier<T> parser;
+
+    private T content;
+    private long lastModified = -1;
+    private long size = -1;
+    private byte[] hash;
+    // number of times the file was parsed
+    @Getter
+    private volatile int reloads;
+
+    /**
+     * @param file the configuration file
+     * @param parser reads and parses the configuration file
+     */
+    public ConfigurationCache(Path file, Supplier<T> parser) {
+        this.file = file;
+        this.parser = parser;
+    }
+
+    /**
+     * @return the parsed content of the current version of the file
+     */
+    public synchronized T get() {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // the location of the file is unknown, so changes cannot be detected
+            reloads++;
+            return parser.get();
+        }
+        long currentModified = attributes.lastModifiedTime().toMillis();
+        if (content != null && currentModified == lastModified && attributes.size() == size) {
+            return content;
+        }
+
+        byte[] currentHash = hash();
+        if (content == null || currentHash == null || !Arrays.equals(currentHash, hash)) {
+            content = parser.get();
+            reloads++;
+        }
+        // the attributes and the hash were read before the parsing, so a change during the parsing is detected by the next access
+        lastModified = currentModified;
+        size = attributes.size();
+        hash = currentHash;
+        return content;
+    }
+
+    private byte[] hash() {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
+        } catch (IOException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
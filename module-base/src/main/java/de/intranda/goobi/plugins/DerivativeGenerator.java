@@ -0,0 +1,122 @@
+package de.intranda.goobi.plugins;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Creates JPEG derivatives of the imported master images on a bounded pool of worker threads. The derivatives are created right after the master
+ * file was copied, so that its content is still in the file system cache.
+ */
+@Log4j2
+public class DerivativeGenerator {
+
+    @Getter
+    private int threads;
+    @Getter
+    private float quality;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * @param threads number of worker threads, the number of available processors is used if this is not positive
+     * @param quality JPEG quality between 0 and 1
+     */
+    public DerivativeGenerator(int threads, float quality) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.quality = Math.max(0f, Math.min(1f, quality));
+        // a full queue makes the import thread create the derivative on its own, which keeps the number of decoded images in memory bounded
+        executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(this.threads * 2),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * check if a derivative can be created for the input file
+     *
+     * @param fileName name of the master file
+     * @return true if the file is an image that can be read by ImageIO, false otherwise
+     */
+    public static boolean isSupported(String fileName) {
+        String extension = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase(Locale.ROOT);
+        return ImageIO.getImageReadersBySuffix(extension).hasNext();
+    }
+
+    /**
+     * schedule the creation of a JPEG derivative
+     *
+     * @param master path of the master file
+     * @param target path of the derivative that shall be created
+     * @return Future that returns the path of the created derivative
+     */
+    public Future<Path> submit(Path master, Path target) {
+        return executor.submit(() -> createDerivative(master, target));
+    }
+
+    /**
+     * stop all worker threads once the scheduled derivatives are created
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private Path createDerivative(Path master, Path target) throws IOException {
+        BufferedImage image = ImageIO.read(master.toFile());
+        if (image == null) {
+            throw new IOException("No image reader found for " + master);
+        }
+        image = toRgb(image);
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+
+        Files.createDirectories(target.getParent());
+        try (OutputStream out = Files.newOutputStream(target); ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        log.debug("Derivative created: " + target);
+        return target;
+    }
+
+    /**
+     * JPEG supports neither alpha channels nor 16 bit samples, so all other images are converted into 8 bit RGB
+     */
+    private static BufferedImage toRgb(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        graphics.dispose();
+        return rgb;
+    }
+}
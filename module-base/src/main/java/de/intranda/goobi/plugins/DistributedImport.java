@@ -0,0 +1,170 @@
+package de.intranda.goobi.plugins;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import de.intranda.goobi.plugins.model.WorkUnitProgress;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Imports the years of a set together with other nodes. The node that starts the set first publishes its years as work units, every node that
+ * starts the same set afterwards joins the import. Each node claims one unit after the other and renews its lease in the background while the year
+ * is imported. Units of nodes that stopped renewing their leases are claimed again by the remaining nodes.
+ */
+@Log4j2
+public class DistributedImport {
+
+    /**
+     * imports a single year
+     */
+    @FunctionalInterface
+    public interface YearImporter {
+        /**
+         * @param unit the claimed work unit
+         * @return true if the year was imported completely, false if the unit shall be claimed again
+         * @throws Exception
+         */
+        boolean importYear(WorkUnit unit) throws Exception;
+    }
+
+    /**
+     * a work unit claimed by this node
+     */
+    public static class WorkUnit {
+        @Getter
+        private final int year;
+        @Getter
+        private volatile int pagesDone;
+        // true once another node claimed this unit, the import of the year should stop then
+        @Getter
+        private volatile boolean leaseLost;
+
+        WorkUnit(int year) {
+            this.year = year;
+        }
+
+        public void addPages(int pages) {
+            pagesDone += pages;
+        }
+    }
+
+    private final WorkUnitStore store;
+    private final String set;
+    @Getter
+    private final String worker;
+    private final long leaseMillis;
+    private final int maxAttempts;
+    private final long pollMillis;
+
+    /**
+     * @param store shared table of the work units
+     * @param set title of the set
+     * @param worker unique name of this node
+     * @param leaseMillis duration of a lease, the lease is renewed four times per duration
+     * @param maxAttempts maximum number of attempts per year
+     * @param pollMillis time to wait before checking again while all remaining units are claimed by other nodes
+     */
+    public DistributedImport(WorkUnitStore store, String set, String worker, long leaseMillis, int maxAttempts, long pollMillis) {
+        this.store = store;
+        this.set = set;
+        this.worker = worker;
+        this.leaseMillis = leaseMillis;
+        this.maxAttempts = maxAttempts;
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * create the work units of the set unless another node already did
+     *
+     * @param pagesPerYear number of pages of each year
+     * @return true if this node created the units, false if it joins an import started by another node
+     * @throws SQLException
+     */
+    public boolean publish(Map<Integer, Integer> pagesPerYear) throws SQLException {
+        store.createTable();
+        return store.publish(set, pagesPerYear);
+    }
+
+    /**
+     * @param otherWorker name of a node
+     * @return true if the node is still importing a year of the set, also if this cannot be checked
+     */
+    public boolean isWorkerActive(String otherWorker) {
+        try {
+            return store.holdsLease(set, otherWorker);
+        } catch (SQLException e) {
+            log.warn("Failed to check the leases of " + otherWorker, e);
+            return true;
+        }
+    }
+
+    /**
+     * claim and import work units until all units are done or failed, or until the import is cancelled
+     *
+     * @param control state of the import on this node
+     * @param importer imports a claimed year
+     * @param progressListener receives the aggregated progress of all nodes
+     * @throws Exception exceptions of the importer are passed on after the unit was given back
+     */
+    public void run(ImportControl control, YearImporter importer, Consumer<WorkUnitProgress> progressListener) throws Exception {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+        try {
+            while (control.checkpoint()) {
+                Integer year = store.claim(set, worker, leaseMillis, maxAttempts);
+                if (year == null) {
+                    if (!store.hasActiveUnits(set)) {
+                        break;
+                    }
+                    // the remaining units are claimed by other nodes, wait until they are done or their leases expire
+                    progressListener.accept(store.getProgress(set));
+                    control.waitFor(pollMillis);
+                    continue;
+                }
+
+                WorkUnit unit = new WorkUnit(year);
+                long interval = Math.max(1, leaseMillis / 4);
+                ScheduledFuture<?> beat =
+                        heartbeat.scheduleAtFixedRate(() -> renewLease(unit, progressListener), interval, interval, TimeUnit.MILLISECONDS);
+                boolean completed = false;
+                try {
+                    completed = importer.importYear(unit);
+                } finally {
+                    beat.cancel(false);
+                    finishUnit(unit, completed, control.isCancelled());
+                    progressListener.accept(store.getProgress(set));
+                }
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+    }
+
+    private void finishUnit(WorkUnit unit, boolean completed, boolean cancelled) throws SQLException {
+        if (unit.isLeaseLost()) {
+            // the unit belongs to another node by now
+            log.warn("Lease of year " + unit.getYear() + " was lost by " + worker);
+        } else if (completed && !cancelled) {
+            store.complete(set, unit.getYear(), worker, unit.getPagesDone());
+        } else {
+            store.release(set, unit.getYear(), worker, !cancelled, maxAttempts);
+        }
+    }
+
+    private void renewLease(WorkUnit unit, Consumer<WorkUnitProgress> progressListener) {
+        try {
+            if (!store.renew(set, unit.getYear(), worker, leaseMillis, unit.getPagesDone())) {
+                unit.leaseLost = true;
+            }
+            progressListener.accept(store.getProgress(set));
+        } catch (SQLException e) {
+            // the lease is still valid for a while, the next heartbeat tries again
+            log.warn("Failed to renew the lease of year " + unit.getYear(), e);
+        }
+    }
+}
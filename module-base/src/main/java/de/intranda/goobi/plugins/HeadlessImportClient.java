@@ -0,0 +1,152 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Command line client for the REST endpoint of the newspaper pages importer, e.g. to start imports by cron jobs:
+ *
+ * <pre>
+ * java -cp plugin_intranda_workflow_newspaper_pages_importer-base.jar de.intranda.goobi.plugins.HeadlessImportClient \
+ *     [--token TOKEN] BASE_URL start|status|follow|cancel|pause|resume SET
+ * </pre>
+ *
+ * BASE_URL is the URL of the Goobi REST API, e.g. http://localhost:8080/goobi/api. The command start waits for the end of the import like
+ * follow and prints all state changes. The exit code is 0 if the import finished without errors, 1 if there were errors and 2 if the request
+ * failed.
+ */
+public class HeadlessImportClient {
+
+    private static final Pattern ERRORS_PATTERN = Pattern.compile("\"errors\":(\\d+)");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final String baseUrl;
+    private final String token;
+
+    public HeadlessImportClient(String baseUrl, String token) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.token = token;
+    }
+
+    public static void main(String[] args) {
+        String token = null;
+        int first = 0;
+        if (args.length > 1 && "--token".equals(args[0])) {
+            token = args[1];
+            first = 2;
+        }
+        if (args.length - first != 3) {
+            System.err.println("Usage: HeadlessImportClient [--token TOKEN] BASE_URL start|status|follow|cancel|pause|resume SET");
+            System.exit(2);
+        }
+        HeadlessImportClient importClient = new HeadlessImportClient(args[first], token);
+        try {
+            System.exit(importClient.run(args[first + 1], args[first + 2]));
+        } catch (IOException e) {
+            System.err.println("Request failed: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * run a command
+     *
+     * @param command start, status, follow, cancel, pause or resume
+     * @param set title of the set
+     * @return the exit code
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int run(String command, String set) throws IOException, InterruptedException {
+        String path = "/newspaperimport/" + URLEncoder.encode(set, StandardCharsets.UTF_8).replace("+", "%20");
+        switch (command) {
+            case "start":
+                HttpResponse<String> started = send(request(path + "/start").POST(HttpRequest.BodyPublishers.noBody()));
+                System.out.println(started.body());
+                if (started.statusCode() != 202) {
+                    return 2;
+                }
+                return follow(path);
+            case "follow":
+                return follow(path);
+            case "status":
+                return print(send(request(path).GET()));
+            case "cancel":
+            case "pause":
+            case "resume":
+                return print(send(request(path + "/" + command).POST(HttpRequest.BodyPublishers.noBody())));
+            default:
+                System.err.println("Unknown command: " + command);
+                return 2;
+        }
+    }
+
+    /**
+     * print the server-sent events of the import until it is finished
+     *
+     * @return the exit code
+     */
+    private int follow(String path) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = client.send(request(path + "/events").GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            System.err.println("Request failed with status " + response.statusCode());
+            return 2;
+        }
+        String event = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("event: ")) {
+                    event = line.substring(7);
+                } else if (line.startsWith("data: ")) {
+                    String data = line.substring(6);
+                    System.out.println(data);
+                    if ("finished".equals(event)) {
+                        return getErrors(data) == 0 ? 0 : 1;
+                    }
+                }
+            }
+        }
+        // the connection was closed before the import finished
+        return 2;
+    }
+
+    private int print(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            System.err.println("Request failed with status " + response.statusCode());
+            return 2;
+        }
+        System.out.println(response.body());
+        return getErrors(response.body()) == 0 ? 0 : 1;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder) throws IOException, InterruptedException {
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static int getErrors(String json) {
+        Matcher matcher = ERRORS_PATTERN.matcher(json);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+}
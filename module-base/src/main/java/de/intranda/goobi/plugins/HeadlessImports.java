@@ -0,0 +1,169 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import de.intranda.goobi.plugins.model.ImportStatus;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Imports that were started without a browser session, e.g. by the REST endpoint. Each set has at most one headless import, which keeps its
+ * plugin instance until the set is started again, so that its final state can still be read after the import finished. A set that is being
+ * imported, also in the GUI, is claimed in {@link ActiveSets} and cannot be started again.
+ */
+@Log4j2
+public final class HeadlessImports {
+
+    /**
+     * the import of one set, implemented by the plugin
+     */
+    interface Importer {
+
+        /**
+         * validate the files of a set and start their import, the set is already claimed and must be released when the import ends or cannot be
+         * started
+         */
+        void startClaimedImport(String set);
+
+        ImportControl.State getImportState();
+
+        int getProgress();
+
+        int getItemCurrent();
+
+        int getItemsTotal();
+
+        int getErrors();
+
+        String getLastMessage();
+
+        void cancel();
+
+        void pause();
+
+        void resume();
+    }
+
+    private static final HeadlessImports INSTANCE = new HeadlessImports(HeadlessImports::createPlugin);
+
+    // creates the importer of a set, returns null if the set is not configured
+    private final Function<String, Importer> importerFactory;
+    private final Map<String, Importer> imports = new ConcurrentHashMap<>();
+    // sets whose files are still being validated
+    private final Set<String> starting = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param importerFactory creates the importer of a set, returns null if the set is not configured
+     */
+    HeadlessImports(Function<String, Importer> importerFactory) {
+        this.importerFactory = importerFactory;
+    }
+
+    public static HeadlessImports getInstance() {
+        return INSTANCE;
+    }
+
+    private static Importer createPlugin(String set) {
+        NewspaperPageImporterWorkflowPlugin plugin = new NewspaperPageImporterWorkflowPlugin();
+        return PluginConfiguration.get(plugin.getTitle()).getSet(set) != null ? plugin : null;
+    }
+
+    /**
+     * start the import of a set in the background
+     *
+     * @param set title of the set
+     * @return true if the import was started, false if the set is already being imported
+     * @throws IllegalArgumentException if the set is not configured
+     */
+    public synchronized boolean start(String set) {
+        if (ActiveSets.isActive(set)) {
+            return false;
+        }
+        Importer importer = importerFactory.apply(set);
+        if (importer == null) {
+            throw new IllegalArgumentException("Unknown set: " + set);
+        }
+        if (!ActiveSets.claim(set)) {
+            return false;
+        }
+        imports.put(set, importer);
+        starting.add(set);
+        // the validation of large sets takes a while, so the caller does not wait for it
+        Thread thread = new Thread(() -> {
+            try {
+                importer.startClaimedImport(set);
+            } catch (RuntimeException e) {
+                log.error("Headless import of set " + set + " failed to start", e);
+            } finally {
+                starting.remove(set);
+            }
+        }, "newspaper-import-" + set);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @param set title of the set
+     * @return the state of the last headless import of the set, {@link ImportStatus#LOCKED} if the set is being imported in the GUI, or null if the
+     *         set was never started headless and is not being imported
+     */
+    public ImportStatus getStatus(String set) {
+        Importer importer = imports.get(set);
+        String state;
+        if (starting.contains(set)) {
+            state = ImportStatus.STARTING;
+        } else if (importer != null && importer.getImportState() != ImportControl.State.IDLE) {
+            state = importer.getImportState().name();
+        } else if (ActiveSets.isActive(set)) {
+            // the headless import is finished or was never started, so the set is claimed by another session
+            return new ImportStatus(set, ImportStatus.LOCKED, 0, 0, 0, 0, "The set is being imported in another session");
+        } else if (importer == null) {
+            return null;
+        } else {
+            state = ImportStatus.IDLE;
+        }
+        return new ImportStatus(set, state, importer.getProgress(), importer.getItemCurrent(), importer.getItemsTotal(), importer.getErrors(),
+                importer.getLastMessage());
+    }
+
+    /**
+     * cancel the headless import of a set
+     *
+     * @return false if the set was never started headless
+     */
+    public boolean cancel(String set) {
+        Importer importer = imports.get(set);
+        if (importer != null) {
+            importer.cancel();
+        }
+        return importer != null;
+    }
+
+    /**
+     * pause the headless import of a set
+     *
+     * @return false if the set was never started headless
+     */
+    public boolean pause(String set) {
+        Importer importer = imports.get(set);
+        if (importer != null) {
+            importer.pause();
+        }
+        return importer != null;
+    }
+
+    /**
+     * resume the paused headless import of a set
+     *
+     * @return false if the set was never started headless
+     */
+    public boolean resume(String set) {
+        Importer importer = imports.get(set);
+        if (importer != null) {
+            importer.resume();
+        }
+        return importer != null;
+    }
+}
@@ -0,0 +1,440 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import de.intranda.goobi.plugins.model.ImageInfo;
+
+/**
+ * Reads the technical metadata of TIFF and JPEG files from their headers without decoding any pixel data. Only the bytes that are needed are read
+ * using positional reads, so the costs are independent of the image size.
+ *
+ * Files whose image data ends behind the end of the file are reported as truncated. All offsets and counts read from a header are checked before
+ * they are used, so that a corrupt file is reported as {@link InvalidImageException} and never causes an unchecked exception.
+ */
+public class ImageHeaderProbe {
+
+    private static final int HEADER_SIZE = 16;
+    // JPEG files sometimes contain padding after the end of image marker
+    private static final int JPEG_TAIL_SIZE = 1024;
+    // limits for the counts read from a TIFF header, larger counts are treated as corrupt instead of being allocated
+    private static final int MAX_IFD_ENTRIES = 0xFFFF;
+    private static final int MAX_TIFF_VALUES = 1 << 20;
+
+    private static final int TAG_IMAGE_WIDTH = 256;
+    private static final int TAG_IMAGE_LENGTH = 257;
+    private static final int TAG_BITS_PER_SAMPLE = 258;
+    private static final int TAG_COMPRESSION = 259;
+    private static final int TAG_STRIP_OFFSETS = 273;
+    private static final int TAG_SAMPLES_PER_PIXEL = 277;
+    private static final int TAG_STRIP_BYTE_COUNTS = 279;
+    private static final int TAG_X_RESOLUTION = 282;
+    private static final int TAG_Y_RESOLUTION = 283;
+    private static final int TAG_RESOLUTION_UNIT = 296;
+    private static final int TAG_TILE_OFFSETS = 324;
+    private static final int TAG_TILE_BYTE_COUNTS = 325;
+
+    private ImageHeaderProbe() {
+    }
+
+    /**
+     * read the technical metadata of the input file
+     *
+     * @param path path of the image file
+     * @return the technical metadata, or null if the file is neither a TIFF nor a JPEG file
+     * @throws InvalidImageException if the file is corrupt or truncated
+     * @throws IOException if the file cannot be read
+     */
+    public static ImageInfo probe(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return probe(channel);
+        }
+    }
+
+    /**
+     * read the technical metadata of an image from a channel, e.g. of a file in the import source
+     *
+     * @param channel channel of the image file, it is not closed
+     * @return the technical metadata, or null if the file is neither a TIFF nor a JPEG file
+     * @throws InvalidImageException if the file is corrupt or truncated
+     * @throws IOException if the file cannot be read
+     */
+    public static ImageInfo probe(SeekableByteChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 4) {
+            return null;
+        }
+        ByteBuffer header = read(channel, 0, (int) Math.min(HEADER_SIZE, size));
+        int b0 = header.get(0) & 0xFF;
+        int b1 = header.get(1) & 0xFF;
+        try {
+            if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+                header.order(b0 == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                return probeTiff(channel, header, size);
+            }
+            if (b0 == 0xFF && b1 == 0xD8) {
+                return probeJpeg(channel, size);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            // a value of the header that was not checked explicitly
+            throw new InvalidImageException("Image header is corrupt: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static ImageInfo probeTiff(SeekableByteChannel channel, ByteBuffer header, long size) throws IOException {
+        ByteOrder order = header.order();
+        int version = header.getShort(2) & 0xFFFF;
+        boolean bigTiff;
+        long ifdOffset;
+        if (version == 42) {
+            bigTiff = false;
+            ifdOffset = header.getInt(4) & 0xFFFFFFFFL;
+        } else if (version == 43 && header.limit() >= 16) {
+            bigTiff = true;
+            ifdOffset = header.getLong(8);
+        } else {
+            throw new InvalidImageException("Unknown TIFF version " + version);
+        }
+        if (ifdOffset < 8 || ifdOffset >= size) {
+            throw new InvalidImageException("First IFD is outside of the file");
+        }
+
+        int countSize = bigTiff ? 8 : 2;
+        int entrySize = bigTiff ? 20 : 12;
+        ByteBuffer countBuffer = read(channel, ifdOffset, countSize).order(order);
+        long entryCount = bigTiff ? countBuffer.getLong(0) : countBuffer.getShort(0) & 0xFFFF;
+        if (entryCount <= 0 || entryCount > MAX_IFD_ENTRIES) {
+            throw new InvalidImageException("IFD has an invalid number of entries: " + entryCount);
+        }
+        if (entryCount > (size - ifdOffset - countSize) / entrySize) {
+            throw new InvalidImageException("IFD is truncated");
+        }
+        ByteBuffer entries = read(channel, ifdOffset + countSize, (int) (entryCount * entrySize)).order(order);
+
+        int width = 0;
+        int height = 0;
+        int bitsPerSample = 1;
+        int samplesPerPixel = 1;
+        int compression = 1;
+        double xResolution = 0;
+        double yResolution = 0;
+        int resolutionUnit = 2;
+        long[] dataOffsets = null;
+        long[] dataByteCounts = null;
+
+        for (int i = 0; i < entryCount; i++) {
+            TiffEntry entry = new TiffEntry(entries, i * entrySize, bigTiff);
+            switch (entry.tag) {
+                case TAG_IMAGE_WIDTH:
+                    width = entry.readInt(channel, size);
+                    break;
+                case TAG_IMAGE_LENGTH:
+                    height = entry.readInt(channel, size);
+                    break;
+                case TAG_BITS_PER_SAMPLE:
+                    bitsPerSample = entry.readInt(channel, size);
+                    break;
+                case TAG_COMPRESSION:
+                    compression = entry.readInt(channel, size);
+                    break;
+                case TAG_SAMPLES_PER_PIXEL:
+                    samplesPerPixel = entry.readInt(channel, size);
+                    break;
+                case TAG_X_RESOLUTION:
+                    xResolution = entry.readRational(channel, size);
+                    break;
+                case TAG_Y_RESOLUTION:
+                    yResolution = entry.readRational(channel, size);
+                    break;
+                case TAG_RESOLUTION_UNIT:
+                    resolutionUnit = entry.readInt(channel, size);
+                    break;
+                case TAG_STRIP_OFFSETS:
+                case TAG_TILE_OFFSETS:
+                    dataOffsets = entry.readValues(channel, size);
+                    break;
+                case TAG_STRIP_BYTE_COUNTS:
+                case TAG_TILE_BYTE_COUNTS:
+                    dataByteCounts = entry.readValues(channel, size);
+                    break;
+                default:
+                    // not needed
+            }
+        }
+
+        if (width <= 0 || height <= 0) {
+            throw new InvalidImageException("TIFF has no valid dimensions");
+        }
+        if (dataOffsets == null || dataByteCounts == null || dataOffsets.length != dataByteCounts.length) {
+            throw new InvalidImageException("TIFF has no valid image data offsets");
+        }
+        for (int i = 0; i < dataOffsets.length; i++) {
+            if (dataOffsets[i] < 0 || dataByteCounts[i] < 0) {
+                throw new InvalidImageException("TIFF has invalid image data offsets");
+            }
+            if (dataOffsets[i] > size - dataByteCounts[i]) {
+                throw new InvalidImageException(
+                        "TIFF is truncated, image data ends at " + (dataOffsets[i] + dataByteCounts[i]) + " of " + size + " bytes");
+            }
+        }
+
+        // resolution unit 3 is centimeter
+        double factor = resolutionUnit == 3 ? 2.54 : 1;
+        return new ImageInfo("TIFF", width, height, bitsPerSample, samplesPerPixel, getTiffCompressionName(compression), xResolution * factor,
+                yResolution * factor);
+    }
+
+    private static String getTiffCompressionName(int compression) {
+        switch (compression) {
+            case 1:
+                return "none";
+            case 2:
+                return "CCITT RLE";
+            case 3:
+                return "CCITT G3";
+            case 4:
+                return "CCITT G4";
+            case 5:
+                return "LZW";
+            case 6:
+            case 7:
+                return "JPEG";
+            case 8:
+            case 32946:
+                return "Deflate";
+            case 32773:
+                return "PackBits";
+            default:
+                return String.valueOf(compression);
+        }
+    }
+
+    private static ImageInfo probeJpeg(SeekableByteChannel channel, long size) throws IOException {
+        // the image is truncated if the end of image marker is missing
+        int tailSize = (int) Math.min(JPEG_TAIL_SIZE, size);
+        ByteBuffer tail = read(channel, size - tailSize, tailSize);
+        int end = tailSize - 1;
+        while (end > 0 && tail.get(end) == 0) {
+            end--;
+        }
+        if (end < 1 || (tail.get(end - 1) & 0xFF) != 0xFF || (tail.get(end) & 0xFF) != 0xD9) {
+            throw new InvalidImageException("JPEG is truncated, end of image marker is missing");
+        }
+
+        double xResolution = 0;
+        double yResolution = 0;
+        long position = 2;
+        while (position + 4 <= size) {
+            ByteBuffer segment = read(channel, position, 4);
+            if ((segment.get(0) & 0xFF) != 0xFF) {
+                throw new InvalidImageException("JPEG marker expected at position " + position);
+            }
+            int marker = segment.get(1) & 0xFF;
+            if (marker == 0xFF) {
+                // fill byte
+                position++;
+                continue;
+            }
+            int length = segment.getShort(2) & 0xFFFF;
+            if (marker == 0xDA || marker == 0xD9) {
+                // start of scan or end of image before any frame header
+                break;
+            }
+            if (length < 2 || position + 2 + length > size) {
+                throw new InvalidImageException("JPEG segment is truncated at position " + position);
+            }
+            boolean frameHeader = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (frameHeader && length < 8) {
+                throw new InvalidImageException("JPEG frame header is too short at position " + position);
+            }
+
+            if (marker == 0xE0 && length >= 14) {
+                ByteBuffer app0 = read(channel, position + 4, 12);
+                if (app0.get(0) == 'J' && app0.get(1) == 'F' && app0.get(2) == 'I' && app0.get(3) == 'F' && app0.get(4) == 0) {
+                    int units = app0.get(7) & 0xFF;
+                    int xDensity = app0.getShort(8) & 0xFFFF;
+                    int yDensity = app0.getShort(10) & 0xFFFF;
+                    // unit 1 is dots per inch, unit 2 dots per centimeter, unit 0 only defines the aspect ratio
+                    double factor = units == 1 ? 1 : units == 2 ? 2.54 : 0;
+                    xResolution = xDensity * factor;
+                    yResolution = yDensity * factor;
+                }
+            } else if (frameHeader) {
+                ByteBuffer frame = read(channel, position + 4, 6);
+                int precision = frame.get(0) & 0xFF;
+                int height = frame.getShort(1) & 0xFFFF;
+                int width = frame.getShort(3) & 0xFFFF;
+                int components = frame.get(5) & 0xFF;
+                if (width <= 0 || height <= 0) {
+                    throw new InvalidImageException("JPEG has no valid dimensions");
+                }
+                String compression = marker == 0xC0 ? "baseline" : marker == 0xC2 ? "progressive" : marker == 0xC3 ? "lossless" : "extended";
+                return new ImageInfo("JPEG", width, height, precision, components, compression, xResolution, yResolution);
+            }
+            position += 2 + length;
+        }
+        throw new InvalidImageException("JPEG frame header is missing");
+    }
+
+    /**
+     * read the given number of bytes starting at the given position
+     */
+    private static ByteBuffer read(SeekableByteChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                throw new InvalidImageException("Unexpected end of file at position " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * the file could be read, but its content is no valid image, in contrast to other exceptions the result does not change until the file is
+     * changed
+     */
+    public static class InvalidImageException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public InvalidImageException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * a single entry of a TIFF image file directory
+     */
+    private static class TiffEntry {
+        private int tag;
+        private int type;
+        private long count;
+        private ByteOrder order;
+        private boolean bigTiff;
+        // the value itself if it fits into the entry, otherwise the offset of the values
+        private ByteBuffer valueField;
+
+        private TiffEntry(ByteBuffer entries, int offset, boolean bigTiff) {
+            this.order = entries.order();
+            this.bigTiff = bigTiff;
+            tag = entries.getShort(offset) & 0xFFFF;
+            type = entries.getShort(offset + 2) & 0xFFFF;
+            count = bigTiff ? entries.getLong(offset + 4) : entries.getInt(offset + 4) & 0xFFFFFFFFL;
+            int fieldSize = bigTiff ? 8 : 4;
+            byte[] field = new byte[fieldSize];
+            for (int i = 0; i < fieldSize; i++) {
+                field[i] = entries.get(offset + (bigTiff ? 12 : 8) + i);
+            }
+            valueField = ByteBuffer.wrap(field).order(order);
+        }
+
+        private int getTypeSize() throws IOException {
+            switch (type) {
+                case 1: // BYTE
+                case 2: // ASCII
+                case 6: // SBYTE
+                case 7: // UNDEFINED
+                    return 1;
+                case 3: // SHORT
+                case 8: // SSHORT
+                    return 2;
+                case 4: // LONG
+                case 9: // SLONG
+                case 11: // FLOAT
+                case 13: // IFD
+                    return 4;
+                case 5: // RATIONAL
+                case 10: // SRATIONAL
+                case 12: // DOUBLE
+                case 16: // LONG8
+                case 17: // SLONG8
+                case 18: // IFD8
+                    return 8;
+                default:
+                    throw new InvalidImageException("Unknown TIFF field type " + type + " for tag " + tag);
+            }
+        }
+
+        private ByteBuffer readData(SeekableByteChannel channel, long size) throws IOException {
+            int typeSize = getTypeSize();
+            if (count < 0 || count > Integer.MAX_VALUE / typeSize) {
+                throw new InvalidImageException("TIFF tag " + tag + " has an invalid number of values: " + count);
+            }
+            long length = count * typeSize;
+            if (length <= valueField.capacity()) {
+                return valueField.duplicate().order(order);
+            }
+            long offset = bigTiff ? valueField.getLong(0) : valueField.getInt(0) & 0xFFFFFFFFL;
+            if (offset < 0 || offset > size - length) {
+                throw new InvalidImageException("Values of TIFF tag " + tag + " are outside of the file");
+            }
+            return read(channel, offset, (int) length).order(order);
+        }
+
+        /**
+         * read all values of an integer field
+         */
+        private long[] readValues(SeekableByteChannel channel, long size) throws IOException {
+            if (count == 0) {
+                throw new InvalidImageException("TIFF tag " + tag + " has no value");
+            }
+            if (count > MAX_TIFF_VALUES) {
+                throw new InvalidImageException("TIFF tag " + tag + " has too many values: " + count);
+            }
+            ByteBuffer data = readData(channel, size);
+            long[] values = new long[(int) count];
+            for (int i = 0; i < count; i++) {
+                switch (type) {
+                    case 1:
+                        values[i] = data.get(i) & 0xFF;
+                        break;
+                    case 3:
+                        values[i] = data.getShort(i * 2) & 0xFFFF;
+                        break;
+                    case 4:
+                        values[i] = data.getInt(i * 4) & 0xFFFFFFFFL;
+                        break;
+                    case 16:
+                        values[i] = data.getLong(i * 8);
+                        break;
+                    default:
+                        throw new InvalidImageException("Unexpected TIFF field type " + type + " for tag " + tag);
+                }
+            }
+            return values;
+        }
+
+        /**
+         * read the first value of an integer field that must fit into an int
+         */
+        private int readInt(SeekableByteChannel channel, long size) throws IOException {
+            long value = readValues(channel, size)[0];
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new InvalidImageException("TIFF tag " + tag + " has an invalid value: " + value);
+            }
+            return (int) value;
+        }
+
+        /**
+         * read the first value of a rational field
+         */
+        private double readRational(SeekableByteChannel channel, long size) throws IOException {
+            if (type != 5 || count == 0) {
+                return 0;
+            }
+            ByteBuffer data = readData(channel, size);
+            long numerator = data.getInt(0) & 0xFFFFFFFFL;
+            long denominator = data.getInt(4) & 0xFFFFFFFFL;
+            return denominator == 0 ? 0 : (double) numerator / denominator;
+        }
+    }
+}
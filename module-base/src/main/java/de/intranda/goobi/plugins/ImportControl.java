@@ -0,0 +1,136 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * Thread safe state of a running import. The import thread calls {@link #checkpoint()} between all steps that can be interrupted safely, which
+ * blocks while the import is paused and tells the import thread to stop once it is cancelled.
+ */
+public class ImportControl {
+
+    public enum State {
+        IDLE,
+        RUNNING,
+        PAUSED,
+        CANCELLING
+    }
+
+    @Getter
+    private volatile State state = State.IDLE;
+
+    // time when the cancellation was requested
+    private long cancelRequestedAt;
+    // time between the cancellation request and the stop of the import thread of the last cancelled import
+    @Getter
+    private volatile long lastStopLatency = -1;
+    // maximum of all measured stop latencies
+    @Getter
+    private volatile long maxStopLatency = -1;
+
+    /**
+     * mark the import as running
+     */
+    public synchronized void start() {
+        state = State.RUNNING;
+    }
+
+    /**
+     * pause a running import at the next checkpoint
+     *
+     * @return true if the import was running, false otherwise
+     */
+    public synchronized boolean pause() {
+        if (state != State.RUNNING) {
+            return false;
+        }
+        state = State.PAUSED;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * continue a paused import
+     *
+     * @return true if the import was paused, false otherwise
+     */
+    public synchronized boolean resume() {
+        if (state != State.PAUSED) {
+            return false;
+        }
+        state = State.RUNNING;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * stop a running or paused import at the next checkpoint
+     *
+     * @return true if the import was running or paused, false otherwise
+     */
+    public synchronized boolean cancel() {
+        if (state != State.RUNNING && state != State.PAUSED) {
+            return false;
+        }
+        state = State.CANCELLING;
+        cancelRequestedAt = System.nanoTime();
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * wait as long as the import is paused
+     *
+     * @return true if the import shall continue, false if it was cancelled
+     * @throws InterruptedException
+     */
+    public boolean checkpoint() throws InterruptedException {
+        // fast path without locking
+        if (state == State.RUNNING) {
+            return true;
+        }
+        synchronized (this) {
+            while (state == State.PAUSED) {
+                wait();
+            }
+            return state == State.RUNNING;
+        }
+    }
+
+    /**
+     * wait for the given time, unless the import is paused or cancelled in the meantime
+     *
+     * @param millis maximum time to wait
+     * @throws InterruptedException
+     */
+    public synchronized void waitFor(long millis) throws InterruptedException {
+        if (state == State.RUNNING && millis > 0) {
+            wait(millis);
+        }
+    }
+
+    /**
+     * mark the import as finished, the stop latency is measured if the import was cancelled
+     */
+    public synchronized void finish() {
+        if (state == State.CANCELLING) {
+            lastStopLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelRequestedAt);
+            maxStopLatency = Math.max(maxStopLatency, lastStopLatency);
+        }
+        state = State.IDLE;
+        notifyAll();
+    }
+
+    public boolean isActive() {
+        return state != State.IDLE;
+    }
+
+    public boolean isPaused() {
+        return state == State.PAUSED;
+    }
+
+    public boolean isCancelled() {
+        return state == State.CANCELLING;
+    }
+}
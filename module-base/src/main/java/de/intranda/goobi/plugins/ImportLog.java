@@ -0,0 +1,130 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.collections4.queue.CircularFifoQueue;
+
+import lombok.Getter;
+
+/**
+ * The log of an import shown in the GUI. The messages are kept in a ring buffer and numbered in the order of their creation, so that the GUI only
+ * fetches the messages after the last number it has shown, instead of rendering the whole log on each update. Errors are additionally kept in a
+ * separate buffer, so that they are not pushed out of the log by the messages that follow them.
+ *
+ * All methods are thread safe.
+ */
+public class ImportLog {
+
+    public static final int LEVEL_DEBUG = 0;
+    public static final int LEVEL_INFO = 1;
+    public static final int LEVEL_WARNING = 2;
+    public static final int LEVEL_ERROR = 3;
+
+    private final Entry[] entries;
+    private final CircularFifoQueue<Entry> errors;
+    // sequence number of the next message, the first message has number 1
+    private long nextSequence = 1;
+
+    /**
+     * @param capacity number of messages and number of errors that are kept
+     */
+    public ImportLog(int capacity) {
+        entries = new Entry[capacity];
+        errors = new CircularFifoQueue<>(capacity);
+    }
+
+    /**
+     * add a message to the log
+     *
+     * @param message the message
+     * @param level level of the message, from 0 for debug messages to 3 for errors
+     * @return the new entry
+     */
+    public synchronized Entry add(String message, int level) {
+        Entry entry = new Entry(nextSequence, System.currentTimeMillis(), message, level);
+        entries[(int) (nextSequence % entries.length)] = entry;
+        nextSequence++;
+        if (level >= LEVEL_ERROR) {
+            errors.add(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * get the messages after a cursor
+     *
+     * @param cursor sequence number of the last message the caller has, 0 to start at the oldest message
+     * @param minLevel lowest level of the messages to return
+     * @param limit maximum number of messages to return
+     * @return the messages and the cursor for the next call
+     */
+    public synchronized Page fetch(long cursor, int minLevel, int limit) {
+        long oldest = Math.max(1, nextSequence - entries.length);
+        long sequence = Math.max(cursor + 1, oldest);
+        // messages that were pushed out of the buffer before the caller fetched them
+        long skipped = sequence - cursor - 1;
+        List<Entry> result = new ArrayList<>(Math.min(limit, entries.length));
+        while (sequence < nextSequence && result.size() < limit) {
+            Entry entry = entries[(int) (sequence % entries.length)];
+            if (entry.getLevel() >= minLevel) {
+                result.add(entry);
+            }
+            sequence++;
+        }
+        return new Page(Collections.unmodifiableList(result), sequence - 1, skipped, sequence < nextSequence);
+    }
+
+    /**
+     * @return the kept errors, oldest first
+     */
+    public synchronized List<Entry> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * @return sequence number of the newest message, 0 if the log is empty
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    @Getter
+    public static class Entry {
+        private final long sequence;
+        private final long time;
+        private final String message;
+        private final int level;
+
+        private Entry(long sequence, long time, String message, int level) {
+            this.sequence = sequence;
+            this.time = time;
+            this.message = message;
+            this.level = level;
+        }
+    }
+
+    /**
+     * messages returned by one fetch
+     */
+    @Getter
+    public static class Page {
+        public static final Page EMPTY = new Page(Collections.emptyList(), 0, 0, false);
+
+        private final List<Entry> entries;
+        // sequence number to pass to the next fetch
+        private final long cursor;
+        // number of messages after the previous cursor that are no longer kept
+        private final long skipped;
+        // true if more messages are available after this page
+        private final boolean more;
+
+        private Page(List<Entry> entries, long cursor, long skipped, boolean more) {
+            this.entries = entries;
+            this.cursor = cursor;
+            this.skipped = skipped;
+            this.more = more;
+        }
+    }
+}
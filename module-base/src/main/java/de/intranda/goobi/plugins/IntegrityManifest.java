@@ -0,0 +1,243 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+import lombok.Getter;
+
+/**
+ * Content hashes of the files that were copied into a process. The hash of each file is computed while it is copied, so that the source is
+ * read only once. The manifest file lists one file per line in the format of sha256sum, with paths relative to the folder of the manifest, e.g.
+ * <code>sha256sum -c import_manifest.sha256</code> can be run in the process folder to check the files again later.
+ *
+ * The hashes are collected in memory and written with {@link #save()}, which replaces the manifest file in one step. Each path is listed once,
+ * a file that is copied again replaces its entry and a copy that is discarded is removed with {@link #remove(Path)}. All methods are thread
+ * safe.
+ */
+public class IntegrityManifest {
+
+    public static final String FILE_NAME_PREFIX = "import_manifest.";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Getter
+    private final Path manifestFile;
+    @Getter
+    private final String algorithm;
+    // hashes of the files by their path relative to the folder of the manifest, sorted to write a stable manifest
+    private final Map<String, String> hashes = new TreeMap<>();
+
+    // statistics of the copies, to report the throughput
+    @Getter
+    private long bytesCopied;
+    @Getter
+    private int filesCopied;
+    private long firstStart;
+    private long lastEnd;
+
+    /**
+     * @param folder folder of the manifest, all files must be inside of it
+     * @param algorithm name of the hash algorithm, e.g. SHA-256
+     * @throws IOException if the existing manifest could not be read
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public IntegrityManifest(Path folder, String algorithm) throws IOException, NoSuchAlgorithmException {
+        this.algorithm = algorithm;
+        // fail early for unknown algorithms
+        MessageDigest.getInstance(algorithm);
+        this.manifestFile = folder.resolve(FILE_NAME_PREFIX + algorithm.replace("-", "").toLowerCase());
+        if (Files.exists(manifestFile)) {
+            // the process was imported before, its entries stay valid, the last entry of a path wins
+            for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+                int separator = line.indexOf("  ");
+                if (separator > 0) {
+                    hashes.put(line.substring(separator + 2), line.substring(0, separator));
+                }
+            }
+        }
+    }
+
+    /**
+     * copy a file and compute its hash in the same pass, the hash is added to the manifest
+     *
+     * @param source file to copy
+     * @param target target of the copy inside the folder of the manifest, an existing file is replaced
+     * @return the hash of the file
+     * @throws IOException
+     */
+    public String copy(Path source, Path target) throws IOException {
+        return copy(source, target, target);
+    }
+
+    /**
+     * copy a file into a temporary location and compute its hash in the same pass, the hash is added to the manifest for its final location
+     *
+     * @param source file to copy
+     * @param target target of the copy, an existing file is replaced
+     * @param listedAs final location of the file inside the folder of the manifest
+     * @return the hash of the file
+     * @throws IOException
+     */
+    public String copy(Path source, Path target, Path listedAs) throws IOException {
+        String hash;
+        try (InputStream in = Files.newInputStream(source)) {
+            hash = copy(in, target, listedAs);
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+        return hash;
+    }
+
+    /**
+     * copy a stream, e.g. of a file in a remote import source, into a file and compute its hash in the same pass
+     *
+     * @param source stream to copy, it is not closed
+     * @param target target of the copy, an existing file is replaced
+     * @param listedAs final location of the file inside the folder of the manifest
+     * @return the hash of the file
+     * @throws IOException
+     */
+    public String copy(InputStream source, Path target, Path listedAs) throws IOException {
+        MessageDigest digest = newDigest();
+        long start = System.nanoTime();
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        String entry = relativize(listedAs);
+        synchronized (this) {
+            hashes.put(entry, hash);
+            if (filesCopied == 0 || start < firstStart) {
+                firstStart = start;
+            }
+            lastEnd = Math.max(lastEnd, System.nanoTime());
+            bytesCopied += size;
+            filesCopied++;
+        }
+        return hash;
+    }
+
+    /**
+     * remove the entry of a copy that was discarded, e.g. because it does not match its hash
+     *
+     * @param listedAs final location of the file inside the folder of the manifest
+     */
+    public synchronized void remove(Path listedAs) {
+        hashes.remove(relativize(listedAs));
+    }
+
+    /**
+     * write all entries into the manifest file, which is replaced in one step
+     *
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        Path temp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                writer.write(entry.getValue() + "  " + entry.getKey());
+                writer.newLine();
+            }
+        }
+        // a crash leaves either the old or the new manifest
+        Files.move(temp, manifestFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * read a file again and compare its hash with the manifest
+     *
+     * @param target file inside the folder of the manifest
+     * @return true if the hash matches, false if it differs or the file is not listed in the manifest
+     * @throws IOException
+     */
+    public boolean verify(Path target) throws IOException {
+        return verify(target, target);
+    }
+
+    /**
+     * read a file in a temporary location and compare its hash with the manifest entry of its final location
+     *
+     * @param file file to read
+     * @param listedAs final location of the file inside the folder of the manifest
+     * @return true if the hash matches, false if it differs or the file is not listed in the manifest
+     * @throws IOException
+     */
+    public boolean verify(Path file, Path listedAs) throws IOException {
+        String expected;
+        synchronized (this) {
+            expected = hashes.get(relativize(listedAs));
+        }
+        return expected != null && expected.equals(hash(file));
+    }
+
+    /**
+     * select the files that are verified, the selected files are spread evenly over the files of a year
+     *
+     * @param index index of the file, e.g. the index of its page in the import plan
+     * @param percent share of the files in percent that are verified
+     * @return true if the file shall be read again and verified
+     */
+    public static boolean isSampled(int index, int percent) {
+        return (index + 1L) * percent / 100 > (long) index * percent / 100;
+    }
+
+    /**
+     * @param target file inside the folder of the manifest
+     * @return the hash of the file in the manifest, or null if it is not listed
+     */
+    public synchronized String getHash(Path target) {
+        return hashes.get(relativize(target));
+    }
+
+    /**
+     * @return the throughput of all copies in MB/s, measured from the start of the first copy to the end of the last one
+     */
+    public synchronized double getMegabytesPerSecond() {
+        if (filesCopied == 0 || lastEnd <= firstStart) {
+            return 0;
+        }
+        return bytesCopied * 1e9 / (lastEnd - firstStart) / (1024 * 1024);
+    }
+
+    private String hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // checked in the constructor
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String relativize(Path target) {
+        return manifestFile.getParent().relativize(target).toString().replace('\\', '/');
+    }
+}
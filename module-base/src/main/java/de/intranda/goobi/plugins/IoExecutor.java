@@ -0,0 +1,223 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Runs the I/O bound tasks of the import, like reading the image headers or copying files. With platform threads the tasks are queued for a fixed
+ * pool. With virtual threads each task gets its own thread, which costs almost no memory while it waits for the storage, and a semaphore bounds
+ * the number of tasks in flight. {@link #submit(Callable)} blocks once the bound is reached, so that large imports do not create all of their
+ * tasks at once.
+ *
+ * Virtual threads need Java 21, on older runtimes platform threads are used instead.
+ */
+@Log4j2
+public class IoExecutor {
+
+    private final ExecutorService executor;
+    // bounds the tasks in flight on virtual threads, null for the platform pool that is bounded by its size
+    private final Semaphore permits;
+    // true if the tasks run on virtual threads
+    @Getter
+    private final boolean virtual;
+
+    /**
+     * @param useVirtualThreads true if the tasks shall run on virtual threads if the runtime supports them
+     * @param threads size of the platform pool, or maximum number of tasks in flight on virtual threads
+     * @param name prefix of the names of the virtual threads
+     */
+    public IoExecutor(boolean useVirtualThreads, int threads, String name) {
+        int size = Math.max(1, threads);
+        ExecutorService virtualExecutor = useVirtualThreads ? newVirtualThreadExecutor(name) : null;
+        if (virtualExecutor != null) {
+            executor = virtualExecutor;
+            permits = new Semaphore(size);
+            virtual = true;
+        } else {
+            executor = Executors.newFixedThreadPool(size);
+            permits = null;
+            virtual = false;
+        }
+    }
+
+    /**
+     * submit a task, waits until fewer tasks than the bound are in flight if virtual threads are used
+     *
+     * @param task the task
+     * @return Future of the result
+     * @throws InterruptedException
+     */
+    public <T> Future<T> submit(Callable<T> task) throws InterruptedException {
+        return execute(task);
+    }
+
+    private <T> Task<T> execute(Callable<T> task) throws InterruptedException {
+        if (permits != null) {
+            permits.acquire();
+        }
+        Task<T> future = new Task<>(task, new Completion());
+        try {
+            executor.execute(future);
+        } catch (RuntimeException e) {
+            future.done();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * @return a new group for the tasks of one unit of work, e.g. an issue
+     */
+    public Group newGroup() {
+        return new Group();
+    }
+
+    /**
+     * stop accepting tasks, the submitted tasks are completed
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * stop accepting tasks and interrupt the running ones
+     */
+    public void shutdownNow() {
+        for (Runnable task : executor.shutdownNow()) {
+            // tasks that never ran release their permits and count as ended
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(String name) {
+        // looked up at runtime, so that the plugin still runs on Java 17
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not supported by Java " + Runtime.version().feature() + ", platform threads are used instead");
+            return null;
+        }
+    }
+
+    /**
+     * A submitted task. Its permit is released when the task itself ends and not when its future is cancelled, because a task that is cancelled
+     * while it runs may still write its file until it notices the interrupt.
+     */
+    private static final class Task<T> extends FutureTask<T> {
+        private final Completion completion;
+
+        private Task(Callable<T> task, Completion completion) {
+            super(() -> {
+                if (!completion.start()) {
+                    // cancelled right before it started
+                    return null;
+                }
+                try {
+                    return task.call();
+                } finally {
+                    completion.finish();
+                }
+            });
+            this.completion = completion;
+        }
+
+        @Override
+        protected void done() {
+            // a task that is cancelled before it started never runs
+            if (completion.start()) {
+                completion.finish();
+            }
+        }
+    }
+
+    /**
+     * tracks the end of a task, whether it ran or was cancelled before it started
+     */
+    private final class Completion {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        /**
+         * @return true for the first call, by the task when it starts or by its cancellation
+         */
+        private boolean start() {
+            return started.compareAndSet(false, true);
+        }
+
+        private void finish() {
+            if (permits != null) {
+                permits.release();
+            }
+            terminated.countDown();
+        }
+
+        private void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    terminated.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // the group is closed in any case, the interrupt is kept for the caller
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The tasks of one unit of work. The group is closed once all results are collected, tasks that are still running then, e.g. because the
+     * import was interrupted, are cancelled and awaited, so that no task outlives its unit of work.
+     */
+    public class Group implements AutoCloseable {
+        private final List<Task<?>> tasks = new ArrayList<>();
+
+        private Group() {
+        }
+
+        /**
+         * submit a task of this group, see {@link IoExecutor#submit(Callable)}
+         *
+         * @param task the task
+         * @return Future of the result
+         * @throws InterruptedException
+         */
+        public <T> Future<T> fork(Callable<T> task) throws InterruptedException {
+            Task<T> future = execute(task);
+            tasks.add(future);
+            return future;
+        }
+
+        /**
+         * cancel the tasks that are still running and wait until they ended, so that e.g. no partial copy is written after the group is closed
+         */
+        @Override
+        public void close() {
+            for (Task<?> task : tasks) {
+                task.cancel(true);
+            }
+            for (Task<?> task : tasks) {
+                task.completion.await();
+            }
+        }
+    }
+}
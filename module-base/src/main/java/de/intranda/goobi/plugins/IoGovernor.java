@@ -0,0 +1,154 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * Limits the load that the import puts on the storage. The throughput is limited by a token bucket that allows at most the configured number of
+ * bytes per second. The number of parallel copy operations is adjusted by an additive increase / multiplicative decrease scheme: every round of
+ * copies that are faster than the target latency allows one more parallel copy, every copy that is slower halves the number of parallel copies.
+ *
+ * All methods are thread safe.
+ */
+public class IoGovernor {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+    // weight of the newest measurement in the moving averages
+    private static final double SMOOTHING = 0.2;
+
+    // maximum number of bytes per second, unlimited if not positive
+    @Getter
+    private final long maxBytesPerSecond;
+    // upper bound for the number of parallel copies
+    @Getter
+    private final int maxConcurrency;
+    // copies that take longer than this are considered as a sign of an overloaded storage
+    @Getter
+    private final long targetLatency;
+
+    // current number of allowed parallel copies
+    @Getter
+    private volatile int concurrencyLimit;
+    // number of copies that are running at the moment
+    @Getter
+    private volatile int inFlight;
+    // copies that were fast enough since the last change of the concurrency limit
+    private int fastCopies;
+    // time of the last decrease, to decrease only once per round of parallel copies
+    private long lastDecrease = Long.MIN_VALUE;
+
+    // available bytes in the token bucket
+    private double tokens;
+    private long lastRefill;
+
+    // moving averages for the GUI
+    @Getter
+    private volatile double averageLatency;
+    private double averageBytesPerSecond;
+    private long windowStart;
+    private long windowBytes;
+
+    /**
+     * @param maxMegabytesPerSecond maximum throughput in MB/s, unlimited if not positive
+     * @param maxConcurrency maximum number of parallel copies
+     * @param targetLatency latency in milliseconds above which the number of parallel copies is decreased
+     */
+    public IoGovernor(double maxMegabytesPerSecond, int maxConcurrency, long targetLatency) {
+        this.maxBytesPerSecond = maxMegabytesPerSecond > 0 ? (long) (maxMegabytesPerSecond * MEGABYTE) : 0;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.targetLatency = targetLatency;
+        // start with a single copy and increase the number of parallel copies as long as the storage keeps up
+        this.concurrencyLimit = 1;
+        this.tokens = this.maxBytesPerSecond;
+        this.lastRefill = System.nanoTime();
+        this.windowStart = lastRefill;
+    }
+
+    /**
+     * wait until another copy is allowed to start and enough bytes are available in the token bucket
+     *
+     * @param bytes size of the file that shall be copied
+     * @return start time that must be passed to {@link #release(long, long)}
+     * @throws InterruptedException
+     */
+    public synchronized long acquire(long bytes) throws InterruptedException {
+        while (inFlight >= concurrencyLimit) {
+            wait();
+        }
+        inFlight++;
+        try {
+            if (maxBytesPerSecond > 0) {
+                // files larger than the bucket are allowed once the bucket is full, they make the balance negative
+                double needed = Math.min(bytes, maxBytesPerSecond);
+                refill();
+                while (tokens < needed) {
+                    long waitMillis = (long) Math.ceil((needed - tokens) * 1000 / maxBytesPerSecond);
+                    wait(Math.max(1, waitMillis));
+                    refill();
+                }
+                tokens -= bytes;
+            }
+        } catch (InterruptedException e) {
+            inFlight--;
+            notifyAll();
+            throw e;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * report the end of a copy and adjust the number of parallel copies
+     *
+     * @param start value returned by {@link #acquire(long)}
+     * @param bytes number of bytes that were copied
+     */
+    public synchronized void release(long start, long bytes) {
+        long now = System.nanoTime();
+        long latency = TimeUnit.NANOSECONDS.toMillis(now - start);
+        inFlight--;
+
+        averageLatency = averageLatency == 0 ? latency : averageLatency * (1 - SMOOTHING) + latency * SMOOTHING;
+        windowBytes += bytes;
+        long windowLength = now - windowStart;
+        if (windowLength >= TimeUnit.SECONDS.toNanos(1)) {
+            double current = windowBytes * 1e9 / windowLength;
+            averageBytesPerSecond = averageBytesPerSecond == 0 ? current : averageBytesPerSecond * (1 - SMOOTHING) + current * SMOOTHING;
+            windowStart = now;
+            windowBytes = 0;
+        }
+
+        if (targetLatency > 0 && latency > targetLatency) {
+            // copies that were started before the last decrease do not count again
+            if (start > lastDecrease) {
+                concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+                lastDecrease = now;
+            }
+            fastCopies = 0;
+        } else if (++fastCopies >= concurrencyLimit) {
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1);
+            fastCopies = 0;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return the maximum throughput in MB/s, 0 if unlimited
+     */
+    public double getMaxMegabytesPerSecond() {
+        return (double) maxBytesPerSecond / MEGABYTE;
+    }
+
+    /**
+     * @return the measured throughput in MB/s
+     */
+    public synchronized double getCurrentMegabytesPerSecond() {
+        return averageBytesPerSecond / MEGABYTE;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(maxBytesPerSecond, tokens + (now - lastRefill) * maxBytesPerSecond / 1e9);
+        lastRefill = now;
+    }
+}
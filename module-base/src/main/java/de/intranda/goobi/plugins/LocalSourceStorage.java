@@ -0,0 +1,117 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.intranda.goobi.plugins.model.SourceFile;
+import lombok.Getter;
+
+/**
+ * Import folder on the local file system or on a mounted network share like NFS. The attributes of the files are read together with the
+ * listing, so that each file is only queried once per scan.
+ */
+public class LocalSourceStorage implements SourceStorage {
+
+    @Getter
+    private final Path folder;
+    // sizes and modification times of the last listing
+    private final Map<Path, SourceFile> listing = new ConcurrentHashMap<>();
+
+    /**
+     * @param folder the import folder
+     */
+    public LocalSourceStorage(Path folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public String getLocation() {
+        return folder.toAbsolutePath().toUri().toString();
+    }
+
+    @Override
+    public List<Path> list() throws IOException {
+        listing.clear();
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(folder)) {
+            return files;
+        }
+        Files.walkFileTree(folder, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+                    files.add(file);
+                    listing.put(file, new SourceFile(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // unreadable entries are skipped like by a directory listing
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        files.sort(null);
+        return files;
+    }
+
+    @Override
+    public SourceFile stat(Path file) throws IOException {
+        SourceFile sourceFile = listing.get(file);
+        if (sourceFile != null) {
+            return sourceFile;
+        }
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new SourceFile(attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream open(Path file) throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public SeekableByteChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Override
+    public void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        listing.remove(file);
+    }
+
+    @Override
+    public void copy(Path file, Path target) throws IOException {
+        Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    @Override
+    public Path toLocalFile(Path file) {
+        return file;
+    }
+}
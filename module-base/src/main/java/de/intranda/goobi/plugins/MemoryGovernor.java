@@ -0,0 +1,214 @@
+package de.intranda.goobi.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * Keeps the heap usage of the import below a budget, because the import shares the JVM with all other users of Goobi. The usage is read from the
+ * {@link MemoryMXBean}. Before a step that needs memory, the import asks for headroom and is paused while the heap is above the budget. Larger
+ * steps are estimated from the number of pages, so that e.g. a year can be streamed into its METS file instead of being built in memory.
+ *
+ * The heap usage contains garbage that was not collected yet, so a collection is requested before the import is paused, but not more often than
+ * every few seconds. All methods are thread safe.
+ */
+public class MemoryGovernor {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+    // estimated heap usage of a page in the import plan and during its validation, including its path
+    public static final long BYTES_PER_PAGE = 512;
+    // estimated heap usage of a page of a year that is built by ugh, including its DocStruct, metadata, references and content files
+    public static final long BYTES_PER_DOCSTRUCT = 16 * 1024;
+    // the heap usage is read at most this often by awaitHeadroom
+    private static final long CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long GC_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private static final long PAUSE_MILLIS = 500;
+
+    private final MemoryMXBean memoryBean;
+    // maximum heap usage in bytes
+    @Getter
+    private final long budget;
+    // highest heap usage that was seen since the governor was created
+    @Getter
+    private volatile long peakUsage;
+    // total time the import was paused
+    @Getter
+    private volatile long pausedMillis;
+
+    private long lastCheck;
+    private long lastGc;
+    private boolean aboveBudget;
+
+    /**
+     * @param maxHeapPercent budget in percent of the maximum heap size
+     */
+    public MemoryGovernor(double maxHeapPercent) {
+        this(ManagementFactory.getMemoryMXBean(), maxHeapPercent);
+    }
+
+    MemoryGovernor(MemoryMXBean memoryBean, double maxHeapPercent) {
+        this.memoryBean = memoryBean;
+        long maxHeap = memoryBean.getHeapMemoryUsage().getMax();
+        if (maxHeap < 0) {
+            // the maximum is undefined for some collectors
+            maxHeap = Runtime.getRuntime().maxMemory();
+        }
+        this.budget = (long) (maxHeap * Math.max(1, Math.min(100, maxHeapPercent)) / 100);
+        // the first check reads the heap and may request a collection
+        this.lastCheck = System.nanoTime() - GC_INTERVAL;
+        this.lastGc = lastCheck;
+    }
+
+    /**
+     * @return current heap usage in bytes
+     */
+    public long getUsage() {
+        long used = memoryBean.getHeapMemoryUsage().getUsed();
+        if (used > peakUsage) {
+            peakUsage = used;
+        }
+        return used;
+    }
+
+    /**
+     * check if the heap has room for a step, a collection is requested first if the heap seems to be too full
+     *
+     * @param bytes estimated heap usage of the step
+     * @return true if the step fits into the budget
+     */
+    public synchronized boolean hasRoomFor(long bytes) {
+        if (getUsage() + bytes <= budget) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - lastGc < GC_INTERVAL) {
+            return false;
+        }
+        lastGc = now;
+        memoryBean.gc();
+        return getUsage() + bytes <= budget;
+    }
+
+    /**
+     * wait until the heap usage is below the budget, as long as the import is running
+     *
+     * @param control control of the running import
+     * @return true if the import shall continue, false if it was cancelled
+     * @throws InterruptedException
+     */
+    public boolean awaitHeadroom(ImportControl control) throws InterruptedException {
+        return awaitHeadroom(Long.MAX_VALUE, control);
+    }
+
+    /**
+     * wait until the heap usage is below the budget, e.g. before the import was started
+     *
+     * @param maxWaitMillis maximum time to wait
+     * @return true if the heap usage is below the budget, false if it is still above after the time
+     * @throws InterruptedException
+     */
+    public boolean awaitHeadroom(long maxWaitMillis) throws InterruptedException {
+        return awaitHeadroom(maxWaitMillis, null);
+    }
+
+    /**
+     * wait until the heap has room for a large step, e.g. for the DocStructs of a year that cannot be streamed into its METS file
+     *
+     * @param bytes estimated heap usage of the step
+     * @param maxWaitMillis maximum time to wait
+     * @return true if the step fits into the budget, false if it still does not fit after the time or never can
+     * @throws InterruptedException
+     */
+    public boolean awaitRoomFor(long bytes, long maxWaitMillis) throws InterruptedException {
+        if (hasRoomFor(bytes)) {
+            return true;
+        }
+        if (bytes > budget) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            while (!hasRoomFor(bytes)) {
+                if (System.currentTimeMillis() - start >= maxWaitMillis) {
+                    return false;
+                }
+                Thread.sleep(PAUSE_MILLIS);
+            }
+            return true;
+        } finally {
+            synchronized (this) {
+                pausedMillis += System.currentTimeMillis() - start;
+            }
+        }
+    }
+
+    /**
+     * @return true if the last call of awaitHeadroom found the heap above the budget
+     */
+    public synchronized boolean isAboveBudget() {
+        return aboveBudget;
+    }
+
+    private boolean awaitHeadroom(long maxWaitMillis, ImportControl control) throws InterruptedException {
+        synchronized (this) {
+            // called before every small step, so the heap is not read every time
+            long now = System.nanoTime();
+            if (now - lastCheck < CHECK_INTERVAL && !aboveBudget) {
+                return true;
+            }
+            lastCheck = now;
+            aboveBudget = !hasRoomFor(0);
+            if (!aboveBudget) {
+                return true;
+            }
+        }
+        long start = System.currentTimeMillis();
+        try {
+            while (!hasRoomFor(0)) {
+                if (control != null) {
+                    if (!control.checkpoint()) {
+                        return false;
+                    }
+                    control.waitFor(PAUSE_MILLIS);
+                } else if (System.currentTimeMillis() - start >= maxWaitMillis) {
+                    return false;
+                } else {
+                    Thread.sleep(PAUSE_MILLIS);
+                }
+            }
+            synchronized (this) {
+                aboveBudget = false;
+            }
+            return true;
+        } finally {
+            synchronized (this) {
+                pausedMillis += System.currentTimeMillis() - start;
+            }
+        }
+    }
+
+    /**
+     * @return current heap usage in MB for the GUI
+     */
+    public long getUsageMegabytes() {
+        return getUsage() / MEGABYTE;
+    }
+
+    public long getBudgetMegabytes() {
+        return budget / MEGABYTE;
+    }
+
+    public long getPeakMegabytes() {
+        return peakUsage / MEGABYTE;
+    }
+
+    /**
+     * @return a summary of the heap usage for the log
+     */
+    public String getSummary() {
+        return String.format("Peak heap usage %d MB of %d MB budget, paused for %.1f s", peakUsage / MEGABYTE, budget / MEGABYTE,
+                pausedMillis / 1000.0);
+    }
+}
@@ -1,43 +1,62 @@
 package de.intranda.goobi.plugins;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
-import org.apache.commons.collections4.queue.CircularFifoQueue;
-import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.lang3.StringUtils;
 import org.goobi.beans.Process;
-import org.goobi.beans.Step;
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.plugin.interfaces.IPushPlugin;
 import org.goobi.production.plugin.interfaces.IWorkflowPlugin;
 import org.omnifaces.cdi.PushContext;
 
+import de.intranda.goobi.plugins.model.CompletenessReport;
+import de.intranda.goobi.plugins.model.EditionClassifier;
+import de.intranda.goobi.plugins.model.ImageInfo;
 import de.intranda.goobi.plugins.model.ImportMetadata;
+import de.intranda.goobi.plugins.model.ImportPlan;
+import de.intranda.goobi.plugins.model.ImportRun;
+import de.intranda.goobi.plugins.model.IssuePlan;
+import de.intranda.goobi.plugins.model.MetadataTemplate;
+import de.intranda.goobi.plugins.model.MetadataTemplate.Variable;
 import de.intranda.goobi.plugins.model.NewspaperPage;
-import de.sub.goobi.config.ConfigPlugins;
+import de.intranda.goobi.plugins.model.SourceFile;
+import de.intranda.goobi.plugins.model.TechnicalMetadata;
+import de.intranda.goobi.plugins.model.WorkUnitProgress;
+import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.helper.BeanHelper;
 import de.sub.goobi.helper.Helper;
-import de.sub.goobi.helper.ScriptThreadWithoutHibernate;
 import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.StorageProviderInterface;
-import de.sub.goobi.helper.enums.StepStatus;
 import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.SwapException;
+import de.sub.goobi.persistence.managers.MySQLHelper;
 import de.sub.goobi.persistence.managers.ProcessManager;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
 import ugh.dl.ContentFile;
@@ -60,7 +79,7 @@ import ugh.fileformats.mets.MetsMods;
 
 @PluginImplementation
 @Log4j2
-public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPushPlugin {
+public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPushPlugin, HeadlessImports.Importer {
 
     private static final long serialVersionUID = -2140660105279731651L;
 
@@ -74,6 +93,32 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
 
     private static final String CONTENT_FILE_LOCATION_PREFIX = "file://";
 
+    private static final int VALIDATION_BLOCK_SIZE = 256;
+    // number of messages and of errors kept for the GUI
+    private static final int LOG_CAPACITY = 1000;
+    // maximum number of messages the GUI fetches with one request
+    private static final int LOG_PAGE_SIZE = 200;
+    // the validation runs in the request of the user, so it is not paused for longer than this
+    private static final long MAX_VALIDATION_PAUSE = 60000;
+    // a year with page metadata waits at most this long for the heap to build its DocStructs
+    private static final long MAX_METS_PAUSE = 300000;
+
+    // folder in the metadata folder that contains the journals of the open stages
+    private static final String STAGE_REGISTRY = ".newspaper_import_stages";
+    // folder in the metadata folder that contains the scan indexes of the import folders
+    private static final String SCAN_INDEX_FOLDER = ".newspaper_import_scans";
+    // folder in the metadata folder that contains the history of the import runs
+    private static final String RUN_HISTORY_FOLDER = ".newspaper_import_runs";
+    // number of runs shown in the GUI
+    private static final int RECENT_RUNS = 10;
+    // the throughput of the previous runs counts like a run of this many pages when the remaining time is estimated
+    private static final int ETA_PRIOR_PAGES = 1000;
+
+    // name of this node in the work units of distributed imports
+    private static final String WORKER_NAME = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    private static final String HOST_NAME = readHostName();
+    private static final String PLUGIN_VERSION = NewspaperPageImporterWorkflowPlugin.class.getPackage().getImplementationVersion();
+
     // set of dates of the issues that are already added
     private static final Set<String> ISSUES_SET = new HashSet<>();
 
@@ -87,22 +132,47 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
     // list of metadata that shall be added to the volume part of the mets file
     @Getter
     private transient List<ImportMetadata> volumeMetadataList;
+    // list of metadata that shall be added to each issue
+    @Getter
+    private transient List<ImportMetadata> issueMetadataList;
+    // list of metadata that shall be added to each page
+    @Getter
+    private transient List<ImportMetadata> pageMetadataList;
+    // metadata types of the pages that receive the technical metadata of their images
+    private transient TechnicalMetadata technicalMetadata = TechnicalMetadata.NONE;
 
     private PushContext pusher;
+    // state of the running import, shared between the GUI and the import thread
+    private transient ImportControl importControl = new ImportControl();
+    @Getter
+    private volatile int progress = -1;
+    @Getter
+    private volatile int itemCurrent = 0;
     @Getter
-    private boolean run = false;
+    private volatile int itemsTotal = 0;
     @Getter
-    private int progress = -1;
+    private volatile int errors;
+    // messages of the import, the GUI fetches the messages after its cursor
     @Getter
-    private int itemCurrent = 0;
+    private transient ImportLog importLog = new ImportLog(LOG_CAPACITY);
+    // sequence number of the last message shown in the GUI
     @Getter
-    private int itemsTotal = 0;
+    @Setter
+    private long logCursor;
+    // lowest level of the messages shown in the GUI
     @Getter
-    private int errors;
+    @Setter
+    private int logLevel;
+    // messages fetched by the last request of the GUI
     @Getter
-    private transient Queue<LogMessage> logQueue = new CircularFifoQueue<>(1000);
-    // folder containing images to import
+    private transient ImportLog.Page logPage = ImportLog.Page.EMPTY;
+    // last message of the log, readable without locking the log from other threads
+    @Getter
+    private volatile String lastMessage;
+    // folder containing images to import, the prefix of the keys for S3 sources
     private String importFolder;
+    // storage of the import folder, local or S3 compatible
+    private transient SourceStorage sourceStorage;
     // name of the workflow template that shall be used
     private String workflow;
     // process title
@@ -111,17 +181,72 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
     private String pageNumberPrefix;
     // issue title prefix
     private String issueTitlePrefix;
-    private String issueTitlePrefixMorning;
-    private String issueTitlePrefixEvening;
-    // identifiers to detect morning and evening issues
-    private String morningIssueIdentifier;
-    private String eveningIssueIdentifier;
+    // rules to detect the edition of each page, e.g. morning, evening or supplement
+    private transient EditionClassifier editionClassifier;
     // language for ate for issueTitle
     private String languageForDateFormat;
-    // true if the images should be deleted from the import folder once they are imported, false otherwise
-    private boolean deleteFromSource;
+    // title of the set that is imported
+    private String setTitle;
+    // stages the files of each year inside the process if the images should be deleted from the import folder once they are imported, null otherwise
+    private transient StagedIngest stagedIngest;
+    // files of the current year that are not yet moved into the master folder, null if the files are copied directly
+    private transient StagedIngest.Stage stage;
+    // number of threads used to validate the files
+    private int validationThreads;
+    // true if the files are validated and copied on virtual threads
+    private boolean virtualThreads;
+    // number of files that are validated at the same time on virtual threads
+    private int virtualValidations;
+    // true if the results of the validation shall be kept for the next start of the set
+    private boolean scanIndexEnabled;
+    // results of the last validation of the import folder, null if all files are validated at each start
+    private transient ScanIndex scanIndex;
+    // true if incomplete issues and gaps in the publishing calendar abort the import
+    private boolean completenessStrict;
+    // limits the throughput and the number of parallel copies
+    @Getter
+    private transient IoGovernor ioGovernor;
+    // keeps the heap usage of the import below its budget, null if the heap usage is not limited
+    @Getter
+    private transient MemoryGovernor memoryGovernor;
+    // runs the copies of the files into the master folders
+    private transient IoExecutor copyExecutor;
+    // creates JPEG derivatives of the master images, null if no derivatives shall be created
+    private transient DerivativeGenerator derivativeGenerator;
+    // starts the automatic tasks of each year process once it is completely imported, null if they shall not be started
+    private transient AutomaticTaskStarter automaticTaskStarter;
+    // derivatives of the current year that are not yet registered in the METS file
+    private transient List<PendingDerivative> pendingDerivatives = new ArrayList<>();
+    // hash algorithm of the integrity manifests, null if the copies shall not be hashed and verified
+    private String integrityAlgorithm;
+    // share of the copies in percent that are read again after each issue, the copies are already hashed while they are written
+    private int integrityVerifyPercent;
+    // hashes of the files copied into the process of the current year, null if disabled
+    private transient IntegrityManifest integrityManifest;
+    // true if the issues shall be streamed into the METS file instead of being written by ugh
+    private boolean streamingMetsWriter;
+    // number of threads that render the issues and pages of a year for the streaming METS writer
+    private int metsWriterThreads;
+    // shares the years of a set with other nodes, null if the set is imported on this node only
+    private transient DistributedImport distributedImport;
+    // aggregated state of the work units of a distributed import
+    @Getter
+    private transient volatile WorkUnitProgress workUnitProgress;
     @Getter
     private List<String> sets;
+    // runs of all sets, used for the trends in the GUI and to estimate the remaining time of an import
+    @Getter
+    private transient RunHistory runHistory;
+    // fingerprint of the configuration of the set that is imported
+    private String configurationFingerprint;
+    // bytes copied into the master folders by the running import
+    private final transient AtomicLong copiedBytes = new AtomicLong();
+    // pages imported by this node, in a distributed import itemCurrent counts the pages of all nodes
+    private volatile int nodePages;
+    // start of the import phase of the running import
+    private volatile long importStart;
+    // median throughput of the previous runs of the set in pages per second, 0 if unknown
+    private volatile double expectedPagesPerSecond;
 
     private Prefs prefs;
     private transient Fileformat fileformat;
@@ -144,290 +269,1072 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
         errors = 0;
 
         // read sets
-        sets = new ArrayList<>();
-        List<HierarchicalConfiguration> configSets = ConfigPlugins.getPluginConfig(title).configurationsAt("set");
-        for (HierarchicalConfiguration config : configSets) {
-            sets.add(config.getString("[@title]", "-"));
-        }
+        sets = PluginConfiguration.get(title).getSetTitles();
+        runHistory = new RunHistory(Path.of(ConfigurationHelper.getInstance().getMetadataFolder(), RUN_HISTORY_FOLDER, RunHistory.FILE_NAME));
     }
 
     /**
-     * private method to read main configuration file
+     * private method to read main configuration file, the configuration is validated before the import starts
+     * 
+     * @param set title of the set
+     * @return true if the configuration of the set is valid
      */
-    private void readConfiguration(String set) {
+    private boolean readConfiguration(String set) {
         updateLog("Reading configuration for set");
         errors = 0;
 
         // find the correct configuration block
-        List<HierarchicalConfiguration> configSets = ConfigPlugins.getPluginConfig(title).configurationsAt("set");
-        for (HierarchicalConfiguration config : configSets) {
-
-            // if the correct set was found read it in and start the export
-            if (config.getString("[@title]", "-").equals(set)) {
-                importFolder = config.getString("importFolder");
-                workflow = config.getString("workflow");
-                processtitle = config.getString("processtitle");
-                issueTitlePrefix = config.getString("issueTitlePrefix");
-                issueTitlePrefixMorning = config.getString("issueTitlePrefixMorning");
-                issueTitlePrefixEvening = config.getString("issueTitlePrefixEvening");
-                morningIssueIdentifier = config.getString("issueTitlePrefixMorning[@identifier]");
-                eveningIssueIdentifier = config.getString("issueTitlePrefixEvening[@identifier]");
-
-                pageNumberPrefix = config.getString("pageNumberPrefix");
-                languageForDateFormat = config.getString("languageForDateFormat", "de");
-                deleteFromSource = config.getBoolean("deleteFromSource", false);
-                anchorMetadataList = new ArrayList<>();
-                volumeMetadataList = new ArrayList<>();
-
-                // metadata mappings to use
-                List<HierarchicalConfiguration> mappings = config.configurationsAt("metadata");
-                for (HierarchicalConfiguration mapping : mappings) {
-                    String type = mapping.getString("[@type]", "");
-                    String value = mapping.getString("[@value]", "");
-                    String variable = mapping.getString("[@var]", "");
-                    boolean isPerson = mapping.getBoolean("[@person]", false);
-                    boolean isAnchor = mapping.getBoolean("[@anchor]", false);
-                    boolean isVolume = mapping.getBoolean("[@volume]", false);
-                    ImportMetadata md = new ImportMetadata(type, value, variable, isPerson);
-                    if (isAnchor) {
-                        anchorMetadataList.add(md);
-                    }
-                    if (isVolume) {
-                        volumeMetadataList.add(md);
-                    }
-                }
-            }
+        SetConfiguration config = PluginConfiguration.get(title).getSet(set);
+        if (config == null) {
+            reportError("The set " + set + " is not configured");
+            return false;
+        }
+        if (!validateConfiguration(config)) {
+            return false;
+        }
+        setTitle = set;
+        configurationFingerprint = config.getFingerprint();
+        importFolder = config.getImportFolder();
+        if (sourceStorage != null) {
+            sourceStorage.close();
+        }
+        sourceStorage = config.createSourceStorage();
+        workflow = config.getWorkflow();
+        processtitle = config.getProcesstitle();
+        issueTitlePrefix = config.getIssueTitlePrefix();
+        editionClassifier = config.getEditionClassifier();
+
+        pageNumberPrefix = config.getPageNumberPrefix();
+        languageForDateFormat = config.getLanguageForDateFormat();
+        if (config.isDeleteFromSource()) {
+            stagedIngest = new StagedIngest(Path.of(ConfigurationHelper.getInstance().getMetadataFolder(), STAGE_REGISTRY), sourceStorage);
+        } else {
+            stagedIngest = null;
+        }
+        validationThreads = config.getValidationThreads();
+        virtualThreads = config.isVirtualThreads();
+        virtualValidations = config.getVirtualValidations();
+        scanIndexEnabled = config.isScanIndex();
+        completenessStrict = config.isCompletenessStrict();
+        streamingMetsWriter = config.isStreamingMetsWriter();
+        metsWriterThreads = config.getMetsWriterThreads();
+        integrityAlgorithm = config.getIntegrityAlgorithm();
+        integrityVerifyPercent = config.getIntegrityVerifyPercent();
+        ioGovernor = new IoGovernor(config.getIoMaxMegabytesPerSecond(), config.getIoMaxThreads(), config.getIoTargetLatency());
+        if (config.getMaxHeapPercent() > 0) {
+            memoryGovernor = new MemoryGovernor(config.getMaxHeapPercent());
+        } else {
+            memoryGovernor = null;
+        }
+        if (config.isDistributed()) {
+            WorkUnitStore store = new WorkUnitStore(() -> MySQLHelper.getInstance().getConnection());
+            distributedImport = new DistributedImport(store, set, WORKER_NAME, config.getDistributedLeaseMillis(), config.getDistributedMaxAttempts(),
+                    config.getDistributedPollMillis());
+        } else {
+            distributedImport = null;
+        }
+        workUnitProgress = null;
+        if (config.getAutomaticTaskThreads() > 0) {
+            automaticTaskStarter = new AutomaticTaskStarter(config.getAutomaticTaskThreads());
+        } else {
+            automaticTaskStarter = null;
+        }
+        if (config.isDerivatives()) {
+            derivativeGenerator = new DerivativeGenerator(config.getDerivativeThreads(), config.getDerivativeQuality());
+        } else {
+            derivativeGenerator = null;
+        }
+        // the metadata mappings are compiled once per configuration and shared by all imports
+        anchorMetadataList = config.getAnchorMetadata();
+        volumeMetadataList = config.getVolumeMetadata();
+        issueMetadataList = config.getIssueMetadata();
+        pageMetadataList = config.getPageMetadata();
+        technicalMetadata = config.getTechnicalMetadata();
+        if (streamingMetsWriter && !pageMetadataList.isEmpty()) {
+            log.warn("The streaming METS writer does not write page metadata, " + pageMetadataList.size() + " mappings are ignored");
         }
 
         // write a log into the UI
         updateLog("Configuration successfully read");
+        return true;
+    }
+
+    /**
+     * check the configuration of a set before anything is imported, all problems are reported at once
+     * 
+     * @param config configuration of the set
+     * @return true if no problem was found
+     */
+    private boolean validateConfiguration(SetConfiguration config) {
+        List<String> problems = new ArrayList<>(config.getProblems());
+        if (config.getSourceEndpoint() == null && StringUtils.isNotBlank(config.getImportFolder())
+                && !Files.isDirectory(Path.of(config.getImportFolder()))) {
+            problems.add("The import folder " + config.getImportFolder() + " does not exist");
+        }
+        Process template = StringUtils.isBlank(config.getWorkflow()) ? null : ProcessManager.getProcessByExactTitle(config.getWorkflow());
+        if (template == null) {
+            if (StringUtils.isNotBlank(config.getWorkflow())) {
+                problems.add("The workflow " + config.getWorkflow() + " does not exist");
+            }
+        } else {
+            Prefs templatePrefs = template.getRegelsatz().getPreferences();
+            Set<String> unknownTypes = new TreeSet<>();
+            for (ImportMetadata md : config.getAllMetadata()) {
+                if (templatePrefs.getMetadataTypeByName(md.getType()) == null) {
+                    unknownTypes.add(md.getType());
+                }
+            }
+            if (!unknownTypes.isEmpty()) {
+                problems.add("The ruleset of the workflow " + config.getWorkflow() + " does not know the metadata types " + unknownTypes);
+            }
+            // the technical metadata is written to every page, so a type that is not allowed on pages is rejected once here
+            ToIntFunction<String> pageLimits = StreamingMetsWriter.getMetadataLimits(templatePrefs, "page");
+            Set<String> forbiddenTypes = new TreeSet<>();
+            for (String type : config.getTechnicalMetadata().getTypes()) {
+                if (pageLimits.applyAsInt(type) == 0) {
+                    forbiddenTypes.add(type);
+                }
+            }
+            if (!forbiddenTypes.isEmpty()) {
+                problems.add("The ruleset of the workflow " + config.getWorkflow() + " does not allow the metadata types " + forbiddenTypes
+                        + " on pages");
+            }
+        }
+        for (String problem : problems) {
+            reportError("Invalid configuration of set " + config.getTitle() + ": " + problem);
+        }
+        return problems.isEmpty();
+    }
+
+    /**
+     * @return true if an import is running, paused or about to stop
+     */
+    public boolean isRun() {
+        return importControl.isActive();
+    }
+
+    /**
+     * @return true if the running import is paused
+     */
+    public boolean isPaused() {
+        return importControl.isPaused();
+    }
+
+    /**
+     * @return the state of the import
+     */
+    public ImportControl.State getImportState() {
+        return importControl.getState();
     }
 
     /**
-     * cancel a running import
+     * @return the maximum time in milliseconds between a cancellation request and the stop of the import, or -1 if no import was cancelled yet
+     */
+    public long getMaxStopLatency() {
+        return importControl.getMaxStopLatency();
+    }
+
+    /**
+     * cancel a running import, all pages that are already copied are written into the METS file of their process before the import stops
      */
     public void cancel() {
-        run = false;
+        if (importControl.cancel()) {
+            updateLog("Cancelling import ...", ImportLog.LEVEL_WARNING);
+        }
+    }
+
+    /**
+     * pause a running import after the current file
+     */
+    public void pause() {
+        if (importControl.pause()) {
+            updateLog("Pausing import ...", ImportLog.LEVEL_WARNING);
+        }
+    }
+
+    /**
+     * resume a paused import
+     */
+    public void resume() {
+        if (importControl.resume()) {
+            updateLog("Import resumed", ImportLog.LEVEL_WARNING);
+        }
     }
 
     /**
-     * main method to start the actual import
+     * main method to start the actual import, a set that is already being imported in another session or by the REST endpoint is not started
      */
     public void startImport(String set) {
-        readConfiguration(set);
-        List<NewspaperPage> allPagesSorted = getSortedNewspaperPages(importFolder);
-        boolean allPagesValid = validateNewspaperPages(allPagesSorted);
+        if (!ActiveSets.claim(set)) {
+            updateLog("The set " + set + " is already being imported.", ImportLog.LEVEL_ERROR);
+            return;
+        }
+        startClaimedImport(set);
+    }
+
+    /**
+     * start the import of a set that is already claimed in {@link ActiveSets}, the set is released when the import ends or cannot be started
+     * 
+     * @param set title of the set
+     */
+    @Override
+    public void startClaimedImport(String set) {
+        boolean started = false;
+        try {
+            started = runImport(set);
+        } finally {
+            if (!started) {
+                ActiveSets.release(set);
+            }
+        }
+    }
+
+    /**
+     * validate the files of a set and start their import in a separate thread
+     * 
+     * @param set title of the set
+     * @return true if the import thread was started
+     */
+    private boolean runImport(String set) {
+        if (importControl.isActive()) {
+            updateLog("Another import is still running.", ImportLog.LEVEL_ERROR);
+            return false;
+        }
+        if (!readConfiguration(set)) {
+            return false;
+        }
+        long runStart = System.currentTimeMillis();
+        pendingDerivatives.clear();
+        recoverStages();
+        List<Path> files;
+        try {
+            files = sourceStorage.list();
+        } catch (IOException e) {
+            log.error("Error while listing the files of the import folder", e);
+            reportError("Failed to list the files of the import folder " + importFolder + ": " + e.getMessage());
+            sourceStorage.close();
+            return false;
+        }
+        if (memoryGovernor != null && !memoryGovernor.hasRoomFor(files.size() * MemoryGovernor.BYTES_PER_PAGE)) {
+            reportError("The " + files.size() + " files of the import folder do not fit into the heap budget of "
+                    + memoryGovernor.getBudgetMegabytes() + " MB, please split the import folder");
+            sourceStorage.close();
+            return false;
+        }
+        ImportPlan plan;
+        if (scanIndexEnabled) {
+            Path scanIndexFolder = Path.of(ConfigurationHelper.getInstance().getMetadataFolder(), SCAN_INDEX_FOLDER);
+            scanIndex = ScanIndex.open(scanIndexFolder, sourceStorage.getLocation());
+            plan = scanIndex.createPlan(files, editionClassifier);
+        } else {
+            scanIndex = null;
+            plan = ImportPlan.create(files, editionClassifier);
+        }
+        boolean complete = checkCompleteness(plan);
+        long scanMillis = System.currentTimeMillis() - runStart;
+        boolean allPagesValid = validateImportPlan(plan) && complete;
+        saveScanIndex(files);
+        long validationMillis = System.currentTimeMillis() - runStart - scanMillis;
         if (!allPagesValid) {
             updateLog("Aborting ...");
-            return;
+            sourceStorage.close();
+            return false;
         }
 
         // all files are valid, get ready for import
         progress = 0;
         BeanHelper bhelp = new BeanHelper();
 
-        Map<String, List<NewspaperPage>> pagesGroupedByYear = getSortedNewspaperPagesGroupedByYears(allPagesSorted);
+        // the history seeds the estimate of the remaining time until this run has imported enough pages
+        expectedPagesPerSecond = runHistory.getMedianPagesPerSecond(set);
+        copiedBytes.set(0);
+        nodePages = 0;
+        importStart = System.currentTimeMillis();
 
         // run the import in a separate thread to allow a dynamic progress bar
-        run = true;
+        importControl.start();
+        // the I/O governor bounds the copies in flight for both kinds of threads
+        copyExecutor = new IoExecutor(virtualThreads, ioGovernor.getMaxConcurrency(), "newspaper-import-copy");
 
         Runnable runnable = () -> {
+            String outcome = ImportRun.FAILED;
 
             // read input file
             try {
                 updateLog("Run through all import files");
 
-                itemsTotal = getNumberOfPages(pagesGroupedByYear);
-                itemCurrent = 0;
-
-                for (Map.Entry<String, List<NewspaperPage>> entry : pagesGroupedByYear.entrySet()) {
-                    Thread.sleep(100);
-                    if (!run) {
-                        break;
-                    }
-
-                    String year = entry.getKey();
-                    List<NewspaperPage> pages = entry.getValue();
-                    NewspaperPage firstPage = pages.get(0);
-                    // create a new process for this year
-                    Process process = tryCreateAndSaveNewProcess(bhelp, processtitle + "_" + year, firstPage);
-
-                    if (process == null) {
-                        String message = "Failed to create a new process for year " + year;
-                        reportError(message);
-                        continue;
-                    }
-
-                    prefs = process.getRegelsatz().getPreferences();
-                    fileformat = process.readMetadataFile();
-
-                    Map<String, List<NewspaperPage>> pagesGroupedByDates = getSortedNewspaperPagesGroupedByDates(pages);
-                    for (Map.Entry<String, List<NewspaperPage>> issueEntry : pagesGroupedByDates.entrySet()) {
-                        if (!run) {
+                if (distributedImport != null) {
+                    runDistributedImport(bhelp, plan);
+                } else {
+                    itemsTotal = plan.size();
+                    itemCurrent = 0;
+                    for (int yearIndex = 0; yearIndex < plan.getNumberOfYears(); yearIndex++) {
+                        if (!importControl.checkpoint()) {
                             break;
                         }
-                        String issueDate = issueEntry.getKey().substring(0, issueEntry.getKey().indexOf("_"));
-                        List<NewspaperPage> issuePages = issueEntry.getValue();
-                        boolean success = tryUpdateOldProcessForIssue(process, issuePages);
-                        if (!success) {
-                            errors++;
-                            String message = "Failed to add issue for date " + issueDate;
-                            reportError(message);
-                        }
-
-                        itemCurrent += issuePages.size();
-                        progress = 100 * itemCurrent / itemsTotal;
-                        updateLog("Processed issue: " + issueDate);
+                        importYear(bhelp, plan, yearIndex, null);
                     }
-
-                    // write changes into file
-                    process.writeMetadataFile(fileformat);
                 }
 
-                // finally last push
-                run = false;
-                Thread.sleep(2000);
-                updateLog("Import completed.");
+                boolean cancelled = importControl.isCancelled();
+                importControl.finish();
+                if (cancelled) {
+                    outcome = ImportRun.CANCELLED;
+                    updateLog("Import cancelled, stopped " + importControl.getLastStopLatency() + " ms after the request.", ImportLog.LEVEL_WARNING);
+                } else {
+                    outcome = ImportRun.COMPLETED;
+                    updateLog("Import completed.");
+                }
 
-            } catch (InterruptedException | ReadException | IOException | SwapException | WriteException | PreferencesException e) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errors++;
+                log.error("Import thread was interrupted", e);
+                updateLog("Import thread was interrupted", ImportLog.LEVEL_ERROR);
+            } catch (Exception e) {
                 errors++;
                 Helper.setFehlerMeldung("Error while trying to execute the import: " + e.getMessage());
                 log.error("Error while trying to execute the import", e);
-                updateLog("Error while trying to execute the import: " + e.getMessage(), 3);
+                updateLog("Error while trying to execute the import: " + e.getMessage(), ImportLog.LEVEL_ERROR);
+            } finally {
+                copyExecutor.shutdown();
+                sourceStorage.close();
+                importControl.finish();
+                if (memoryGovernor != null) {
+                    updateLog(memoryGovernor.getSummary());
+                }
+                recordRun(runStart, scanMillis, validationMillis, outcome);
+                // finally last push
+                if (pusher != null) {
+                    pusher.send("update");
+                }
+                if (derivativeGenerator != null) {
+                    derivativeGenerator.shutdown();
+                }
+                if (automaticTaskStarter != null) {
+                    automaticTaskStarter.shutdown();
+                }
+                ActiveSets.release(set);
             }
 
         };
         new Thread(runnable).start();
+        return true;
+    }
+
+    /**
+     * add the finished run to the run history, a run that is much slower than the previous runs of the set is reported
+     * 
+     * @param runStart start time of the run
+     * @param scanMillis time to list the import folder and to plan the import
+     * @param validationMillis time to validate the files
+     * @param outcome how the import ended
+     */
+    private void recordRun(long runStart, long scanMillis, long validationMillis, String outcome) {
+        ImportRun run = new ImportRun(runStart, setTitle, HOST_NAME, PLUGIN_VERSION, configurationFingerprint, outcome, nodePages,
+                copiedBytes.get(), errors, scanMillis, validationMillis, System.currentTimeMillis() - importStart, false);
+        try {
+            run = runHistory.record(run);
+        } catch (IOException e) {
+            log.error("Error while writing the run history " + runHistory.getFile(), e);
+        }
+        updateLog(String.format("Imported %d pages in %.1f s, %.1f pages/s, %.1f MB/s", run.getPages(), run.getImportMillis() / 1000.0,
+                run.getPagesPerSecond(), run.getMegabytesPerSecond()));
+        if (run.isSlow()) {
+            updateLog(String.format("The import was much slower than the previous runs of the set with a median of %.1f pages/s",
+                    expectedPagesPerSecond), ImportLog.LEVEL_WARNING);
+        }
+    }
+
+    /**
+     * @return the last runs of all sets, newest first
+     */
+    public List<ImportRun> getRecentRuns() {
+        return runHistory.getRecentRuns(RECENT_RUNS);
+    }
+
+    /**
+     * estimate the remaining time of the running import, the throughput of the previous runs of the set is used until this run has imported enough
+     * pages. In a distributed import the throughput of this node is scaled by the share of the pages that this node imported.
+     * 
+     * @return the remaining time as h:mm:ss, or null if it cannot be estimated
+     */
+    public String getRemainingTime() {
+        if (!importControl.isActive() || itemsTotal <= 0) {
+            return null;
+        }
+        double elapsedSeconds = (System.currentTimeMillis() - importStart) / 1000.0;
+        int pagesOfNode = nodePages;
+        double pagesPerSecond;
+        if (expectedPagesPerSecond > 0) {
+            pagesPerSecond = (pagesOfNode + ETA_PRIOR_PAGES) / (elapsedSeconds + ETA_PRIOR_PAGES / expectedPagesPerSecond);
+        } else if (pagesOfNode > 0 && elapsedSeconds > 0) {
+            pagesPerSecond = pagesOfNode / elapsedSeconds;
+        } else {
+            return null;
+        }
+        if (distributedImport != null && pagesOfNode > 0) {
+            // the other nodes import in parallel, as long as their pages are unknown only this node is counted
+            pagesPerSecond *= Math.max(1.0, (double) itemCurrent / pagesOfNode);
+        }
+        long seconds = (long) ((itemsTotal - itemCurrent) / pagesPerSecond);
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    private static String readHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * import one year of the plan into a new process
+     * 
+     * @param bhelp BeanHelper
+     * @param plan ImportPlan containing all pages
+     * @param yearIndex index of the year in the plan
+     * @param unit work unit of the year if the import is distributed, null otherwise
+     * @return true if all issues of the year were imported, false if the import of the year was stopped
+     * @throws InterruptedException
+     * @throws ReadException
+     * @throws IOException
+     * @throws SwapException
+     * @throws WriteException
+     * @throws PreferencesException
+     */
+    private boolean importYear(BeanHelper bhelp, ImportPlan plan, int yearIndex, DistributedImport.WorkUnit unit)
+            throws InterruptedException, ReadException, IOException, SwapException, WriteException, PreferencesException {
+        NewspaperPage firstPage = plan.getPage(plan.getIssueStart(plan.getYearStart(yearIndex)));
+        String year = firstPage.getYear();
+        // create a new process for this year, a work unit that is claimed again reuses the process of the earlier attempt
+        Process process;
+        // true if the METS file of the process may reference pages of an earlier attempt
+        boolean keepsEarlierPages = false;
+        if (unit != null) {
+            YearProcesses.YearProcess<Process> yearProcess = new YearProcesses<Process>(ProcessManager::getProcessByExactTitle,
+                    title -> tryCreateAndSaveNewProcess(bhelp, title, firstPage)).open(processtitle + "_" + year);
+            process = yearProcess == null ? null : yearProcess.getProcess();
+            keepsEarlierPages = yearProcess != null && yearProcess.isReused();
+        } else {
+            process = tryCreateAndSaveNewProcess(bhelp, processtitle + "_" + year, firstPage);
+        }
+
+        if (process == null) {
+            String message = "Failed to create a new process for year " + year;
+            reportError(message);
+            return false;
+        }
+
+        prefs = process.getRegelsatz().getPreferences();
+        if (keepsEarlierPages) {
+            updateLog("Continuing the process " + process.getTitel() + " of an earlier attempt", ImportLog.LEVEL_WARNING);
+            if (stagedIngest == null) {
+                // the sources were kept, so all pages of the year are copied again into an empty METS file
+                if (!resetMetadataOfProcess(process, firstPage)) {
+                    return false;
+                }
+                keepsEarlierPages = false;
+            }
+        }
+
+        if (integrityAlgorithm != null) {
+            try {
+                integrityManifest = new IntegrityManifest(Path.of(process.getProcessDataDirectory()), integrityAlgorithm);
+            } catch (NoSuchAlgorithmException e) {
+                reportError("Unknown hash algorithm for the integrity manifest: " + integrityAlgorithm);
+                return false;
+            }
+        }
+        if (stagedIngest != null) {
+            try {
+                stage = stagedIngest.open(setTitle, WORKER_NAME, Path.of(process.getProcessDataDirectory()),
+                        Path.of(process.getImagesOrigDirectory(false)));
+            } catch (IOException | SwapException | DAOException e) {
+                log.error("Error while creating the stage folder", e);
+                reportError("Failed to create the stage folder for process " + process.getTitel() + ": " + e.getMessage());
+                return false;
+            }
+        }
+
+        boolean yearCompleted;
+        try {
+            yearCompleted = importIssues(process, plan, yearIndex, unit);
+            if (unit != null && unit.isLeaseLost()) {
+                // another node imports the year from the same sources, the stage is rolled back and the METS file is left to that node
+                updateLog("Stopped the import of year " + year + ", because another node took it over", ImportLog.LEVEL_WARNING);
+                return false;
+            }
+
+            // decided before the stage is prepared, so that a year that cannot be written keeps its sources, a METS file with pages of an
+            // earlier attempt whose sources were deleted is extended by ugh instead of being streamed anew
+            boolean streaming = !keepsEarlierPages && isStreamingYear(plan, yearIndex);
+            if (!streaming && !awaitRoomForYear(plan, yearIndex)) {
+                reportError("The year " + plan.getYear(yearIndex) + " does not fit into the heap budget of " + memoryGovernor.getBudgetMegabytes()
+                        + " MB and cannot be streamed because of its page metadata, please increase the budget or split the year");
+                return false;
+            }
+
+            // write changes into file, also if the import was cancelled by the user to keep the already copied pages
+            if (stage != null) {
+                stage.prepare();
+            }
+            writeYear(process, plan, yearIndex, streaming);
+            if (integrityManifest != null) {
+                // the manifest lists the copies before their sources are deleted
+                integrityManifest.save();
+            }
+            if (stage != null) {
+                stage.commit();
+                completeStage();
+            }
+        } finally {
+            abortStage();
+        }
+        yearCompleted = yearCompleted && !importControl.isCancelled();
+
+        if (integrityManifest != null) {
+            updateLog(String.format("Hashed %d files (%.1f MB) at %.1f MB/s into %s", integrityManifest.getFilesCopied(),
+                    integrityManifest.getBytesCopied() / (1024.0 * 1024.0), integrityManifest.getMegabytesPerSecond(),
+                    integrityManifest.getManifestFile().getFileName()));
+            integrityManifest = null;
+        }
+
+        if (yearCompleted && automaticTaskStarter != null && automaticTaskStarter.submit(process.getId())) {
+            updateLog("Automatic tasks scheduled for process: " + process.getTitel());
+        }
+        return yearCompleted;
+    }
+
+    /**
+     * replace the METS file of a process that is reused by a new attempt with the METS file of a new process
+     * 
+     * @param process Goobi process of the year
+     * @param firstPage first page of the year
+     * @return true if the METS file was replaced
+     */
+    private boolean resetMetadataOfProcess(Process process, NewspaperPage firstPage) {
+        Fileformat emptyFileformat = prepareFileformatForNewProcess(ProcessManager.getProcessByExactTitle(workflow), firstPage);
+        if (emptyFileformat == null) {
+            return false;
+        }
+        try {
+            process.writeMetadataFile(emptyFileformat);
+            return true;
+        } catch (IOException | SwapException | WriteException | PreferencesException e) {
+            log.error("Error while resetting the METS file of process " + process.getTitel(), e);
+            reportError("Failed to reset the METS file of process " + process.getTitel() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * copy the issues of one year into the process, the METS file is written afterwards
+     * 
+     * @param process Goobi process of the year
+     * @param plan ImportPlan containing all pages
+     * @param yearIndex index of the year in the plan
+     * @param unit work unit of the year if the import is distributed, null otherwise
+     * @return true if all issues of the year were copied, false if the import of the year was stopped
+     * @throws InterruptedException
+     */
+    private boolean importIssues(Process process, ImportPlan plan, int yearIndex, DistributedImport.WorkUnit unit) throws InterruptedException {
+        boolean yearCompleted;
+        try {
+            yearCompleted = importIssuesOfYear(process, plan, yearIndex, unit);
+        } finally {
+            // files of the next year are not prefetched, the files of stopped imports are removed from the spool folder
+            sourceStorage.cancelPrefetch();
+        }
+
+        // wait for the derivatives of this year and mark them in the plan
+        registerDerivatives(plan);
+        return yearCompleted;
+    }
+
+    /**
+     * import the issues of one year one after the other, remote sources download the next issue of the year while the current one is copied
+     * 
+     * @param process Goobi process of the year
+     * @param plan ImportPlan containing all pages
+     * @param yearIndex index of the year in the plan
+     * @param unit work unit of the year if the import is distributed, null otherwise
+     * @return true if all issues were imported, false if the import of the year was stopped
+     * @throws InterruptedException
+     */
+    private boolean importIssuesOfYear(Process process, ImportPlan plan, int yearIndex, DistributedImport.WorkUnit unit)
+            throws InterruptedException {
+        for (int issue = plan.getYearStart(yearIndex); issue < plan.getYearEnd(yearIndex); issue++) {
+            if (!importControl.checkpoint() || unit != null && unit.isLeaseLost() || !awaitMemory()) {
+                return false;
+            }
+            if (issue + 1 < plan.getYearEnd(yearIndex)) {
+                List<Path> nextIssue = new ArrayList<>();
+                for (int page = plan.getIssueStart(issue + 1); page < plan.getIssueEnd(issue + 1); page++) {
+                    nextIssue.add(plan.getPath(page));
+                }
+                sourceStorage.prefetch(nextIssue);
+            }
+            String issueDate = plan.getPage(plan.getIssueStart(issue)).getDate();
+            boolean success = tryUpdateOldProcessForIssue(process, plan, issue);
+            if (!success) {
+                errors++;
+                String message = "Failed to add issue for date " + issueDate;
+                reportError(message);
+            }
+
+            int pages = plan.getIssueEnd(issue) - plan.getIssueStart(issue);
+            nodePages += pages;
+            if (unit != null) {
+                // the progress of all nodes is collected by the heartbeats
+                unit.addPages(pages);
+            } else {
+                itemCurrent += pages;
+                progress = 100 * itemCurrent / itemsTotal;
+            }
+            updateLog("Processed issue: " + issueDate);
+        }
+        return true;
+    }
+
+    /**
+     * pause the import before the next issue while the heap is above its budget
+     * 
+     * @return true if the import shall continue, false if it was cancelled
+     * @throws InterruptedException
+     */
+    private boolean awaitMemory() throws InterruptedException {
+        if (memoryGovernor == null) {
+            return true;
+        }
+        long pausedBefore = memoryGovernor.getPausedMillis();
+        boolean proceed = memoryGovernor.awaitHeadroom(importControl);
+        long paused = memoryGovernor.getPausedMillis() - pausedBefore;
+        if (paused > 0) {
+            updateLog("Import paused for " + paused + " ms until the heap usage dropped below the budget of " + memoryGovernor.getBudgetMegabytes()
+                    + " MB", ImportLog.LEVEL_WARNING);
+        }
+        return proceed;
+    }
+
+    /**
+     * finish the stages that were left behind by interrupted imports of the set, before its files are listed
+     */
+    private void recoverStages() {
+        if (stagedIngest == null) {
+            return;
+        }
+        // stages of other nodes are only recovered once their leases expired
+        Predicate<String> isWorkerActive = distributedImport != null ? distributedImport::isWorkerActive : worker -> false;
+        int recovered = stagedIngest.recover(setTitle, isWorkerActive);
+        if (recovered > 0) {
+            updateLog("Finished " + recovered + " stages of interrupted imports", ImportLog.LEVEL_WARNING);
+        }
+    }
+
+    /**
+     * move the committed stage of the current year into the master folder and delete its sources
+     */
+    private void completeStage() {
+        try {
+            for (Path source : stage.complete()) {
+                errors++;
+                reportError("Failed to delete the source file " + source);
+            }
+        } catch (IOException e) {
+            errors++;
+            log.error("Error while moving the staged files into the master folder", e);
+            reportError("Failed to move the staged files into the master folder, this is repeated at the next start of the set: " + e.getMessage());
+        }
+        stage = null;
+    }
+
+    /**
+     * give up the stage of the current year if its import failed, the sources are kept
+     */
+    private void abortStage() {
+        if (stage == null) {
+            return;
+        }
+        if (stage.getState() == StagedIngest.State.STAGING) {
+            try {
+                stage.rollback();
+            } catch (IOException e) {
+                log.error("Error while removing the stage folder " + stage.getStageFolder(), e);
+                stage.abandon();
+            }
+        } else {
+            // the METS file may already reference the staged files
+            stage.abandon();
+            reportError("Import stopped after the files were staged, they are moved into the master folder at the next start of the set");
+        }
+        stage = null;
+    }
+
+    /**
+     * publish the years of the plan as work units, or join the import if another node already did, and import the claimed years
+     * 
+     * @param bhelp BeanHelper
+     * @param plan ImportPlan containing all pages
+     * @throws Exception
+     */
+    private void runDistributedImport(BeanHelper bhelp, ImportPlan plan) throws Exception {
+        Map<Integer, Integer> pagesPerYear = new LinkedHashMap<>();
+        for (int yearIndex = 0; yearIndex < plan.getNumberOfYears(); yearIndex++) {
+            pagesPerYear.put(plan.getYear(yearIndex), plan.getNumberOfPagesOfYear(yearIndex));
+        }
+        if (distributedImport.publish(pagesPerYear)) {
+            updateLog("Created " + pagesPerYear.size() + " work units for the set", ImportLog.LEVEL_WARNING);
+        } else {
+            updateLog("Joining the distributed import of the set", ImportLog.LEVEL_WARNING);
+        }
+
+        distributedImport.run(importControl, unit -> {
+            int yearIndex = plan.indexOfYear(unit.getYear());
+            if (yearIndex < 0) {
+                reportError("No files found for year " + unit.getYear() + " on " + distributedImport.getWorker());
+                return false;
+            }
+            updateLog("Importing year " + unit.getYear() + " on " + distributedImport.getWorker());
+            return importYear(bhelp, plan, yearIndex, unit);
+        }, this::updateDistributedProgress);
+    }
+
+    /**
+     * show the progress of all nodes of a distributed import
+     * 
+     * @param unitProgress aggregated progress of all work units
+     */
+    private void updateDistributedProgress(WorkUnitProgress unitProgress) {
+        workUnitProgress = unitProgress;
+        itemsTotal = unitProgress.getPagesTotal();
+        itemCurrent = unitProgress.getPagesDone();
+        progress = itemsTotal > 0 ? (int) (100L * itemCurrent / itemsTotal) : 0;
+        if (pusher != null && System.currentTimeMillis() - lastPush > 500) {
+            lastPush = System.currentTimeMillis();
+            pusher.send("update");
+        }
     }
 
     /**
-     * get all Newspapers ordered by date and type
+     * check the page sequences of the issues and the publishing calendar, the problems only abort the import if the check is strict
      * 
-     * @param folder
-     * @return
+     * @param plan ImportPlan containing all pages
+     * @return true if the import may continue
      */
-    private List<NewspaperPage> getSortedNewspaperPages(String folder) {
-        return storageProvider.listFiles(folder)
-                .stream()
-                .map(fileName -> new NewspaperPage(fileName, morningIssueIdentifier, eveningIssueIdentifier))
-                .sorted(byMultipleFields)
-                .collect(Collectors.toList());
+    private boolean checkCompleteness(ImportPlan plan) {
+        long start = System.currentTimeMillis();
+        CompletenessReport report = CompletenessReport.analyze(plan);
+        updateLog(report.getSummary() + " (analysed in " + (System.currentTimeMillis() - start) + " ms)");
+        for (String problem : report.getProblems()) {
+            if (completenessStrict) {
+                reportError(problem);
+            } else {
+                updateLog(problem, ImportLog.LEVEL_WARNING);
+            }
+        }
+        return !completenessStrict || report.isComplete();
     }
 
     /**
-     * Comparator for NewspaperPages to get them sorted by date and then by morning, regular and evening
+     * validate all pages in parallel, the problems are reported in the order of the pages
+     * 
+     * @param plan ImportPlan containing all pages
+     * @return true if all pages are valid, false otherwise
      */
-    Comparator<NewspaperPage> byMultipleFields = Comparator
-            .comparing(NewspaperPage::getDate)
-            .thenComparing(page -> {
-                if (page.isMorningIssue()) {
-                    return 1; // morning issues
-                }
-                if (page.isEveningIssue()) {
-                    return 3; // evening issues
-                }
-                return 2; // general issues
-            });
-
-    private boolean validateNewspaperPages(List<NewspaperPage> pages) {
+    private boolean validateImportPlan(ImportPlan plan) {
         boolean result = true;
-        for (NewspaperPage p : pages) {
-            if (!p.isDateValid()) {
-                reportError("Date is invalid for file: " + p.getFilePath());
-                result = false;
-            }
-            if (!p.isPageNumberValid()) {
-                reportError("Page number is invalid for file: " + p.getFilePath());
-                result = false;
+        IoExecutor executor = new IoExecutor(virtualThreads, virtualThreads ? virtualValidations : validationThreads, "newspaper-import-validation");
+        try {
+            // platform threads validate the pages in blocks to keep the number of tasks small for large imports, virtual threads validate each
+            // page on its own thread, so that the slow reads of one page do not delay the other pages of its block
+            int blockSize = executor.isVirtual() ? 1 : VALIDATION_BLOCK_SIZE;
+            List<Future<List<String>>> problems = new ArrayList<>();
+            for (int start = 0; start < plan.size(); start += blockSize) {
+                // the validation is slowed down while the heap is above the budget
+                if (memoryGovernor != null && !memoryGovernor.awaitHeadroom(MAX_VALIDATION_PAUSE)) {
+                    reportError("Validation stopped, the heap usage stayed above the budget of " + memoryGovernor.getBudgetMegabytes() + " MB");
+                    return false;
+                }
+                int blockStart = start;
+                int blockEnd = Math.min(plan.size(), start + blockSize);
+                problems.add(executor.submit(() -> validateNewspaperPages(plan, blockStart, blockEnd)));
             }
-            if (!p.isFileSizeValid()) {
-                reportError("File size is invalid for file: " + p.getFilePath());
-                result = false;
+            for (Future<List<String>> blockProblems : problems) {
+                for (String problem : blockProblems.get()) {
+                    reportError(problem);
+                    result = false;
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reportError("Validation was interrupted.");
+            result = false;
+        } catch (ExecutionException e) {
+            log.error("Error while validating the files", e.getCause());
+            reportError("Error while validating the files: " + e.getCause().getMessage());
+            result = false;
+        } finally {
+            executor.shutdownNow();
         }
         return result;
     }
 
-    private Map<String, List<NewspaperPage>> getSortedNewspaperPagesGroupedByYears(List<NewspaperPage> pages) {
-        return pages
-                .stream()
-                .collect(Collectors.groupingBy(NewspaperPage::getYear));
+    /**
+     * validate a block of pages and read the technical metadata from their image headers
+     * 
+     * @param plan ImportPlan containing all pages
+     * @param start index of the first page of the block
+     * @param end index after the last page of the block
+     * @return list of problems found, empty if all pages are valid
+     */
+    private List<String> validateNewspaperPages(ImportPlan plan, int start, int end) {
+        List<String> problems = new ArrayList<>();
+        for (int page = start; page < end; page++) {
+            Path filePath = plan.getPath(page);
+            if (!plan.isDateValid(page)) {
+                problems.add("Date is invalid for file: " + filePath);
+            }
+            if (!plan.isPageNumberValid(page)) {
+                problems.add("Page number is invalid for file: " + filePath);
+            }
+            SourceFile sourceFile;
+            try {
+                sourceFile = sourceStorage.stat(filePath);
+            } catch (IOException e) {
+                log.error("Error while reading the size of file " + filePath, e);
+                sourceFile = null;
+            }
+            if (sourceFile == null || sourceFile.getSize() == 0) {
+                problems.add("File size is invalid for file: " + filePath);
+                continue;
+            }
+            String fileName = filePath.getFileName().toString();
+            ScanIndex.Entry entry = scanIndex != null ? scanIndex.get(fileName, sourceFile) : null;
+            String problem;
+            if (entry != null) {
+                problem = entry.getProblem();
+                if (entry.getImageInfo() != null) {
+                    plan.setImageInfo(page, entry.getImageInfo());
+                }
+            } else {
+                problem = probeImage(plan, page, fileName, sourceFile);
+            }
+            if (problem != null) {
+                problems.add(problem);
+            }
+        }
+        return problems;
     }
 
-    private int getNumberOfPages(Map<String, List<NewspaperPage>> pagesGrouped) {
-        final int[] numberOfPages = { 0 };
-        pagesGrouped.forEach((k, v) -> numberOfPages[0] += v.size());
-        log.debug("numberOfPages = " + numberOfPages[0]);
-        return numberOfPages[0];
+    /**
+     * read the technical metadata from the image header of a page and keep it in the plan, the result is kept in the scan index unless the file
+     * could not be read
+     * 
+     * @param plan ImportPlan containing all pages
+     * @param page index of the page
+     * @param fileName name of the file
+     * @param sourceFile size and modification time of the file
+     * @return the problem found, or null if the image header is valid
+     */
+    private String probeImage(ImportPlan plan, int page, String fileName, SourceFile sourceFile) {
+        Path filePath = plan.getPath(page);
+        ImageInfo imageInfo;
+        try (SeekableByteChannel channel = sourceStorage.openChannel(filePath)) {
+            imageInfo = ImageHeaderProbe.probe(channel);
+            if (imageInfo != null) {
+                log.debug(fileName + ": " + imageInfo);
+                plan.setImageInfo(page, imageInfo);
+            }
+        } catch (ImageHeaderProbe.InvalidImageException e) {
+            String problem = "Image is corrupt or truncated: " + filePath + " (" + e.getMessage() + ")";
+            if (scanIndex != null) {
+                scanIndex.put(fileName, sourceFile, null, problem);
+            }
+            return problem;
+        } catch (IOException e) {
+            // the file is checked again at the next start
+            return "Image cannot be read: " + filePath + " (" + e.getMessage() + ")";
+        }
+        if (scanIndex != null) {
+            scanIndex.put(fileName, sourceFile, imageInfo, null);
+        }
+        return null;
     }
 
-    private Map<String, List<NewspaperPage>> getSortedNewspaperPagesGroupedByDates(List<NewspaperPage> pages) {
-        return pages
-                .stream()
-                .collect(Collectors.groupingBy(NewspaperPage::getDateAndType, LinkedHashMap::new, Collectors.toList()));
+    /**
+     * write the results of the validation into the scan index if configured
+     * 
+     * @param files all files of the import folder
+     */
+    private void saveScanIndex(List<Path> files) {
+        if (scanIndex == null) {
+            return;
+        }
+        try {
+            scanIndex.save(files);
+            updateLog("Validated " + scanIndex.getMisses() + " new or changed files, the results of " + scanIndex.getHits()
+                    + " files were taken from the scan index");
+        } catch (IOException e) {
+            // the next start validates all files again
+            log.error("Error while writing the scan index " + scanIndex.getIndexFile(), e);
+        }
     }
 
     /**
      * try to add all pages of one issue to an old process by updating it
      * 
      * @param process Goobi process that shall be updated
-     * @param pages list of NewspaperPages that belong to one issue
+     * @param plan ImportPlan containing all pages
+     * @param issue index of the issue in the plan
      * @return true if the input issue pages are successfully added into the old process, false otherwise
+     * @throws InterruptedException
      */
-    private boolean tryUpdateOldProcessForIssue(Process process, List<NewspaperPage> pages) {
+    private boolean tryUpdateOldProcessForIssue(Process process, ImportPlan plan, int issue) throws InterruptedException {
         log.debug("Updating process: " + process.getTitel());
+        boolean success;
+
+        // copy files into the master folder of the process first, so that only pages whose files arrived are added to the METS file
+        Map<Integer, Path> masterPaths = new LinkedHashMap<>();
         try {
-            updateMetadataOfProcessForIssue(process, pages);
+            success = copyPagesToMasterFolder(process, plan, issue, masterPaths);
 
-        } catch (ReadException | IOException | SwapException e1) {
-            // read Fileformat error
+        } catch (IOException | SwapException | DAOException e) {
             errors++;
-            String message = "Failed to read the fileformat.";
+            log.error("Error while trying to copy files into the media folder", e);
+            String message = "Error while trying to copy files into the media folder: " + e.getMessage();
             reportError(message);
-            e1.printStackTrace();
-            return false;
+            success = false;
+        }
+        if (masterPaths.isEmpty()) {
+            return success;
+        }
 
-        } catch (PreferencesException e) {
-            // DigitalDocument error
-            errors++;
-            String message = "Failed to get the digital document.";
-            reportError(message);
-            e.printStackTrace();
-            return false;
+        // create the derivatives of the copied pages, the issue is written into the METS file together with all other issues of the year
+        try {
+            scheduleDerivatives(process, plan, masterPaths);
 
-        } catch (Exception e) {
+        } catch (IOException | SwapException | DAOException e) {
             errors++;
-            log.debug("Unknown exception caught while updating process: " + process.getTitel());
-            e.printStackTrace();
+            log.error("Error while trying to get the media folder", e);
+            reportError("Error while trying to get the media folder: " + e.getMessage());
             return false;
         }
 
-        // copy files into the master folder of the process
-        try {
-            copyPagesToMasterFolder(process, pages);
-            return true;
+        return success;
+    }
 
-        } catch (IOException | SwapException | DAOException e) {
-            errors++;
-            log.error("Error while trying to copy files into the media folder", e);
-            String message = "Error while trying to copy files into the media folder: " + e.getMessage();
-            reportError(message);
+    /**
+     * decide whether the METS file of a year is streamed, either because it is configured or because the DocStructs of the year do not fit into
+     * the heap budget. The streaming writer does not write page metadata, so years with page metadata are always built by ugh.
+     * 
+     * @param plan ImportPlan containing all pages
+     * @param year index of the year in the plan
+     * @return true if the year shall be streamed into its METS file
+     */
+    private boolean isStreamingYear(ImportPlan plan, int year) {
+        if (streamingMetsWriter) {
+            return true;
+        }
+        if (memoryGovernor == null || !pageMetadataList.isEmpty()
+                || memoryGovernor.hasRoomFor(plan.getNumberOfPagesOfYear(year) * MemoryGovernor.BYTES_PER_DOCSTRUCT)) {
             return false;
         }
+        // flushed early instead of building all DocStructs of the year in memory
+        updateLog("The year " + plan.getYear(year) + " does not fit into the heap budget, its issues are streamed into the METS file",
+                ImportLog.LEVEL_WARNING);
+        return true;
     }
 
     /**
-     * update the metadata of the input process with metadata of the input list of NewspaperPages that belong to one issue
+     * wait until the DocStructs of a year that is built by ugh fit into the heap budget, e.g. until other users of Goobi freed their memory
      * 
-     * @param process Goobi process whose metadata shall be updated
-     * @param page NewspaperPage belonging to one issue whose metadata shall be added into the process
+     * @param plan ImportPlan containing all pages
+     * @param year index of the year in the plan
+     * @return true if the year fits into the heap budget, false if it still does not fit after {@link #MAX_METS_PAUSE}
+     * @throws InterruptedException
+     */
+    private boolean awaitRoomForYear(ImportPlan plan, int year) throws InterruptedException {
+        if (memoryGovernor == null) {
+            return true;
+        }
+        long pausedBefore = memoryGovernor.getPausedMillis();
+        boolean fits = memoryGovernor.awaitRoomFor(plan.getNumberOfPagesOfYear(year) * MemoryGovernor.BYTES_PER_DOCSTRUCT, MAX_METS_PAUSE);
+        long paused = memoryGovernor.getPausedMillis() - pausedBefore;
+        if (fits && paused > 0) {
+            updateLog("The METS file of year " + plan.getYear(year) + " waited " + paused + " ms for the heap, because its page metadata cannot be"
+                    + " streamed", ImportLog.LEVEL_WARNING);
+        }
+        return fits;
+    }
+
+    /**
+     * write all imported issues of one year into the METS file of the process, either streamed or as DocStructs written by ugh
+     * 
+     * @param process Goobi process of the year
+     * @param plan ImportPlan containing all pages
+     * @param year index of the year in the plan
+     * @param streaming true if the issues shall be streamed into the METS file
      * @throws ReadException
      * @throws IOException
      * @throws SwapException
+     * @throws WriteException
+     * @throws PreferencesException
+     */
+    private void writeYear(Process process, ImportPlan plan, int year, boolean streaming)
+            throws ReadException, IOException, SwapException, WriteException, PreferencesException {
+        // the pages and issues of the year are only created now, all other years stay in the compact plan
+        List<IssuePlan> issues = getImportedIssues(plan, year);
+        if (streaming) {
+            StreamingMetsWriter writer = new StreamingMetsWriter(NEWSPAPER_VOLUME_TYPE, NEWSPAPER_ISSUE_TYPE, TITLE_DOC_MAIN_TYPE, DATE,
+                    this::getPageLabel, this::getContentFilesForPage, metsWriterThreads,
+                    StreamingMetsWriter.getMetadataLimits(prefs, NEWSPAPER_ISSUE_TYPE), page -> technicalMetadata.getMetadata(page.getImageInfo()));
+            writer.write(Path.of(process.getMetadataFilePath()), issues);
+            for (String skipped : writer.getSkippedMetadataTypes()) {
+                errors++;
+                reportError("MetadataType " + skipped + " is not allowed. Skipping ...");
+            }
+        } else {
+            fileformat = process.readMetadataFile();
+            for (IssuePlan issue : issues) {
+                updateMetadataOfProcessForIssue(process, issue);
+            }
+            process.writeMetadataFile(fileformat);
+            fileformat = null;
+        }
+    }
+
+    /**
+     * get all issues of one year that contain at least one imported page
+     * 
+     * @param plan ImportPlan containing all pages
+     * @param year index of the year in the plan
+     * @return list of IssuePlans in the order of their appearance
+     */
+    private List<IssuePlan> getImportedIssues(ImportPlan plan, int year) {
+        List<IssuePlan> issues = new ArrayList<>();
+        for (int issue = plan.getYearStart(year); issue < plan.getYearEnd(year); issue++) {
+            List<NewspaperPage> pages = plan.getImportedPages(issue);
+            if (!pages.isEmpty()) {
+                NewspaperPage firstPage = pages.get(0);
+                String title = firstPage.getUserFriendlyTitle(languageForDateFormat, firstPage.getEdition().getTitlePrefix());
+                // the issue metadata is evaluated once here and shared by both METS writers
+                MetadataTemplate.Scope scope = createScope(firstPage).set(Variable.ISSUENO, String.valueOf(issues.size() + 1));
+                issues.add(new IssuePlan(firstPage.getDate(), title, pages, resolveMetadata(issueMetadataList, scope), scope));
+            }
+        }
+        return issues;
+    }
+
+    /**
+     * update the metadata of the input process with metadata of the input issue
+     * 
+     * @param process Goobi process whose metadata shall be updated
+     * @param issuePlan issue whose pages shall be added into the process
      * @throws PreferencesException
      */
-    private void updateMetadataOfProcessForIssue(Process process, List<NewspaperPage> pages)
-            throws ReadException, IOException, SwapException, PreferencesException {
+    private void updateMetadataOfProcessForIssue(Process process, IssuePlan issuePlan) throws PreferencesException {
         log.debug("Updating metadata of process: " + process.getTitel());
         try {
 
@@ -436,22 +1343,21 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
             DocStruct logical = dd.getLogicalDocStruct();
             DocStruct volume = logical.getAllChildren().get(0);
 
-            DocStruct issue = createNewIssue(prefs, dd, pages.get(0));
+            DocStruct issue = createNewIssue(prefs, dd, issuePlan);
             if (issue != null) {
                 volume.addChild(issue);
             }
 
             // add all pages to this issue
-            for (NewspaperPage page : pages) {
-                addPageToIssue(prefs, dd, issue, page);
+            for (NewspaperPage page : issuePlan.getPages()) {
+                addPageToIssue(prefs, dd, issue, issuePlan, page);
             }
 
-        } catch (Exception e) {
+        } catch (TypeNotAllowedAsChildException e) {
             errors++;
-            log.debug("Exception caught while updating metadata of process: " + process.getTitel());
-            e.printStackTrace();
+            reportError("Failed to add issue for date " + issuePlan.getDate());
+            log.error("Exception caught while updating metadata of process: " + process.getTitel(), e);
         }
-
     }
 
     /**
@@ -478,10 +1384,6 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
             return null;
         }
 
-        // TODO: find a proper way to start open automatic tasks only after all issues belonging to this process are added
-        // start open automatic tasks
-        //        startOpenAutomaticTasks(process); // NOSONAR
-
         updateLog("Process successfully created with ID: " + process.getId());
 
         return process;
@@ -512,13 +1414,13 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
             // add the logical basics to anchor
             DocStruct logical = dd.createDocStruct(prefs.getDocStrctTypeByName(NEWSPAPER_TYPE));
             dd.setLogicalDocStruct(logical);
-            List<ImportMetadata> anchorMetadataListFinal = getMetadataListWithVariablesReplaced(this.anchorMetadataList, page);
-            createMetadataFields(prefs, logical, anchorMetadataListFinal);
+            // anchor and volume share the values of the first page of the year
+            MetadataTemplate.Scope scope = createScope(page);
+            createMetadataFields(prefs, logical, resolveMetadata(this.anchorMetadataList, scope), true);
 
             // prepare the volume
             DocStruct volume = dd.createDocStruct(prefs.getDocStrctTypeByName(NEWSPAPER_VOLUME_TYPE));
-            List<ImportMetadata> volumeMetadataListFinal = getMetadataListWithVariablesReplaced(this.volumeMetadataList, page);
-            createMetadataFields(prefs, volume, volumeMetadataListFinal);
+            createMetadataFields(prefs, volume, resolveMetadata(this.volumeMetadataList, scope), true);
 
             log.debug("Adding DocStruct child: " + NEWSPAPER_VOLUME_TYPE);
             try {
@@ -544,101 +1446,35 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
     }
 
     /**
-     * get a list of ImportMetadata whose variables are all replaced
-     * 
-     * @param page NewspaperPage
-     * @return a list of ImportMetadata whose variables are all replaced
-     */
-    private List<ImportMetadata> getMetadataListWithVariablesReplaced(List<ImportMetadata> metadataList, NewspaperPage page) {
-        // Remark: NewspaperVolume should have a CatalogIDDigital that is different from the one of Newspaper
-
-        List<ImportMetadata> metadataListFinal = new ArrayList<>();
-
-        for (ImportMetadata md : metadataList) {
-            // replace variables if configured and used
-            ImportMetadata mdToAdd = getImportMetadataWithVariableReplaced(md, page);
-            metadataListFinal.add(mdToAdd);
-        }
-
-        return metadataListFinal;
-    }
-
-    /**
-     * get an ImportMetadata object where the occurrences of its predefined variable in its predefined value are all replaced properly
-     * 
-     * @param md ImportMetadata
-     * @param page NewspaperPage
-     * @return the input ImportMetadata itself if no such replacement is actually needed, otherwise a new one whose value is the original one with its
-     *         variable properly replaced
-     */
-    private ImportMetadata getImportMetadataWithVariableReplaced(ImportMetadata md, NewspaperPage page) {
-        String variable = md.getVariable();
-        if (StringUtils.isBlank(variable)) {
-            // no variable configured
-            return md;
-        }
-
-        String variableWrapped = getStringWrapped(variable, "_");
-        String metadataValue = md.getValue();
-        if (!metadataValue.contains(variableWrapped)) {
-            // no such variable in use, no replacement needed
-            log.debug("Metadata value '" + metadataValue + " does not contain variableWrapped '" + variableWrapped + "'");
-            return md;
-        }
-
-        String variableValue = getVariableValue(variable, page);
-        String newMetadataValue = metadataValue.replace(variableWrapped, variableValue);
-        return new ImportMetadata(md.getType(), newMetadataValue, "", md.isPerson());
-    }
-
-    /**
-     * get a string wrapped with the same wrapper from both sides
-     * 
-     * @param s the string that shall be wrapped
-     * @param wrapper wrapper string that shall be added to both sides
-     * @return the string wrapped in the wrapper from both sides
-     */
-    private String getStringWrapped(String s, String wrapper) {
-        return getStringWrapped(s, wrapper, wrapper);
-    }
-
-    /**
-     * get a string wrapped with possibly different wrapper strings from both sides
+     * get the values of the variables of the input NewspaperPage
      * 
-     * @param s the string that shall be wrapped
-     * @param wrapperLeft wrapper string that shall be added to the left
-     * @param wrapperRight wrapper string that shall be added to the right
-     * @return the string wrapped with the input two wrappers
+     * @param page NewspaperPage from which the values are to be fetched
+     * @return Scope with the values of the date, the page number and the set title
      */
-    private String getStringWrapped(String s, String wrapperLeft, String wrapperRight) {
-        return wrapperLeft + s + wrapperRight;
+    private MetadataTemplate.Scope createScope(NewspaperPage page) {
+        return new MetadataTemplate.Scope().set(Variable.YEAR, page.getYear())
+                .set(Variable.MONTH, page.getMonth())
+                .set(Variable.DAY, page.getDay())
+                .set(Variable.DATE, page.getDate())
+                .set(Variable.DATEFINE, page.getDateFine())
+                .set(Variable.PAGE, page.getPageNumber())
+                .set(Variable.SETTITLE, setTitle);
     }
 
     /**
-     * get the value of the variable from the input NewspaperPage
+     * get a list of ImportMetadata whose variables are all replaced
      * 
-     * @param variable name of the variable
-     * @param page NewspaperPage from which the value is to be fetched
-     * @return the value of the variable if it is recognized, or the variable itself otherwise
+     * @param metadataList compiled ImportMetadata
+     * @param scope values of the variables
+     * @return a list of ImportMetadata whose variables are all replaced
      */
-    private String getVariableValue(String variable, NewspaperPage page) {
-        switch (variable.toLowerCase()) {
-            case "year":
-                return page.getYear();
-            case "month":
-                return page.getMonth();
-            case "day":
-                return page.getDay();
-            case "date":
-                return page.getDate();
-            case "datefine":
-                return page.getDateFine();
-            case "page":
-                return page.getPageNumber();
-            default:
-                // unknown variable
-                return variable;
+    private List<ImportMetadata> resolveMetadata(List<ImportMetadata> metadataList, MetadataTemplate.Scope scope) {
+        // Remark: NewspaperVolume should have a CatalogIDDigital that is different from the one of Newspaper
+        List<ImportMetadata> metadataListFinal = new ArrayList<>(metadataList.size());
+        for (ImportMetadata md : metadataList) {
+            metadataListFinal.add(md.resolve(scope));
         }
+        return metadataListFinal;
     }
 
     /**
@@ -647,8 +1483,9 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
      * @param prefs Prefs
      * @param ds DocStruct
      * @param importMetadataList list of ImportMetadata
+     * @param report true if each metadata shall be written into the log of the UI, false for the metadata of issues and pages
      */
-    private void createMetadataFields(Prefs prefs, DocStruct ds, List<ImportMetadata> importMetadataList) {
+    private void createMetadataFields(Prefs prefs, DocStruct ds, List<ImportMetadata> importMetadataList, boolean report) {
         for (ImportMetadata importMetadata : importMetadataList) {
             // prepare the MetadataType
             String target = importMetadata.getType();
@@ -660,10 +1497,14 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
             try {
                 Metadata md = createMetadata(targetType, value, isPerson);
                 if (isPerson) {
-                    updateLog("Add person '" + target + "' with value '" + value + "'");
+                    if (report) {
+                        updateLog("Add person '" + target + "' with value '" + value + "'", ImportLog.LEVEL_DEBUG);
+                    }
                     ds.addPerson((Person) md);
                 } else {
-                    updateLog("Add metadata '" + target + "' with value '" + value + "'");
+                    if (report) {
+                        updateLog("Add metadata '" + target + "' with value '" + value + "'", ImportLog.LEVEL_DEBUG);
+                    }
                     log.debug("ds.type = " + ds.getType());
                     ds.addMetadata(md);
                 }
@@ -709,34 +1550,30 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
      * 
      * @param prefs Prefs
      * @param dd DigitalDocument
-     * @param page NewspaperPage
+     * @param issuePlan issue that shall be created
      * @return the new DocStruct of type NewspaperIssue if it is successfully created, or null otherwise
      */
-    private DocStruct createNewIssue(Prefs prefs, DigitalDocument dd, NewspaperPage page) {
-        log.debug("Creating new issue from NewspaperPage: " + page.getFileName());
+    private DocStruct createNewIssue(Prefs prefs, DigitalDocument dd, IssuePlan issuePlan) {
+        log.debug("Creating new issue for date: " + issuePlan.getDate());
 
         try {
             DocStruct issue = dd.createDocStruct(prefs.getDocStrctTypeByName(NEWSPAPER_ISSUE_TYPE));
 
             // TitleDocMain
             MetadataType titleType = prefs.getMetadataTypeByName(TITLE_DOC_MAIN_TYPE);
-            String titleValue = page.getUserFriendlyTitle(languageForDateFormat, issueTitlePrefix);
-            if (page.isMorningIssue()) {
-                titleValue = page.getUserFriendlyTitle(languageForDateFormat, issueTitlePrefixMorning);
-            }
-            if (page.isEveningIssue()) {
-                titleValue = page.getUserFriendlyTitle(languageForDateFormat, issueTitlePrefixEvening);
-            }
+            String titleValue = issuePlan.getTitle();
 
             Metadata titleMetadata = createMetadata(titleType, titleValue, false);
             issue.addMetadata(titleMetadata);
 
             // Date
             MetadataType currentNoType = prefs.getMetadataTypeByName(DATE);
-            String currentNoValue = page.getDate();
+            String currentNoValue = issuePlan.getDate();
             Metadata currentNoMetadata = createMetadata(currentNoType, currentNoValue, false);
             issue.addMetadata(currentNoMetadata);
 
+            createMetadataFields(prefs, issue, issuePlan.getMetadata(), false);
+
             ISSUES_SET.add(titleValue);
             log.debug("New issue created: " + titleValue);
 
@@ -744,7 +1581,7 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
 
         } catch (TypeNotAllowedForParentException | MetadataTypeNotAllowedException e) {
             errors++;
-            String message = "Failed to create a new issue for " + page.getDate();
+            String message = "Failed to create a new issue for " + issuePlan.getDate();
             reportError(message);
             e.printStackTrace();
             return null;
@@ -758,40 +1595,75 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
      * @param prefs Prefs
      * @param dd DigitalDocument
      * @param issue DocStruct of type NewspaperIssue
+     * @param issuePlan issue that the page belongs to
      * @param page NewspaperPage that shall be added to the input issue
      */
-    private void addPageToIssue(Prefs prefs, DigitalDocument dd, DocStruct issue, NewspaperPage page) {
+    private void addPageToIssue(Prefs prefs, DigitalDocument dd, DocStruct issue, IssuePlan issuePlan, NewspaperPage page) {
         log.debug("Adding new page '" + page.getPageNumber() + "' to issue '" + page.getDate());
         DocStruct physical = dd.getPhysicalDocStruct();
         DocStruct volume = dd.getLogicalDocStruct().getAllChildren().get(0);
         DocStructType pageType = prefs.getDocStrctTypeByName("page");
-        String pageLogNumber = pageNumberPrefix.trim() + " " + Integer.valueOf(page.getPageNumber());
 
         try {
             DocStruct dsPage = dd.createDocStruct(pageType);
             physical.addChild(dsPage);
 
+            String physPageNumber = String.valueOf(physical.getAllChildren().size());
             Metadata metaPhysPageNumber = new Metadata(prefs.getMetadataTypeByName("physPageNumber"));
-            metaPhysPageNumber.setValue(String.valueOf(physical.getAllChildren().size()));
+            metaPhysPageNumber.setValue(physPageNumber);
             dsPage.addMetadata(metaPhysPageNumber);
 
             Metadata metaLogPageNumber = new Metadata(prefs.getMetadataTypeByName("logicalPageNumber"));
-            metaLogPageNumber.setValue(pageLogNumber.trim());
+            metaLogPageNumber.setValue(getPageLabel(page));
             dsPage.addMetadata(metaLogPageNumber);
 
+            if (!pageMetadataList.isEmpty()) {
+                // the page only overrides the values that differ from its issue
+                MetadataTemplate.Scope scope = issuePlan.getScope().copy()
+                        .set(Variable.PAGE, page.getPageNumber())
+                        .set(Variable.IMAGENO, physPageNumber);
+                createMetadataFields(prefs, dsPage, resolveMetadata(pageMetadataList, scope), false);
+            }
+            createMetadataFields(prefs, dsPage, technicalMetadata.getMetadata(page.getImageInfo()), false);
+
             volume.addReferenceTo(dsPage, "logical_physical");
             issue.addReferenceTo(dsPage, "logical_physical");
 
-            ContentFile contentFileTiff = prepareContentFileForPage(page, "tiff");
-            dsPage.addContentFile(contentFileTiff);
+            for (ContentFile contentFile : getContentFilesForPage(page)) {
+                dsPage.addContentFile(contentFile);
+            }
 
         } catch (TypeNotAllowedForParentException | TypeNotAllowedAsChildException | MetadataTypeNotAllowedException e) {
             errors++;
             String message = "Failed to add page '" + page.getFileName() + "' to issue.";
             reportError(message);
             e.printStackTrace();
+        }
+    }
+
+    /**
+     * get the logical page number of the input NewspaperPage
+     * 
+     * @param page NewspaperPage
+     * @return the page number with the configured prefix
+     */
+    private String getPageLabel(NewspaperPage page) {
+        return (pageNumberPrefix.trim() + " " + Integer.valueOf(page.getPageNumber())).trim();
+    }
 
+    /**
+     * get all ContentFiles of the input NewspaperPage, the master file and the derivative if it was created
+     * 
+     * @param page NewspaperPage
+     * @return list of ContentFiles
+     */
+    private List<ContentFile> getContentFilesForPage(NewspaperPage page) {
+        List<ContentFile> contentFiles = new ArrayList<>();
+        contentFiles.add(prepareContentFileForPage(page, "tiff"));
+        if (page.isDerivativeCreated()) {
+            contentFiles.add(prepareContentFileForPage(page, "jpg"));
         }
+        return contentFiles;
     }
 
     /**
@@ -869,52 +1741,291 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
     }
 
     /**
-     * COPY (or MOVE if <deleteFromSource> is configured true) the images from importFolder to master folders of the process
+     * COPY the images from importFolder to master folders of the process, or into the stage of the year if <deleteFromSource> is configured
+     * true, with an integrity manifest the file is hashed while it is copied
      * 
      * @param process Process whose master folder is targeted
      * @param filePath path of the file
+     * @return path of the file in the master folder or the stage, or null if the file could not be read
      * @throws IOException
      * @throws SwapException
      * @throws DAOException
      */
-    private void copyFileToMasterFolder(Process process, Path filePath) throws IOException, SwapException, DAOException {
-        // prepare the directories
+    private Path copyFileToMasterFolder(Process process, Path filePath) throws IOException, SwapException, DAOException {
         String masterBase = process.getImagesOrigDirectory(false);
-        storageProvider.createDirectories(Path.of(masterBase));
-        File file = filePath.toFile();
-        if (file.canRead()) {
+        SourceFile sourceFile = sourceStorage.stat(filePath);
+        if (sourceFile != null) {
+            if (stage != null) {
+                // the source is deleted once the METS file of the year is written
+                if (integrityManifest == null) {
+                    return stage.add(filePath);
+                }
+                Path stagedPath = stage.resolve(filePath);
+                copyFileHashed(filePath, sourceFile, stagedPath, stage.getFinalPath(filePath));
+                stage.addCopied(filePath);
+                return stagedPath;
+            }
+
             String fileName = filePath.getFileName().toString();
             Path targetPath = Path.of(masterBase, fileName);
-
-            if (deleteFromSource) {
-                storageProvider.move(filePath, targetPath);
+            if (integrityManifest != null) {
+                copyFileHashed(filePath, sourceFile, targetPath, targetPath);
             } else {
-                storageProvider.copyFile(filePath, targetPath);
+                sourceStorage.copy(filePath, targetPath);
+            }
+            return targetPath;
+        }
+        return null;
+    }
+
+    /**
+     * copy a file from the import folder and add its hash to the integrity manifest
+     * 
+     * @param filePath path of the file in the import folder
+     * @param sourceFile size and modification time of the file
+     * @param target target of the copy
+     * @param listedAs final location of the file in the process
+     * @throws IOException
+     */
+    private void copyFileHashed(Path filePath, SourceFile sourceFile, Path target, Path listedAs) throws IOException {
+        try (InputStream in = sourceStorage.open(filePath)) {
+            integrityManifest.copy(in, target, listedAs);
+        }
+        try {
+            Files.setLastModifiedTime(target, FileTime.fromMillis(sourceFile.getLastModified()));
+        } catch (IOException e) {
+            // the copy is discarded by the caller
+            integrityManifest.remove(listedAs);
+            throw e;
+        }
+    }
+
+    /**
+     * copy the pages of one issue into the master folder and mark them as imported, the copy stops before the next file if the import is cancelled
+     * 
+     * @param process Process whose master folder is targeted
+     * @param plan ImportPlan containing all pages
+     * @param issue index of the issue in the plan
+     * @param masterPaths map that is filled with the indexes of the copied pages and their paths in the master folder or the stage
+     * @return true if all files could be read, false otherwise
+     * @throws IOException
+     * @throws SwapException
+     * @throws DAOException
+     * @throws InterruptedException
+     */
+    private boolean copyPagesToMasterFolder(Process process, ImportPlan plan, int issue, Map<Integer, Path> masterPaths)
+            throws IOException, SwapException, DAOException, InterruptedException {
+        // prepare the directories, a stage is moved into the master folder as a whole if possible
+        if (stage == null) {
+            storageProvider.createDirectories(Path.of(process.getImagesOrigDirectory(false)));
+        }
+
+        // the tasks of the issue do not outlive it, e.g. if the import thread is interrupted
+        try (IoExecutor.Group group = copyExecutor.newGroup()) {
+            return copyPagesOfIssue(process, plan, issue, masterPaths, group);
+        }
+    }
+
+    /**
+     * copy the pages of one issue with the tasks of a group
+     * 
+     * @param process Process whose master folder is targeted
+     * @param plan ImportPlan containing all pages
+     * @param issue index of the issue in the plan
+     * @param masterPaths map that is filled with the indexes of the copied pages and their paths in the master folder or the stage
+     * @param group runs the copies and verifications of the issue
+     * @return true if all files could be read, false otherwise
+     * @throws InterruptedException
+     */
+    private boolean copyPagesOfIssue(Process process, ImportPlan plan, int issue, Map<Integer, Path> masterPaths, IoExecutor.Group group)
+            throws InterruptedException {
+        // the copies run in parallel as far as the I/O governor allows, the results are collected in the order of the pages
+        List<Future<Path>> copies = new ArrayList<>();
+        int start = plan.getIssueStart(issue);
+        for (int page = start; page < plan.getIssueEnd(issue); page++) {
+            if (!importControl.checkpoint()) {
+                break;
+            }
+            Path filePath = plan.getPath(page);
+            copies.add(group.fork(() -> copyFileToMasterFolderGoverned(process, filePath)));
+        }
+
+        boolean allCopied = true;
+        Map<Integer, Path> copied = new LinkedHashMap<>();
+        for (int i = 0; i < copies.size(); i++) {
+            int page = start + i;
+            Path filePath = plan.getPath(page);
+            try {
+                Path masterPath = copies.get(i).get();
+                if (masterPath != null) {
+                    copied.put(page, masterPath);
+                } else {
+                    allCopied = false;
+                    reportError("File could not be read: " + filePath);
+                }
+            } catch (ExecutionException e) {
+                allCopied = false;
+                errors++;
+                log.error("Error while trying to copy file " + filePath, e.getCause());
+                reportError("Error while trying to copy file " + filePath + ": " + e.getCause().getMessage());
+                if (stage != null) {
+                    // a partial copy must not end up in the master folder
+                    discardStagedFile(filePath);
+                }
+            }
+        }
+
+        if (integrityManifest != null && integrityVerifyPercent > 0) {
+            allCopied = verifyCopies(plan, copied, group) && allCopied;
+        }
+        for (Map.Entry<Integer, Path> entry : copied.entrySet()) {
+            plan.markImported(entry.getKey());
+            masterPaths.put(entry.getKey(), entry.getValue());
+        }
+        return allCopied;
+    }
+
+    /**
+     * read the configured share of the copied files of an issue again and compare them with the integrity manifest, files that do not match are
+     * removed from the master folder or the stage and from the map
+     * 
+     * @param plan ImportPlan containing all pages
+     * @param copied indexes of the copied pages and their paths in the master folder or the stage
+     * @param group runs the verifications of the issue
+     * @return true if all files match the manifest, false otherwise
+     * @throws InterruptedException
+     */
+    private boolean verifyCopies(ImportPlan plan, Map<Integer, Path> copied, IoExecutor.Group group) throws InterruptedException {
+        // the verification runs in parallel like the copies, the sources are only deleted once the stage of the year is committed
+        Map<Integer, Future<Boolean>> verifications = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Path> entry : copied.entrySet()) {
+            if (!IntegrityManifest.isSampled(entry.getKey(), integrityVerifyPercent)) {
+                continue;
+            }
+            Path masterPath = entry.getValue();
+            Path listedAs = stage != null ? stage.getFinalPath(plan.getPath(entry.getKey())) : masterPath;
+            verifications.put(entry.getKey(), group.fork(() -> {
+                long size = masterPath.toFile().length();
+                long start = ioGovernor.acquire(size);
+                try {
+                    return integrityManifest.verify(masterPath, listedAs);
+                } finally {
+                    ioGovernor.release(start, size);
+                }
+            }));
+        }
+
+        boolean allVerified = true;
+        for (Map.Entry<Integer, Future<Boolean>> verification : verifications.entrySet()) {
+            int page = verification.getKey();
+            Path masterPath = copied.get(page);
+            boolean verified;
+            try {
+                verified = verification.getValue().get();
+            } catch (ExecutionException e) {
+                log.error("Error while verifying file " + masterPath, e.getCause());
+                verified = false;
+            }
+            if (!verified) {
+                allVerified = false;
+                errors++;
+                reportError("Copy of file " + plan.getPath(page) + " does not match the integrity manifest, the source is kept");
+                copied.remove(page);
+                integrityManifest.remove(stage != null ? stage.getFinalPath(plan.getPath(page)) : masterPath);
+                if (stage != null) {
+                    discardStagedFile(plan.getPath(page));
+                } else {
+                    try {
+                        storageProvider.deleteFile(masterPath);
+                    } catch (IOException e) {
+                        log.error("Error while deleting the corrupt copy " + masterPath, e);
+                    }
+                }
+            }
+        }
+        return allVerified;
+    }
+
+    /**
+     * remove a file from the stage of the current year, so that it is neither moved into the master folder nor deleted from the source
+     * 
+     * @param filePath path of the file in the import folder
+     */
+    private void discardStagedFile(Path filePath) {
+        try {
+            stage.discard(filePath);
+        } catch (IOException e) {
+            // the source is kept in any case, only the staged file remains
+            log.error("Error while removing the staged copy of " + filePath, e);
+        }
+    }
+
+    /**
+     * copy a single file into the master folder once the I/O governor allows it
+     * 
+     * @param process Process whose master folder is targeted
+     * @param filePath path of the file
+     * @return path of the file in the master folder, or null if the file could not be read
+     */
+    private Path copyFileToMasterFolderGoverned(Process process, Path filePath)
+            throws IOException, SwapException, DAOException, InterruptedException {
+        SourceFile sourceFile = sourceStorage.stat(filePath);
+        long size = sourceFile != null ? sourceFile.getSize() : 0;
+        long start = ioGovernor.acquire(size);
+        try {
+            Path masterPath = copyFileToMasterFolder(process, filePath);
+            if (masterPath != null) {
+                copiedBytes.addAndGet(size);
             }
+            return masterPath;
+        } finally {
+            ioGovernor.release(start, size);
         }
     }
 
-    private void copyPagesToMasterFolder(Process process, List<NewspaperPage> pages) throws IOException, SwapException, DAOException {
-        for (NewspaperPage page : pages) {
-            Path path = page.getFilePath();
-            copyFileToMasterFolder(process, path);
+    /**
+     * schedule the creation of the derivatives of the copied pages if configured
+     * 
+     * @param process Process whose media folder is targeted
+     * @param plan ImportPlan containing all pages
+     * @param masterPaths indexes of the copied pages and their paths in the master folder
+     * @throws IOException
+     * @throws SwapException
+     * @throws DAOException
+     */
+    private void scheduleDerivatives(Process process, ImportPlan plan, Map<Integer, Path> masterPaths)
+            throws IOException, SwapException, DAOException {
+        if (derivativeGenerator == null) {
+            return;
+        }
+        String mediaFolder = process.getImagesTifDirectory(false);
+        for (Map.Entry<Integer, Path> entry : masterPaths.entrySet()) {
+            String fileName = plan.getPath(entry.getKey()).getFileName().toString();
+            if (DerivativeGenerator.isSupported(fileName)) {
+                Path derivativePath = Path.of(mediaFolder, replaceFileExtension(fileName, "jpg"));
+                pendingDerivatives.add(new PendingDerivative(entry.getKey(), derivativeGenerator.submit(entry.getValue(), derivativePath)));
+            }
         }
     }
 
     /**
-     * start all automatic tasks that are open
+     * wait for all scheduled derivatives and mark the pages whose derivatives were created successfully
      * 
-     * @param process
+     * @param plan ImportPlan containing all pages
      */
-    @SuppressWarnings("unused")
-    private void startOpenAutomaticTasks(Process process) { // NOSONAR
-        // start any open automatic tasks for the created process
-        for (Step s : process.getSchritteList()) {
-            if (StepStatus.OPEN.equals(s.getBearbeitungsstatusEnum()) && s.isTypAutomatisch()) {
-                ScriptThreadWithoutHibernate myThread = new ScriptThreadWithoutHibernate(s);
-                myThread.startOrPutToQueue();
+    private void registerDerivatives(ImportPlan plan) throws InterruptedException {
+        for (PendingDerivative pending : pendingDerivatives) {
+            try {
+                pending.getFuture().get();
+                plan.markDerivativeCreated(pending.getPage());
+            } catch (ExecutionException e) {
+                errors++;
+                log.error("Error while creating the derivative", e.getCause());
+                reportError("Failed to create the derivative for '" + plan.getPath(pending.getPage()).getFileName() + "': "
+                        + e.getCause().getMessage());
             }
         }
+        pendingDerivatives.clear();
     }
 
     /**
@@ -924,9 +2035,12 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
      */
     private void reportError(String message) {
         log.error(message);
-        updateLog(message, 3);
+        updateLog(message, ImportLog.LEVEL_ERROR);
         Helper.setFehlerMeldung(message);
-        pusher.send("error");
+        // headless imports have no push channel
+        if (pusher != null) {
+            pusher.send("error");
+        }
     }
 
     @Override
@@ -935,12 +2049,35 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
     }
 
     /**
-     * simple method to send status message to gui
+     * fetch the messages after the cursor of the GUI, called by the GUI after each update
+     */
+    public void fetchLog() {
+        logPage = importLog.fetch(logCursor, logLevel, LOG_PAGE_SIZE);
+        logCursor = logPage.getCursor();
+    }
+
+    /**
+     * fetch the log from its oldest message again, e.g. after the level filter was changed
+     */
+    public void resetLog() {
+        logCursor = 0;
+        fetchLog();
+    }
+
+    /**
+     * @return the errors of the import, they are kept even if the log contains many messages after them
+     */
+    public List<ImportLog.Entry> getErrorLog() {
+        return importLog.getErrors();
+    }
+
+    /**
+     * simple method to send status message to gui, logged as info
      *
      * @param logmessage
      */
     private void updateLog(String logmessage) {
-        updateLog(logmessage, 0);
+        updateLog(logmessage, ImportLog.LEVEL_INFO);
     }
 
     /**
@@ -949,7 +2086,8 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
      * @param logmessage
      */
     private void updateLog(String logmessage, int level) {
-        logQueue.add(new LogMessage(logmessage, level));
+        importLog.add(logmessage, level);
+        lastMessage = logmessage;
         log.debug(logmessage);
         if (pusher != null && System.currentTimeMillis() - lastPush > 500) {
             lastPush = System.currentTimeMillis();
@@ -959,8 +2097,9 @@ public class NewspaperPageImporterWorkflowPlugin implements IWorkflowPlugin, IPu
 
     @Data
     @AllArgsConstructor
-    public class LogMessage {
-        private String message;
-        private int level = 0;
+    private static class PendingDerivative {
+        // index of the page in the import plan
+        private int page;
+        private Future<Path> future;
     }
 }
@@ -0,0 +1,61 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.Getter;
+
+/**
+ * The typed and immutable configuration of the plugin. The configuration file is parsed once and kept until the file changes, so that creating
+ * the plugin and looking up a set do not read the file again.
+ */
+public class PluginConfiguration {
+
+    private static final Map<String, ConfigurationCache<PluginConfiguration>> CACHES = new ConcurrentHashMap<>();
+
+    private final Map<String, SetConfiguration> sets;
+    // titles of the sets in the order of the configuration file
+    @Getter
+    private final List<String> setTitles;
+
+    PluginConfiguration(HierarchicalConfiguration config) {
+        Map<String, SetConfiguration> parsed = new LinkedHashMap<>();
+        for (HierarchicalConfiguration setConfig : config.configurationsAt("set")) {
+            SetConfiguration set = new SetConfiguration(setConfig);
+            // the first set with a title is used, like before
+            parsed.putIfAbsent(set.getTitle(), set);
+        }
+        sets = Collections.unmodifiableMap(parsed);
+        setTitles = Collections.unmodifiableList(new ArrayList<>(parsed.keySet()));
+    }
+
+    /**
+     * @param title title of the set
+     * @return the configuration of the set, or null if the set is not configured
+     */
+    public SetConfiguration getSet(String title) {
+        return sets.get(title);
+    }
+
+    /**
+     * get the configuration of a plugin, the file is only parsed again if it changed since the last call
+     *
+     * @param pluginTitle title of the plugin
+     * @return the current configuration
+     */
+    public static PluginConfiguration get(String pluginTitle) {
+        return CACHES.computeIfAbsent(pluginTitle,
+                t -> new ConfigurationCache<>(Path.of(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + t + ".xml"),
+                        () -> new PluginConfiguration(ConfigPlugins.getPluginConfig(t))))
+                .get();
+    }
+}
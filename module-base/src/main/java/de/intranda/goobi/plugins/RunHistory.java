@@ -0,0 +1,150 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.intranda.goobi.plugins.model.ImportRun;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The history of the import runs of all sets, kept in a file with one line per run. It is used to show the trend of the throughput, to flag runs
+ * that are much slower than the previous runs of their set, e.g. because the storage degraded or a new version of the plugin is slower, and to
+ * estimate the duration of the next run before its own throughput is known.
+ *
+ * Runs are appended to the file, which is read again whenever another node changed it. All methods are thread safe.
+ */
+@Log4j2
+public class RunHistory {
+
+    public static final String FILE_NAME = "runs.tsv";
+
+    // number of runs that are kept, the oldest runs are removed when more runs are recorded
+    private static final int MAX_RUNS = 1000;
+    // number of previous completed runs of a set whose median throughput is compared
+    private static final int MEDIAN_WINDOW = 20;
+    // runs of sets with fewer previous completed runs are not flagged
+    private static final int MIN_RUNS = 3;
+    // runs below this share of the median throughput are flagged as slow
+    private static final double SLOW_FACTOR = 0.5;
+
+    @Getter
+    private final Path file;
+    private final List<ImportRun> runs = new ArrayList<>();
+    private long lastModified = -1;
+
+    /**
+     * @param file file of the history, created with the first run
+     */
+    public RunHistory(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * add a run to the history, the run is flagged if its throughput is far below the median of the previous runs of its set
+     *
+     * @param run the finished run
+     * @return the recorded run with its slow flag
+     * @throws IOException
+     */
+    public synchronized ImportRun record(ImportRun run) throws IOException {
+        reload();
+        double median = median(run.getSet());
+        ImportRun recorded = run.withSlow(run.isCompleted() && median > 0 && run.getPagesPerSecond() < median * SLOW_FACTOR);
+        runs.add(recorded);
+
+        Files.createDirectories(file.getParent());
+        if (runs.size() > MAX_RUNS) {
+            runs.subList(0, runs.size() - MAX_RUNS).clear();
+            List<String> lines = new ArrayList<>(runs.size());
+            for (ImportRun kept : runs) {
+                lines.add(kept.toLine());
+            }
+            // the history is replaced in one step, a crash leaves either the old or the new file
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.write(file, Collections.singletonList(recorded.toLine()), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        lastModified = Files.getLastModifiedTime(file).toMillis();
+        return recorded;
+    }
+
+    /**
+     * @param limit maximum number of runs
+     * @return the newest runs of all sets, newest first
+     */
+    public synchronized List<ImportRun> getRecentRuns(int limit) {
+        reload();
+        List<ImportRun> recent = new ArrayList<>(runs.subList(Math.max(0, runs.size() - limit), runs.size()));
+        Collections.reverse(recent);
+        return recent;
+    }
+
+    /**
+     * @param set title of the set
+     * @return the median throughput of the last completed runs of the set in pages per second, 0 if the set was never imported completely
+     */
+    public synchronized double getMedianPagesPerSecond(String set) {
+        reload();
+        return median(set);
+    }
+
+    private double median(String set) {
+        List<Double> rates = new ArrayList<>();
+        for (int i = runs.size() - 1; i >= 0 && rates.size() < MEDIAN_WINDOW; i--) {
+            ImportRun run = runs.get(i);
+            if (run.isCompleted() && run.getSet().equals(set) && run.getPagesPerSecond() > 0) {
+                rates.add(run.getPagesPerSecond());
+            }
+        }
+        if (rates.size() < MIN_RUNS) {
+            return 0;
+        }
+        Collections.sort(rates);
+        int middle = rates.size() / 2;
+        return rates.size() % 2 == 1 ? rates.get(middle) : (rates.get(middle - 1) + rates.get(middle)) / 2;
+    }
+
+    private void reload() {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(file).toMillis();
+        } catch (NoSuchFileException e) {
+            runs.clear();
+            lastModified = -1;
+            return;
+        } catch (IOException e) {
+            log.warn("Cannot read the run history " + file, e);
+            return;
+        }
+        if (modified == lastModified) {
+            return;
+        }
+        try {
+            List<ImportRun> read = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                ImportRun run = ImportRun.parse(line);
+                // lines of a later version or lines that were only partly written are skipped
+                if (run != null) {
+                    read.add(run);
+                }
+            }
+            runs.clear();
+            runs.addAll(read);
+            lastModified = modified;
+        } catch (IOException e) {
+            log.warn("Cannot read the run history " + file, e);
+        }
+    }
+}
@@ -0,0 +1,886 @@
+package de.intranda.goobi.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.intranda.goobi.plugins.model.SourceFile;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Import folder in a bucket of an S3 compatible object storage like MinIO, Ceph or AWS S3. The folder is a prefix of the object keys, the paths
+ * of the files are their keys. The requests are signed with AWS signature version 4, without credentials they are sent anonymously.
+ *
+ * The sizes and modification times are taken from the listing, so that the validation of a set needs no request per file besides the image
+ * headers. Objects larger than the part size are downloaded in parts by parallel range requests. The files of the next issue can be prefetched
+ * into a local spool folder while the current issue is imported, up to the configured number of bytes. Prefetched files that are not opened
+ * are removed by {@link #cancelPrefetch()}.
+ */
+@Log4j2
+public class S3SourceStorage implements SourceStorage {
+
+    private static final String EMPTY_PAYLOAD_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final DateTimeFormatter AMZ_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    // size of the blocks that are read for the image headers
+    private static final int CHANNEL_BLOCK_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    @Getter
+    private final URI endpoint;
+    @Getter
+    private final String bucket;
+    // prefix of the keys of the import folder, empty or ending with a slash
+    @Getter
+    private final String prefix;
+    private final boolean pathStyle;
+    // null for anonymous requests
+    private final Signer signer;
+    // maximum number of parallel range requests per file
+    @Getter
+    private final int threads;
+    @Getter
+    private final int partSize;
+    // maximum number of bytes in the spool folder
+    @Getter
+    private final long prefetchSize;
+    // downloads the parts of the files
+    private final ExecutorService partExecutor;
+    // downloads the prefetched files, separate from the parts to never wait for tasks of the own pool
+    private final ExecutorService prefetchExecutor;
+
+    // sizes and modification times of the last listing by key
+    private final Map<String, SourceFile> listing = new ConcurrentHashMap<>();
+    // files that are downloaded in the background by key
+    private final Map<String, Prefetch> prefetched = new ConcurrentHashMap<>();
+    // guarded by this
+    private long prefetchedBytes;
+    private Path spoolFolder;
+
+    private S3SourceStorage(Builder builder) {
+        this.endpoint = builder.endpoint;
+        this.bucket = builder.bucket;
+        this.prefix = builder.prefix;
+        this.pathStyle = builder.pathStyle;
+        this.signer = builder.accessKey == null || builder.accessKey.isBlank() ? null
+                : new Signer(builder.accessKey, builder.secretKey, builder.region);
+        this.threads = Math.max(1, builder.threads);
+        this.partSize = Math.max(1, builder.partSize);
+        this.prefetchSize = Math.max(0, builder.prefetchSize);
+        this.partExecutor = Executors.newFixedThreadPool(threads, S3SourceStorage::newDaemonThread);
+        this.prefetchExecutor = Executors.newFixedThreadPool(threads, S3SourceStorage::newDaemonThread);
+    }
+
+    /**
+     * @param endpoint URL of the object storage, e.g. http://minio:9000
+     * @param bucket name of the bucket
+     * @return a builder for the storage
+     */
+    public static Builder builder(URI endpoint, String bucket) {
+        return new Builder(endpoint, bucket);
+    }
+
+    @Override
+    public String getLocation() {
+        return endpoint.toString().replaceAll("/+$", "") + "/" + bucket + "/" + prefix;
+    }
+
+    @Override
+    public List<Path> list() throws IOException {
+        listing.clear();
+        List<Path> files = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            SortedMap<String, String> query = new TreeMap<>();
+            query.put("list-type", "2");
+            query.put("prefix", prefix);
+            query.put("delimiter", "/");
+            if (continuationToken != null) {
+                query.put("continuation-token", continuationToken);
+            }
+            HttpResponse<InputStream> response = send(request("GET", null, query, null), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                checkStatus(response.statusCode(), "list", prefix, body);
+                continuationToken = readListing(body, files);
+            }
+        } while (continuationToken != null);
+        files.sort(null);
+        return files;
+    }
+
+    @Override
+    public SourceFile stat(Path file) throws IOException {
+        String key = toKey(file);
+        SourceFile sourceFile = listing.get(key);
+        if (sourceFile != null) {
+            return sourceFile;
+        }
+        HttpResponse<Void> response = send(request("HEAD", key, null, null), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404 || response.statusCode() == 403) {
+            return null;
+        }
+        checkStatus(response.statusCode(), "stat", key, null);
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        long lastModified = response.headers()
+                .firstValue("Last-Modified")
+                .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                .orElse(0L);
+        sourceFile = new SourceFile(size, lastModified);
+        listing.put(key, sourceFile);
+        return sourceFile;
+    }
+
+    @Override
+    public InputStream open(Path file) throws IOException {
+        String key = toKey(file);
+        Path spooled = takePrefetched(key);
+        if (spooled != null) {
+            return new FilterInputStream(Files.newInputStream(spooled)) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    Files.deleteIfExists(spooled);
+                }
+            };
+        }
+        SourceFile sourceFile = stat(file);
+        if (sourceFile == null) {
+            throw new NoSuchFileException(key);
+        }
+        if (sourceFile.getSize() <= partSize) {
+            return new ByteArrayInputStream(readRange(key, 0, (int) sourceFile.getSize()));
+        }
+        return new PartInputStream(key, sourceFile.getSize());
+    }
+
+    @Override
+    public SeekableByteChannel openChannel(Path file) throws IOException {
+        String key = toKey(file);
+        SourceFile sourceFile = stat(file);
+        if (sourceFile == null) {
+            throw new NoSuchFileException(key);
+        }
+        return new RangeChannel(key, sourceFile.getSize());
+    }
+
+    @Override
+    public void delete(Path file) throws IOException {
+        String key = toKey(file);
+        HttpResponse<String> response = send(request("DELETE", key, null, null), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 404) {
+            checkStatus(response.statusCode(), "delete", key, null);
+        }
+        listing.remove(key);
+    }
+
+    /**
+     * copy a file by parallel range requests into the target, or move the prefetched file there
+     */
+    @Override
+    public void copy(Path file, Path target) throws IOException {
+        String key = toKey(file);
+        SourceFile sourceFile = stat(file);
+        if (sourceFile == null) {
+            throw new NoSuchFileException(key);
+        }
+        Path spooled = takePrefetched(key);
+        if (spooled != null) {
+            Files.move(spooled, target, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            download(key, sourceFile.getSize(), target);
+        }
+        Files.setLastModifiedTime(target, FileTime.fromMillis(sourceFile.getLastModified()));
+    }
+
+    @Override
+    public synchronized void prefetch(List<Path> files) {
+        for (Path file : files) {
+            String key = toKey(file);
+            SourceFile sourceFile = listing.get(key);
+            if (sourceFile == null || prefetched.containsKey(key)) {
+                continue;
+            }
+            if (prefetchedBytes + sourceFile.getSize() > prefetchSize) {
+                // the files are prefetched in order, the next ones are needed even later
+                return;
+            }
+            try {
+                Prefetch prefetch = new Prefetch(sourceFile.getSize(), getSpoolFolder().resolve(UUID.randomUUID().toString()));
+                prefetchedBytes += sourceFile.getSize();
+                prefetch.download = prefetchExecutor.submit(() -> {
+                    try {
+                        download(key, sourceFile.getSize(), prefetch.spoolFile);
+                    } finally {
+                        // a download that is still writing when it is cancelled removes its file itself
+                        if (prefetch.cancelled) {
+                            Files.deleteIfExists(prefetch.spoolFile);
+                        }
+                    }
+                    return prefetch.spoolFile;
+                });
+                prefetched.put(key, prefetch);
+            } catch (IOException e) {
+                log.warn("Failed to create the spool folder, the files are not prefetched", e);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void cancelPrefetch() {
+        for (String key : new ArrayList<>(prefetched.keySet())) {
+            Prefetch prefetch = prefetched.remove(key);
+            if (prefetch == null) {
+                // taken by a copy in the meantime
+                continue;
+            }
+            prefetch.cancelled = true;
+            prefetch.download.cancel(true);
+            prefetchedBytes -= prefetch.size;
+            try {
+                Files.deleteIfExists(prefetch.spoolFile);
+            } catch (IOException e) {
+                log.warn("Failed to delete the prefetched file " + prefetch.spoolFile, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        partExecutor.shutdownNow();
+        prefetchExecutor.shutdownNow();
+        synchronized (this) {
+            prefetched.clear();
+            prefetchedBytes = 0;
+            if (spoolFolder != null) {
+                try (Stream<Path> files = Files.list(spoolFolder)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                    Files.deleteIfExists(spoolFolder);
+                } catch (IOException e) {
+                    log.warn("Failed to delete the spool folder " + spoolFolder, e);
+                }
+                spoolFolder = null;
+            }
+        }
+    }
+
+    /**
+     * @return the prefetched file, or null if the file was not prefetched or its download failed
+     */
+    private Path takePrefetched(String key) throws IOException {
+        Prefetch prefetch = prefetched.remove(key);
+        if (prefetch == null) {
+            return null;
+        }
+        try {
+            return prefetch.download.get();
+        } catch (ExecutionException e) {
+            log.warn("Prefetching of " + key + " failed, it is downloaded again", e.getCause());
+            Files.deleteIfExists(prefetch.spoolFile);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the prefetched file " + key);
+        } finally {
+            synchronized (this) {
+                prefetchedBytes -= prefetch.size;
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes that are prefetched and not opened yet
+     */
+    public synchronized long getPrefetchedBytes() {
+        return prefetchedBytes;
+    }
+
+    synchronized Path getSpoolFolder() throws IOException {
+        if (spoolFolder == null) {
+            spoolFolder = Files.createTempDirectory("newspaper-import-prefetch");
+        }
+        return spoolFolder;
+    }
+
+    /**
+     * download a file into the target, the parts are written in parallel at their positions
+     */
+    private void download(String key, long size, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Future<Void>> parts = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += partSize) {
+                long partOffset = offset;
+                long partLength = Math.min(partSize, size - offset);
+                parts.add(partExecutor.submit(() -> {
+                    writeRange(key, partOffset, partLength, channel);
+                    return null;
+                }));
+            }
+            await(parts);
+        }
+    }
+
+    private void writeRange(String key, long offset, long length, FileChannel channel) throws IOException {
+        HttpResponse<InputStream> response = send(request("GET", key, null, range(offset, length)), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream in = response.body()) {
+            checkStatus(response.statusCode(), "read", key, in);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = offset;
+            int read;
+            while (position < offset + length && (read = in.read(buffer, 0, (int) Math.min(buffer.length, offset + length - position))) != -1) {
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+            }
+            if (position < offset + length) {
+                throw new EOFException("Object " + key + " ended at byte " + position + " instead of " + (offset + length));
+            }
+        }
+    }
+
+    private byte[] readRange(String key, long offset, int length) throws IOException {
+        if (length == 0) {
+            return new byte[0];
+        }
+        HttpResponse<byte[]> response = send(request("GET", key, null, range(offset, length)), HttpResponse.BodyHandlers.ofByteArray());
+        checkStatus(response.statusCode(), "read", key, null);
+        byte[] data = response.body();
+        if (data.length < length) {
+            throw new EOFException("Object " + key + " ended at byte " + (offset + data.length) + " instead of " + (offset + length));
+        }
+        return data.length == length ? data : Arrays.copyOf(data, length);
+    }
+
+    private static String range(long offset, long length) {
+        return "bytes=" + offset + "-" + (offset + length - 1);
+    }
+
+    private static <T> void await(List<Future<T>> futures) throws IOException {
+        try {
+            for (Future<T> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * read the contents of a page of ListObjectsV2 into the listing
+     *
+     * @return the token of the next page, or null if this was the last one
+     */
+    private String readListing(InputStream body, List<Path> files) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        String continuationToken = null;
+        boolean truncated = false;
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(body);
+            String key = null;
+            long size = 0;
+            long lastModified = 0;
+            boolean inContents = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "Contents":
+                            inContents = true;
+                            key = null;
+                            size = 0;
+                            lastModified = 0;
+                            break;
+                        case "Key":
+                            key = inContents ? reader.getElementText() : key;
+                            break;
+                        case "Size":
+                            size = inContents ? Long.parseLong(reader.getElementText().trim()) : size;
+                            break;
+                        case "LastModified":
+                            lastModified = inContents ? Instant.parse(reader.getElementText().trim()).toEpochMilli() : lastModified;
+                            break;
+                        case "IsTruncated":
+                            truncated = Boolean.parseBoolean(reader.getElementText().trim());
+                            break;
+                        case "NextContinuationToken":
+                            continuationToken = reader.getElementText();
+                            break;
+                        default:
+                            // other elements are not needed
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "Contents".equals(reader.getLocalName())) {
+                    inContents = false;
+                    String name = key == null ? "" : key.substring(Math.min(prefix.length(), key.length()));
+                    // folder markers and hidden files are skipped like on the file system
+                    if (!name.isEmpty() && !name.contains("/") && !name.startsWith(".")) {
+                        files.add(Path.of(key));
+                        listing.put(key, new SourceFile(size, lastModified));
+                    }
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new IOException("Failed to read the listing of " + bucket + "/" + prefix, e);
+        }
+        return truncated ? continuationToken : null;
+    }
+
+    private HttpRequest request(String method, String key, SortedMap<String, String> query, String range) {
+        String host = pathStyle ? endpoint.getRawAuthority() : bucket + "." + endpoint.getRawAuthority();
+        String path = (pathStyle ? "/" + bucket : "") + "/" + (key == null ? "" : uriEncode(key, false));
+        StringBuilder canonicalQuery = new StringBuilder();
+        if (query != null) {
+            for (Map.Entry<String, String> parameter : query.entrySet()) {
+                if (canonicalQuery.length() > 0) {
+                    canonicalQuery.append('&');
+                }
+                canonicalQuery.append(uriEncode(parameter.getKey(), true)).append('=').append(uriEncode(parameter.getValue(), true));
+            }
+        }
+        URI uri = URI.create(endpoint.getScheme() + "://" + host + path + (canonicalQuery.length() > 0 ? "?" + canonicalQuery : ""));
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).method(method, HttpRequest.BodyPublishers.noBody());
+        SortedMap<String, String> headers = new TreeMap<>();
+        if (range != null) {
+            headers.put("range", range);
+        }
+        if (signer != null) {
+            headers.put("x-amz-content-sha256", EMPTY_PAYLOAD_HASH);
+            headers.put("x-amz-date", AMZ_DATE_FORMAT.format(Instant.now()));
+            builder.header("Authorization", signer.authorization(method, host, path, canonicalQuery.toString(), headers, EMPTY_PAYLOAD_HASH));
+        }
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return client.send(request, handler);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                // all requests are idempotent, they are repeated if e.g. the storage closed an idle connection
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Repeating request " + request.method() + " " + request.uri() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void checkStatus(int status, String action, String key, InputStream body) throws IOException {
+        if (status >= 200 && status < 300) {
+            return;
+        }
+        String message = "";
+        if (body != null) {
+            message = ": " + new String(body.readNBytes(1024), StandardCharsets.UTF_8);
+        }
+        throw new IOException("Failed to " + action + " " + bucket + "/" + key + ", status " + status + message);
+    }
+
+    private static String toKey(Path file) {
+        return file.toString().replace('\\', '/');
+    }
+
+    /**
+     * encode a string as required by the signature, all characters besides the unreserved ones are percent encoded
+     */
+    static String uriEncode(String value, boolean encodeSlash) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.' || c == '~'
+                    || (c == '/' && !encodeSlash)) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static Thread newDaemonThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "s3-source-download");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public static class Builder {
+        private final URI endpoint;
+        private final String bucket;
+        private String prefix = "";
+        private String region = "us-east-1";
+        private String accessKey;
+        private String secretKey;
+        private boolean pathStyle = true;
+        private int threads = 4;
+        private int partSize = 8 * 1024 * 1024;
+        private long prefetchSize;
+
+        private Builder(URI endpoint, String bucket) {
+            this.endpoint = endpoint;
+            this.bucket = bucket;
+        }
+
+        /**
+         * @param prefix folder of the files inside the bucket
+         * @return this builder
+         */
+        public Builder prefix(String prefix) {
+            String normalized = prefix == null ? "" : prefix.replaceAll("^/+", "");
+            this.prefix = normalized.isEmpty() || normalized.endsWith("/") ? normalized : normalized + "/";
+            return this;
+        }
+
+        public Builder region(String region) {
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * @param accessKey access key, the requests are sent anonymously if it is empty
+         * @param secretKey secret key
+         * @return this builder
+         */
+        public Builder credentials(String accessKey, String secretKey) {
+            this.accessKey = accessKey;
+            this.secretKey = secretKey;
+            return this;
+        }
+
+        /**
+         * @param pathStyle true to address the bucket in the path like MinIO does by default, false to use it as subdomain of the endpoint
+         * @return this builder
+         */
+        public Builder pathStyle(boolean pathStyle) {
+            this.pathStyle = pathStyle;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param partSize size of the range requests in bytes
+         * @return this builder
+         */
+        public Builder partSize(int partSize) {
+            this.partSize = partSize;
+            return this;
+        }
+
+        /**
+         * @param prefetchSize maximum number of bytes that are prefetched, 0 to disable the prefetching
+         * @return this builder
+         */
+        public Builder prefetchSize(long prefetchSize) {
+            this.prefetchSize = prefetchSize;
+            return this;
+        }
+
+        public S3SourceStorage build() {
+            return new S3SourceStorage(this);
+        }
+    }
+
+    /**
+     * a file that is downloaded into the spool folder
+     */
+    private static final class Prefetch {
+        private final long size;
+        private final Path spoolFile;
+        // set before the prefetch is published in the map
+        private Future<Path> download;
+        private volatile boolean cancelled;
+
+        private Prefetch(long size, Path spoolFile) {
+            this.size = size;
+            this.spoolFile = spoolFile;
+        }
+    }
+
+    /**
+     * streams a large object, the next parts are downloaded in parallel while the current one is read
+     */
+    private final class PartInputStream extends InputStream {
+        private final String key;
+        private final long size;
+        private final Deque<Future<byte[]>> parts = new ArrayDeque<>();
+        private long nextOffset;
+        private byte[] current;
+        private int position;
+
+        private PartInputStream(String key, long size) {
+            this.key = key;
+            this.size = size;
+            requestParts();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextPart()) {
+                return -1;
+            }
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextPart()) {
+                return -1;
+            }
+            int read = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() {
+            for (Future<byte[]> part : parts) {
+                part.cancel(true);
+            }
+            parts.clear();
+        }
+
+        private void requestParts() {
+            while (parts.size() < threads && nextOffset < size) {
+                long offset = nextOffset;
+                int length = (int) Math.min(partSize, size - offset);
+                parts.add(partExecutor.submit(() -> readRange(key, offset, length)));
+                nextOffset += length;
+            }
+        }
+
+        private boolean nextPart() throws IOException {
+            while (current == null || position == current.length) {
+                Future<byte[]> part = parts.poll();
+                if (part == null) {
+                    return false;
+                }
+                try {
+                    current = part.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while downloading " + key);
+                } catch (ExecutionException e) {
+                    close();
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+                position = 0;
+                requestParts();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * positional reads by range requests, the last block is kept for the small reads of the image headers
+     */
+    private final class RangeChannel implements SeekableByteChannel {
+        private final String key;
+        private final long size;
+        private long position;
+        private long blockOffset = -1;
+        private byte[] block;
+        private boolean open = true;
+
+        private RangeChannel(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            long offset = position - position % CHANNEL_BLOCK_SIZE;
+            if (offset != blockOffset) {
+                block = readRange(key, offset, (int) Math.min(CHANNEL_BLOCK_SIZE, size - offset));
+                blockOffset = offset;
+            }
+            int start = (int) (position - offset);
+            int read = Math.min(destination.remaining(), block.length - start);
+            destination.put(block, start, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            this.position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long newSize) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    /**
+     * signs requests with AWS signature version 4
+     */
+    static final class Signer {
+        private final String accessKey;
+        private final String secretKey;
+        private final String region;
+
+        Signer(String accessKey, String secretKey, String region) {
+            this.accessKey = accessKey;
+            this.secretKey = secretKey;
+            this.region = region;
+        }
+
+        /**
+         * @param method HTTP method
+         * @param host value of the host header
+         * @param path encoded path of the request
+         * @param query encoded and sorted query of the request
+         * @param headers lower case names and values of the headers to sign besides the host, must contain x-amz-date
+         * @param payloadHash hex encoded SHA-256 hash of the body
+         * @return value of the authorization header
+         */
+        String authorization(String method, String host, String path, String query, SortedMap<String, String> headers, String payloadHash) {
+            SortedMap<String, String> signedHeaders = new TreeMap<>(headers);
+            signedHeaders.put("host", host);
+            StringBuilder canonicalRequest = new StringBuilder();
+            canonicalRequest.append(method).append('\n').append(path).append('\n').append(query).append('\n');
+            for (Map.Entry<String, String> header : signedHeaders.entrySet()) {
+                canonicalRequest.append(header.getKey()).append(':').append(header.getValue().trim()).append('\n');
+            }
+            String signedHeaderNames = String.join(";", signedHeaders.keySet());
+            canonicalRequest.append('\n').append(signedHeaderNames).append('\n').append(payloadHash);
+
+            String amzDate = headers.get("x-amz-date");
+            String scope = amzDate.substring(0, 8) + "/" + region + "/s3/aws4_request";
+            String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                    + HexFormat.of().formatHex(sha256(canonicalRequest.toString()));
+
+            byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), amzDate.substring(0, 8));
+            key = hmac(key, region);
+            key = hmac(key, "s3");
+            key = hmac(key, "aws4_request");
+            String signature = HexFormat.of().formatHex(hmac(key, stringToSign));
+            return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope + ", SignedHeaders=" + signedHeaderNames + ", Signature=" + signature;
+        }
+
+        private static byte[] sha256(String value) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                // every Java platform supports SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static byte[] hmac(byte[] key, String value) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(key, "HmacSHA256"));
+                return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                // every Java platform supports HmacSHA256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
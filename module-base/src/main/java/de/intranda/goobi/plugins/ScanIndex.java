@@ -0,0 +1,274 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.intranda.goobi.plugins.model.EditionClassifier;
+import de.intranda.goobi.plugins.model.ImageInfo;
+import de.intranda.goobi.plugins.model.ImportPlan;
+import de.intranda.goobi.plugins.model.SourceFile;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Results of the last scan of an import folder, so that a rescan only has to read the headers of new or changed files. For each file the size,
+ * the modification time, the date and page number parsed from its name and the technical metadata or the problem found in its image header are
+ * kept. An entry is only used while the size and the modification time of the file are unchanged.
+ *
+ * The index is a binary file that is read completely when it is opened and replaced in one step when it is saved. The editions are not kept,
+ * because they depend on the configured rules. All methods besides {@link #save(List)} are thread safe.
+ */
+@Log4j2
+public class ScanIndex {
+
+    public static final String FILE_SUFFIX = ".scanindex";
+
+    private static final int MAGIC = 0x4E505349;
+    // must be increased whenever the stored values or the checks of the image headers change
+    private static final int VERSION = 2;
+
+    @Getter
+    private final Path indexFile;
+    // entries by file name
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // number of lookups that found a valid entry since the index was opened
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private ScanIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * open the index of an import folder, an unreadable index is replaced by an empty one
+     *
+     * @param folder folder of the index files of all import folders
+     * @param location URI of the import folder, see {@link SourceStorage#getLocation()}
+     * @return the index
+     */
+    public static ScanIndex open(Path folder, String location) {
+        ScanIndex index = new ScanIndex(folder.resolve(hash(location) + FILE_SUFFIX));
+        if (Files.exists(index.indexFile)) {
+            try {
+                index.read();
+            } catch (IOException e) {
+                log.warn("The scan index " + index.indexFile + " cannot be read, all files are scanned again", e);
+                index.entries.clear();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param fileName name of the file
+     * @param sourceFile current size and modification time of the file
+     * @return the entry of the file, or null if the file was not scanned before or has changed since
+     */
+    public Entry get(String fileName, SourceFile sourceFile) {
+        Entry entry = entries.get(fileName);
+        if (entry == null || entry.size != sourceFile.getSize() || entry.lastModified != sourceFile.getLastModified()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * store the result of the scan of a file
+     *
+     * @param fileName name of the file
+     * @param sourceFile size and modification time of the scanned file
+     * @param problem problem found in the image header, null if the header is valid
+     */
+    public void put(String fileName, SourceFile sourceFile, String problem) {
+        put(fileName, sourceFile, null, problem);
+    }
+
+    /**
+     * store the result of the scan of a file
+     *
+     * @param fileName name of the file
+     * @param sourceFile size and modification time of the scanned file
+     * @param imageInfo technical metadata read from the image header, null if the format is unknown or the header is invalid
+     * @param problem problem found in the image header, null if the header is valid
+     */
+    public void put(String fileName, SourceFile sourceFile, ImageInfo imageInfo, String problem) {
+        entries.put(fileName, new Entry(sourceFile.getSize(), sourceFile.getLastModified(), ImportPlan.parseDate(fileName),
+                ImportPlan.parsePageNumber(fileName), imageInfo, problem));
+    }
+
+    /**
+     * create the plan for the files, the dates and page numbers of indexed files are not parsed again
+     *
+     * @param files files that shall be imported
+     * @param editionClassifier classifier used to detect the edition of each file
+     * @return ImportPlan
+     */
+    public ImportPlan createPlan(List<Path> files, EditionClassifier editionClassifier) {
+        int[] dates = new int[files.size()];
+        int[] pageNumbers = new int[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            String fileName = files.get(i).getFileName().toString();
+            Entry entry = entries.get(fileName);
+            dates[i] = entry != null ? entry.date : ImportPlan.parseDate(fileName);
+            pageNumbers[i] = entry != null ? entry.pageNumber : ImportPlan.parsePageNumber(fileName);
+        }
+        return ImportPlan.create(files, dates, pageNumbers, editionClassifier);
+    }
+
+    /**
+     * write the index, entries of files that are no longer in the import folder are removed
+     *
+     * @param files all files of the import folder
+     * @throws IOException
+     */
+    public void save(List<Path> files) throws IOException {
+        Set<String> fileNames = new HashSet<>();
+        for (Path file : files) {
+            fileNames.add(file.getFileName().toString());
+        }
+        entries.keySet().retainAll(fileNames);
+
+        Files.createDirectories(indexFile.getParent());
+        // several nodes may scan the same folder, each writes its own temporary file
+        Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> indexEntry : entries.entrySet()) {
+                Entry entry = indexEntry.getValue();
+                out.writeUTF(indexEntry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeInt(entry.date);
+                out.writeInt(entry.pageNumber);
+                out.writeBoolean(entry.imageInfo != null);
+                if (entry.imageInfo != null) {
+                    writeImageInfo(out, entry.imageInfo);
+                }
+                out.writeBoolean(entry.problem != null);
+                if (entry.problem != null) {
+                    out.writeUTF(entry.problem);
+                }
+            }
+        }
+        // a crash leaves either the old or the new index
+        Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return number of files in the index
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of lookups that could use the stored result
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups of new or changed files
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a scan index");
+            }
+            if (in.readInt() != VERSION) {
+                // the results of older versions are not comparable, the files are scanned again
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String fileName = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int date = in.readInt();
+                int pageNumber = in.readInt();
+                ImageInfo imageInfo = in.readBoolean() ? readImageInfo(in) : null;
+                String problem = in.readBoolean() ? in.readUTF() : null;
+                entries.put(fileName, new Entry(size, lastModified, date, pageNumber, imageInfo, problem));
+            }
+        } catch (EOFException e) {
+            throw new IOException("The scan index is truncated", e);
+        }
+    }
+
+    private static void writeImageInfo(DataOutputStream out, ImageInfo imageInfo) throws IOException {
+        out.writeUTF(imageInfo.getFormat());
+        out.writeInt(imageInfo.getWidth());
+        out.writeInt(imageInfo.getHeight());
+        out.writeInt(imageInfo.getBitsPerSample());
+        out.writeInt(imageInfo.getSamplesPerPixel());
+        out.writeUTF(imageInfo.getCompression());
+        out.writeDouble(imageInfo.getXResolution());
+        out.writeDouble(imageInfo.getYResolution());
+    }
+
+    private static ImageInfo readImageInfo(DataInputStream in) throws IOException {
+        return new ImageInfo(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readUTF(), in.readDouble(), in.readDouble());
+    }
+
+    private static String hash(String location) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(location.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * the stored result of the scan of one file
+     */
+    @Getter
+    public static final class Entry {
+        private final long size;
+        private final long lastModified;
+        // date as yyyymmdd, 0 if the file name contains no valid date
+        private final int date;
+        // page number, -1 if the file name contains no valid page number
+        private final int pageNumber;
+        // technical metadata read from the image header, null if the format is unknown or the header is invalid
+        private final ImageInfo imageInfo;
+        // problem found in the image header, null if it is valid
+        private final String problem;
+
+        private Entry(long size, long lastModified, int date, int pageNumber, ImageInfo imageInfo, String problem) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.date = date;
+            this.pageNumber = pageNumber;
+            this.imageInfo = imageInfo;
+            this.problem = problem;
+        }
+    }
+}
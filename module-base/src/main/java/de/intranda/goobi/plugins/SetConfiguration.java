@@ -0,0 +1,309 @@
+package de.intranda.goobi.plugins;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.lang3.StringUtils;
+
+import de.intranda.goobi.plugins.model.Edition;
+import de.intranda.goobi.plugins.model.EditionClassifier;
+import de.intranda.goobi.plugins.model.ImportMetadata;
+import de.intranda.goobi.plugins.model.TechnicalMetadata;
+import lombok.Getter;
+
+/**
+ * The typed and immutable configuration of one set. It is parsed once when the configuration file is read, all values that do not depend on the
+ * running import, like the edition rules and the compiled metadata templates, are created here and shared by all imports of the set. Problems
+ * that are found while parsing are collected, so that they can be reported before an import starts.
+ */
+@Getter
+public class SetConfiguration {
+
+    public static final String REGULAR_EDITION = "regular";
+    public static final String MORNING_EDITION = "morning";
+    public static final String EVENING_EDITION = "evening";
+
+    private static final int DEFAULT_VALIDATION_THREADS = 8;
+    private static final int DEFAULT_VIRTUAL_VALIDATIONS = 256;
+    private static final long DEFAULT_TARGET_LATENCY = 1000;
+    private static final double DEFAULT_MAX_HEAP_PERCENT = 80;
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private final String title;
+    // folder containing images to import, the prefix of the keys for S3 sources
+    private final String importFolder;
+    private final String workflow;
+    private final String processtitle;
+    private final String issueTitlePrefix;
+    private final String pageNumberPrefix;
+    private final String languageForDateFormat;
+    private final EditionClassifier editionClassifier;
+
+    // S3 compatible source, null if the import folder is on the file system
+    private final URI sourceEndpoint;
+    private final String sourceBucket;
+    private final String sourceRegion;
+    private final String sourceAccessKey;
+    private final String sourceSecretKey;
+    private final boolean sourcePathStyle;
+    private final int sourceThreads;
+    private final int sourcePartSize;
+    private final long sourcePrefetchSize;
+
+    private final boolean deleteFromSource;
+    private final int validationThreads;
+    private final boolean virtualThreads;
+    private final int virtualValidations;
+    private final boolean scanIndex;
+    // true if incomplete issues and gaps in the publishing calendar abort the import
+    private final boolean completenessStrict;
+    private final boolean streamingMetsWriter;
+    private final int metsWriterThreads;
+    // hash algorithm of the integrity manifests, null if disabled
+    private final String integrityAlgorithm;
+    // share of the copied files in percent that are read again and compared with the integrity manifest
+    private final int integrityVerifyPercent;
+    private final double ioMaxMegabytesPerSecond;
+    private final int ioMaxThreads;
+    private final long ioTargetLatency;
+    // heap budget in percent of the maximum heap, 0 if the heap usage is not limited
+    private final double maxHeapPercent;
+    private final boolean distributed;
+    private final long distributedLeaseMillis;
+    private final int distributedMaxAttempts;
+    private final long distributedPollMillis;
+    // number of threads that start the automatic tasks, 0 if they shall not be started
+    private final int automaticTaskThreads;
+    private final boolean derivatives;
+    private final int derivativeThreads;
+    private final float derivativeQuality;
+
+    private final List<ImportMetadata> anchorMetadata;
+    private final List<ImportMetadata> volumeMetadata;
+    private final List<ImportMetadata> issueMetadata;
+    private final List<ImportMetadata> pageMetadata;
+    // metadata types of the pages that receive the values read from the image headers
+    private final TechnicalMetadata technicalMetadata;
+
+    // problems found while parsing
+    private final List<String> problems;
+    // hash of all values of the set, recorded with each run to relate changes of the throughput to changes of the configuration
+    private final String fingerprint;
+
+    /**
+     * @param config the set element of the configuration file
+     */
+    public SetConfiguration(HierarchicalConfiguration config) {
+        List<String> foundProblems = new ArrayList<>();
+        title = config.getString("[@title]", "-");
+        importFolder = config.getString("importFolder");
+        workflow = config.getString("workflow");
+        processtitle = config.getString("processtitle");
+        issueTitlePrefix = config.getString("issueTitlePrefix");
+        pageNumberPrefix = config.getString("pageNumberPrefix");
+        languageForDateFormat = config.getString("languageForDateFormat", "de");
+        editionClassifier = readEditionClassifier(config, foundProblems);
+
+        if ("s3".equalsIgnoreCase(config.getString("source[@type]", "local"))) {
+            String endpoint = config.getString("source[@endpoint]", "");
+            sourceEndpoint = StringUtils.isBlank(endpoint) ? null : URI.create(endpoint);
+            if (sourceEndpoint == null) {
+                foundProblems.add("The S3 source has no endpoint");
+            }
+        } else {
+            sourceEndpoint = null;
+        }
+        sourceBucket = config.getString("source[@bucket]");
+        sourceRegion = config.getString("source[@region]", "us-east-1");
+        sourceAccessKey = config.getString("source[@accessKey]", "");
+        sourceSecretKey = config.getString("source[@secretKey]", "");
+        sourcePathStyle = config.getBoolean("source[@pathStyle]", true);
+        sourceThreads = config.getInt("source[@threads]", 4);
+        sourcePartSize = config.getInt("source[@partSizeMB]", 8) * MEGABYTE;
+        sourcePrefetchSize = config.getLong("source[@prefetchMB]", 256) * MEGABYTE;
+
+        deleteFromSource = config.getBoolean("deleteFromSource", false);
+        validationThreads = config.getInt("validationThreads", DEFAULT_VALIDATION_THREADS);
+        virtualThreads = config.getBoolean("virtualThreads[@enabled]", false);
+        virtualValidations = config.getInt("virtualThreads[@maxValidations]", DEFAULT_VIRTUAL_VALIDATIONS);
+        scanIndex = config.getBoolean("scanIndex", false);
+        completenessStrict = config.getBoolean("completeness[@strict]", false);
+        streamingMetsWriter = "streaming".equalsIgnoreCase(config.getString("metsWriter", "ugh"));
+        metsWriterThreads = config.getInt("metsWriter[@threads]", 1);
+        integrityAlgorithm = config.getBoolean("integrity[@enabled]", false) ? config.getString("integrity[@algorithm]", "SHA-256") : null;
+        integrityVerifyPercent = Math.max(0, Math.min(100, config.getInt("integrity[@verifyPercent]", 0)));
+        ioMaxMegabytesPerSecond = config.getDouble("ioLimits[@maxMBPerSecond]", 0);
+        ioMaxThreads = config.getInt("ioLimits[@maxThreads]", 1);
+        ioTargetLatency = config.getLong("ioLimits[@targetLatency]", DEFAULT_TARGET_LATENCY);
+        if (config.getBoolean("memoryLimits[@enabled]", false)) {
+            maxHeapPercent = config.getDouble("memoryLimits[@maxHeapPercent]", DEFAULT_MAX_HEAP_PERCENT);
+        } else {
+            maxHeapPercent = 0;
+        }
+        distributed = config.getBoolean("distributed[@enabled]", false);
+        distributedLeaseMillis = config.getLong("distributed[@leaseSeconds]", 120) * 1000;
+        distributedMaxAttempts = config.getInt("distributed[@maxAttempts]", 3);
+        distributedPollMillis = config.getLong("distributed[@pollSeconds]", 10) * 1000;
+        automaticTaskThreads = config.getBoolean("startAutomaticTasks", false) ? Math.max(1, config.getInt("startAutomaticTasks[@threads]", 1)) : 0;
+        derivatives = config.getBoolean("derivatives[@enabled]", false);
+        derivativeThreads = config.getInt("derivatives[@threads]", 0);
+        derivativeQuality = config.getFloat("derivatives[@quality]", 0.8f);
+
+        // metadata mappings to use, their values are compiled once here
+        List<ImportMetadata> anchor = new ArrayList<>();
+        List<ImportMetadata> volume = new ArrayList<>();
+        List<ImportMetadata> issue = new ArrayList<>();
+        List<ImportMetadata> page = new ArrayList<>();
+        for (HierarchicalConfiguration mapping : config.configurationsAt("metadata")) {
+            String type = mapping.getString("[@type]", "");
+            if (StringUtils.isBlank(type)) {
+                foundProblems.add("Metadata mapping without type found. Skipping ...");
+                continue;
+            }
+            String value = mapping.getString("[@value]", "");
+            List<String> variables = Arrays.asList(StringUtils.split(mapping.getString("[@var]", ""), ", "));
+            ImportMetadata md = new ImportMetadata(type, value, variables, mapping.getBoolean("[@person]", false));
+            if (mapping.getBoolean("[@anchor]", false)) {
+                anchor.add(md);
+            }
+            if (mapping.getBoolean("[@volume]", false)) {
+                volume.add(md);
+            }
+            if (mapping.getBoolean("[@issue]", false)) {
+                issue.add(md);
+            }
+            if (mapping.getBoolean("[@page]", false)) {
+                page.add(md);
+            }
+        }
+        anchorMetadata = Collections.unmodifiableList(anchor);
+        volumeMetadata = Collections.unmodifiableList(volume);
+        issueMetadata = Collections.unmodifiableList(issue);
+        pageMetadata = Collections.unmodifiableList(page);
+
+        Map<TechnicalMetadata.Property, String> technicalTypes = new EnumMap<>(TechnicalMetadata.Property.class);
+        for (TechnicalMetadata.Property property : TechnicalMetadata.Property.values()) {
+            String type = config.getString("technicalMetadata[@" + property.getAttribute() + "]", "");
+            if (StringUtils.isNotBlank(type)) {
+                technicalTypes.put(property, type.trim());
+            }
+        }
+        technicalMetadata = new TechnicalMetadata(technicalTypes);
+
+        if (StringUtils.isBlank(importFolder) && sourceEndpoint == null) {
+            foundProblems.add("No import folder configured");
+        }
+        if (StringUtils.isBlank(workflow)) {
+            foundProblems.add("No workflow configured");
+        }
+        problems = Collections.unmodifiableList(foundProblems);
+        fingerprint = fingerprint(config);
+    }
+
+    /**
+     * @return all metadata mappings of the anchor, the volume, the issues and the pages
+     */
+    public List<ImportMetadata> getAllMetadata() {
+        List<ImportMetadata> all = new ArrayList<>(anchorMetadata);
+        all.addAll(volumeMetadata);
+        all.addAll(issueMetadata);
+        all.addAll(pageMetadata);
+        return all;
+    }
+
+    /**
+     * create the storage of the import folder, the files are read from the file system unless an S3 compatible source is configured
+     *
+     * @return a new SourceStorage
+     */
+    public SourceStorage createSourceStorage() {
+        if (sourceEndpoint == null) {
+            return new LocalSourceStorage(Path.of(importFolder));
+        }
+        return S3SourceStorage.builder(sourceEndpoint, sourceBucket)
+                .prefix(importFolder)
+                .region(sourceRegion)
+                .credentials(sourceAccessKey, sourceSecretKey)
+                .pathStyle(sourcePathStyle)
+                .threads(sourceThreads)
+                .partSize(sourcePartSize)
+                .prefetchSize(sourcePrefetchSize)
+                .build();
+    }
+
+    /**
+     * @param config configuration of the set
+     * @return the first hex digits of the SHA-256 hash of all keys and values of the set
+     */
+    private static String fingerprint(HierarchicalConfiguration config) {
+        StringBuilder values = new StringBuilder();
+        Iterator<?> keys = config.getKeys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            values.append(key).append('=').append(config.getList(key)).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(values.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * read the rules to detect the editions of the pages, the configured edition elements are checked first, followed by the evening and morning
+     * identifiers
+     *
+     * @param config configuration of the set
+     * @param foundProblems list that invalid rules are reported to
+     * @return EditionClassifier
+     */
+    private EditionClassifier readEditionClassifier(HierarchicalConfiguration config, List<String> foundProblems) {
+        EditionClassifier.Builder builder = EditionClassifier.builder(new Edition(REGULAR_EDITION, 1, issueTitlePrefix));
+
+        List<HierarchicalConfiguration> editionConfigs = config.configurationsAt("edition");
+        for (HierarchicalConfiguration editionConfig : editionConfigs) {
+            String pattern = editionConfig.getString("[@pattern]", "");
+            String key = editionConfig.getString("[@key]", "");
+            if (StringUtils.isAnyBlank(pattern, key)) {
+                foundProblems.add("Edition rule without pattern or key found. Skipping ...");
+                continue;
+            }
+            int rank = editionConfig.getInt("[@rank]", 1);
+            String titlePrefix = editionConfig.getString("[@titlePrefix]", issueTitlePrefix);
+            try {
+                builder.addRule(pattern, new Edition(key, rank, titlePrefix));
+            } catch (PatternSyntaxException e) {
+                foundProblems.add("Edition rule '" + key + "' has an invalid pattern: " + e.getDescription() + ". Skipping ...");
+            }
+        }
+
+        // morning and evening issues, evening wins if both identifiers are found
+        String eveningIdentifier = config.getString("issueTitlePrefixEvening[@identifier]");
+        if (StringUtils.isNotBlank(eveningIdentifier)) {
+            String eveningPrefix = config.getString("issueTitlePrefixEvening", issueTitlePrefix);
+            builder.addIdentifierRule(eveningIdentifier, new Edition(EVENING_EDITION, 2, eveningPrefix));
+        }
+        String morningIdentifier = config.getString("issueTitlePrefixMorning[@identifier]");
+        if (StringUtils.isNotBlank(morningIdentifier)) {
+            String morningPrefix = config.getString("issueTitlePrefixMorning", issueTitlePrefix);
+            builder.addIdentifierRule(morningIdentifier, new Edition(MORNING_EDITION, 0, morningPrefix));
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,113 @@
+package de.intranda.goobi.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import de.intranda.goobi.plugins.model.SourceFile;
+
+/**
+ * The folder that the pages of a set are imported from. The files are identified by paths, whose file names are parsed by the import plan. For
+ * storages that are not part of the local file system, the paths only name the objects and must not be opened with the methods of
+ * {@link Files}.
+ *
+ * All methods are thread safe.
+ */
+public interface SourceStorage extends Closeable {
+
+    /**
+     * @return URI of the import folder, e.g. to name files that belong to it
+     */
+    String getLocation();
+
+    /**
+     * @return the files of the import folder, sorted by their names
+     * @throws IOException
+     */
+    List<Path> list() throws IOException;
+
+    /**
+     * @param file file of the import folder
+     * @return size and modification time of the file, or null if it does not exist or cannot be read, the values of the last listing may be
+     *         returned
+     * @throws IOException
+     */
+    SourceFile stat(Path file) throws IOException;
+
+    /**
+     * @param file file of the import folder
+     * @return a stream of the content of the file
+     * @throws IOException
+     */
+    InputStream open(Path file) throws IOException;
+
+    /**
+     * @param file file of the import folder
+     * @return a channel for positional reads, e.g. to read the image headers
+     * @throws IOException
+     */
+    SeekableByteChannel openChannel(Path file) throws IOException;
+
+    /**
+     * delete a file, files that do not exist are ignored
+     *
+     * @param file file of the import folder
+     * @throws IOException
+     */
+    void delete(Path file) throws IOException;
+
+    /**
+     * copy a file to the local file system and keep its modification time
+     *
+     * @param file file of the import folder
+     * @param target target of the copy, an existing file is replaced
+     * @throws IOException
+     */
+    default void copy(Path file, Path target) throws IOException {
+        SourceFile sourceFile = stat(file);
+        try (InputStream in = open(file)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (sourceFile != null) {
+            Files.setLastModifiedTime(target, FileTime.fromMillis(sourceFile.getLastModified()));
+        }
+    }
+
+    /**
+     * @param file file of the import folder
+     * @return the file on the local file system, so that it can be linked instead of copied, or null if it is stored elsewhere
+     */
+    default Path toLocalFile(Path file) {
+        return null;
+    }
+
+    /**
+     * announce that the files will be opened soon, so that they can be downloaded in the background
+     *
+     * @param files files of the import folder in the order they will be opened
+     */
+    default void prefetch(List<Path> files) {
+        // nothing to do for storages without latency
+    }
+
+    /**
+     * discard the prefetched files that were not opened yet, e.g. at the end of a year or when the import is stopped
+     */
+    default void cancelPrefetch() {
+        // nothing to do for storages without latency
+    }
+
+    /**
+     * release the resources of the storage, e.g. the prefetched files
+     */
+    @Override
+    default void close() {
+        // nothing to release
+    }
+}
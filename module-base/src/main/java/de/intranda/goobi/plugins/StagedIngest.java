@@ -0,0 +1,373 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Moves files into a process in stages, so that a crash never leaves files that are deleted from the source but not referenced in the METS
+ * file. The files of a year are first linked or copied into a stage folder inside the process while the sources stay untouched. Once the METS
+ * file is written, the stage is committed, moved into the master folder by renames and the sources are deleted in a batch.
+ *
+ * Each open stage has a small journal file in the registry folder, so that a restart only has to read the journals instead of scanning all
+ * processes. A stage that was not prepared is rolled back by deleting the stage folder. A prepared stage may already be referenced by the METS
+ * file, so it is moved into the master folder but its sources are kept. A committed stage is completed.
+ */
+@Log4j2
+public class StagedIngest {
+
+    public static final String STAGE_FOLDER = "import_stage";
+
+    private static final String JOURNAL_SUFFIX = ".stage";
+
+    public enum State {
+        STAGING,
+        PREPARED,
+        COMMITTED
+    }
+
+    // journals of the stages that are open in this JVM, they are never recovered
+    private static final Set<Path> OPEN_JOURNALS = ConcurrentHashMap.newKeySet();
+
+    @Getter
+    private final Path registry;
+    // storage of the import folder, the sources are read and deleted through it
+    @Getter
+    private final SourceStorage sourceStorage;
+
+    /**
+     * @param registry folder for the journals of the open stages, shared by all nodes that import into the same processes
+     * @param sourceStorage storage of the import folder
+     */
+    public StagedIngest(Path registry, SourceStorage sourceStorage) {
+        this.registry = registry;
+        this.sourceStorage = sourceStorage;
+    }
+
+    /**
+     * open a new stage inside a process
+     *
+     * @param set title of the set
+     * @param worker name of the node that fills the stage
+     * @param processFolder folder of the process, the stage folder is created inside of it
+     * @param masterFolder master folder of the process, must be on the same file system as the process folder
+     * @return the new stage
+     * @throws IOException
+     */
+    public Stage open(String set, String worker, Path processFolder, Path masterFolder) throws IOException {
+        Files.createDirectories(registry);
+        Path stageFolder = processFolder.resolve(STAGE_FOLDER);
+        Path journal = registry.resolve(processFolder.getFileName() + JOURNAL_SUFFIX);
+        if (Files.exists(journal) || Files.exists(stageFolder)) {
+            throw new IOException("The process already contains an unfinished stage: " + stageFolder);
+        }
+        Files.createDirectories(stageFolder);
+        Stage stage = new Stage(sourceStorage, journal, set, worker, stageFolder, masterFolder);
+        OPEN_JOURNALS.add(journal);
+        stage.writeJournal(State.STAGING);
+        return stage;
+    }
+
+    /**
+     * finish the stages of a set that were left behind by crashed imports
+     *
+     * @param set title of the set
+     * @param isWorkerActive checks if the node that wrote a stage is still importing, its stages are skipped
+     * @return number of recovered stages
+     */
+    public int recover(String set, Predicate<String> isWorkerActive) {
+        if (!Files.isDirectory(registry)) {
+            return 0;
+        }
+        int recovered = 0;
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(registry, "*" + JOURNAL_SUFFIX)) {
+            for (Path journal : journals) {
+                if (OPEN_JOURNALS.contains(journal)) {
+                    continue;
+                }
+                try {
+                    Stage stage = Stage.read(sourceStorage, journal);
+                    if (!set.equals(stage.set) || isWorkerActive.test(stage.worker)) {
+                        continue;
+                    }
+                    log.warn("Recovering " + stage.state + " stage of " + stage.worker + " in " + stage.stageFolder);
+                    if (stage.state == State.STAGING) {
+                        stage.rollback();
+                    } else {
+                        stage.complete();
+                    }
+                    recovered++;
+                } catch (IOException e) {
+                    log.error("Failed to recover the stage of journal " + journal, e);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to read the journals in " + registry, e);
+        }
+        return recovered;
+    }
+
+    /**
+     * files of one process that are not yet in its master folder
+     */
+    public static final class Stage {
+
+        private final SourceStorage sourceStorage;
+        private final Path journal;
+        private final String set;
+        private final String worker;
+        @Getter
+        private final Path stageFolder;
+        @Getter
+        private final Path masterFolder;
+        // sources of the staged files, deleted once the stage is committed
+        private final Set<Path> sources = ConcurrentHashMap.newKeySet();
+        @Getter
+        private volatile State state;
+
+        private Stage(SourceStorage sourceStorage, Path journal, String set, String worker, Path stageFolder, Path masterFolder) {
+            this.sourceStorage = sourceStorage;
+            this.journal = journal;
+            this.set = set;
+            this.worker = worker;
+            this.stageFolder = stageFolder;
+            this.masterFolder = masterFolder;
+        }
+
+        /**
+         * link a file into the stage, or copy it if it cannot be linked
+         *
+         * @param source file in the import folder, it is not changed
+         * @return path of the file in the stage
+         * @throws IOException
+         */
+        public Path add(Path source) throws IOException {
+            Path target = stageFolder.resolve(source.getFileName());
+            Path localFile = sourceStorage.toLocalFile(source);
+            try {
+                if (localFile == null) {
+                    throw new UnsupportedOperationException("The source is not on the local file system");
+                }
+                // a hard link costs no I/O, the data stays where it is once the source is deleted
+                Files.createLink(target, localFile);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                sourceStorage.copy(source, target);
+            }
+            sources.add(source);
+            return target;
+        }
+
+        /**
+         * @param source file in the import folder
+         * @return path of the file in the stage, for callers that copy the file themselves
+         */
+        public Path resolve(Path source) {
+            return stageFolder.resolve(source.getFileName());
+        }
+
+        /**
+         * register a file that was completely written into the stage by the caller
+         *
+         * @param source file in the import folder
+         */
+        public void addCopied(Path source) {
+            sources.add(source);
+        }
+
+        /**
+         * remove a file from the stage, its source is kept
+         *
+         * @param source file in the import folder
+         * @throws IOException
+         */
+        public void discard(Path source) throws IOException {
+            sources.remove(source);
+            Files.deleteIfExists(stageFolder.resolve(source.getFileName()));
+        }
+
+        /**
+         * @param source file in the import folder
+         * @return path of the file in the master folder once the stage is completed
+         */
+        public Path getFinalPath(Path source) {
+            return masterFolder.resolve(source.getFileName());
+        }
+
+        /**
+         * mark the stage as complete, must be called before the METS file is written
+         *
+         * @throws IOException
+         */
+        public void prepare() throws IOException {
+            writeJournal(State.PREPARED);
+        }
+
+        /**
+         * mark the stage as referenced by the METS file, from now on its sources may be deleted
+         *
+         * @throws IOException
+         */
+        public void commit() throws IOException {
+            writeJournal(State.COMMITTED);
+        }
+
+        /**
+         * move the files into the master folder, delete the sources if the stage is committed and remove the stage, can be repeated after a crash
+         *
+         * @return sources that could not be deleted
+         * @throws IOException if the files could not be moved, the stage is kept then
+         */
+        public List<Path> complete() throws IOException {
+            try {
+                moveIntoMasterFolder();
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            List<Path> notDeleted = new ArrayList<>();
+            if (state == State.COMMITTED) {
+                for (Path source : sources) {
+                    try {
+                        sourceStorage.delete(source);
+                    } catch (IOException e) {
+                        log.error("Failed to delete the source file " + source, e);
+                        notDeleted.add(source);
+                    }
+                }
+            }
+            close();
+            return notDeleted;
+        }
+
+        /**
+         * delete the stage and keep all sources
+         *
+         * @throws IOException
+         */
+        public void rollback() throws IOException {
+            if (Files.exists(stageFolder)) {
+                try (Stream<Path> files = Files.walk(stageFolder)) {
+                    for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            close();
+        }
+
+        /**
+         * leave the stage to the recovery of the next import of the set
+         */
+        public void abandon() {
+            OPEN_JOURNALS.remove(journal);
+        }
+
+        private void moveIntoMasterFolder() throws IOException {
+            if (!Files.exists(stageFolder)) {
+                // already moved before a crash
+                return;
+            }
+            if (!Files.exists(masterFolder)) {
+                // the whole stage appears at once
+                Files.createDirectories(masterFolder.getParent());
+                try {
+                    Files.move(stageFolder, masterFolder, StandardCopyOption.ATOMIC_MOVE);
+                    return;
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.createDirectories(masterFolder);
+                }
+            }
+            // each file is renamed atomically, a crash in between is finished by the recovery
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(stageFolder)) {
+                for (Path file : files) {
+                    Files.move(file, masterFolder.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.delete(stageFolder);
+        }
+
+        private void close() throws IOException {
+            Files.deleteIfExists(journal);
+            OPEN_JOURNALS.remove(journal);
+        }
+
+        private void writeJournal(State newState) throws IOException {
+            List<String> lines = new ArrayList<>();
+            lines.add("state=" + newState);
+            lines.add("set=" + set);
+            lines.add("worker=" + worker);
+            lines.add("stage=" + stageFolder);
+            lines.add("master=" + masterFolder);
+            for (Path source : sources) {
+                lines.add("source=" + source);
+            }
+            // the journal is replaced in one step, a crash leaves either the old or the new state
+            Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            state = newState;
+        }
+
+        private static Stage read(SourceStorage sourceStorage, Path journal) throws IOException {
+            State state = null;
+            String set = null;
+            String worker = null;
+            Path stageFolder = null;
+            Path masterFolder = null;
+            Set<Path> sources = new LinkedHashSet<>();
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                String value = line.substring(separator + 1);
+                switch (line.substring(0, separator)) {
+                    case "state":
+                        state = State.valueOf(value);
+                        break;
+                    case "set":
+                        set = value;
+                        break;
+                    case "worker":
+                        worker = value;
+                        break;
+                    case "stage":
+                        stageFolder = Path.of(value);
+                        break;
+                    case "master":
+                        masterFolder = Path.of(value);
+                        break;
+                    case "source":
+                        sources.add(Path.of(value));
+                        break;
+                    default:
+                        // unknown keys of newer versions are ignored
+                }
+            }
+            if (state == null || stageFolder == null || masterFolder == null) {
+                throw new IOException("Incomplete journal: " + journal);
+            }
+            Stage stage = new Stage(sourceStorage, journal, set, worker, stageFolder, masterFolder);
+            stage.sources.addAll(sources);
+            stage.state = state;
+            return stage;
+        }
+    }
+}
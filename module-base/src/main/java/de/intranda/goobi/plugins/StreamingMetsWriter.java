@@ -0,0 +1,817 @@
+package de.intranda.goobi.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import de.intranda.goobi.plugins.model.ImportMetadata;
+import de.intranda.goobi.plugins.model.IssuePlan;
+import de.intranda.goobi.plugins.model.NewspaperPage;
+import ugh.dl.ContentFile;
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * Adds issues and pages to a METS file that was written by ugh, without loading the pages into a DOM tree.
+ *
+ * The METS file of a new process only contains the newspaper, the volume and the physical root element, so it is small. This file is read as a
+ * skeleton and copied event by event into a new file. While copying, the dmdSec elements of the issues and of the pages with metadata, the
+ * fileSec, the issue and page divs and the structLink entries are written from the list of issues. The result has the same structure as if all
+ * issues and pages were added as DocStructs and written by ugh, so it can be read by ugh again.
+ *
+ * The elements of large years can be rendered by several threads. The issues are split into shards of consecutive issues, each shard renders its
+ * elements into separate fragments. The numbers of pages and files of all shards are counted first, so that the IDs and the physical page numbers
+ * of each shard continue those of the previous shards. The fragments are then concatenated in the order of the issues, so the file is identical to
+ * the file written by a single thread.
+ */
+public class StreamingMetsWriter {
+
+    private static final String METS_NS = "http://www.loc.gov/METS/";
+    private static final String MODS_NS = "http://www.loc.gov/mods/v3";
+    private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+    private static final String GOOBI_NS = "http://meta.goobi.org/v1.5.1/";
+
+    private static final Pattern ID_PATTERN = Pattern.compile("(LOG|DMDLOG|DMDPHYS|PHYS|FILE)_(\\d+)");
+    // shards per thread, smaller shards balance issues of different sizes
+    private static final int SHARDS_PER_THREAD = 4;
+
+    private final String volumeType;
+    private final String issueType;
+    private final String titleType;
+    private final String dateType;
+    private final Function<NewspaperPage, String> pageLabel;
+    private final Function<NewspaperPage, List<ContentFile>> pageContentFiles;
+    private final int threads;
+    // maximum number of occurrences of a metadata type on an issue, 0 if the ruleset does not allow the type on the issue
+    private final ToIntFunction<String> issueMetadataLimit;
+    // metadata of a page besides its page numbers, written into a dmdSec of the page like ugh writes page metadata
+    private final Function<NewspaperPage, List<ImportMetadata>> pageMetadata;
+    // configured issue metadata that was not written because the ruleset does not allow it
+    private final Set<String> skippedMetadataTypes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param volumeType name of the DocStructType of the volume
+     * @param issueType name of the DocStructType of the issues
+     * @param titleType name of the MetadataType of the issue title
+     * @param dateType name of the MetadataType of the issue date
+     * @param pageLabel function that returns the logical page number of a page
+     * @param pageContentFiles function that returns the ContentFiles of a page
+     */
+    public StreamingMetsWriter(String volumeType, String issueType, String titleType, String dateType, Function<NewspaperPage, String> pageLabel,
+            Function<NewspaperPage, List<ContentFile>> pageContentFiles) {
+        this(volumeType, issueType, titleType, dateType, pageLabel, pageContentFiles, 1);
+    }
+
+    /**
+     * @param volumeType name of the DocStructType of the volume
+     * @param issueType name of the DocStructType of the issues
+     * @param titleType name of the MetadataType of the issue title
+     * @param dateType name of the MetadataType of the issue date
+     * @param pageLabel function that returns the logical page number of a page, called concurrently if more than one thread is used
+     * @param pageContentFiles function that returns the ContentFiles of a page, called concurrently if more than one thread is used
+     * @param threads number of threads that render the issues and pages
+     */
+    public StreamingMetsWriter(String volumeType, String issueType, String titleType, String dateType, Function<NewspaperPage, String> pageLabel,
+            Function<NewspaperPage, List<ContentFile>> pageContentFiles, int threads) {
+        this(volumeType, issueType, titleType, dateType, pageLabel, pageContentFiles, threads, type -> Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param volumeType name of the DocStructType of the volume
+     * @param issueType name of the DocStructType of the issues
+     * @param titleType name of the MetadataType of the issue title
+     * @param dateType name of the MetadataType of the issue date
+     * @param pageLabel function that returns the logical page number of a page, called concurrently if more than one thread is used
+     * @param pageContentFiles function that returns the ContentFiles of a page, called concurrently if more than one thread is used
+     * @param threads number of threads that render the issues and pages
+     * @param issueMetadataLimit returns how often a metadata type is allowed on an issue by the ruleset, 0 if it is not allowed, metadata beyond
+     *            the limit is skipped like ugh rejects it
+     */
+    public StreamingMetsWriter(String volumeType, String issueType, String titleType, String dateType, Function<NewspaperPage, String> pageLabel,
+            Function<NewspaperPage, List<ContentFile>> pageContentFiles, int threads, ToIntFunction<String> issueMetadataLimit) {
+        this(volumeType, issueType, titleType, dateType, pageLabel, pageContentFiles, threads, issueMetadataLimit, page -> Collections.emptyList());
+    }
+
+    /**
+     * @param volumeType name of the DocStructType of the volume
+     * @param issueType name of the DocStructType of the issues
+     * @param titleType name of the MetadataType of the issue title
+     * @param dateType name of the MetadataType of the issue date
+     * @param pageLabel function that returns the logical page number of a page, called concurrently if more than one thread is used
+     * @param pageContentFiles function that returns the ContentFiles of a page, called concurrently if more than one thread is used
+     * @param threads number of threads that render the issues and pages
+     * @param issueMetadataLimit returns how often a metadata type is allowed on an issue by the ruleset, 0 if it is not allowed, metadata beyond
+     *            the limit is skipped like ugh rejects it
+     * @param pageMetadata function that returns the metadata of a page besides its page numbers, e.g. the technical metadata of its image, called
+     *            concurrently if more than one thread is used, the metadata types must be allowed on pages by the ruleset
+     */
+    public StreamingMetsWriter(String volumeType, String issueType, String titleType, String dateType, Function<NewspaperPage, String> pageLabel,
+            Function<NewspaperPage, List<ContentFile>> pageContentFiles, int threads, ToIntFunction<String> issueMetadataLimit,
+            Function<NewspaperPage, List<ImportMetadata>> pageMetadata) {
+        this.volumeType = volumeType;
+        this.issueType = issueType;
+        this.titleType = titleType;
+        this.dateType = dateType;
+        this.pageLabel = pageLabel;
+        this.pageContentFiles = pageContentFiles;
+        this.threads = Math.max(1, threads);
+        this.issueMetadataLimit = issueMetadataLimit;
+        this.pageMetadata = pageMetadata;
+    }
+
+    /**
+     * read how often the ruleset allows each metadata type on a DocStruct type, like ugh checks it when metadata is added
+     *
+     * @param prefs the ruleset
+     * @param docStructType name of the DocStruct type
+     * @return the maximum number of occurrences of a metadata type, 0 if the type is not allowed
+     */
+    public static ToIntFunction<String> getMetadataLimits(Prefs prefs, String docStructType) {
+        Map<String, Integer> limits = new HashMap<>();
+        DocStructType type = prefs.getDocStrctTypeByName(docStructType);
+        if (type != null) {
+            for (MetadataType metadataType : type.getAllMetadataTypes()) {
+                String number = type.getNumberOfMetadataType(metadataType);
+                // 1m and 1o allow a single occurrence, + and * any number
+                limits.put(metadataType.getName(), number != null && number.startsWith("1") ? 1 : Integer.MAX_VALUE);
+            }
+        }
+        return name -> limits.getOrDefault(name, 0);
+    }
+
+    /**
+     * @return the issue metadata types that were skipped, because the ruleset does not allow them on the issue or not as often
+     */
+    public Set<String> getSkippedMetadataTypes() {
+        return skippedMetadataTypes;
+    }
+
+    /**
+     * add the input issues to the METS file, the file is replaced atomically once it is completely written
+     *
+     * @param metsFile METS file written by ugh that contains the volume but no pages yet
+     * @param issues issues that shall be added, in the order of their appearance
+     * @throws IOException
+     */
+    public void write(Path metsFile, List<IssuePlan> issues) throws IOException {
+        byte[] skeleton = Files.readAllBytes(metsFile);
+        Path tempFile = Files.createTempFile(metsFile.getParent(), metsFile.getFileName().toString(), ".tmp");
+        try {
+            Skeleton info = scan(skeleton);
+            List<Shard> shards = render(new Ids(info), info, issues);
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                merge(skeleton, info, shards, out);
+            }
+            Files.move(tempFile, metsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write METS file " + metsFile + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing METS file " + metsFile, e);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * split the issues into shards and render the elements of all shards, in parallel if more than one thread is used
+     */
+    private List<Shard> render(Ids ids, Skeleton info, List<IssuePlan> issues) throws XMLStreamException, InterruptedException {
+        int numberOfShards = threads == 1 ? 1 : Math.min(issues.size(), threads * SHARDS_PER_THREAD);
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < numberOfShards; i++) {
+            int from = issues.size() * i / numberOfShards;
+            int to = issues.size() * (i + 1) / numberOfShards;
+            shards.add(new Shard(issues.subList(from, to), from));
+        }
+        if (shards.isEmpty()) {
+            shards.add(new Shard(issues, 0));
+        }
+
+        ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        try {
+            // the labels, files and metadata of the pages are needed to number the pages, files and dmdSecs of the following shards
+            runAll(executor, shards, Shard::collect);
+            int firstPage = 0;
+            int firstFile = 0;
+            int firstPageDmdSec = 0;
+            for (Shard shard : shards) {
+                shard.firstPage = firstPage;
+                shard.firstFile = firstFile;
+                shard.firstPageDmdSec = firstPageDmdSec;
+                firstPage += shard.labels.size();
+                firstFile += shard.numberOfFiles;
+                firstPageDmdSec += shard.numberOfPageDmdSecs;
+            }
+            runAll(executor, shards, shard -> shard.render(ids, info));
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return shards;
+    }
+
+    private static void runAll(ExecutorService executor, List<Shard> shards, ShardTask task) throws XMLStreamException, InterruptedException {
+        if (executor == null) {
+            for (Shard shard : shards) {
+                task.run(shard);
+            }
+            return;
+        }
+        List<Future<Void>> results = new ArrayList<>();
+        for (Shard shard : shards) {
+            Callable<Void> callable = () -> {
+                task.run(shard);
+                return null;
+            };
+            results.add(executor.submit(callable));
+        }
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof XMLStreamException) {
+                    throw (XMLStreamException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * find the highest IDs in use and the ID of the volume
+     */
+    private Skeleton scan(byte[] skeleton) throws XMLStreamException {
+        Skeleton info = new Skeleton();
+        XMLStreamReader reader = createReader(skeleton);
+        try {
+            boolean root = true;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (root) {
+                    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                        info.rootNamespaces.put(reader.getNamespaceURI(i), reader.getNamespacePrefix(i));
+                    }
+                    root = false;
+                }
+                String id = reader.getAttributeValue(null, "ID");
+                if (id != null) {
+                    Matcher matcher = ID_PATTERN.matcher(id);
+                    if (matcher.matches()) {
+                        info.updateMaximum(matcher.group(1), Integer.parseInt(matcher.group(2)));
+                    }
+                }
+                if ("div".equals(reader.getLocalName()) && volumeType.equals(reader.getAttributeValue(null, "TYPE")) && info.volumeId == null) {
+                    info.volumeId = id;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (info.volumeId == null) {
+            throw new XMLStreamException("No logical element of type " + volumeType + " found");
+        }
+        if (!info.rootNamespaces.containsKey(METS_NS) || !info.rootNamespaces.containsKey(XLINK_NS)) {
+            throw new XMLStreamException("METS or XLink namespace is not declared on the root element");
+        }
+        return info;
+    }
+
+    private void merge(byte[] skeleton, Skeleton info, List<Shard> shards, OutputStream out) throws XMLStreamException, IOException {
+        Ids ids = new Ids(info);
+        XMLStreamReader reader = createReader(skeleton);
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        try {
+            writer.writeStartDocument("UTF-8", reader.getVersion() == null ? "1.0" : reader.getVersion());
+            int depth = 0;
+            // depth of the div elements inside of the current structMap
+            int divDepth = 0;
+            String structMapType = null;
+            boolean dmdSecsWritten = false;
+            boolean fileSecWritten = false;
+            boolean structLinkWritten = false;
+            // true while the fileSec of the skeleton is skipped
+            boolean skipping = false;
+            // true while the volume div is open
+            boolean inVolume = false;
+            int volumeDivDepth = 0;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 2 && !skipping) {
+                        // children of the root element, their order is defined by the METS schema
+                        if (!dmdSecsWritten && !"metsHdr".equals(name) && !"dmdSec".equals(name)) {
+                            insert(writer, out, shards, shard -> shard.dmdSecs);
+                            insert(writer, out, shards, shard -> shard.pageDmdSecs);
+                            dmdSecsWritten = true;
+                        }
+                        if ("fileSec".equals(name)) {
+                            // the skeleton has no files, so its fileSec is replaced
+                            skipping = true;
+                            continue;
+                        }
+                        if (!fileSecWritten && "structMap".equals(name)) {
+                            writeFileSec(writer, ids, shards, out);
+                            fileSecWritten = true;
+                        }
+                        if ("structMap".equals(name)) {
+                            structMapType = reader.getAttributeValue(null, "TYPE");
+                            divDepth = 0;
+                        }
+                    }
+                    if (skipping) {
+                        continue;
+                    }
+                    if ("div".equals(name)) {
+                        divDepth++;
+                        if ("LOGICAL".equals(structMapType) && info.volumeId.equals(reader.getAttributeValue(null, "ID"))) {
+                            inVolume = true;
+                            volumeDivDepth = divDepth;
+                        }
+                    }
+                    copyStartElement(reader, writer);
+                    continue;
+                }
+
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (skipping) {
+                        if (depth == 2) {
+                            skipping = false;
+                        }
+                        depth--;
+                        continue;
+                    }
+                    if ("div".equals(name)) {
+                        if (inVolume && divDepth == volumeDivDepth) {
+                            insert(writer, out, shards, shard -> shard.issueDivs);
+                            inVolume = false;
+                        } else if ("PHYSICAL".equals(structMapType) && divDepth == 1) {
+                            insert(writer, out, shards, shard -> shard.pageDivs);
+                        }
+                        divDepth--;
+                    }
+                    if (depth == 2 && "structLink".equals(name)) {
+                        writeSmLinks(writer, shards, out);
+                        structLinkWritten = true;
+                    }
+                    if (depth == 1 && !structLinkWritten) {
+                        writer.writeStartElement(ids.metsPrefix, "structLink", METS_NS);
+                        writeSmLinks(writer, shards, out);
+                        writer.writeEndElement();
+                        structLinkWritten = true;
+                    }
+                    if (depth == 2 && "structMap".equals(name)) {
+                        structMapType = null;
+                    }
+                    writer.writeEndElement();
+                    depth--;
+                    continue;
+                }
+
+                if (!skipping) {
+                    copyEvent(reader, writer, event);
+                }
+            }
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * write the fragments of all shards into the output of the writer
+     */
+    private static void insert(XMLStreamWriter writer, OutputStream out, List<Shard> shards, Function<Shard, byte[]> fragment)
+            throws XMLStreamException, IOException {
+        // an empty text closes a pending start tag, then the writer hands over the stream
+        writer.writeCharacters("");
+        writer.flush();
+        for (Shard shard : shards) {
+            out.write(fragment.apply(shard));
+        }
+    }
+
+    private void writeFileSec(XMLStreamWriter writer, Ids ids, List<Shard> shards, OutputStream out) throws XMLStreamException, IOException {
+        writer.writeStartElement(ids.metsPrefix, "fileSec", METS_NS);
+        writer.writeStartElement(ids.metsPrefix, "fileGrp", METS_NS);
+        writer.writeAttribute("USE", "LOCAL");
+        insert(writer, out, shards, shard -> shard.files);
+        writer.writeEndElement(); // mets:fileGrp
+        writer.writeEndElement(); // mets:fileSec
+    }
+
+    private void writeSmLinks(XMLStreamWriter writer, List<Shard> shards, OutputStream out) throws XMLStreamException, IOException {
+        // the volume is linked to all pages, followed by the links of the issues to their pages
+        insert(writer, out, shards, shard -> shard.volumeLinks);
+        insert(writer, out, shards, shard -> shard.issueLinks);
+    }
+
+    private void writeDmdSecs(XMLStreamWriter writer, Ids ids, Shard shard) throws XMLStreamException {
+        for (int i = 0; i < shard.issues.size(); i++) {
+            IssuePlan issue = shard.issues.get(i);
+            writeDmdSecStart(writer, ids, ids.dmdLogId(shard.firstIssue + i));
+            writeGoobiMetadata(writer, ids, titleType, issue.getTitle());
+            writeGoobiMetadata(writer, ids, dateType, issue.getDate());
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (ImportMetadata md : issue.getMetadata()) {
+                if (occurrences.merge(md.getType(), 1, Integer::sum) > issueMetadataLimit.applyAsInt(md.getType())) {
+                    // the ugh path skips these metadata as well, ugh would reject the file when it is read again
+                    skippedMetadataTypes.add(md.getType());
+                    continue;
+                }
+                if (md.isPerson()) {
+                    writeGoobiPerson(writer, ids, md.getType(), md.getValue());
+                } else {
+                    writeGoobiMetadata(writer, ids, md.getType(), md.getValue());
+                }
+            }
+            writeDmdSecEnd(writer);
+        }
+    }
+
+    private void writePageDmdSecs(XMLStreamWriter writer, Ids ids, Shard shard) throws XMLStreamException {
+        int dmdSecIndex = shard.firstPageDmdSec;
+        for (List<ImportMetadata> metadata : shard.metadata) {
+            if (metadata.isEmpty()) {
+                continue;
+            }
+            writeDmdSecStart(writer, ids, ids.dmdPhysId(dmdSecIndex++));
+            for (ImportMetadata md : metadata) {
+                writeGoobiMetadata(writer, ids, md.getType(), md.getValue());
+            }
+            writeDmdSecEnd(writer);
+        }
+    }
+
+    private void writeDmdSecStart(XMLStreamWriter writer, Ids ids, String id) throws XMLStreamException {
+        writer.writeStartElement(ids.metsPrefix, "dmdSec", METS_NS);
+        writer.writeAttribute("ID", id);
+        writer.writeStartElement(ids.metsPrefix, "mdWrap", METS_NS);
+        writer.writeAttribute("MDTYPE", "MODS");
+        writer.writeStartElement(ids.metsPrefix, "xmlData", METS_NS);
+        writer.writeStartElement(ids.modsPrefix, "mods", MODS_NS);
+        if (ids.declareMods) {
+            writer.writeNamespace(ids.modsPrefix, MODS_NS);
+        }
+        writer.writeStartElement(ids.modsPrefix, "extension", MODS_NS);
+        writer.writeStartElement(ids.goobiPrefix, "goobi", GOOBI_NS);
+        if (ids.declareGoobi) {
+            writer.writeNamespace(ids.goobiPrefix, GOOBI_NS);
+        }
+    }
+
+    private void writeDmdSecEnd(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeEndElement(); // goobi:goobi
+        writer.writeEndElement(); // mods:extension
+        writer.writeEndElement(); // mods:mods
+        writer.writeEndElement(); // mets:xmlData
+        writer.writeEndElement(); // mets:mdWrap
+        writer.writeEndElement(); // mets:dmdSec
+    }
+
+    private void writeGoobiMetadata(XMLStreamWriter writer, Ids ids, String name, String value) throws XMLStreamException {
+        writer.writeStartElement(ids.goobiPrefix, "metadata", GOOBI_NS);
+        writer.writeAttribute("name", name);
+        writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+
+    private void writeGoobiPerson(XMLStreamWriter writer, Ids ids, String role, String value) throws XMLStreamException {
+        // the name is split like by the plugin, the first word is the first name
+        int splitIndex = value.indexOf(' ');
+        writer.writeStartElement(ids.goobiPrefix, "metadata", GOOBI_NS);
+        writer.writeAttribute("name", role);
+        writer.writeAttribute("type", "person");
+        writer.writeStartElement(ids.goobiPrefix, "firstName", GOOBI_NS);
+        writer.writeCharacters(splitIndex > 0 ? value.substring(0, splitIndex) : "");
+        writer.writeEndElement();
+        writer.writeStartElement(ids.goobiPrefix, "lastName", GOOBI_NS);
+        writer.writeCharacters(value.substring(Math.max(splitIndex, 0)));
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    private void writeFiles(XMLStreamWriter writer, Ids ids, Shard shard) throws XMLStreamException {
+        int fileIndex = shard.firstFile;
+        for (List<ContentFile> pageFiles : shard.contentFiles) {
+            for (ContentFile cf : pageFiles) {
+                writer.writeStartElement(ids.metsPrefix, "file", METS_NS);
+                writer.writeAttribute("ID", ids.fileId(fileIndex++));
+                writer.writeAttribute("MIMETYPE", cf.getMimetype());
+                writer.writeEmptyElement(ids.metsPrefix, "FLocat", METS_NS);
+                writer.writeAttribute("LOCTYPE", "URL");
+                writer.writeAttribute(ids.xlinkPrefix, XLINK_NS, "href", cf.getLocation());
+                writer.writeEndElement();
+            }
+        }
+    }
+
+    private void writeIssueDivs(XMLStreamWriter writer, Ids ids, Shard shard) throws XMLStreamException {
+        for (int i = 0; i < shard.issues.size(); i++) {
+            writer.writeEmptyElement(ids.metsPrefix, "div", METS_NS);
+            writer.writeAttribute("DMDID", ids.dmdLogId(shard.firstIssue + i));
+            writer.writeAttribute("ID", ids.issueLogId(shard.firstIssue + i));
+            writer.writeAttribute("TYPE", issueType);
+        }
+    }
+
+    private void writePageDivs(XMLStreamWriter writer, Ids ids, Shard shard) throws XMLStreamException {
+        int fileIndex = shard.firstFile;
+        int dmdSecIndex = shard.firstPageDmdSec;
+        for (int i = 0; i < shard.labels.size(); i++) {
+            // the physical page number continues the pages of the previous shards
+            int pageIndex = shard.firstPage + i;
+            writer.writeStartElement(ids.metsPrefix, "div", METS_NS);
+            if (!shard.metadata.get(i).isEmpty()) {
+                writer.writeAttribute("DMDID", ids.dmdPhysId(dmdSecIndex++));
+            }
+            writer.writeAttribute("ID", ids.physId(pageIndex));
+            writer.writeAttribute("ORDER", String.valueOf(pageIndex + 1));
+            writer.writeAttribute("ORDERLABEL", shard.labels.get(i));
+            writer.writeAttribute("TYPE", "page");
+            for (int j = shard.contentFiles.get(i).size(); j > 0; j--) {
+                writer.writeEmptyElement(ids.metsPrefix, "fptr", METS_NS);
+                writer.writeAttribute("FILEID", ids.fileId(fileIndex++));
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    private void writeVolumeLinks(XMLStreamWriter writer, Ids ids, Skeleton info, Shard shard) throws XMLStreamException {
+        for (int i = 0; i < shard.labels.size(); i++) {
+            writeSmLink(writer, ids, info.volumeId, ids.physId(shard.firstPage + i));
+        }
+    }
+
+    private void writeIssueLinks(XMLStreamWriter writer, Ids ids, Shard shard) throws XMLStreamException {
+        int pageIndex = shard.firstPage;
+        for (int i = 0; i < shard.issues.size(); i++) {
+            for (int j = 0; j < shard.issues.get(i).getPages().size(); j++) {
+                writeSmLink(writer, ids, ids.issueLogId(shard.firstIssue + i), ids.physId(pageIndex++));
+            }
+        }
+    }
+
+    private void writeSmLink(XMLStreamWriter writer, Ids ids, String from, String to) throws XMLStreamException {
+        writer.writeEmptyElement(ids.metsPrefix, "smLink", METS_NS);
+        writer.writeAttribute(ids.xlinkPrefix, XLINK_NS, "to", to);
+        writer.writeAttribute(ids.xlinkPrefix, XLINK_NS, "from", from);
+    }
+
+    /**
+     * render elements into a fragment without namespace declarations, the prefixes are declared by the skeleton
+     */
+    private static byte[] fragment(FragmentWriter fragmentWriter) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        fragmentWriter.write(writer);
+        // an empty text closes a pending empty element
+        writer.writeCharacters("");
+        writer.flush();
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static XMLStreamReader createReader(byte[] skeleton) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(new ByteArrayInputStream(skeleton));
+    }
+
+    private static void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        String prefix = reader.getPrefix() == null ? XMLConstants.DEFAULT_NS_PREFIX : reader.getPrefix();
+        String namespace = reader.getNamespaceURI() == null ? XMLConstants.NULL_NS_URI : reader.getNamespaceURI();
+        writer.writeStartElement(prefix, reader.getLocalName(), namespace);
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String nsPrefix = reader.getNamespacePrefix(i);
+            if (nsPrefix == null || nsPrefix.isEmpty()) {
+                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+            } else {
+                writer.writeNamespace(nsPrefix, reader.getNamespaceURI(i));
+            }
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributePrefix = reader.getAttributePrefix(i);
+            if (attributePrefix == null || attributePrefix.isEmpty()) {
+                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(attributePrefix, reader.getAttributeNamespace(i), reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    private static void copyEvent(XMLStreamReader reader, XMLStreamWriter writer, int event) throws XMLStreamException {
+        switch (event) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                writer.writeCharacters(reader.getText());
+                break;
+            case XMLStreamConstants.CDATA:
+                writer.writeCData(reader.getText());
+                break;
+            case XMLStreamConstants.COMMENT:
+                writer.writeComment(reader.getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                break;
+            default:
+                // the document is started and ended outside of the loop, DTDs and entity references do not occur in METS files
+        }
+    }
+
+    /**
+     * consecutive issues whose elements are rendered together
+     */
+    private class Shard {
+        private final List<IssuePlan> issues;
+        // index of the first issue of the shard in the volume
+        private final int firstIssue;
+        private int firstPage;
+        private int firstFile;
+        private int firstPageDmdSec;
+        // labels, content files and metadata of all pages of the shard, in the order of the pages
+        private List<String> labels;
+        private List<List<ContentFile>> contentFiles;
+        private List<List<ImportMetadata>> metadata;
+        private int numberOfFiles;
+        // pages with metadata get a dmdSec
+        private int numberOfPageDmdSecs;
+
+        private byte[] dmdSecs;
+        private byte[] pageDmdSecs;
+        private byte[] files;
+        private byte[] issueDivs;
+        private byte[] pageDivs;
+        private byte[] volumeLinks;
+        private byte[] issueLinks;
+
+        private Shard(List<IssuePlan> issues, int firstIssue) {
+            this.issues = issues;
+            this.firstIssue = firstIssue;
+        }
+
+        private void collect() {
+            labels = new ArrayList<>();
+            contentFiles = new ArrayList<>();
+            metadata = new ArrayList<>();
+            for (IssuePlan issue : issues) {
+                for (NewspaperPage page : issue.getPages()) {
+                    List<ContentFile> pageFiles = pageContentFiles.apply(page);
+                    List<ImportMetadata> pageFields = pageMetadata.apply(page);
+                    labels.add(pageLabel.apply(page));
+                    contentFiles.add(pageFiles);
+                    metadata.add(pageFields);
+                    numberOfFiles += pageFiles.size();
+                    if (!pageFields.isEmpty()) {
+                        numberOfPageDmdSecs++;
+                    }
+                }
+            }
+        }
+
+        private void render(Ids ids, Skeleton info) throws XMLStreamException {
+            dmdSecs = fragment(writer -> writeDmdSecs(writer, ids, this));
+            pageDmdSecs = fragment(writer -> writePageDmdSecs(writer, ids, this));
+            files = fragment(writer -> writeFiles(writer, ids, this));
+            issueDivs = fragment(writer -> writeIssueDivs(writer, ids, this));
+            pageDivs = fragment(writer -> writePageDivs(writer, ids, this));
+            volumeLinks = fragment(writer -> writeVolumeLinks(writer, ids, info, this));
+            issueLinks = fragment(writer -> writeIssueLinks(writer, ids, this));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardTask {
+        void run(Shard shard) throws XMLStreamException;
+    }
+
+    @FunctionalInterface
+    private interface FragmentWriter {
+        void write(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    /**
+     * information about the skeleton file that is needed before it is copied
+     */
+    private static class Skeleton {
+        private int maxLog = -1;
+        private int maxDmdLog = -1;
+        private int maxDmdPhys = -1;
+        private int maxPhys = -1;
+        private int maxFile = -1;
+        private String volumeId;
+        // prefixes of the namespaces declared on the root element
+        private Map<String, String> rootNamespaces = new HashMap<>();
+
+        private void updateMaximum(String type, int value) {
+            switch (type) {
+                case "LOG":
+                    maxLog = Math.max(maxLog, value);
+                    break;
+                case "DMDLOG":
+                    maxDmdLog = Math.max(maxDmdLog, value);
+                    break;
+                case "DMDPHYS":
+                    maxDmdPhys = Math.max(maxDmdPhys, value);
+                    break;
+                case "PHYS":
+                    maxPhys = Math.max(maxPhys, value);
+                    break;
+                default:
+                    maxFile = Math.max(maxFile, value);
+            }
+        }
+    }
+
+    /**
+     * IDs and namespace prefixes of the new elements, the IDs continue the numbering of ugh
+     */
+    private static class Ids {
+        private final int firstLog;
+        private final int firstDmdLog;
+        private final int firstDmdPhys;
+        private final int firstPhys;
+        private final int firstFile;
+        private final String metsPrefix;
+        private final String xlinkPrefix;
+        private final String modsPrefix;
+        private final String goobiPrefix;
+        // the namespaces of mods and goobi are declared locally if they are not declared on the root element
+        private final boolean declareMods;
+        private final boolean declareGoobi;
+
+        private Ids(Skeleton info) {
+            firstLog = info.maxLog + 1;
+            firstDmdLog = info.maxDmdLog + 1;
+            firstDmdPhys = info.maxDmdPhys + 1;
+            firstPhys = info.maxPhys + 1;
+            firstFile = info.maxFile + 1;
+            metsPrefix = info.rootNamespaces.get(METS_NS);
+            xlinkPrefix = info.rootNamespaces.get(XLINK_NS);
+            declareMods = !info.rootNamespaces.containsKey(MODS_NS);
+            modsPrefix = declareMods ? "mods" : info.rootNamespaces.get(MODS_NS);
+            declareGoobi = !info.rootNamespaces.containsKey(GOOBI_NS);
+            goobiPrefix = declareGoobi ? "goobi" : info.rootNamespaces.get(GOOBI_NS);
+        }
+
+        private String issueLogId(int index) {
+            return String.format("LOG_%04d", firstLog + index);
+        }
+
+        private String dmdLogId(int index) {
+            return String.format("DMDLOG_%04d", firstDmdLog + index);
+        }
+
+        private String dmdPhysId(int index) {
+            return String.format("DMDPHYS_%04d", firstDmdPhys + index);
+        }
+
+        private String physId(int index) {
+            return String.format("PHYS_%04d", firstPhys + index);
+        }
+
+        private String fileId(int index) {
+            return String.format("FILE_%04d", firstFile + index);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package de.intranda.goobi.plugins;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import de.intranda.goobi.plugins.model.WorkUnitProgress;
+
+/**
+ * Shared table of the work units of distributed imports. Every year of a set is one work unit, which can be claimed by any node for a limited time
+ * (the lease). The node renews its lease while it imports the year; if it stops doing so, e.g. because the node crashed, the unit can be claimed
+ * by another node once the lease has expired.
+ *
+ * All state changes of a unit are single conditional updates, so no locks are held between the statements and the table works with every database
+ * that supports standard SQL.
+ */
+public class WorkUnitStore {
+
+    static final String TABLE = "plugin_newspaper_import_units";
+
+    static final String OPEN = "OPEN";
+    static final String RUNNING = "RUNNING";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+
+    // a unit can be claimed if it is open or if the lease of the node that claimed it has expired
+    private static final String CLAIMABLE = "set_title = ? AND attempts < ? AND (unit_status = '" + OPEN + "' OR (unit_status = '" + RUNNING
+            + "' AND lease_until < ?))";
+
+    /**
+     * source of the database connections, the connections are closed after each use
+     */
+    @FunctionalInterface
+    public interface ConnectionProvider {
+        Connection getConnection() throws SQLException;
+    }
+
+    private final ConnectionProvider connectionProvider;
+    private final LongSupplier clock;
+
+    public WorkUnitStore(ConnectionProvider connectionProvider) {
+        this(connectionProvider, System::currentTimeMillis);
+    }
+
+    /**
+     * @param connectionProvider source of the database connections
+     * @param clock current time in milliseconds, the clocks of all nodes must be synchronized
+     */
+    public WorkUnitStore(ConnectionProvider connectionProvider, LongSupplier clock) {
+        this.connectionProvider = connectionProvider;
+        this.clock = clock;
+    }
+
+    /**
+     * create the table if it does not exist yet
+     *
+     * @throws SQLException
+     */
+    public void createTable() throws SQLException {
+        try (Connection connection = connectionProvider.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" //
+                    + "set_title VARCHAR(255) NOT NULL, " //
+                    + "unit_year INT NOT NULL, " //
+                    + "unit_status VARCHAR(16) NOT NULL, " //
+                    + "worker VARCHAR(255), " //
+                    + "lease_until BIGINT NOT NULL DEFAULT 0, " //
+                    + "attempts INT NOT NULL DEFAULT 0, " //
+                    + "pages_total INT NOT NULL DEFAULT 0, " //
+                    + "pages_done INT NOT NULL DEFAULT 0, " //
+                    + "PRIMARY KEY (set_title, unit_year))");
+        }
+    }
+
+    /**
+     * create one open work unit for each year of the set, unless the set still has open or running units from an earlier or concurrent call
+     *
+     * @param set title of the set
+     * @param pagesPerYear number of pages of each year
+     * @return true if the units were created, false if the set is already distributed
+     * @throws SQLException
+     */
+    public boolean publish(String set, Map<Integer, Integer> pagesPerYear) throws SQLException {
+        try (Connection connection = connectionProvider.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                if (countActiveUnits(connection, set) > 0) {
+                    connection.rollback();
+                    return false;
+                }
+                // finished units of an earlier import of the same set are replaced, units of a concurrent call cause a duplicate key below
+                try (PreparedStatement delete = connection.prepareStatement(
+                        "DELETE FROM " + TABLE + " WHERE set_title = ? AND unit_status IN ('" + DONE + "', '" + FAILED + "')")) {
+                    delete.setString(1, set);
+                    delete.executeUpdate();
+                }
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO " + TABLE + " (set_title, unit_year, unit_status, pages_total) VALUES (?, ?, '" + OPEN + "', ?)")) {
+                    for (Map.Entry<Integer, Integer> entry : pagesPerYear.entrySet()) {
+                        insert.setString(1, set);
+                        insert.setInt(2, entry.getKey());
+                        insert.setInt(3, entry.getValue());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                if (isConstraintViolation(e)) {
+                    // another node published the same set at the same time
+                    return false;
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * claim the next claimable work unit of the set, units whose lease expired after the last attempt are marked as failed
+     *
+     * @param set title of the set
+     * @param worker unique name of the claiming node
+     * @param leaseMillis duration of the lease
+     * @param maxAttempts maximum number of attempts per unit
+     * @return the year of the claimed unit, or null if no unit can be claimed at the moment
+     * @throws SQLException
+     */
+    public Integer claim(String set, String worker, long leaseMillis, int maxAttempts) throws SQLException {
+        long now = clock.getAsLong();
+        try (Connection connection = connectionProvider.getConnection()) {
+            try (PreparedStatement expire = connection.prepareStatement("UPDATE " + TABLE + " SET unit_status = '" + FAILED
+                    + "' WHERE set_title = ? AND unit_status = '" + RUNNING + "' AND lease_until < ? AND attempts >= ?")) {
+                expire.setString(1, set);
+                expire.setLong(2, now);
+                expire.setInt(3, maxAttempts);
+                expire.executeUpdate();
+            }
+
+            List<Integer> candidates = new ArrayList<>();
+            try (PreparedStatement select =
+                    connection.prepareStatement("SELECT unit_year FROM " + TABLE + " WHERE " + CLAIMABLE + " ORDER BY unit_year")) {
+                select.setString(1, set);
+                select.setInt(2, maxAttempts);
+                select.setLong(3, now);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        candidates.add(resultSet.getInt(1));
+                    }
+                }
+            }
+
+            // the update only succeeds if no other node claimed the unit since the select
+            try (PreparedStatement update = connection.prepareStatement("UPDATE " + TABLE + " SET unit_status = '" + RUNNING
+                    + "', worker = ?, lease_until = ?, attempts = attempts + 1, pages_done = 0 WHERE unit_year = ? AND " + CLAIMABLE)) {
+                for (Integer year : candidates) {
+                    update.setString(1, worker);
+                    update.setLong(2, now + leaseMillis);
+                    update.setInt(3, year);
+                    update.setString(4, set);
+                    update.setInt(5, maxAttempts);
+                    update.setLong(6, now);
+                    if (update.executeUpdate() == 1) {
+                        return year;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * extend the lease of a claimed unit and report its progress
+     *
+     * @param set title of the set
+     * @param year year of the unit
+     * @param worker name of the node that claimed the unit
+     * @param leaseMillis new duration of the lease, starting now
+     * @param pagesDone number of pages imported so far
+     * @return true if the node still holds the lease, false if the unit was claimed by another node in the meantime
+     * @throws SQLException
+     */
+    public boolean renew(String set, int year, String worker, long leaseMillis, int pagesDone) throws SQLException {
+        return updateClaimedUnit("lease_until = " + (clock.getAsLong() + leaseMillis) + ", pages_done = " + pagesDone, set, year, worker);
+    }
+
+    /**
+     * mark a claimed unit as done
+     *
+     * @return true if the node still held the lease
+     * @throws SQLException
+     */
+    public boolean complete(String set, int year, String worker, int pagesDone) throws SQLException {
+        return updateClaimedUnit("unit_status = '" + DONE + "', pages_done = " + pagesDone, set, year, worker);
+    }
+
+    /**
+     * give a claimed unit back, so that it can be claimed again
+     *
+     * @param set title of the set
+     * @param year year of the unit
+     * @param worker name of the node that claimed the unit
+     * @param failed true if the import of the unit failed, false if it was cancelled, cancelled attempts do not count
+     * @param maxAttempts maximum number of attempts per unit, a failed unit without attempts left is marked as failed
+     * @return true if the node still held the lease
+     * @throws SQLException
+     */
+    public boolean release(String set, int year, String worker, boolean failed, int maxAttempts) throws SQLException {
+        String status = failed ? "CASE WHEN attempts >= " + maxAttempts + " THEN '" + FAILED + "' ELSE '" + OPEN + "' END" : "'" + OPEN + "'";
+        String attempts = failed ? "attempts" : "attempts - 1";
+        return updateClaimedUnit("unit_status = " + status + ", attempts = " + attempts + ", lease_until = 0, pages_done = 0", set, year, worker);
+    }
+
+    /**
+     * @param set title of the set
+     * @return true if the set has units that are open or running
+     * @throws SQLException
+     */
+    public boolean hasActiveUnits(String set) throws SQLException {
+        try (Connection connection = connectionProvider.getConnection()) {
+            return countActiveUnits(connection, set) > 0;
+        }
+    }
+
+    /**
+     * @param set title of the set
+     * @param worker name of a node
+     * @return true if the node holds an unexpired lease on a unit of the set
+     * @throws SQLException
+     */
+    public boolean holdsLease(String set, String worker) throws SQLException {
+        try (Connection connection = connectionProvider.getConnection(); PreparedStatement select = connection.prepareStatement(
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE set_title = ? AND worker = ? AND unit_status = '" + RUNNING + "' AND lease_until >= ?")) {
+            select.setString(1, set);
+            select.setString(2, worker);
+            select.setLong(3, clock.getAsLong());
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * @param set title of the set
+     * @return the aggregated state of all units of the set
+     * @throws SQLException
+     */
+    public WorkUnitProgress getProgress(String set) throws SQLException {
+        int[] units = new int[4];
+        int pagesTotal = 0;
+        int pagesDone = 0;
+        try (Connection connection = connectionProvider.getConnection(); PreparedStatement select = connection.prepareStatement(
+                "SELECT unit_status, COUNT(*), SUM(pages_total), SUM(pages_done) FROM " + TABLE + " WHERE set_title = ? GROUP BY unit_status")) {
+            select.setString(1, set);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    switch (resultSet.getString(1)) {
+                        case OPEN:
+                            units[0] = resultSet.getInt(2);
+                            break;
+                        case RUNNING:
+                            units[1] = resultSet.getInt(2);
+                            break;
+                        case DONE:
+                            units[2] = resultSet.getInt(2);
+                            break;
+                        default:
+                            units[3] = resultSet.getInt(2);
+                    }
+                    pagesTotal += resultSet.getInt(3);
+                    pagesDone += resultSet.getInt(4);
+                }
+            }
+        }
+        return new WorkUnitProgress(units[0], units[1], units[2], units[3], pagesTotal, pagesDone);
+    }
+
+    /**
+     * @param e exception thrown by the database, batch updates may wrap the actual cause
+     * @return true if the exception was caused by a duplicate key
+     */
+    private static boolean isConstraintViolation(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if (current instanceof SQLIntegrityConstraintViolationException || current.getCause() instanceof SQLIntegrityConstraintViolationException
+                    || current.getSQLState() != null && current.getSQLState().startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int countActiveUnits(Connection connection, String set) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE set_title = ? AND unit_status IN ('" + OPEN + "', '" + RUNNING + "')")) {
+            select.setString(1, set);
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    private boolean updateClaimedUnit(String assignments, String set, int year, String worker) throws SQLException {
+        try (Connection connection = connectionProvider.getConnection(); PreparedStatement update = connection.prepareStatement("UPDATE " + TABLE
+                + " SET " + assignments + " WHERE set_title = ? AND unit_year = ? AND worker = ? AND unit_status = '" + RUNNING + "'")) {
+            update.setString(1, set);
+            update.setInt(2, year);
+            update.setString(3, worker);
+            return update.executeUpdate() == 1;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.intranda.goobi.plugins;
+
+import java.util.function.Function;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Finds the process of a year of a distributed import, or creates it. A work unit is claimed again after its import failed or after another
+ * node took it over because the lease was lost. The new attempt reuses the process of the earlier attempt, instead of leaving it behind next to
+ * a second process with the same title.
+ *
+ * @param <P> type of the processes
+ */
+@Log4j2
+public class YearProcesses<P> {
+
+    /**
+     * the process of a year and whether it was created by an earlier attempt
+     */
+    public static final class YearProcess<P> {
+        @Getter
+        private final P process;
+        @Getter
+        private final boolean reused;
+
+        private YearProcess(P process, boolean reused) {
+            this.process = process;
+            this.reused = reused;
+        }
+    }
+
+    private final Function<String, P> finder;
+    private final Function<String, P> creator;
+
+    /**
+     * @param finder finds a process by its title, returns null if there is none
+     * @param creator creates a process with a title, returns null if it could not be created
+     */
+    public YearProcesses(Function<String, P> finder, Function<String, P> creator) {
+        this.finder = finder;
+        this.creator = creator;
+    }
+
+    /**
+     * @param title title of the process of the year
+     * @return the process of an earlier attempt or a new process, or null if no process could be created
+     */
+    public YearProcess<P> open(String title) {
+        P process = finder.apply(title);
+        if (process != null) {
+            log.info("Reusing the process " + title + " of an earlier attempt");
+            return new YearProcess<>(process, true);
+        }
+        process = creator.apply(title);
+        return process == null ? null : new YearProcess<>(process, false);
+    }
+}
@@ -0,0 +1,298 @@
+package de.intranda.goobi.plugins.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import lombok.Getter;
+
+/**
+ * Checks if the issues of an import plan are complete. The page numbers of each issue are collected in a bit set to find missing and duplicate
+ * pages, the days with issues are collected in one bit set per year to find gaps in the publishing calendar. The pages are read in a single pass
+ * over the primitive arrays of the plan, so that even sets of millions of pages are analysed in a few milliseconds.
+ *
+ * The publishing calendar is derived from the plan itself: a weekday is a publishing day if issues appeared on at least half of its occurrences.
+ * Only the missing days with such a weekday are reported as gaps, so that e.g. the Sundays of a paper that is not published on Sundays are not
+ * reported.
+ */
+@Getter
+public class CompletenessReport {
+
+    // share of its occurrences on which a weekday must have issues to be a publishing day
+    private static final double PUBLISHING_DAY_SHARE = 0.5;
+    // issues whose page numbers spread wider than this are not checked, their numbers are no page sequence
+    private static final int MAX_PAGE_RANGE = 1 << 16;
+    // maximum number of problems kept for the log, all problems are counted
+    private static final int MAX_PROBLEMS = 100;
+
+    // number of pages missing in the page sequences of the issues
+    private int missingPages;
+    // number of pages whose page number appears more than once in their issue
+    private int duplicatePages;
+    // number of publishing days without issue
+    private int missingIssues;
+    // number of days with issues for each weekday, indexed by DayOfWeek.ordinal()
+    private final int[] issueDaysPerWeekday = new int[7];
+    // weekdays on which the newspaper is published
+    private final Set<DayOfWeek> publishingDays = EnumSet.noneOf(DayOfWeek.class);
+    // the first problems found, in the order of the plan
+    private final List<String> problems = new ArrayList<>();
+    private int numberOfProblems;
+
+    private CompletenessReport() {
+    }
+
+    /**
+     * analyse the page sequences of all issues and the publishing calendar of all years of the plan
+     *
+     * @param plan ImportPlan containing all pages
+     * @return CompletenessReport
+     */
+    public static CompletenessReport analyze(ImportPlan plan) {
+        CompletenessReport report = new CompletenessReport();
+        List<YearCalendar> calendars = new ArrayList<>();
+        int[] weekdays = new int[7];
+        BitSet pageNumbers = new BitSet();
+        BitSet duplicates = new BitSet();
+
+        for (int year = 0; year < plan.getNumberOfYears(); year++) {
+            YearCalendar calendar = null;
+            int lastDate = 0;
+            for (int issue = plan.getYearStart(year); issue < plan.getYearEnd(year); issue++) {
+                int start = plan.getIssueStart(issue);
+                int date = plan.getDate(start);
+                // pages without valid date are reported by the validation
+                if (date == 0) {
+                    continue;
+                }
+                if (calendar == null) {
+                    calendar = new YearCalendar(date / 10000);
+                    calendars.add(calendar);
+                }
+                if (date != lastDate) {
+                    LocalDate day = toLocalDate(date);
+                    calendar.days.set(day.getDayOfYear() - 1);
+                    weekdays[day.getDayOfWeek().ordinal()]++;
+                    lastDate = date;
+                }
+                report.checkPageSequence(plan, issue, pageNumbers, duplicates);
+            }
+        }
+
+        // gaps at the start or the end of a year are found if the plan continues in the year before or after
+        for (int i = 1; i < calendars.size(); i++) {
+            if (calendars.get(i).year == calendars.get(i - 1).year + 1) {
+                calendars.get(i - 1).continuesAfter = true;
+                calendars.get(i).continuesBefore = true;
+            }
+        }
+        System.arraycopy(weekdays, 0, report.issueDaysPerWeekday, 0, 7);
+        report.findPublishingDays(calendars);
+        for (YearCalendar calendar : calendars) {
+            report.findCalendarGaps(calendar);
+        }
+        return report;
+    }
+
+    /**
+     * @return true if no page and no issue is missing and no page number is duplicated
+     */
+    public boolean isComplete() {
+        return missingPages == 0 && duplicatePages == 0 && missingIssues == 0;
+    }
+
+    /**
+     * @return the problems for the log, followed by a note if more problems were found
+     */
+    public List<String> getProblems() {
+        if (numberOfProblems <= problems.size()) {
+            return Collections.unmodifiableList(problems);
+        }
+        List<String> result = new ArrayList<>(problems);
+        result.add("... and " + (numberOfProblems - problems.size()) + " more completeness problems");
+        return result;
+    }
+
+    /**
+     * @return a summary of the analysis for the log
+     */
+    public String getSummary() {
+        StringJoiner days = new StringJoiner(", ");
+        for (DayOfWeek day : publishingDays) {
+            days.add(day.getDisplayName(TextStyle.SHORT, Locale.ENGLISH));
+        }
+        return "Completeness: " + missingPages + " missing pages, " + duplicatePages + " duplicate pages, " + missingIssues
+                + " missing issues, issues appear on " + (publishingDays.isEmpty() ? "no regular days" : days.toString());
+    }
+
+    private void checkPageSequence(ImportPlan plan, int issue, BitSet pageNumbers, BitSet duplicates) {
+        int start = plan.getIssueStart(issue);
+        int end = plan.getIssueEnd(issue);
+        int min = Integer.MAX_VALUE;
+        int max = -1;
+        for (int page = start; page < end; page++) {
+            int number = plan.getPageNumber(page);
+            if (number >= 0) {
+                min = Math.min(min, number);
+                max = Math.max(max, number);
+            }
+        }
+        // pages without valid page number are reported by the validation
+        if (max < 0) {
+            return;
+        }
+        // sequences start at the first page, unless the issue starts with page 0
+        int first = Math.min(min, 1);
+        if (max - first >= MAX_PAGE_RANGE) {
+            addProblem("Page numbers of issue " + describe(plan, start) + " range from " + min + " to " + max + ", sequence not checked");
+            return;
+        }
+
+        pageNumbers.clear();
+        duplicates.clear();
+        for (int page = start; page < end; page++) {
+            int number = plan.getPageNumber(page);
+            if (number >= 0) {
+                int bit = number - first;
+                if (pageNumbers.get(bit)) {
+                    duplicates.set(bit);
+                    duplicatePages++;
+                } else {
+                    pageNumbers.set(bit);
+                }
+            }
+        }
+        int range = max - first + 1;
+        int missing = range - pageNumbers.cardinality();
+        if (missing > 0) {
+            missingPages += missing;
+            BitSet missingNumbers = (BitSet) pageNumbers.clone();
+            missingNumbers.flip(0, range);
+            addProblem("Issue " + describe(plan, start) + " misses pages " + ranges(missingNumbers, first));
+        }
+        if (!duplicates.isEmpty()) {
+            addProblem("Issue " + describe(plan, start) + " contains pages " + ranges(duplicates, first) + " more than once");
+        }
+    }
+
+    private void findPublishingDays(List<YearCalendar> calendars) {
+        int[] occurrences = new int[7];
+        for (YearCalendar calendar : calendars) {
+            for (int day = calendar.firstDay(); day <= calendar.lastDay(); day++) {
+                occurrences[calendar.getDayOfWeek(day).ordinal()]++;
+            }
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (occurrences[day.ordinal()] > 0 && issueDaysPerWeekday[day.ordinal()] >= PUBLISHING_DAY_SHARE * occurrences[day.ordinal()]) {
+                publishingDays.add(day);
+            }
+        }
+    }
+
+    private void findCalendarGaps(YearCalendar calendar) {
+        int last = calendar.lastDay();
+        int gapStart = -1;
+        int gapEnd = -1;
+        int gapIssues = 0;
+        for (int day = calendar.firstDay(); day <= last; day++) {
+            if (calendar.days.get(day)) {
+                if (gapIssues > 0) {
+                    reportGap(calendar, gapStart, gapEnd, gapIssues);
+                    gapIssues = 0;
+                }
+            } else if (publishingDays.contains(calendar.getDayOfWeek(day))) {
+                // days without publishing do not interrupt a gap
+                if (gapIssues == 0) {
+                    gapStart = day;
+                }
+                gapEnd = day;
+                gapIssues++;
+            }
+        }
+        if (gapIssues > 0) {
+            reportGap(calendar, gapStart, gapEnd, gapIssues);
+        }
+    }
+
+    private void reportGap(YearCalendar calendar, int gapStart, int gapEnd, int gapIssues) {
+        missingIssues += gapIssues;
+        if (gapStart == gapEnd) {
+            addProblem("No issue found for " + calendar.getDate(gapStart));
+        } else {
+            addProblem("No issues found from " + calendar.getDate(gapStart) + " to " + calendar.getDate(gapEnd) + ", " + gapIssues
+                    + " issues expected");
+        }
+    }
+
+    private void addProblem(String problem) {
+        numberOfProblems++;
+        if (problems.size() < MAX_PROBLEMS) {
+            problems.add(problem);
+        }
+    }
+
+    private static String describe(ImportPlan plan, int page) {
+        return toLocalDate(plan.getDate(page)) + " (" + plan.getEdition(page).getKey() + ")";
+    }
+
+    private static LocalDate toLocalDate(int date) {
+        return LocalDate.of(date / 10000, date / 100 % 100, date % 100);
+    }
+
+    /**
+     * @param bits set bits to list
+     * @param offset page number of bit 0
+     * @return the page numbers of the set bits, consecutive numbers are joined to ranges like 3-5
+     */
+    private static String ranges(BitSet bits, int offset) {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (int start = bits.nextSetBit(0); start >= 0; start = bits.nextSetBit(start)) {
+            int end = bits.nextClearBit(start);
+            joiner.add(end - start == 1 ? String.valueOf(start + offset) : (start + offset) + "-" + (end - 1 + offset));
+            start = end;
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * the days of a year with at least one issue, bit 0 is the first of January
+     */
+    private static class YearCalendar {
+        private final int year;
+        private final LocalDate firstOfJanuary;
+        private final BitSet days = new BitSet(366);
+        // true if the plan contains the year before or after this year
+        private boolean continuesBefore;
+        private boolean continuesAfter;
+
+        private YearCalendar(int year) {
+            this.year = year;
+            firstOfJanuary = LocalDate.of(year, 1, 1);
+        }
+
+        private int firstDay() {
+            return continuesBefore ? 0 : days.nextSetBit(0);
+        }
+
+        private int lastDay() {
+            return continuesAfter ? firstOfJanuary.lengthOfYear() - 1 : days.length() - 1;
+        }
+
+        private LocalDate getDate(int day) {
+            return firstOfJanuary.plusDays(day);
+        }
+
+        private DayOfWeek getDayOfWeek(int day) {
+            // derived from the first of January, without creating a date for each day
+            return firstOfJanuary.getDayOfWeek().plus(day);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package de.intranda.goobi.plugins.model;
+
+import lombok.Getter;
+
+/**
+ * An edition of a newspaper issue, e.g. a morning, evening or regional edition. Pages of the same date and edition are grouped into one issue,
+ * issues of the same date are sorted by the rank of their editions.
+ */
+@Getter
+public class Edition {
+
+    // key used to group the pages of one date into issues
+    private String key;
+    // sort order of the issues of one date, lower ranks come first
+    private int rank;
+    // prefix used for the issue title
+    private String titlePrefix;
+
+    public Edition(String key, int rank, String titlePrefix) {
+        this.key = key;
+        this.rank = rank;
+        this.titlePrefix = titlePrefix;
+    }
+}
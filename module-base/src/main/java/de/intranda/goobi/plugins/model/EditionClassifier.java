@@ -0,0 +1,181 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.Getter;
+
+/**
+ * Assigns an {@link Edition} to a file name based on an ordered list of rules. The first rule whose pattern is found anywhere in the file name
+ * wins, if no rule matches the default edition is used.
+ *
+ * All rules are compiled into one single pattern of zero-width alternatives, so that every file name is scanned only once, independent of the
+ * number of configured rules. Each rule is wrapped in its own group, so that its inline flags end with the rule. Rules with backreferences,
+ * named groups or comments would change their meaning in the combined pattern and are matched with their own pattern instead.
+ */
+public class EditionClassifier {
+
+    private static final String GROUP_PREFIX = "edition";
+
+    @Getter
+    private Edition defaultEdition;
+    @Getter
+    private List<Edition> editions;
+    // all combinable rules, or null if there are none
+    private Pattern combinedPattern;
+    // index of the rule of each group of the combined pattern
+    private int[] combinedRules;
+    // own pattern of each rule that is not part of the combined pattern, null for the combined rules
+    private List<Pattern> separatePatterns;
+
+    private EditionClassifier(Edition defaultEdition, List<Edition> editions, Pattern combinedPattern, int[] combinedRules,
+            List<Pattern> separatePatterns) {
+        this.defaultEdition = defaultEdition;
+        this.editions = editions;
+        this.combinedPattern = combinedPattern;
+        this.combinedRules = combinedRules;
+        this.separatePatterns = separatePatterns;
+    }
+
+    /**
+     * find the edition of the input file name
+     *
+     * @param fileName name of the file
+     * @return the edition of the first rule that matches, or the default edition if none matches
+     */
+    public Edition classify(String fileName) {
+        int best = editions.size();
+        if (combinedPattern != null) {
+            Matcher matcher = combinedPattern.matcher(fileName);
+            while (best > combinedRules[0] && matcher.find()) {
+                // at each position the alternation reports the first matching rule, so only the lower indices need to be checked
+                for (int group = 0; group < combinedRules.length && combinedRules[group] < best; group++) {
+                    if (matcher.group(GROUP_PREFIX + group) != null) {
+                        best = combinedRules[group];
+                        break;
+                    }
+                }
+            }
+        }
+        // the separate rules only need to be checked if they precede the best combined rule
+        for (int i = 0; i < best; i++) {
+            Pattern pattern = separatePatterns.get(i);
+            if (pattern != null && pattern.matcher(fileName).find()) {
+                best = i;
+                break;
+            }
+        }
+
+        return best < editions.size() ? editions.get(best) : defaultEdition;
+    }
+
+    /**
+     * check if a rule keeps its meaning inside the combined pattern
+     *
+     * @param regex regular expression of the rule
+     * @return false if the rule contains a backreference, a named group or the comments flag
+     */
+    static boolean isCombinable(String regex) {
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    // quoted text ends with \E or with the expression
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 2;
+                    continue;
+                }
+                if (Character.isDigit(next) && next != '0' || next == 'k') {
+                    return false;
+                }
+                i += 2;
+            } else if (c == '(' && regex.startsWith("(?", i)) {
+                int j = i + 2;
+                if (j < regex.length() && regex.charAt(j) == '<' && j + 1 < regex.length() && Character.isLetter(regex.charAt(j + 1))) {
+                    return false;
+                }
+                // inline flags, e.g. (?i) or (?i-s:...)
+                while (j < regex.length() && (Character.isLetter(regex.charAt(j)) || regex.charAt(j) == '-')) {
+                    if (regex.charAt(j) == 'x') {
+                        return false;
+                    }
+                    j++;
+                }
+                i = j;
+            } else {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    public static Builder builder(Edition defaultEdition) {
+        return new Builder(defaultEdition);
+    }
+
+    public static class Builder {
+        private Edition defaultEdition;
+        private List<String> patterns = new ArrayList<>();
+        private List<Edition> editions = new ArrayList<>();
+
+        private Builder(Edition defaultEdition) {
+            this.defaultEdition = defaultEdition;
+        }
+
+        /**
+         * add a rule using a regular expression
+         *
+         * @param regex regular expression that is searched in the file name
+         * @param edition edition to use if the expression is found
+         * @return this builder
+         */
+        public Builder addRule(String regex, Edition edition) {
+            // compile each pattern on its own first to report syntax errors per rule
+            Pattern.compile(regex);
+            patterns.add(regex);
+            editions.add(edition);
+            return this;
+        }
+
+        /**
+         * add a rule using a plain identifier that must be contained in the file name
+         *
+         * @param identifier literal string that is searched in the file name
+         * @param edition edition to use if the identifier is found
+         * @return this builder
+         */
+        public Builder addIdentifierRule(String identifier, Edition edition) {
+            return addRule(Pattern.quote(identifier), edition);
+        }
+
+        public EditionClassifier build() {
+            StringBuilder combined = new StringBuilder();
+            List<Integer> combinedRules = new ArrayList<>();
+            List<Pattern> separatePatterns = new ArrayList<>();
+            for (int i = 0; i < patterns.size(); i++) {
+                String regex = patterns.get(i);
+                if (isCombinable(regex)) {
+                    if (combined.length() > 0) {
+                        combined.append('|');
+                    }
+                    combined.append("(?=(?<").append(GROUP_PREFIX).append(combinedRules.size()).append(">(?:").append(regex).append(")))");
+                    combinedRules.add(i);
+                    separatePatterns.add(null);
+                } else {
+                    separatePatterns.add(Pattern.compile(regex));
+                }
+            }
+            int[] rules = new int[combinedRules.size()];
+            for (int i = 0; i < rules.length; i++) {
+                rules[i] = combinedRules.get(i);
+            }
+            return new EditionClassifier(defaultEdition, Collections.unmodifiableList(new ArrayList<>(editions)),
+                    rules.length > 0 ? Pattern.compile(combined.toString()) : null, rules, Collections.unmodifiableList(separatePatterns));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.Objects;
+
+import lombok.Getter;
+
+/**
+ * Technical metadata of an image file as read from its header.
+ */
+@Getter
+public class ImageInfo {
+
+    // TIFF or JPEG
+    private String format;
+    private int width;
+    private int height;
+    private int bitsPerSample;
+    private int samplesPerPixel;
+    // name of the compression, e.g. LZW or baseline
+    private String compression;
+    // resolution in dots per inch, 0 if unknown
+    private double xResolution;
+    private double yResolution;
+
+    public ImageInfo(String format, int width, int height, int bitsPerSample, int samplesPerPixel, String compression, double xResolution,
+            double yResolution) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.bitsPerSample = bitsPerSample;
+        this.samplesPerPixel = samplesPerPixel;
+        this.compression = compression;
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ImageInfo)) {
+            return false;
+        }
+        ImageInfo other = (ImageInfo) obj;
+        return width == other.width && height == other.height && bitsPerSample == other.bitsPerSample && samplesPerPixel == other.samplesPerPixel
+                && Double.compare(xResolution, other.xResolution) == 0 && Double.compare(yResolution, other.yResolution) == 0
+                && Objects.equals(format, other.format) && Objects.equals(compression, other.compression);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(format, width, height, bitsPerSample, samplesPerPixel, compression, xResolution, yResolution);
+    }
+
+    @Override
+    public String toString() {
+        return format + " " + width + "x" + height + ", " + samplesPerPixel + "x" + bitsPerSample + " bit, " + compression + ", "
+                + Math.round(xResolution) + "x" + Math.round(yResolution) + " dpi";
+    }
+}
@@ -1,5 +1,7 @@
 package de.intranda.goobi.plugins.model;
 
+import java.util.List;
+
 import lombok.Getter;
 
 public class ImportMetadata {
@@ -8,20 +10,47 @@ public class ImportMetadata {
 
     @Getter
     private String type;
-    @Getter
-    private String value;
-    @Getter
-    private String variable;
+    // value compiled once when the configuration is read
+    private MetadataTemplate template;
     @Getter
     private boolean person;
 
-    public ImportMetadata(String type, String value, String variable, boolean person) {
+    /**
+     * @param type metadata type
+     * @param value value, which may reference the variables
+     * @param variables names of the variables that are replaced in the value
+     * @param person true if the metadata is a person
+     */
+    public ImportMetadata(String type, String value, List<String> variables, boolean person) {
+        this(type, MetadataTemplate.compile(removeSpaceIfNeeded(value, type), variables), person);
+    }
+
+    private ImportMetadata(String type, MetadataTemplate template, boolean person) {
         this.type = type;
-        this.value = removeSpaceIfNeeded(value, type);
-        this.variable = variable;
+        this.template = template;
         this.person = person;
     }
 
+    /**
+     * @return the value of a metadata without variables, see {@link #resolve(MetadataTemplate.Scope)}
+     */
+    public String getValue() {
+        return template.evaluate(null);
+    }
+
+    /**
+     * get the metadata with all variables replaced
+     *
+     * @param scope values of the variables
+     * @return this metadata if it contains no variables, otherwise a new one with the evaluated value
+     */
+    public ImportMetadata resolve(MetadataTemplate.Scope scope) {
+        if (template.isConstant()) {
+            return this;
+        }
+        return new ImportMetadata(type, MetadataTemplate.constant(removeSpaceIfNeeded(template.evaluate(scope), type)), person);
+    }
+
     private static String removeSpaceIfNeeded(String value, String type) {
         return isSpaceAllowedForType(type) ? value : value.replace(" ", "");
     }
@@ -29,4 +58,4 @@ public class ImportMetadata {
     private static boolean isSpaceAllowedForType(String type) {
         return !CATALOG_ID_DIGITAL_TYPE.equals(type) && !CALALOG_ID_SOURCE_TYPE.equals(type);
     }
-}
\ No newline at end of file
+}
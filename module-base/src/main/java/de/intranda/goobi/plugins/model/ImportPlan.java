@@ -0,0 +1,383 @@
+package de.intranda.goobi.plugins.model;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The complete plan of an import, kept in parallel primitive arrays instead of one object per page, so that even imports of millions of pages only
+ * need a few bytes per page besides the file path.
+ *
+ * The pages are sorted by date, by the rank of their editions and by their position in the list of files. Pages of the same date and edition form
+ * an issue, issues of the same year form a year process. {@link NewspaperPage} objects are only created on request, e.g. for the issues of the year
+ * whose METS file is written.
+ *
+ * The technical metadata read from the image headers is kept in the same way: the dimensions of each page in two arrays, and the remaining values,
+ * which are usually the same for all pages of a set, as index into a short list of distinct image profiles.
+ */
+public class ImportPlan {
+
+    // number of bits of the sort key used for the edition and for the file index, the date takes the remaining bits
+    private static final int EDITION_BITS = 10;
+    private static final int FILE_BITS = 26;
+
+    // all files of the import folder in the order in which they were listed
+    private final List<Path> files;
+    // all editions found, sorted by rank and key
+    private final List<Edition> editions;
+
+    // date of each page as yyyymmdd, 0 if the file name contains no valid date
+    private final int[] dates;
+    // position of the edition of each page in the list of editions
+    private final int[] editionIndexes;
+    // page number of each page, -1 if the file name contains no valid page number
+    private final int[] pageNumbers;
+    // position of the file of each page in the list of files
+    private final int[] fileIndexes;
+
+    // width and height of the image of each page, 0 if the image header was not read
+    private final int[] imageWidths;
+    private final int[] imageHeights;
+    // position + 1 of the format, depth, compression and resolution of each image in the list of profiles, 0 if unknown
+    private final int[] imageProfileIndexes;
+    private final List<ImageInfo> imageProfiles = new ArrayList<>();
+    private final Map<ImageInfo, Integer> imageProfilesByValue = new ConcurrentHashMap<>();
+
+    // index of the first page of each issue, followed by the number of pages
+    private final int[] issueStarts;
+    // index of the first issue of each year, followed by the number of issues
+    private final int[] yearStarts;
+
+    // pages whose files are copied into the master folder
+    private final BitSet imported = new BitSet();
+    // pages whose derivatives are created
+    private final BitSet derivativeCreated = new BitSet();
+
+    private ImportPlan(List<Path> files, List<Edition> editions, long[] sortKeys, int[] filePageNumbers) {
+        this.files = files;
+        this.editions = editions;
+
+        int size = sortKeys.length;
+        dates = new int[size];
+        editionIndexes = new int[size];
+        pageNumbers = new int[size];
+        fileIndexes = new int[size];
+        imageWidths = new int[size];
+        imageHeights = new int[size];
+        imageProfileIndexes = new int[size];
+
+        int numberOfIssues = 0;
+        int numberOfYears = 0;
+        for (int i = 0; i < size; i++) {
+            long key = sortKeys[i];
+            dates[i] = (int) (key >>> (EDITION_BITS + FILE_BITS));
+            editionIndexes[i] = (int) ((key >>> FILE_BITS) & ((1 << EDITION_BITS) - 1));
+            fileIndexes[i] = (int) (key & ((1 << FILE_BITS) - 1));
+            pageNumbers[i] = filePageNumbers[fileIndexes[i]];
+
+            if (i == 0 || dates[i] != dates[i - 1] || editionIndexes[i] != editionIndexes[i - 1]) {
+                numberOfIssues++;
+            }
+            if (i == 0 || dates[i] / 10000 != dates[i - 1] / 10000) {
+                numberOfYears++;
+            }
+        }
+
+        issueStarts = new int[numberOfIssues + 1];
+        yearStarts = new int[numberOfYears + 1];
+        int issue = 0;
+        int year = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || dates[i] != dates[i - 1] || editionIndexes[i] != editionIndexes[i - 1]) {
+                if (i == 0 || dates[i] / 10000 != dates[i - 1] / 10000) {
+                    yearStarts[year++] = issue;
+                }
+                issueStarts[issue++] = i;
+            }
+        }
+        issueStarts[numberOfIssues] = size;
+        yearStarts[numberOfYears] = numberOfIssues;
+    }
+
+    /**
+     * create the plan for the input files
+     *
+     * @param files files that shall be imported
+     * @param editionClassifier classifier used to detect the edition of each file
+     * @return ImportPlan
+     */
+    public static ImportPlan create(List<Path> files, EditionClassifier editionClassifier) {
+        int[] dates = new int[files.size()];
+        int[] pageNumbers = new int[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            String fileName = files.get(i).getFileName().toString();
+            dates[i] = parseDate(fileName);
+            pageNumbers[i] = parsePageNumber(fileName);
+        }
+        return create(files, dates, pageNumbers, editionClassifier);
+    }
+
+    /**
+     * create the plan for input files whose dates and page numbers were already parsed, e.g. by an earlier scan
+     *
+     * @param files files that shall be imported
+     * @param dates date of each file as yyyymmdd, 0 if its name contains no valid date
+     * @param pageNumbers page number of each file, -1 if its name contains no valid page number
+     * @param editionClassifier classifier used to detect the edition of each file
+     * @return ImportPlan
+     */
+    public static ImportPlan create(List<Path> files, int[] dates, int[] pageNumbers, EditionClassifier editionClassifier) {
+        if (files.size() >= 1 << FILE_BITS) {
+            throw new IllegalArgumentException("Too many files for one import: " + files.size());
+        }
+
+        // pages are grouped into issues by the key of their editions, the first edition found for a key is used for all its pages
+        Map<String, Integer> editionsByKey = new HashMap<>();
+        List<Edition> editionsFound = new ArrayList<>();
+        int[] rawEditions = new int[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            String fileName = files.get(i).getFileName().toString();
+            Edition edition = editionClassifier.classify(fileName);
+            rawEditions[i] = editionsByKey.computeIfAbsent(edition.getKey(), key -> {
+                editionsFound.add(edition);
+                return editionsFound.size() - 1;
+            });
+        }
+        if (editionsFound.size() >= 1 << EDITION_BITS) {
+            throw new IllegalArgumentException("Too many editions for one import: " + editionsFound.size());
+        }
+
+        List<Edition> editions = new ArrayList<>(editionsFound);
+        editions.sort(Comparator.comparingInt(Edition::getRank).thenComparing(Edition::getKey));
+        int[] editionOrder = new int[editions.size()];
+        for (int i = 0; i < editions.size(); i++) {
+            editionOrder[editionsFound.indexOf(editions.get(i))] = i;
+        }
+
+        // date, edition and file index are packed into one long, sorting these keys keeps pages of equal date and edition in the order of the files
+        long[] sortKeys = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            sortKeys[i] = ((long) dates[i] << (EDITION_BITS + FILE_BITS)) | ((long) editionOrder[rawEditions[i]] << FILE_BITS) | i;
+        }
+        Arrays.sort(sortKeys);
+
+        return new ImportPlan(files, editions, sortKeys, pageNumbers);
+    }
+
+    /**
+     * @param fileName name of the file
+     * @return the date of the file name as yyyymmdd, or 0 if it contains no valid date
+     */
+    public static int parseDate(String fileName) {
+        try {
+            LocalDate date = LocalDate.parse(NewspaperPage.getDateFromFileName(fileName));
+            return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param fileName name of the file
+     * @return the page number of the file name, or -1 if it contains no valid page number
+     */
+    public static int parsePageNumber(String fileName) {
+        String pageNumber = NewspaperPage.getPageNumberFromFileName(fileName);
+        // longer numbers would overflow, they are no sensible page numbers anyway
+        if (!StringUtils.isNumeric(pageNumber) || pageNumber.length() > 9) {
+            return -1;
+        }
+        return Integer.parseInt(pageNumber);
+    }
+
+    /**
+     * @return the number of pages
+     */
+    public int size() {
+        return dates.length;
+    }
+
+    public int getNumberOfIssues() {
+        return issueStarts.length - 1;
+    }
+
+    public int getNumberOfYears() {
+        return yearStarts.length - 1;
+    }
+
+    public Path getPath(int page) {
+        return files.get(fileIndexes[page]);
+    }
+
+    public Edition getEdition(int page) {
+        return editions.get(editionIndexes[page]);
+    }
+
+    /**
+     * @param page index of the page
+     * @return the date of the page as yyyymmdd, 0 if its file name contains no valid date
+     */
+    public int getDate(int page) {
+        return dates[page];
+    }
+
+    public int getPageNumber(int page) {
+        return pageNumbers[page];
+    }
+
+    public boolean isDateValid(int page) {
+        return dates[page] != 0;
+    }
+
+    public boolean isPageNumberValid(int page) {
+        return pageNumbers[page] >= 0;
+    }
+
+    /**
+     * @param issue index of the issue
+     * @return the index of the first page of the issue
+     */
+    public int getIssueStart(int issue) {
+        return issueStarts[issue];
+    }
+
+    /**
+     * @param issue index of the issue
+     * @return the index after the last page of the issue
+     */
+    public int getIssueEnd(int issue) {
+        return issueStarts[issue + 1];
+    }
+
+    /**
+     * @param year index of the year
+     * @return the index of the first issue of the year
+     */
+    public int getYearStart(int year) {
+        return yearStarts[year];
+    }
+
+    /**
+     * @param year index of the year
+     * @return the index after the last issue of the year
+     */
+    public int getYearEnd(int year) {
+        return yearStarts[year + 1];
+    }
+
+    /**
+     * @param year index of the year
+     * @return the calendar year
+     */
+    public int getYear(int year) {
+        return dates[getIssueStart(getYearStart(year))] / 10000;
+    }
+
+    /**
+     * @param calendarYear the calendar year
+     * @return the index of the year, or -1 if the plan contains no pages of this year
+     */
+    public int indexOfYear(int calendarYear) {
+        for (int year = 0; year < getNumberOfYears(); year++) {
+            if (getYear(year) == calendarYear) {
+                return year;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param year index of the year
+     * @return the number of pages of the year
+     */
+    public int getNumberOfPagesOfYear(int year) {
+        return getIssueStart(getYearEnd(year)) - getIssueStart(getYearStart(year));
+    }
+
+    public void markImported(int page) {
+        imported.set(page);
+    }
+
+    public boolean isImported(int page) {
+        return imported.get(page);
+    }
+
+    public void markDerivativeCreated(int page) {
+        derivativeCreated.set(page);
+    }
+
+    /**
+     * keep the technical metadata of the image of a page, may be called by several threads for different pages
+     *
+     * @param page index of the page
+     * @param imageInfo technical metadata read from the image header
+     */
+    public void setImageInfo(int page, ImageInfo imageInfo) {
+        ImageInfo profile = new ImageInfo(imageInfo.getFormat(), 0, 0, imageInfo.getBitsPerSample(), imageInfo.getSamplesPerPixel(),
+                imageInfo.getCompression(), imageInfo.getXResolution(), imageInfo.getYResolution());
+        imageProfileIndexes[page] = imageProfilesByValue.computeIfAbsent(profile, p -> {
+            synchronized (imageProfiles) {
+                imageProfiles.add(p);
+                return imageProfiles.size();
+            }
+        });
+        imageWidths[page] = imageInfo.getWidth();
+        imageHeights[page] = imageInfo.getHeight();
+    }
+
+    /**
+     * @param page index of the page
+     * @return the technical metadata of the image of the page, null if its image header was not read
+     */
+    public ImageInfo getImageInfo(int page) {
+        int profileIndex = imageProfileIndexes[page];
+        if (profileIndex == 0) {
+            return null;
+        }
+        ImageInfo profile;
+        synchronized (imageProfiles) {
+            profile = imageProfiles.get(profileIndex - 1);
+        }
+        return new ImageInfo(profile.getFormat(), imageWidths[page], imageHeights[page], profile.getBitsPerSample(), profile.getSamplesPerPixel(),
+                profile.getCompression(), profile.getXResolution(), profile.getYResolution());
+    }
+
+    /**
+     * create the NewspaperPage object of a page
+     *
+     * @param page index of the page
+     * @return NewspaperPage
+     */
+    public NewspaperPage getPage(int page) {
+        NewspaperPage newspaperPage = new NewspaperPage(getPath(page), getEdition(page));
+        newspaperPage.setDerivativeCreated(derivativeCreated.get(page));
+        newspaperPage.setImageInfo(getImageInfo(page));
+        return newspaperPage;
+    }
+
+    /**
+     * create the NewspaperPage objects of all pages of an issue whose files are copied into the master folder
+     *
+     * @param issue index of the issue
+     * @return list of NewspaperPages in the order of their appearance
+     */
+    public List<NewspaperPage> getImportedPages(int issue) {
+        List<NewspaperPage> pages = new ArrayList<>();
+        for (int page = getIssueStart(issue); page < getIssueEnd(issue); page++) {
+            if (imported.get(page)) {
+                pages.add(getPage(page));
+            }
+        }
+        return pages;
+    }
+}
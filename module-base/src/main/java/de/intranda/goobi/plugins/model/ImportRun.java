@@ -0,0 +1,121 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.Date;
+
+import lombok.Getter;
+
+/**
+ * One run of an import as kept in the run history, with the time of each phase and the environment it ran in.
+ */
+@Getter
+public class ImportRun {
+
+    public static final String COMPLETED = "COMPLETED";
+    public static final String CANCELLED = "CANCELLED";
+    public static final String FAILED = "FAILED";
+
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final int FIELDS = 13;
+
+    private final long startTime;
+    private final String set;
+    private final String host;
+    // version of the plugin, - if unknown
+    private final String version;
+    // hash of the configuration of the set
+    private final String fingerprint;
+    private final String outcome;
+    private final int pages;
+    // number of bytes copied into the master folders
+    private final long bytes;
+    private final int errors;
+    // time to list the import folder and to plan the import
+    private final long scanMillis;
+    private final long validationMillis;
+    // time to create the processes, to copy the files and to write the METS files
+    private final long importMillis;
+    // true if the run was much slower than the previous runs of the set, set by the run history
+    private final boolean slow;
+
+    public ImportRun(long startTime, String set, String host, String version, String fingerprint, String outcome, int pages, long bytes, int errors,
+            long scanMillis, long validationMillis, long importMillis, boolean slow) {
+        this.startTime = startTime;
+        this.set = set;
+        this.host = host;
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.outcome = outcome;
+        this.pages = pages;
+        this.bytes = bytes;
+        this.errors = errors;
+        this.scanMillis = scanMillis;
+        this.validationMillis = validationMillis;
+        this.importMillis = importMillis;
+        this.slow = slow;
+    }
+
+    /**
+     * @param isSlow true if the run was much slower than the previous runs of the set
+     * @return a copy of the run with the given slow flag
+     */
+    public ImportRun withSlow(boolean isSlow) {
+        return new ImportRun(startTime, set, host, version, fingerprint, outcome, pages, bytes, errors, scanMillis, validationMillis, importMillis,
+                isSlow);
+    }
+
+    /**
+     * @return the start time as date for the GUI
+     */
+    public Date getStartDate() {
+        return new Date(startTime);
+    }
+
+    public boolean isCompleted() {
+        return COMPLETED.equals(outcome);
+    }
+
+    public long getElapsedMillis() {
+        return scanMillis + validationMillis + importMillis;
+    }
+
+    /**
+     * @return imported pages per second, 0 if nothing was imported
+     */
+    public double getPagesPerSecond() {
+        return importMillis > 0 ? pages * 1000.0 / importMillis : 0;
+    }
+
+    public double getMegabytesPerSecond() {
+        return importMillis > 0 ? bytes * 1000.0 / MEGABYTE / importMillis : 0;
+    }
+
+    /**
+     * @return the run as one line of tab separated values
+     */
+    public String toLine() {
+        return startTime + "\t" + clean(set) + "\t" + clean(host) + "\t" + clean(version) + "\t" + clean(fingerprint) + "\t" + outcome + "\t" + pages
+                + "\t" + bytes + "\t" + errors + "\t" + scanMillis + "\t" + validationMillis + "\t" + importMillis + "\t" + slow;
+    }
+
+    /**
+     * @param line line written by {@link #toLine()}
+     * @return the run, or null if the line is no valid run
+     */
+    public static ImportRun parse(String line) {
+        String[] values = line.split("\t", -1);
+        if (values.length != FIELDS) {
+            return null;
+        }
+        try {
+            return new ImportRun(Long.parseLong(values[0]), values[1], values[2], values[3], values[4], values[5], Integer.parseInt(values[6]),
+                    Long.parseLong(values[7]), Integer.parseInt(values[8]), Long.parseLong(values[9]), Long.parseLong(values[10]),
+                    Long.parseLong(values[11]), Boolean.parseBoolean(values[12]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String clean(String value) {
+        return value == null ? "-" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
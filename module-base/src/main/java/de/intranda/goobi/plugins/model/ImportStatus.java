@@ -0,0 +1,79 @@
+package de.intranda.goobi.plugins.model;
+
+import lombok.Getter;
+
+/**
+ * Snapshot of the state of a headless import, as returned by the REST endpoint.
+ */
+@Getter
+public class ImportStatus {
+
+    public static final String STARTING = "STARTING";
+    public static final String IDLE = "IDLE";
+    // the set is being imported in the GUI
+    public static final String LOCKED = "LOCKED";
+
+    private String set;
+    // STARTING while the files are validated, then the state of the import control, or LOCKED
+    private String state;
+    private int progress;
+    private int itemCurrent;
+    private int itemsTotal;
+    private int errors;
+    private String message;
+
+    public ImportStatus(String set, String state, int progress, int itemCurrent, int itemsTotal, int errors, String message) {
+        this.set = set;
+        this.state = state;
+        this.progress = progress;
+        this.itemCurrent = itemCurrent;
+        this.itemsTotal = itemsTotal;
+        this.errors = errors;
+        this.message = message;
+    }
+
+    /**
+     * @return true as long as the headless import is starting or running
+     */
+    public boolean isActive() {
+        return !IDLE.equals(state) && !LOCKED.equals(state);
+    }
+
+    public String toJson() {
+        return "{\"set\":" + quote(set) + ",\"state\":" + quote(state) + ",\"progress\":" + progress + ",\"itemCurrent\":" + itemCurrent
+                + ",\"itemsTotal\":" + itemsTotal + ",\"errors\":" + errors + ",\"message\":" + quote(message) + "}";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,35 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * An issue whose pages are copied into the process, but not yet written into its METS file.
+ */
+@Getter
+public class IssuePlan {
+
+    // date of the issue as found in the file names
+    private String date;
+    // value of the issue title
+    private String title;
+    // pages of the issue in the order of their appearance
+    private List<NewspaperPage> pages;
+    // configured issue metadata with all variables replaced
+    private List<ImportMetadata> metadata;
+    // values of the variables of the issue, the pages only override their own values
+    private MetadataTemplate.Scope scope;
+
+    public IssuePlan(String date, String title, List<NewspaperPage> pages) {
+        this(date, title, pages, List.of(), new MetadataTemplate.Scope());
+    }
+
+    public IssuePlan(String date, String title, List<NewspaperPage> pages, List<ImportMetadata> metadata, MetadataTemplate.Scope scope) {
+        this.date = date;
+        this.title = title;
+        this.pages = pages;
+        this.metadata = metadata;
+        this.scope = scope;
+    }
+}
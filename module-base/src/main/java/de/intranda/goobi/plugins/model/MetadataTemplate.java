@@ -0,0 +1,171 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A metadata value that is compiled once from the configuration into literals and variables, so that it can be evaluated for each anchor, volume,
+ * issue or page without scanning the configured string again. A variable is referenced in the value by its name wrapped with _ from both sides,
+ * only the names that are declared for the value are replaced.
+ */
+public class MetadataTemplate {
+
+    /**
+     * the variables that can be used in a template, their names are not case sensitive
+     */
+    public enum Variable {
+        // parts of the date of the first page of the scope
+        YEAR,
+        MONTH,
+        DAY,
+        DATE,
+        DATEFINE,
+        // page number of the page as found in its file name
+        PAGE,
+        // title of the configured set that is imported
+        SETTITLE,
+        // running number of the issue within the volume, starting with 1
+        ISSUENO,
+        // running number of the page within the volume, starting with 1
+        IMAGENO;
+
+        /**
+         * @param name name of the variable in any case
+         * @return the variable, or null if the name is unknown
+         */
+        public static Variable of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final Variable[] NO_VARIABLES = new Variable[0];
+
+    // literals.length is always variables.length + 1, literals[i] is followed by variables[i]
+    private final String[] literals;
+    private final Variable[] variables;
+
+    private MetadataTemplate(String[] literals, Variable[] variables) {
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    /**
+     * @param value a value without variables
+     * @return a template that always evaluates to the value
+     */
+    public static MetadataTemplate constant(String value) {
+        return new MetadataTemplate(new String[] { value }, NO_VARIABLES);
+    }
+
+    /**
+     * compile a configured value, references of unknown variables are replaced by their names
+     *
+     * @param value the value with references like _year_
+     * @param names names of the variables that are replaced in the value
+     * @return MetadataTemplate
+     */
+    public static MetadataTemplate compile(String value, Collection<String> names) {
+        List<String> literals = new ArrayList<>();
+        List<Variable> variables = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int position = 0;
+        while (position < value.length()) {
+            // the longest name that is referenced at the earliest position wins
+            int start = -1;
+            String found = null;
+            for (String name : names) {
+                int index = name.isEmpty() ? -1 : value.indexOf("_" + name + "_", position);
+                if (index >= 0 && (start < 0 || index < start || index == start && name.length() > found.length())) {
+                    start = index;
+                    found = name;
+                }
+            }
+            if (found == null) {
+                break;
+            }
+            literal.append(value, position, start);
+            Variable variable = Variable.of(found);
+            if (variable == null) {
+                literal.append(found);
+            } else {
+                literals.add(literal.toString());
+                variables.add(variable);
+                literal.setLength(0);
+            }
+            position = start + found.length() + 2;
+        }
+        literal.append(value.substring(position));
+        literals.add(literal.toString());
+        return new MetadataTemplate(literals.toArray(new String[0]), variables.toArray(NO_VARIABLES));
+    }
+
+    /**
+     * @return true if the template contains no variables
+     */
+    public boolean isConstant() {
+        return variables.length == 0;
+    }
+
+    /**
+     * @param scope values of the variables, may be null for constant templates
+     * @return the value of the template
+     */
+    public String evaluate(Scope scope) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+        StringBuilder value = new StringBuilder(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            value.append(scope.get(variables[i])).append(literals[i + 1]);
+        }
+        return value.toString();
+    }
+
+    /**
+     * values of the variables for an anchor, a volume, an issue or a page, variables without a value evaluate to an empty string
+     */
+    public static class Scope {
+        private final String[] values;
+
+        public Scope() {
+            values = new String[Variable.values().length];
+            Arrays.fill(values, "");
+        }
+
+        private Scope(String[] values) {
+            this.values = values.clone();
+        }
+
+        /**
+         * @param variable variable to set
+         * @param value value of the variable, null is treated as an empty string
+         * @return this scope
+         */
+        public Scope set(Variable variable, String value) {
+            values[variable.ordinal()] = value != null ? value : "";
+            return this;
+        }
+
+        /**
+         * @param variable variable
+         * @return the value of the variable
+         */
+        public String get(Variable variable) {
+            return values[variable.ordinal()];
+        }
+
+        /**
+         * @return a copy of this scope, e.g. to set the values of a nested scope
+         */
+        public Scope copy() {
+            return new Scope(values);
+        }
+    }
+}
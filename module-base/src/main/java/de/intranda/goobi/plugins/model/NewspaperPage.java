@@ -39,6 +39,7 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 
 import lombok.Getter;
+import lombok.Setter;
 
 /**
  * Represents a page of a newspaper in the digitization workflow. Provides methods for extracting and formatting date information from the file name,
@@ -59,21 +60,36 @@ public class NewspaperPage {
     private String month;
     private String day;
     private String pageNumber;
-    private boolean morningIssue = false;
-    private boolean eveningIssue = false;
+    private Edition edition;
+    // true once the JPEG derivative of this page is created
+    @Setter
+    private boolean derivativeCreated;
+    // technical metadata read from the image header during the validation, null if unknown
+    @Setter
+    private ImageInfo imageInfo;
 
     /**
      * Constructs a NewspaperPage object with the given file path.
      *
      * @param filePath The path to the newspaper page file.
+     * @param editionClassifier The classifier used to detect the edition of the page.
      */
-    public NewspaperPage(Path filePath, String morningIdentifier, String eveningIdentifier) {
+    public NewspaperPage(Path filePath, EditionClassifier editionClassifier) {
+        this(filePath, editionClassifier.classify(filePath.getFileName().toString()));
+    }
+
+    /**
+     * Constructs a NewspaperPage object with the given file path and an already known edition.
+     *
+     * @param filePath The path to the newspaper page file.
+     * @param edition The edition the page belongs to.
+     */
+    public NewspaperPage(Path filePath, Edition edition) {
         this.filePath = filePath;
         fileName = filePath.getFileName().toString();
-        pageNumber = fileName.substring(fileName.lastIndexOf("_") + 1, fileName.lastIndexOf("."));
+        pageNumber = getPageNumberFromFileName(fileName);
 
         date = getDateFromFileName(fileName);
-        dateAndType = date + "_1";
         localdate = LocalDate.parse(date);
 
         String[] dateParts = date.split("[\\W_]+");
@@ -83,15 +99,8 @@ public class NewspaperPage {
             day = dateParts[2];
         }
 
-        // check if it is a morning or evening issue
-        if (StringUtils.isNotBlank(morningIdentifier) && fileName.contains(morningIdentifier)) {
-            morningIssue = true;
-            dateAndType = date + "_0";
-        }
-        if (StringUtils.isNotBlank(eveningIdentifier) && fileName.contains(eveningIdentifier)) {
-            eveningIssue = true;
-            dateAndType = date + "_2";
-        }
+        this.edition = edition;
+        dateAndType = date + "_" + edition.getKey();
     }
 
     /**
@@ -105,6 +114,18 @@ public class NewspaperPage {
         return matcher.find() ? matcher.group() : "";
     }
 
+    /**
+     * Extracts the page number from the given file name, which is the part between the last underscore and the file extension.
+     *
+     * @param fileName The file name from which to extract the page number.
+     * @return The extracted page number or an empty string if not found.
+     */
+    public static String getPageNumberFromFileName(String fileName) {
+        int start = fileName.lastIndexOf("_") + 1;
+        int end = fileName.lastIndexOf(".");
+        return end > start ? fileName.substring(start, end) : "";
+    }
+
     /**
      * Gets the fine-formatted date (dd. MMM yyyy) of the newspaper page.
      *
@@ -117,10 +138,11 @@ public class NewspaperPage {
     /**
      * Checks if the file size is valid (greater than 0 and readable).
      *
+     * @param sourceFile size of the file in the import source, null if it does not exist or cannot be read
      * @return True if the file size is valid, false otherwise.
      */
-    public boolean isFileSizeValid() {
-        return filePath.toFile().canRead() && filePath.toFile().length() > 0;
+    public boolean isFileSizeValid(SourceFile sourceFile) {
+        return sourceFile != null && sourceFile.getSize() > 0;
     }
 
     public boolean isDateValid() {
@@ -0,0 +1,20 @@
+package de.intranda.goobi.plugins.model;
+
+import lombok.Getter;
+
+/**
+ * Size and modification time of a file in the import source.
+ */
+@Getter
+public class SourceFile {
+
+    // size in bytes
+    private long size;
+    // modification time in milliseconds since the epoch
+    private long lastModified;
+
+    public SourceFile(long size, long lastModified) {
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+}
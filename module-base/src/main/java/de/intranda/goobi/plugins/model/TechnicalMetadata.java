@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Maps the technical metadata read from the image headers to metadata types of the pages. Only the mapped properties are written, a page whose
+ * header could not be read gets no technical metadata.
+ */
+public class TechnicalMetadata {
+
+    public enum Property {
+        FORMAT("format"),
+        WIDTH("width"),
+        HEIGHT("height"),
+        BITS_PER_SAMPLE("bitsPerSample"),
+        SAMPLES_PER_PIXEL("samplesPerPixel"),
+        COMPRESSION("compression"),
+        X_RESOLUTION("xResolution"),
+        Y_RESOLUTION("yResolution");
+
+        // name of the attribute in the configuration
+        @Getter
+        private final String attribute;
+
+        Property(String attribute) {
+            this.attribute = attribute;
+        }
+    }
+
+    public static final TechnicalMetadata NONE = new TechnicalMetadata(Collections.emptyMap());
+
+    private final Map<Property, String> types;
+
+    /**
+     * @param types name of the metadata type of each property that shall be written
+     */
+    public TechnicalMetadata(Map<Property, String> types) {
+        this.types = types.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new EnumMap<>(types));
+    }
+
+    /**
+     * @return true if no property is mapped
+     */
+    public boolean isEmpty() {
+        return types.isEmpty();
+    }
+
+    /**
+     * @return names of the mapped metadata types
+     */
+    public Collection<String> getTypes() {
+        return types.values();
+    }
+
+    /**
+     * @param imageInfo technical metadata of the image of a page, null if unknown
+     * @return the metadata of the page, empty if nothing is mapped or the image is unknown
+     */
+    public List<ImportMetadata> getMetadata(ImageInfo imageInfo) {
+        if (imageInfo == null || types.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ImportMetadata> metadata = new ArrayList<>(types.size());
+        for (Map.Entry<Property, String> entry : types.entrySet()) {
+            String value = getValue(imageInfo, entry.getKey());
+            if (value != null) {
+                metadata.add(new ImportMetadata(entry.getValue(), value, Collections.emptyList(), false));
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * @return the value of the property, null if the header does not contain it
+     */
+    private static String getValue(ImageInfo imageInfo, Property property) {
+        switch (property) {
+            case FORMAT:
+                return imageInfo.getFormat();
+            case WIDTH:
+                return String.valueOf(imageInfo.getWidth());
+            case HEIGHT:
+                return String.valueOf(imageInfo.getHeight());
+            case BITS_PER_SAMPLE:
+                return String.valueOf(imageInfo.getBitsPerSample());
+            case SAMPLES_PER_PIXEL:
+                return String.valueOf(imageInfo.getSamplesPerPixel());
+            case COMPRESSION:
+                return imageInfo.getCompression();
+            case X_RESOLUTION:
+                return getResolution(imageInfo.getXResolution());
+            default:
+                return getResolution(imageInfo.getYResolution());
+        }
+    }
+
+    private static String getResolution(double dpi) {
+        // a resolution of 0 means that the header does not define it
+        return dpi > 0 ? String.valueOf(Math.round(dpi)) : null;
+    }
+}
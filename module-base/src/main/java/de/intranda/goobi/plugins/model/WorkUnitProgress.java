@@ -0,0 +1,32 @@
+package de.intranda.goobi.plugins.model;
+
+import lombok.Getter;
+
+/**
+ * Aggregated state of all work units of a distributed import.
+ */
+@Getter
+public class WorkUnitProgress {
+
+    private int open;
+    private int running;
+    private int done;
+    private int failed;
+    // number of pages of all work units
+    private int pagesTotal;
+    // number of pages imported so far, as reported by the heartbeats of the workers
+    private int pagesDone;
+
+    public WorkUnitProgress(int open, int running, int done, int failed, int pagesTotal, int pagesDone) {
+        this.open = open;
+        this.running = running;
+        this.done = done;
+        this.failed = failed;
+        this.pagesTotal = pagesTotal;
+        this.pagesDone = pagesDone;
+    }
+
+    public int getTotal() {
+        return open + running + done + failed;
+    }
+}
@@ -0,0 +1,129 @@
+package org.goobi.api.rest;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import de.intranda.goobi.plugins.HeadlessImports;
+import de.intranda.goobi.plugins.model.ImportStatus;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * REST endpoint to run imports of the newspaper pages importer without a browser session. The endpoint must be allowed in goobi_rest.xml.
+ *
+ * <ul>
+ * <li>POST /newspaperimport/{set}/start starts the import of a set, 202 if started, 409 if the set is already being imported, also in the
+ * GUI</li>
+ * <li>GET /newspaperimport/{set} returns the state of the import as JSON</li>
+ * <li>GET /newspaperimport/{set}/events streams the state as server-sent events until the import is finished</li>
+ * <li>POST /newspaperimport/{set}/cancel, /pause and /resume control a running import</li>
+ * </ul>
+ */
+@Path("/newspaperimport")
+@Log4j2
+public class NewspaperImportResource {
+
+    // interval in which the state is checked for changes
+    private static final long EVENT_INTERVAL = 500;
+    // unchanged states are repeated as a comment after this time, to keep proxies from closing the connection
+    private static final long KEEP_ALIVE_INTERVAL = TimeUnit.SECONDS.toMillis(15);
+
+    @POST
+    @Path("/{set}/start")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response start(@PathParam("set") String set) {
+        try {
+            if (!HeadlessImports.getInstance().start(set)) {
+                // the other import may have ended in the meantime
+                ImportStatus status = HeadlessImports.getInstance().getStatus(set);
+                return Response.status(Response.Status.CONFLICT).entity(status != null ? status.toJson() : null).build();
+            }
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        log.info("Headless import of set " + set + " started");
+        return Response.accepted(HeadlessImports.getInstance().getStatus(set).toJson()).build();
+    }
+
+    @GET
+    @Path("/{set}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response status(@PathParam("set") String set) {
+        ImportStatus status = HeadlessImports.getInstance().getStatus(set);
+        if (status == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(status.toJson()).build();
+    }
+
+    @POST
+    @Path("/{set}/cancel")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response cancel(@PathParam("set") String set) {
+        return HeadlessImports.getInstance().cancel(set) ? status(set) : Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    @POST
+    @Path("/{set}/pause")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response pause(@PathParam("set") String set) {
+        return HeadlessImports.getInstance().pause(set) ? status(set) : Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    @POST
+    @Path("/{set}/resume")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response resume(@PathParam("set") String set) {
+        return HeadlessImports.getInstance().resume(set) ? status(set) : Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    @GET
+    @Path("/{set}/events")
+    @Produces("text/event-stream")
+    public Response events(@PathParam("set") String set) {
+        if (HeadlessImports.getInstance().getStatus(set) == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        StreamingOutput stream = output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            String lastJson = null;
+            long lastWrite = 0;
+            try {
+                while (true) {
+                    ImportStatus status = HeadlessImports.getInstance().getStatus(set);
+                    String json = status.toJson();
+                    long now = System.currentTimeMillis();
+                    if (!status.isActive()) {
+                        writer.write("event: finished\ndata: " + json + "\n\n");
+                        writer.flush();
+                        return;
+                    }
+                    if (!json.equals(lastJson)) {
+                        writer.write("event: status\ndata: " + json + "\n\n");
+                        writer.flush();
+                        lastJson = json;
+                        lastWrite = now;
+                    } else if (now - lastWrite > KEEP_ALIVE_INTERVAL) {
+                        writer.write(": keep-alive\n\n");
+                        writer.flush();
+                        lastWrite = now;
+                    }
+                    Thread.sleep(EVENT_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        return Response.ok(stream).header("Cache-Control", "no-cache").build();
+    }
+}
@@ -0,0 +1,106 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.junit.Test;
+
+import de.sub.goobi.helper.enums.StepStatus;
+
+public class AutomaticTaskStarterTest {
+
+    private static Step step(String title, StepStatus status, boolean automatic) {
+        Step step = new Step();
+        step.setTitel(title);
+        step.setBearbeitungsstatusEnum(status);
+        step.setTypAutomatisch(automatic);
+        return step;
+    }
+
+    private static Process process(String title, Step... steps) {
+        Process process = new Process();
+        process.setTitel(title);
+        process.setSchritte(new ArrayList<>(Arrays.asList(steps)));
+        return process;
+    }
+
+    @Test
+    public void testOnlyOpenAutomaticTasksAreStartedInOrder() throws Exception {
+        Process process = process("1900", step("done", StepStatus.DONE, true), step("manual", StepStatus.OPEN, false),
+                step("first", StepStatus.OPEN, true), step("second", StepStatus.OPEN, true));
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(2);
+        AutomaticTaskStarter starter = new AutomaticTaskStarter(1, id -> process, step -> {
+            started.add(step.getTitel());
+            finished.countDown();
+        });
+        assertTrue(starter.submit(1));
+        starter.shutdown();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "second"), started);
+    }
+
+    @Test
+    public void testMissingProcessDoesNotStopOtherProcesses() throws Exception {
+        Map<Integer, Process> processes = new ConcurrentHashMap<>();
+        processes.put(2, process("1901", step("export", StepStatus.OPEN, true)));
+        CountDownLatch started = new CountDownLatch(1);
+        AutomaticTaskStarter starter = new AutomaticTaskStarter(1, id -> {
+            if (id == 3) {
+                throw new IllegalStateException("database not available");
+            }
+            return processes.get(id);
+        }, step -> started.countDown());
+        // the first process does not exist and loading the third one fails, both are only logged
+        assertTrue(starter.submit(1));
+        assertTrue(starter.submit(3));
+        assertTrue(starter.submit(2));
+        starter.shutdown();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testScheduledProcessesAreStartedAfterShutdown() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        AutomaticTaskStarter starter = new AutomaticTaskStarter(2, id -> process(String.valueOf(id), step("task", StepStatus.OPEN, true)), step -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            bothRunning.countDown();
+            // each task runs until all processes are submitted, like a task that is waited for with join()
+            release.await();
+            running.decrementAndGet();
+            finished.incrementAndGet();
+        });
+        for (int id = 1; id <= 5; id++) {
+            assertTrue(starter.submit(id));
+        }
+        starter.shutdown();
+        // processes of a finished import are not started anymore
+        assertFalse(starter.submit(6));
+        assertTrue(bothRunning.await(10, TimeUnit.SECONDS));
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (finished.get() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, finished.get());
+        assertEquals(2, maxRunning.get());
+    }
+}
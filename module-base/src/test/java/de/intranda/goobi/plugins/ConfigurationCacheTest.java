@@ -0,0 +1,68 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigurationCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUnchangedFileIsParsedOnce() throws Exception {
+        Path file = folder.newFile("plugin.xml").toPath();
+        Files.write(file, "<config>1</config>".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger parses = new AtomicInteger();
+        ConfigurationCache<Integer> cache = new ConfigurationCache<>(file, parses::incrementAndGet);
+
+        Integer first = cache.get();
+        assertSame(first, cache.get());
+        // touching the file without changing it keeps the parsed content
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        assertSame(first, cache.get());
+        assertEquals(1, parses.get());
+        assertEquals(1, cache.getReloads());
+    }
+
+    @Test
+    public void testChangedFileIsParsedAgain() throws Exception {
+        Path file = folder.newFile("plugin.xml").toPath();
+        Files.write(file, "<config>1</config>".getBytes(StandardCharsets.UTF_8));
+        ConfigurationCache<String> cache = new ConfigurationCache<>(file, () -> readQuietly(file));
+        assertEquals("<config>1</config>", cache.get());
+
+        // same size, only the content and the modification time differ
+        Files.write(file, "<config>2</config>".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        assertEquals("<config>2</config>", cache.get());
+        assertEquals(2, cache.getReloads());
+    }
+
+    @Test
+    public void testMissingFileIsAlwaysParsed() {
+        AtomicInteger parses = new AtomicInteger();
+        ConfigurationCache<Integer> cache = new ConfigurationCache<>(folder.getRoot().toPath().resolve("missing.xml"), parses::incrementAndGet);
+        assertEquals(1, cache.get().intValue());
+        assertEquals(2, cache.get().intValue());
+    }
+
+    private static String readQuietly(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
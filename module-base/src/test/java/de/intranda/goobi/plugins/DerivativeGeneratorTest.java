@@ -0,0 +1,84 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DerivativeGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSupportedFiles() {
+        assertTrue(DerivativeGenerator.isSupported("1867-01-05_001.PNG"));
+        assertTrue(DerivativeGenerator.isSupported("1867-01-05_001.jpg"));
+        assertFalse(DerivativeGenerator.isSupported("1867-01-05_001.pdf"));
+    }
+
+    @Test
+    public void testAlphaAndSixteenBitImagesAreConverted() throws Exception {
+        // JPEG can store neither of them, so they must be converted into 8 bit RGB
+        BufferedImage alpha = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = alpha.createGraphics();
+        graphics.setColor(new Color(255, 0, 0, 128));
+        graphics.fillRect(0, 0, 20, 30);
+        graphics.dispose();
+        BufferedImage grey = new BufferedImage(25, 50, BufferedImage.TYPE_USHORT_GRAY);
+        grey.getRaster().setSample(3, 4, 0, 40000);
+
+        Path alphaMaster = folder.getRoot().toPath().resolve("master/alpha.png");
+        Path greyMaster = folder.getRoot().toPath().resolve("master/grey.png");
+        alphaMaster.getParent().toFile().mkdirs();
+        ImageIO.write(alpha, "png", alphaMaster.toFile());
+        ImageIO.write(grey, "png", greyMaster.toFile());
+
+        DerivativeGenerator generator = new DerivativeGenerator(2, 0.8f);
+        Path alphaDerivative;
+        Path greyDerivative;
+        try {
+            alphaDerivative = generator.submit(alphaMaster, folder.getRoot().toPath().resolve("media/alpha.jpg")).get(30, TimeUnit.SECONDS);
+            greyDerivative = generator.submit(greyMaster, folder.getRoot().toPath().resolve("media/grey.jpg")).get(30, TimeUnit.SECONDS);
+        } finally {
+            generator.shutdown();
+        }
+
+        assertJpeg(alphaDerivative, 40, 30);
+        assertJpeg(greyDerivative, 25, 50);
+        // transparent areas are rendered on white
+        BufferedImage image = ImageIO.read(alphaDerivative.toFile());
+        assertTrue((image.getRGB(35, 15) & 0xff) > 240);
+    }
+
+    private static void assertJpeg(Path file, int width, int height) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            assertTrue(readers.hasNext());
+            ImageReader reader = readers.next();
+            try {
+                assertTrue("jpeg".equalsIgnoreCase(reader.getFormatName()));
+                reader.setInput(in);
+                assertEquals(width, reader.getWidth(0));
+                assertEquals(height, reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
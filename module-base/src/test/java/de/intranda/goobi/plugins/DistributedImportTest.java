@@ -0,0 +1,186 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.model.WorkUnitProgress;
+
+/**
+ * Runs several workers against an embedded database, each worker stands for a plugin instance on another node.
+ */
+public class DistributedImportTest {
+
+    private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+    private static final String SET = "Newspaper";
+
+    private WorkUnitStore.ConnectionProvider connectionProvider;
+    private AtomicLong clock;
+    private WorkUnitStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        // every test gets its own in-memory database, which lives as long as the JVM
+        String url = "jdbc:h2:mem:units" + DATABASE_COUNTER.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        connectionProvider = () -> DriverManager.getConnection(url);
+        clock = new AtomicLong(1000);
+        store = new WorkUnitStore(connectionProvider, clock::get);
+        store.createTable();
+    }
+
+    private static Map<Integer, Integer> years(int from, int to) {
+        Map<Integer, Integer> pagesPerYear = new LinkedHashMap<>();
+        for (int year = from; year <= to; year++) {
+            pagesPerYear.put(year, 10);
+        }
+        return pagesPerYear;
+    }
+
+    @Test
+    public void testPublishOnlyOnce() throws Exception {
+        assertTrue(store.publish(SET, years(1900, 1902)));
+        // a second node joins instead of creating the units again
+        assertFalse(store.publish(SET, years(1900, 1902)));
+        assertEquals(3, store.getProgress(SET).getOpen());
+    }
+
+    @Test
+    public void testPublishAgainWhenFinished() throws Exception {
+        assertTrue(store.publish(SET, years(1900, 1900)));
+        assertEquals(Integer.valueOf(1900), store.claim(SET, "a", 1000, 3));
+        assertTrue(store.complete(SET, 1900, "a", 10));
+        assertFalse(store.hasActiveUnits(SET));
+
+        assertTrue(store.publish(SET, years(1901, 1902)));
+        assertEquals(2, store.getProgress(SET).getTotal());
+    }
+
+    @Test
+    public void testExpiredLeaseIsClaimedAgain() throws Exception {
+        store.publish(SET, years(1900, 1900));
+        assertEquals(Integer.valueOf(1900), store.claim(SET, "a", 1000, 3));
+        assertNull(store.claim(SET, "b", 1000, 3));
+
+        // node a stops renewing its lease
+        clock.addAndGet(1001);
+        assertEquals(Integer.valueOf(1900), store.claim(SET, "b", 1000, 3));
+        assertFalse(store.renew(SET, 1900, "a", 1000, 5));
+        assertTrue(store.renew(SET, 1900, "b", 1000, 5));
+        assertFalse(store.complete(SET, 1900, "a", 10));
+        assertTrue(store.complete(SET, 1900, "b", 10));
+    }
+
+    @Test
+    public void testHoldsLease() throws Exception {
+        store.publish(SET, years(1900, 1900));
+        assertFalse(store.holdsLease(SET, "a"));
+        store.claim(SET, "a", 1000, 3);
+        assertTrue(store.holdsLease(SET, "a"));
+        assertFalse(store.holdsLease(SET, "b"));
+
+        // node a crashed, its stages may be recovered now
+        clock.addAndGet(1001);
+        assertFalse(store.holdsLease(SET, "a"));
+    }
+
+    @Test
+    public void testFailedUnitIsRetriedUntilMaxAttempts() throws Exception {
+        store.publish(SET, years(1900, 1900));
+        assertEquals(Integer.valueOf(1900), store.claim(SET, "a", 1000, 2));
+        assertTrue(store.release(SET, 1900, "a", true, 2));
+        assertEquals(Integer.valueOf(1900), store.claim(SET, "b", 1000, 2));
+        assertTrue(store.release(SET, 1900, "b", true, 2));
+
+        assertNull(store.claim(SET, "c", 1000, 2));
+        assertEquals(1, store.getProgress(SET).getFailed());
+        assertFalse(store.hasActiveUnits(SET));
+    }
+
+    @Test
+    public void testCancelledAttemptsDoNotCount() throws Exception {
+        store.publish(SET, years(1900, 1900));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(1900), store.claim(SET, "a", 1000, 1));
+            assertTrue(store.release(SET, 1900, "a", false, 1));
+        }
+        assertEquals(1, store.getProgress(SET).getOpen());
+    }
+
+    @Test
+    public void testSeveralWorkers() throws Exception {
+        WorkUnitStore realTimeStore = new WorkUnitStore(connectionProvider);
+        Map<Integer, Integer> pagesPerYear = years(1850, 1899);
+        Map<Integer, AtomicInteger> imports = new ConcurrentHashMap<>();
+
+        ExecutorService nodes = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            DistributedImport worker = new DistributedImport(realTimeStore, SET, "node" + i, 60000, 3, 10);
+            results.add(nodes.submit(() -> {
+                worker.publish(pagesPerYear);
+                ImportControl control = new ImportControl();
+                control.start();
+                worker.run(control, unit -> {
+                    imports.computeIfAbsent(unit.getYear(), year -> new AtomicInteger()).incrementAndGet();
+                    unit.addPages(pagesPerYear.get(unit.getYear()));
+                    return true;
+                }, progress -> {
+                });
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        nodes.shutdown();
+
+        // every year was imported exactly once
+        assertEquals(pagesPerYear.size(), imports.size());
+        for (AtomicInteger count : imports.values()) {
+            assertEquals(1, count.get());
+        }
+        WorkUnitProgress progress = realTimeStore.getProgress(SET);
+        assertEquals(pagesPerYear.size(), progress.getDone());
+        assertEquals(500, progress.getPagesDone());
+        assertEquals(500, progress.getPagesTotal());
+    }
+
+    @Test
+    public void testUnitOfCrashedWorkerIsTakenOver() throws Exception {
+        WorkUnitStore realTimeStore = new WorkUnitStore(connectionProvider);
+        realTimeStore.publish(SET, years(1900, 1901));
+        // a node claims a year and crashes without giving it back
+        assertEquals(Integer.valueOf(1900), realTimeStore.claim(SET, "crashed", 50, 3));
+
+        List<Integer> imported = new ArrayList<>();
+        DistributedImport worker = new DistributedImport(realTimeStore, SET, "survivor", 60000, 3, 10);
+        ImportControl control = new ImportControl();
+        control.start();
+        worker.run(control, unit -> {
+            imported.add(unit.getYear());
+            return true;
+        }, progress -> {
+        });
+
+        // the open year first, then the year of the crashed node once its lease expired
+        assertEquals(List.of(1901, 1900), imported);
+        assertEquals(2, realTimeStore.getProgress(SET).getDone());
+    }
+}
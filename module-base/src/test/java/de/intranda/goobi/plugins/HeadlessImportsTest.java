@@ -0,0 +1,165 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.model.ImportStatus;
+
+public class HeadlessImportsTest {
+
+    /**
+     * importer whose validation waits until the test lets it continue
+     */
+    private static class TestImporter implements HeadlessImports.Importer {
+        private final CountDownLatch validated = new CountDownLatch(1);
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile ImportControl.State state = ImportControl.State.IDLE;
+        private volatile int itemCurrent;
+        private volatile String set;
+
+        @Override
+        public void startClaimedImport(String set) {
+            this.set = set;
+            try {
+                validated.await();
+                state = ImportControl.State.RUNNING;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ActiveSets.release(set);
+            } finally {
+                started.countDown();
+            }
+        }
+
+        void finish() {
+            state = ImportControl.State.IDLE;
+            ActiveSets.release(set);
+        }
+
+        @Override
+        public ImportControl.State getImportState() {
+            return state;
+        }
+
+        @Override
+        public int getProgress() {
+            return itemCurrent / 10;
+        }
+
+        @Override
+        public int getItemCurrent() {
+            return itemCurrent;
+        }
+
+        @Override
+        public int getItemsTotal() {
+            return 1000;
+        }
+
+        @Override
+        public int getErrors() {
+            return 0;
+        }
+
+        @Override
+        public String getLastMessage() {
+            return "Imported " + itemCurrent + " pages";
+        }
+
+        @Override
+        public void cancel() {
+            state = ImportControl.State.CANCELLING;
+        }
+
+        @Override
+        public void pause() {
+            state = ImportControl.State.PAUSED;
+        }
+
+        @Override
+        public void resume() {
+            state = ImportControl.State.RUNNING;
+        }
+    }
+
+    @Test
+    public void testStartConflictAndStatus() throws Exception {
+        TestImporter first = new TestImporter();
+        TestImporter second = new TestImporter();
+        TestImporter[] next = { first };
+        HeadlessImports imports = new HeadlessImports(set -> "headless".equals(set) ? next[0] : null);
+
+        assertNull(imports.getStatus("headless"));
+        assertTrue(imports.start("headless"));
+        assertEquals(ImportStatus.STARTING, imports.getStatus("headless").getState());
+        // the set is claimed while its files are validated
+        assertFalse(imports.start("headless"));
+
+        first.validated.countDown();
+        assertTrue(first.started.await(10, TimeUnit.SECONDS));
+        waitFor(imports, "headless", "RUNNING");
+        first.itemCurrent = 500;
+        ImportStatus status = imports.getStatus("headless");
+        assertEquals(50, status.getProgress());
+        assertEquals("Imported 500 pages", status.getMessage());
+        assertFalse(imports.start("headless"));
+        assertTrue(imports.pause("headless"));
+        assertEquals("PAUSED", imports.getStatus("headless").getState());
+        assertTrue(imports.resume("headless"));
+        assertEquals("RUNNING", imports.getStatus("headless").getState());
+
+        // the final state stays readable until the set is started again
+        first.finish();
+        assertEquals(ImportStatus.IDLE, imports.getStatus("headless").getState());
+        assertFalse(ActiveSets.isActive("headless"));
+        next[0] = second;
+        assertTrue(imports.start("headless"));
+        second.validated.countDown();
+        assertTrue(second.started.await(10, TimeUnit.SECONDS));
+        waitFor(imports, "headless", "RUNNING");
+        second.finish();
+    }
+
+    @Test
+    public void testSetImportedInTheGui() throws Exception {
+        TestImporter importer = new TestImporter();
+        HeadlessImports imports = new HeadlessImports(set -> importer);
+        assertTrue(ActiveSets.claim("gui"));
+        try {
+            assertFalse(imports.start("gui"));
+            assertEquals(ImportStatus.LOCKED, imports.getStatus("gui").getState());
+            assertFalse(imports.getStatus("gui").isActive());
+            assertFalse(imports.cancel("gui"));
+        } finally {
+            ActiveSets.release("gui");
+        }
+        assertNull(imports.getStatus("gui"));
+    }
+
+    @Test
+    public void testUnknownSet() {
+        try {
+            new HeadlessImports(set -> null).start("unknown");
+            fail("Unknown set started");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertFalse(ActiveSets.isActive("unknown"));
+    }
+
+    private static void waitFor(HeadlessImports imports, String set, String state) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!state.equals(imports.getStatus(set).getState()) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(state, imports.getStatus(set).getState());
+    }
+}
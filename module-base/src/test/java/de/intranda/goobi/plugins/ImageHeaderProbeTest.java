@@ -0,0 +1,143 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.ImageInfo;
+
+public class ImageHeaderProbeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTiff() throws Exception {
+        Path file = writeImage("page.tif", "tiff", 30, 20);
+        ImageInfo info = ImageHeaderProbe.probe(file);
+        assertEquals("TIFF", info.getFormat());
+        assertEquals(30, info.getWidth());
+        assertEquals(20, info.getHeight());
+        assertEquals(8, info.getBitsPerSample());
+        assertEquals(3, info.getSamplesPerPixel());
+    }
+
+    @Test
+    public void testBigTiff() throws Exception {
+        ImageInfo info = ImageHeaderProbe.probe(write("page.tif", bigTiff(8, 1)));
+        assertEquals("TIFF", info.getFormat());
+        assertEquals(30, info.getWidth());
+        assertEquals(20, info.getHeight());
+        assertEquals(8, info.getBitsPerSample());
+        assertEquals(1, info.getSamplesPerPixel());
+        assertEquals("none", info.getCompression());
+        assertEquals(300, info.getXResolution(), 0.001);
+    }
+
+    @Test
+    public void testJpeg() throws Exception {
+        ImageInfo info = ImageHeaderProbe.probe(writeImage("page.jpg", "jpeg", 40, 25));
+        assertEquals("JPEG", info.getFormat());
+        assertEquals(40, info.getWidth());
+        assertEquals(25, info.getHeight());
+        assertEquals(8, info.getBitsPerSample());
+        assertEquals(3, info.getSamplesPerPixel());
+        assertEquals("baseline", info.getCompression());
+    }
+
+    @Test
+    public void testOtherFormats() throws Exception {
+        assertNull(ImageHeaderProbe.probe(write("page.pdf", "%PDF-1.4".getBytes())));
+        assertNull(ImageHeaderProbe.probe(write("empty.tif", new byte[0])));
+    }
+
+    @Test
+    public void testTruncatedImages() throws Exception {
+        byte[] tiff = Files.readAllBytes(writeImage("page.tif", "tiff", 30, 20));
+        assertInvalid(write("tiff.tif", Arrays.copyOf(tiff, tiff.length - 100)));
+        assertInvalid(write("header.tif", Arrays.copyOf(tiff, 12)));
+        byte[] bigTiff = bigTiff(8, 1);
+        assertInvalid(write("bigtiff.tif", Arrays.copyOf(bigTiff, bigTiff.length - 1)));
+        byte[] jpeg = Files.readAllBytes(writeImage("page.jpg", "jpeg", 40, 25));
+        assertInvalid(write("jpeg.jpg", Arrays.copyOf(jpeg, jpeg.length / 2)));
+    }
+
+    @Test
+    public void testCorruptCounts() throws Exception {
+        // counts that are negative or whose size overflows are reported as corrupt files
+        assertInvalid(write("entries.tif", bigTiff(-1, 1)));
+        assertInvalid(write("manyEntries.tif", bigTiff(Long.MAX_VALUE / 10, 1)));
+        assertInvalid(write("negativeCount.tif", bigTiff(8, -1)));
+        assertInvalid(write("overflow.tif", bigTiff(8, Long.MAX_VALUE / 4)));
+        assertInvalid(write("largeCount.tif", bigTiff(8, Integer.MAX_VALUE / 8)));
+
+        // a JPEG frame header that is shorter than its fields
+        byte[] jpeg = Files.readAllBytes(writeImage("page.jpg", "jpeg", 40, 25));
+        for (int i = 2; i < jpeg.length - 4; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == 0xC0) {
+                jpeg[i + 2] = 0;
+                jpeg[i + 3] = 4;
+                break;
+            }
+        }
+        assertInvalid(write("frame.jpg", jpeg));
+    }
+
+    private static void assertInvalid(Path file) throws IOException {
+        try {
+            ImageHeaderProbe.probe(file);
+            fail("Corrupt image not detected: " + file.getFileName());
+        } catch (ImageHeaderProbe.InvalidImageException e) {
+            // expected
+        }
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), content);
+    }
+
+    private Path writeImage(String name, String format, int width, int height) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR), format, file.toFile());
+        return file;
+    }
+
+    /**
+     * a little endian BigTIFF of 30x20 grey pixels with one strip, the entries are followed by the image data
+     */
+    private static byte[] bigTiff(long entryCount, long stripCount) {
+        int dataOffset = 16 + 8 + 8 * 20 + 8;
+        ByteBuffer buffer = ByteBuffer.allocate(dataOffset + 600).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 'I').put((byte) 'I').putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(16);
+        buffer.putLong(entryCount);
+        entry(buffer, 256, 3, 1, 30);
+        entry(buffer, 257, 3, 1, 20);
+        entry(buffer, 258, 3, 1, 8);
+        entry(buffer, 259, 3, 1, 1);
+        entry(buffer, 273, 16, stripCount, dataOffset);
+        entry(buffer, 277, 3, 1, 1);
+        entry(buffer, 279, 16, 1, 600);
+        // the rational 300/1 fits into the value field of a BigTIFF entry
+        entry(buffer, 282, 5, 1, 300 | 1L << 32);
+        buffer.putLong(0);
+        return buffer.array();
+    }
+
+    private static void entry(ByteBuffer buffer, int tag, int type, long count, long value) {
+        buffer.putShort((short) tag).putShort((short) type).putLong(count).putLong(value);
+    }
+}
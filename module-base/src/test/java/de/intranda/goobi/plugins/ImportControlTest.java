@@ -0,0 +1,87 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ImportControlTest {
+
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPauseBlocksCheckpoint() throws Exception {
+        ImportControl control = new ImportControl();
+        control.start();
+        assertTrue(control.checkpoint());
+        assertTrue(control.pause());
+        assertFalse(control.pause());
+
+        Future<Boolean> checkpoint = executor.submit(control::checkpoint);
+        try {
+            checkpoint.get(200, TimeUnit.MILLISECONDS);
+            fail("checkpoint returned while the import is paused");
+        } catch (TimeoutException e) {
+            // still waiting
+        }
+
+        assertTrue(control.resume());
+        assertTrue(checkpoint.get(10, TimeUnit.SECONDS));
+        assertFalse(control.resume());
+        assertEquals(ImportControl.State.RUNNING, control.getState());
+    }
+
+    @Test
+    public void testCancelWhilePaused() throws Exception {
+        ImportControl control = new ImportControl();
+        control.start();
+        control.pause();
+        Future<Boolean> checkpoint = executor.submit(control::checkpoint);
+
+        assertTrue(control.cancel());
+        // the waiting import thread is released and told to stop
+        assertFalse(checkpoint.get(10, TimeUnit.SECONDS));
+        assertTrue(control.isCancelled());
+        assertFalse(control.pause());
+        assertFalse(control.resume());
+        assertFalse(control.cancel());
+    }
+
+    @Test
+    public void testStopLatencyIsMeasured() throws Exception {
+        ImportControl control = new ImportControl();
+        control.start();
+        control.finish();
+        // an import that was not cancelled has no stop latency
+        assertEquals(-1, control.getLastStopLatency());
+        assertFalse(control.isActive());
+
+        control.start();
+        control.cancel();
+        Thread.sleep(100);
+        control.finish();
+        assertTrue(control.getLastStopLatency() >= 100);
+        long first = control.getLastStopLatency();
+
+        control.start();
+        control.cancel();
+        control.finish();
+        assertTrue(control.getLastStopLatency() < first);
+        assertEquals(first, control.getMaxStopLatency());
+        assertEquals(ImportControl.State.IDLE, control.getState());
+    }
+}
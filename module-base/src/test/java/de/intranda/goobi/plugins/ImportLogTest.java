@@ -0,0 +1,53 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ImportLogTest {
+
+    @Test
+    public void testIncrementalFetch() {
+        ImportLog log = new ImportLog(10);
+        for (int i = 1; i <= 5; i++) {
+            log.add("message " + i, ImportLog.LEVEL_INFO);
+        }
+        ImportLog.Page page = log.fetch(0, ImportLog.LEVEL_DEBUG, 3);
+        assertEquals(3, page.getEntries().size());
+        assertEquals("message 1", page.getEntries().get(0).getMessage());
+        assertTrue(page.isMore());
+
+        page = log.fetch(page.getCursor(), ImportLog.LEVEL_DEBUG, 3);
+        assertEquals(2, page.getEntries().size());
+        assertEquals("message 4", page.getEntries().get(0).getMessage());
+        assertFalse(page.isMore());
+
+        // nothing new since the last fetch
+        page = log.fetch(page.getCursor(), ImportLog.LEVEL_DEBUG, 3);
+        assertTrue(page.getEntries().isEmpty());
+        assertEquals(5, page.getCursor());
+    }
+
+    @Test
+    public void testLevelFilterAndErrors() {
+        ImportLog log = new ImportLog(4);
+        log.add("error", ImportLog.LEVEL_ERROR);
+        for (int i = 0; i < 10; i++) {
+            log.add("debug " + i, ImportLog.LEVEL_DEBUG);
+        }
+        log.add("warning", ImportLog.LEVEL_WARNING);
+
+        ImportLog.Page page = log.fetch(0, ImportLog.LEVEL_WARNING, 100);
+        assertEquals(1, page.getEntries().size());
+        assertEquals("warning", page.getEntries().get(0).getMessage());
+        // the error and the first debug messages were pushed out of the log
+        assertEquals(8, page.getSkipped());
+        assertEquals(12, page.getCursor());
+
+        // but the error is still kept
+        assertEquals(1, log.getErrors().size());
+        assertEquals("error", log.getErrors().get(0).getMessage());
+    }
+}
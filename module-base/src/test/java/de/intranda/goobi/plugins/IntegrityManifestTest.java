@@ -0,0 +1,132 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IntegrityManifestTest {
+
+    // sha256sum of "page one"
+    private static final String PAGE_ONE_HASH = "08e548c038b1608847f6285d147959da2c6632aca2cda9fd1166ec8f32b460e7";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path processFolder;
+    private Path masterFolder;
+
+    @Before
+    public void setUp() throws Exception {
+        source = folder.newFolder("import").toPath().resolve("1867-01-05_001.tif");
+        Files.write(source, "page one".getBytes(StandardCharsets.UTF_8));
+        processFolder = folder.newFolder("process").toPath();
+        masterFolder = Files.createDirectories(processFolder.resolve("images/master"));
+    }
+
+    @Test
+    public void testCopyWritesManifest() throws Exception {
+        IntegrityManifest manifest = new IntegrityManifest(processFolder, "SHA-256");
+        Path target = masterFolder.resolve(source.getFileName());
+        String hash = manifest.copy(source, target);
+        manifest.save();
+
+        assertEquals(PAGE_ONE_HASH, hash);
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        assertEquals(processFolder.resolve("import_manifest.sha256"), manifest.getManifestFile());
+        assertEquals(List.of(PAGE_ONE_HASH + "  images/master/1867-01-05_001.tif"), Files.readAllLines(manifest.getManifestFile()));
+        assertEquals(1, manifest.getFilesCopied());
+        assertEquals(8, manifest.getBytesCopied());
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        IntegrityManifest manifest = new IntegrityManifest(processFolder, "SHA-256");
+        Path target = masterFolder.resolve(source.getFileName());
+        manifest.copy(source, target);
+        assertTrue(manifest.verify(target));
+
+        // a changed byte is detected
+        Files.write(target, "page 0ne".getBytes(StandardCharsets.UTF_8));
+        assertFalse(manifest.verify(target));
+        // files that were not copied are never verified
+        assertFalse(manifest.verify(masterFolder.resolve("unknown.tif")));
+    }
+
+    @Test
+    public void testExistingManifestIsRead() throws Exception {
+        Path target = masterFolder.resolve(source.getFileName());
+        IntegrityManifest manifest = new IntegrityManifest(processFolder, "SHA-256");
+        manifest.copy(source, target);
+        manifest.save();
+
+        IntegrityManifest reopened = new IntegrityManifest(processFolder, "SHA-256");
+        assertEquals(PAGE_ONE_HASH, reopened.getHash(target));
+        assertTrue(reopened.verify(target));
+        assertNull(reopened.getHash(masterFolder.resolve("unknown.tif")));
+    }
+
+    @Test
+    public void testEachFileIsListedOnce() throws Exception {
+        Path target = masterFolder.resolve(source.getFileName());
+        Path other = masterFolder.resolve("1867-01-05_002.tif");
+        IntegrityManifest manifest = new IntegrityManifest(processFolder, "SHA-256");
+        manifest.copy(source, target);
+        manifest.copy(source, other);
+        manifest.save();
+
+        // a second import of the process copies the file again
+        IntegrityManifest reimport = new IntegrityManifest(processFolder, "SHA-256");
+        reimport.copy(source, target);
+        reimport.save();
+        assertEquals(List.of(PAGE_ONE_HASH + "  images/master/1867-01-05_001.tif", PAGE_ONE_HASH + "  images/master/1867-01-05_002.tif"),
+                Files.readAllLines(manifest.getManifestFile()));
+
+        // a discarded copy is no longer listed
+        reimport.remove(other);
+        reimport.save();
+        assertEquals(List.of(PAGE_ONE_HASH + "  images/master/1867-01-05_001.tif"), Files.readAllLines(manifest.getManifestFile()));
+        assertNull(new IntegrityManifest(processFolder, "SHA-256").getHash(other));
+    }
+
+    @Test
+    public void testDuplicateLinesAreMerged() throws Exception {
+        Path target = masterFolder.resolve(source.getFileName());
+        // manifest of an older version that appended a line for each copy
+        Files.write(processFolder.resolve("import_manifest.sha256"),
+                List.of("0000  images/master/1867-01-05_001.tif", PAGE_ONE_HASH + "  images/master/1867-01-05_001.tif"));
+
+        IntegrityManifest manifest = new IntegrityManifest(processFolder, "SHA-256");
+        assertEquals(PAGE_ONE_HASH, manifest.getHash(target));
+        manifest.save();
+        assertEquals(List.of(PAGE_ONE_HASH + "  images/master/1867-01-05_001.tif"), Files.readAllLines(manifest.getManifestFile()));
+    }
+
+    @Test
+    public void testSampledFilesAreSpreadEvenly() {
+        int sampled = 0;
+        for (int page = 0; page < 1000; page++) {
+            if (IntegrityManifest.isSampled(page, 10)) {
+                sampled++;
+            }
+            assertTrue(IntegrityManifest.isSampled(page, 100));
+            assertFalse(IntegrityManifest.isSampled(page, 0));
+        }
+        assertEquals(100, sampled);
+        // every tenth page
+        assertTrue(IntegrityManifest.isSampled(9, 10));
+        assertFalse(IntegrityManifest.isSampled(10, 10));
+    }
+}
@@ -0,0 +1,157 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class IoExecutorTest {
+
+    @Test
+    public void testTasksInFlightAreBounded() throws Exception {
+        // virtual threads if the runtime supports them, otherwise a pool of the same size
+        IoExecutor executor = new IoExecutor(true, 4, "test");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 100; i++) {
+                int task = i;
+                futures.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(2);
+                    running.decrementAndGet();
+                    return task;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(maxRunning.get() <= 4);
+    }
+
+    @Test
+    public void testClosedGroupCancelsItsTasks() throws Exception {
+        IoExecutor executor = new IoExecutor(true, 2, "test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Future<Object> future;
+        try (IoExecutor.Group group = executor.newGroup()) {
+            future = group.fork(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(future.isCancelled());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        // the permit of the cancelled task is free again
+        IoExecutor single = new IoExecutor(true, 1, "test");
+        try (IoExecutor.Group group = single.newGroup()) {
+            group.fork(() -> null).cancel(false);
+            assertEquals("done", group.fork(() -> "done").get(10, TimeUnit.SECONDS));
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForCancelledTasks() throws Exception {
+        IoExecutor executor = new IoExecutor(true, 1, "test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicBoolean ended = new AtomicBoolean();
+        try {
+            try (IoExecutor.Group group = executor.newGroup()) {
+                group.fork(() -> {
+                    started.countDown();
+                    // like a copy that only notices the interrupt after its current write
+                    while (true) {
+                        try {
+                            finish.await();
+                            ended.set(true);
+                            return null;
+                        } catch (InterruptedException e) {
+                            // ignored until the test lets the task end
+                        }
+                    }
+                });
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+                new Thread(() -> {
+                    sleep(200);
+                    finish.countDown();
+                }).start();
+            }
+            // the group was only closed after its task ended
+            assertTrue(ended.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelledTaskKeepsItsPermitUntilItEnds() throws Exception {
+        IoExecutor executor = new IoExecutor(true, 1, "test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicBoolean secondStarted = new AtomicBoolean();
+        try {
+            Future<Object> first = executor.submit(() -> {
+                started.countDown();
+                while (true) {
+                    try {
+                        finish.await();
+                        return null;
+                    } catch (InterruptedException e) {
+                        // ignored until the test lets the task end
+                    }
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            first.cancel(true);
+            Thread submitter = new Thread(() -> {
+                try {
+                    executor.submit(() -> secondStarted.getAndSet(true)).get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            submitter.start();
+            submitter.join(200);
+            assertFalse(secondStarted.get());
+
+            finish.countDown();
+            submitter.join(10000);
+            assertTrue(secondStarted.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
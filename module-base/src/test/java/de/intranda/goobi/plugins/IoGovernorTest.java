@@ -0,0 +1,99 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class IoGovernorTest {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /**
+     * start and finish a copy that takes the given time
+     */
+    private static void copy(IoGovernor governor, long latencyMillis) throws InterruptedException {
+        long start = governor.acquire(1000);
+        Thread.sleep(latencyMillis);
+        governor.release(start, 1000);
+    }
+
+    @Test
+    public void testFastRoundsIncreaseUpToTheMaximum() throws Exception {
+        IoGovernor governor = new IoGovernor(0, 3, 1000);
+        assertEquals(1, governor.getConcurrencyLimit());
+        copy(governor, 0);
+        assertEquals(2, governor.getConcurrencyLimit());
+        // a round needs as many fast copies as copies are allowed in parallel
+        copy(governor, 0);
+        assertEquals(2, governor.getConcurrencyLimit());
+        copy(governor, 0);
+        assertEquals(3, governor.getConcurrencyLimit());
+        for (int i = 0; i < 10; i++) {
+            copy(governor, 0);
+        }
+        assertEquals(3, governor.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testSlowCopiesHalveDownToOne() throws Exception {
+        IoGovernor governor = new IoGovernor(0, 8, 20);
+        while (governor.getConcurrencyLimit() < 8) {
+            copy(governor, 0);
+        }
+        // two slow copies of the same round only halve the limit once
+        long first = governor.acquire(1000);
+        long second = governor.acquire(1000);
+        Thread.sleep(50);
+        governor.release(first, 1000);
+        governor.release(second, 1000);
+        assertEquals(4, governor.getConcurrencyLimit());
+
+        copy(governor, 50);
+        assertEquals(2, governor.getConcurrencyLimit());
+        copy(governor, 50);
+        assertEquals(1, governor.getConcurrencyLimit());
+        copy(governor, 50);
+        assertEquals(1, governor.getConcurrencyLimit());
+        assertTrue(governor.getAverageLatency() > 20);
+    }
+
+    @Test
+    public void testCopiesWaitForTheConcurrencyLimit() throws Exception {
+        IoGovernor governor = new IoGovernor(0, 4, 1000);
+        long start = governor.acquire(1000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> second = executor.submit(() -> governor.acquire(1000));
+            Thread.sleep(200);
+            assertFalse(second.isDone());
+            assertEquals(1, governor.getInFlight());
+            governor.release(start, 1000);
+            governor.release(second.get(10, TimeUnit.SECONDS), 1000);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, governor.getInFlight());
+    }
+
+    @Test
+    public void testTokenBucketLimitsTheThroughput() throws Exception {
+        IoGovernor governor = new IoGovernor(4, 1, 0);
+        assertEquals(4 * MEGABYTE, governor.getMaxBytesPerSecond());
+        long begin = System.nanoTime();
+        // the bucket starts full, the first 4 MB are allowed at once
+        governor.release(governor.acquire(4 * MEGABYTE), 4 * MEGABYTE);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 400);
+        // the next 2 MB have to wait until the bucket is refilled at 4 MB/s
+        governor.release(governor.acquire(2 * MEGABYTE), 2 * MEGABYTE);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        assertTrue("elapsed " + elapsed, elapsed >= 450);
+        assertTrue("elapsed " + elapsed, elapsed < 5000);
+    }
+}
@@ -0,0 +1,143 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MemoryGovernorTest {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    @Test
+    public void testBudgetAndPeak() {
+        FakeMemoryBean bean = new FakeMemoryBean(1000 * MEGABYTE);
+        MemoryGovernor governor = new MemoryGovernor(bean, 80);
+        assertEquals(800, governor.getBudgetMegabytes());
+
+        bean.used = 700 * MEGABYTE;
+        assertTrue(governor.hasRoomFor(50 * MEGABYTE));
+        assertFalse(governor.hasRoomFor(200 * MEGABYTE));
+        bean.used = 100 * MEGABYTE;
+        assertEquals(100, governor.getUsageMegabytes());
+        assertEquals(700, governor.getPeakMegabytes());
+    }
+
+    @Test
+    public void testCollectionBeforePause() throws Exception {
+        FakeMemoryBean bean = new FakeMemoryBean(1000 * MEGABYTE);
+        MemoryGovernor governor = new MemoryGovernor(bean, 50);
+        bean.used = 900 * MEGABYTE;
+        // the garbage is collected instead of pausing
+        bean.usedAfterGc = 300 * MEGABYTE;
+        assertTrue(governor.awaitHeadroom(0));
+        assertEquals(1, bean.collections.get());
+        assertEquals(0, governor.getPausedMillis());
+    }
+
+    @Test
+    public void testPauseUntilHeadroom() throws Exception {
+        FakeMemoryBean bean = new FakeMemoryBean(1000 * MEGABYTE);
+        MemoryGovernor governor = new MemoryGovernor(bean, 50);
+        bean.used = 900 * MEGABYTE;
+        bean.usedAfterGc = 900 * MEGABYTE;
+        assertFalse(governor.awaitHeadroom(100));
+        assertTrue(governor.isAboveBudget());
+
+        // another user of the JVM releases its memory
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            bean.used = 200 * MEGABYTE;
+        });
+        releaser.start();
+        assertTrue(governor.awaitHeadroom(10000));
+        releaser.join();
+        assertFalse(governor.isAboveBudget());
+        assertTrue(governor.getPausedMillis() >= 200);
+    }
+
+    @Test
+    public void testWaitForRoomOfLargeStep() throws Exception {
+        FakeMemoryBean bean = new FakeMemoryBean(1000 * MEGABYTE);
+        MemoryGovernor governor = new MemoryGovernor(bean, 50);
+        bean.used = 300 * MEGABYTE;
+        bean.usedAfterGc = 300 * MEGABYTE;
+        assertTrue(governor.awaitRoomFor(100 * MEGABYTE, 0));
+        // steps larger than the budget never fit
+        assertFalse(governor.awaitRoomFor(600 * MEGABYTE, 10000));
+        assertFalse(governor.awaitRoomFor(300 * MEGABYTE, 100));
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            bean.used = 100 * MEGABYTE;
+        });
+        releaser.start();
+        assertTrue(governor.awaitRoomFor(300 * MEGABYTE, 10000));
+        releaser.join();
+        assertTrue(governor.getPausedMillis() >= 300);
+    }
+
+    private static class FakeMemoryBean implements MemoryMXBean {
+        private final long max;
+        private volatile long used;
+        private volatile long usedAfterGc = -1;
+        private final AtomicInteger collections = new AtomicInteger();
+
+        private FakeMemoryBean(long max) {
+            this.max = max;
+        }
+
+        @Override
+        public MemoryUsage getHeapMemoryUsage() {
+            return new MemoryUsage(0, used, max, max);
+        }
+
+        @Override
+        public void gc() {
+            collections.incrementAndGet();
+            if (usedAfterGc >= 0) {
+                used = usedAfterGc;
+            }
+        }
+
+        @Override
+        public MemoryUsage getNonHeapMemoryUsage() {
+            return new MemoryUsage(0, 0, 0, -1);
+        }
+
+        @Override
+        public int getObjectPendingFinalizationCount() {
+            return 0;
+        }
+
+        @Override
+        public boolean isVerbose() {
+            return false;
+        }
+
+        @Override
+        public void setVerbose(boolean value) {
+            // not needed
+        }
+
+        @Override
+        public ObjectName getObjectName() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.ImportRun;
+
+public class RunHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ImportRun run(String set, String outcome, int pages, long importMillis) {
+        return new ImportRun(System.currentTimeMillis(), set, "host", "1.0", "abc", outcome, pages, pages * 1000L, 0, 10, 20, importMillis, false);
+    }
+
+    @Test
+    public void testSlowRunsAreFlagged() throws Exception {
+        RunHistory history = new RunHistory(folder.getRoot().toPath().resolve("runs").resolve(RunHistory.FILE_NAME));
+        // too few runs to compare
+        assertFalse(history.record(run("set", ImportRun.COMPLETED, 1000, 10000)).isSlow());
+        history.record(run("set", ImportRun.COMPLETED, 1000, 12000));
+        history.record(run("set", ImportRun.COMPLETED, 1000, 8000));
+        // cancelled runs and runs of other sets do not count
+        history.record(run("set", ImportRun.CANCELLED, 10, 10000));
+        history.record(run("other", ImportRun.COMPLETED, 10, 10000));
+        assertEquals(100, history.getMedianPagesPerSecond("set"), 0.001);
+
+        assertFalse(history.record(run("set", ImportRun.COMPLETED, 1000, 15000)).isSlow());
+        assertTrue(history.record(run("set", ImportRun.COMPLETED, 1000, 30000)).isSlow());
+    }
+
+    @Test
+    public void testHistoryIsReadAgain() throws Exception {
+        Path file = folder.getRoot().toPath().resolve(RunHistory.FILE_NAME);
+        RunHistory history = new RunHistory(file);
+        history.record(run("first", ImportRun.COMPLETED, 100, 1000));
+        history.record(run("second", ImportRun.FAILED, 50, 1000));
+
+        List<ImportRun> runs = new RunHistory(file).getRecentRuns(10);
+        assertEquals(2, runs.size());
+        assertEquals("second", runs.get(0).getSet());
+        assertEquals(ImportRun.FAILED, runs.get(0).getOutcome());
+        assertEquals(100, runs.get(1).getPagesPerSecond(), 0.001);
+        assertEquals(50000, runs.get(0).getBytes());
+    }
+}
@@ -0,0 +1,98 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.Edition;
+import de.intranda.goobi.plugins.model.EditionClassifier;
+import de.intranda.goobi.plugins.model.ImageInfo;
+import de.intranda.goobi.plugins.model.ImportPlan;
+import de.intranda.goobi.plugins.model.SourceFile;
+
+public class ScanIndexTest {
+
+    private static final String LOCATION = "file:///opt/digiverso/import/sample1/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path indexFolder;
+    private List<Path> files;
+
+    @Before
+    public void setUp() throws Exception {
+        indexFolder = folder.getRoot().toPath().resolve("scans");
+        files = List.of(Path.of("/import/1867-01-05_001.tif"), Path.of("/import/1867-01-05_002.tif"));
+    }
+
+    @Test
+    public void testUnchangedFilesAreTakenFromTheIndex() throws Exception {
+        ScanIndex index = ScanIndex.open(indexFolder, LOCATION);
+        ImageInfo imageInfo = new ImageInfo("TIFF", 3000, 4000, 8, 3, "LZW", 400, 400);
+        index.put("1867-01-05_001.tif", new SourceFile(1000, 42), imageInfo, null);
+        index.put("1867-01-05_002.tif", new SourceFile(2000, 42), "Image is corrupt or truncated");
+        index.save(files);
+
+        ScanIndex reopened = ScanIndex.open(indexFolder, LOCATION);
+        assertEquals(2, reopened.size());
+        ScanIndex.Entry entry = reopened.get("1867-01-05_001.tif", new SourceFile(1000, 42));
+        assertNotNull(entry);
+        assertNull(entry.getProblem());
+        assertEquals(imageInfo, entry.getImageInfo());
+        assertEquals(18670105, entry.getDate());
+        assertEquals(1, entry.getPageNumber());
+        ScanIndex.Entry corrupt = reopened.get("1867-01-05_002.tif", new SourceFile(2000, 42));
+        assertEquals("Image is corrupt or truncated", corrupt.getProblem());
+        assertNull(corrupt.getImageInfo());
+        // changed and new files are scanned again
+        assertNull(reopened.get("1867-01-05_001.tif", new SourceFile(1000, 43)));
+        assertNull(reopened.get("1867-01-05_003.tif", new SourceFile(1000, 42)));
+        assertEquals(2, reopened.getHits());
+        assertEquals(2, reopened.getMisses());
+        // other import folders have their own index
+        assertEquals(0, ScanIndex.open(indexFolder, "file:///opt/digiverso/import/sample2/").size());
+    }
+
+    @Test
+    public void testRemovedFilesAreDropped() throws Exception {
+        ScanIndex index = ScanIndex.open(indexFolder, LOCATION);
+        index.put("1867-01-05_001.tif", new SourceFile(1000, 42), null);
+        index.put("1867-01-05_002.tif", new SourceFile(2000, 42), null);
+        index.save(files.subList(1, 2));
+
+        assertEquals(1, ScanIndex.open(indexFolder, LOCATION).size());
+    }
+
+    @Test
+    public void testPlanUsesIndexedValues() throws Exception {
+        ScanIndex index = ScanIndex.open(indexFolder, LOCATION);
+        index.put("1867-01-05_002.tif", new SourceFile(2000, 42), null);
+        ImportPlan plan = index.createPlan(files, EditionClassifier.builder(new Edition("regular", 1, "Ausgabe vom")).build());
+
+        assertEquals(1, plan.getNumberOfIssues());
+        assertEquals(1867, plan.getYear(0));
+        assertEquals(1, plan.getPageNumber(0));
+        assertEquals(2, plan.getPageNumber(1));
+    }
+
+    @Test
+    public void testUnreadableIndexIsIgnored() throws Exception {
+        ScanIndex index = ScanIndex.open(indexFolder, LOCATION);
+        index.put("1867-01-05_001.tif", new SourceFile(1000, 42), null);
+        index.save(files);
+        Files.write(index.getIndexFile(), "broken".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, ScanIndex.open(indexFolder, LOCATION).size());
+    }
+}
@@ -0,0 +1,140 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagedIngestTest {
+
+    private static final String SET = "Newspaper";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path importFolder;
+    private Path processFolder;
+    private Path masterFolder;
+    private Path registry;
+
+    @Before
+    public void setUp() throws Exception {
+        importFolder = folder.newFolder("import").toPath();
+        processFolder = folder.newFolder("42").toPath();
+        masterFolder = processFolder.resolve("images/mytitle_1867_master");
+        registry = folder.getRoot().toPath().resolve("stages");
+        for (int page = 1; page <= 3; page++) {
+            Files.write(importFolder.resolve("1867-01-05_00" + page + ".tif"), ("page " + page).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private StagedIngest newIngest() {
+        return new StagedIngest(registry, new LocalSourceStorage(importFolder));
+    }
+
+    private StagedIngest.Stage stageAllFiles(StagedIngest ingest) throws Exception {
+        StagedIngest.Stage stage = ingest.open(SET, "node", processFolder, masterFolder);
+        for (int page = 1; page <= 3; page++) {
+            stage.add(importFolder.resolve("1867-01-05_00" + page + ".tif"));
+        }
+        return stage;
+    }
+
+    private static int count(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return (int) files.count();
+        }
+    }
+
+    @Test
+    public void testCommittedStageIsMovedAndSourcesDeleted() throws Exception {
+        StagedIngest.Stage stage = stageAllFiles(newIngest());
+        // the sources stay until the stage is committed
+        assertEquals(3, count(importFolder));
+        stage.prepare();
+        stage.commit();
+
+        assertTrue(stage.complete().isEmpty());
+        assertEquals(0, count(importFolder));
+        assertEquals(3, count(masterFolder));
+        assertEquals("page 2", Files.readString(masterFolder.resolve("1867-01-05_002.tif")));
+        assertFalse(Files.exists(processFolder.resolve(StagedIngest.STAGE_FOLDER)));
+        assertEquals(0, count(registry));
+    }
+
+    @Test
+    public void testDiscardedFileKeepsItsSource() throws Exception {
+        StagedIngest.Stage stage = stageAllFiles(newIngest());
+        stage.discard(importFolder.resolve("1867-01-05_003.tif"));
+        stage.prepare();
+        stage.commit();
+        stage.complete();
+
+        assertEquals(1, count(importFolder));
+        assertEquals(2, count(masterFolder));
+    }
+
+    @Test
+    public void testRecoveryRollsBackUnpreparedStage() throws Exception {
+        StagedIngest.Stage stage = stageAllFiles(newIngest());
+        // the node crashes while the files are staged
+        stage.abandon();
+
+        assertEquals(1, newIngest().recover(SET, worker -> false));
+        assertEquals(3, count(importFolder));
+        assertFalse(Files.exists(masterFolder));
+        assertFalse(Files.exists(processFolder.resolve(StagedIngest.STAGE_FOLDER)));
+        assertEquals(0, count(registry));
+    }
+
+    @Test
+    public void testRecoveryKeepsSourcesOfPreparedStage() throws Exception {
+        StagedIngest.Stage stage = stageAllFiles(newIngest());
+        stage.prepare();
+        // the node crashes while the METS file is written
+        stage.abandon();
+
+        assertEquals(1, newIngest().recover(SET, worker -> false));
+        assertEquals(3, count(importFolder));
+        assertEquals(3, count(masterFolder));
+    }
+
+    @Test
+    public void testRecoveryCompletesCommittedStage() throws Exception {
+        StagedIngest.Stage stage = stageAllFiles(newIngest());
+        stage.prepare();
+        stage.commit();
+        // the node crashes after the first file was moved
+        Files.createDirectories(masterFolder);
+        Files.move(processFolder.resolve(StagedIngest.STAGE_FOLDER).resolve("1867-01-05_001.tif"), masterFolder.resolve("1867-01-05_001.tif"));
+        stage.abandon();
+
+        assertEquals(1, newIngest().recover(SET, worker -> false));
+        assertEquals(0, count(importFolder));
+        assertEquals(3, count(masterFolder));
+        assertEquals(0, count(registry));
+    }
+
+    @Test
+    public void testRecoverySkipsOpenAndActiveStages() throws Exception {
+        StagedIngest ingest = newIngest();
+        StagedIngest.Stage stage = stageAllFiles(ingest);
+        // still open in this JVM
+        assertEquals(0, ingest.recover(SET, worker -> false));
+
+        stage.abandon();
+        // other sets and nodes that still hold their leases are not touched
+        assertEquals(0, ingest.recover("Other set", worker -> false));
+        assertEquals(0, ingest.recover(SET, "node"::equals));
+        assertEquals(1, count(registry));
+    }
+}
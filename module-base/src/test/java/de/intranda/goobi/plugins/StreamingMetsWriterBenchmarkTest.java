@@ -0,0 +1,414 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.model.Edition;
+import de.intranda.goobi.plugins.model.EditionClassifier;
+import de.intranda.goobi.plugins.model.ImageInfo;
+import de.intranda.goobi.plugins.model.ImportMetadata;
+import de.intranda.goobi.plugins.model.IssuePlan;
+import de.intranda.goobi.plugins.model.MetadataTemplate;
+import de.intranda.goobi.plugins.model.NewspaperPage;
+import de.intranda.goobi.plugins.model.TechnicalMetadata;
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+import ugh.dl.Reference;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Checks that the streaming METS writer creates the same structure as the ugh METS writer, and compares the memory usage of both writers for a
+ * large volume and the duration of the streaming METS writer for different numbers of threads. The benchmarks are skipped unless they are enabled
+ * with -Dmets.benchmark=true, the number of issues can be changed with -Dmets.benchmark.issues.
+ */
+public class StreamingMetsWriterBenchmarkTest {
+
+    private static final int PAGES_PER_ISSUE = 24;
+
+    private static String resourcesFolder;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Test
+    public void testMemoryUsage() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("mets.benchmark"));
+        int numberOfIssues = Integer.getInteger("mets.benchmark.issues", 700);
+
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "resources/ruleset.xml");
+        List<IssuePlan> issues = createIssues(numberOfIssues);
+
+        Path ughFile = folder.newFile("ugh.xml").toPath();
+        long[] ugh = measure(() -> writeWithUgh(prefs, issues, ughFile));
+
+        Path streamingFile = folder.newFile("streaming.xml").toPath();
+        long[] streaming = measure(() -> {
+            createSkeleton(prefs).write(streamingFile.toString());
+            new StreamingMetsWriter("NewspaperVolume", "NewspaperIssue", "TitleDocMain", "DateIssued", p -> "Page " + p.getPageNumber(),
+                    StreamingMetsWriterBenchmarkTest::getContentFiles).write(streamingFile, issues);
+        });
+
+        System.out.println("Pages: " + numberOfIssues * PAGES_PER_ISSUE);
+        System.out.println("ugh:       " + ugh[0] / 1024 / 1024 + " MB peak heap, " + ugh[1] + " ms");
+        System.out.println("streaming: " + streaming[0] / 1024 / 1024 + " MB peak heap, " + streaming[1] + " ms");
+
+        // both files must contain the same structure
+        assertEquals(countPagesAndIssues(prefs, ughFile), countPagesAndIssues(prefs, streamingFile));
+    }
+
+    @Test
+    public void testUghReadsTheSameVolume() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "resources/ruleset.xml");
+        List<IssuePlan> issues = createIssues(3);
+
+        Path ughFile = folder.newFile("ugh.xml").toPath();
+        writeWithUgh(prefs, issues, ughFile);
+        List<String> expected = describe(prefs, ughFile);
+
+        for (int threads : new int[] { 1, 2 }) {
+            Path streamingFile = folder.newFile("streaming" + threads + ".xml").toPath();
+            createSkeleton(prefs).write(streamingFile.toString());
+            new StreamingMetsWriter("NewspaperVolume", "NewspaperIssue", "TitleDocMain", "DateIssued", p -> "Page " + p.getPageNumber(),
+                    StreamingMetsWriterBenchmarkTest::getContentFiles, threads).write(streamingFile, issues);
+            assertEquals("Volume written with " + threads + " threads differs", expected, describe(prefs, streamingFile));
+        }
+        // issue lines, page lines and the links of the volume
+        assertEquals(3 + 3 * PAGES_PER_ISSUE + 1, expected.size());
+    }
+
+    @Test
+    public void testMetadataNotAllowedOnTheIssueIsSkipped() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "resources/ruleset.xml");
+        List<IssuePlan> issues = createIssues(2);
+
+        Path ughFile = folder.newFile("ugh.xml").toPath();
+        writeWithUgh(prefs, issues, ughFile);
+        List<String> expected = describe(prefs, ughFile);
+
+        // pathimagefiles is known to the ruleset, but only allowed on the physical root
+        List<IssuePlan> withForbiddenMetadata = new ArrayList<>();
+        for (IssuePlan issue : issues) {
+            List<ImportMetadata> metadata = new ArrayList<>(issue.getMetadata());
+            metadata.add(new ImportMetadata("pathimagefiles", "file:///issue", List.of(), false));
+            withForbiddenMetadata.add(new IssuePlan(issue.getDate(), issue.getTitle(), issue.getPages(), metadata, issue.getScope()));
+        }
+        Path streamingFile = folder.newFile("streaming.xml").toPath();
+        createSkeleton(prefs).write(streamingFile.toString());
+        StreamingMetsWriter writer = new StreamingMetsWriter("NewspaperVolume", "NewspaperIssue", "TitleDocMain", "DateIssued",
+                p -> "Page " + p.getPageNumber(), StreamingMetsWriterBenchmarkTest::getContentFiles, 1,
+                StreamingMetsWriter.getMetadataLimits(prefs, "NewspaperIssue"));
+        writer.write(streamingFile, withForbiddenMetadata);
+
+        assertEquals(Set.of("pathimagefiles"), writer.getSkippedMetadataTypes());
+        // ugh reads the file again and finds the same issues as without the metadata
+        assertEquals(expected, describe(prefs, streamingFile));
+    }
+
+    @Test
+    public void testTechnicalMetadataOfThePages() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "resources/ruleset.xml");
+        List<IssuePlan> issues = createIssues(3);
+        // the header of the first page of each issue could not be read, so this page gets no technical metadata
+        for (IssuePlan issue : issues) {
+            for (NewspaperPage page : issue.getPages().subList(1, PAGES_PER_ISSUE)) {
+                page.setImageInfo(new ImageInfo("TIFF", 3000 + Integer.parseInt(page.getPageNumber()), 4000, 8, 3, "LZW", 400, 400));
+            }
+        }
+        Map<TechnicalMetadata.Property, String> types = new EnumMap<>(TechnicalMetadata.Property.class);
+        types.put(TechnicalMetadata.Property.WIDTH, "ImageWidth");
+        types.put(TechnicalMetadata.Property.X_RESOLUTION, "ImageResolution");
+        TechnicalMetadata technicalMetadata = new TechnicalMetadata(types);
+
+        Path ughFile = folder.newFile("ugh.xml").toPath();
+        writeWithUgh(prefs, issues, ughFile, technicalMetadata);
+        List<String> expected = describe(prefs, ughFile);
+        assertEquals("page [ImageResolution=400, ImageWidth=3002, logicalPageNumber=Page 002, physPageNumber=2] [image/tiff file://"
+                + issues.get(0).getPages().get(1).getFileName() + "]", expected.get(3 + 1));
+
+        for (int threads : new int[] { 1, 2 }) {
+            Path streamingFile = folder.newFile("streaming" + threads + ".xml").toPath();
+            createSkeleton(prefs).write(streamingFile.toString());
+            new StreamingMetsWriter("NewspaperVolume", "NewspaperIssue", "TitleDocMain", "DateIssued", p -> "Page " + p.getPageNumber(),
+                    StreamingMetsWriterBenchmarkTest::getContentFiles, threads, StreamingMetsWriter.getMetadataLimits(prefs, "NewspaperIssue"),
+                    page -> technicalMetadata.getMetadata(page.getImageInfo())).write(streamingFile, issues);
+            assertEquals("Volume written with " + threads + " threads differs", expected, describe(prefs, streamingFile));
+        }
+    }
+
+    @Test
+    public void testShardedOutputIsIdentical() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "resources/ruleset.xml");
+        List<IssuePlan> issues = createIssues(50);
+        byte[] skeleton = writeSkeleton(prefs);
+
+        byte[] serial = writeStreaming(skeleton, issues, 1);
+        for (int threads : new int[] { 2, 3, 8 }) {
+            assertArrayEquals("Output with " + threads + " threads differs", serial, writeStreaming(skeleton, issues, threads));
+        }
+    }
+
+    @Test
+    public void testSpeedup() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("mets.benchmark"));
+        int numberOfIssues = Integer.getInteger("mets.benchmark.issues", 700);
+
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "resources/ruleset.xml");
+        List<IssuePlan> issues = createIssues(numberOfIssues);
+        byte[] skeleton = writeSkeleton(prefs);
+        // warm up the JIT before measuring
+        writeStreaming(skeleton, issues, 1);
+
+        System.out.println("Pages: " + numberOfIssues * PAGES_PER_ISSUE + ", processors: " + Runtime.getRuntime().availableProcessors());
+        long serial = 0;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors() * 2; threads *= 2) {
+            int numberOfThreads = threads;
+            long duration = measure(() -> writeStreaming(skeleton, issues, numberOfThreads))[1];
+            if (threads == 1) {
+                serial = duration;
+            }
+            System.out.println(String.format("%2d threads: %5d ms, speedup %.2f", threads, duration, (double) serial / Math.max(1, duration)));
+        }
+    }
+
+    private byte[] writeSkeleton(Prefs prefs) throws Exception {
+        Path file = folder.newFile().toPath();
+        createSkeleton(prefs).write(file.toString());
+        return Files.readAllBytes(file);
+    }
+
+    private byte[] writeStreaming(byte[] skeleton, List<IssuePlan> issues, int threads) throws Exception {
+        // all runs start from the same skeleton, ugh writes the current time into the header
+        Path file = Files.write(folder.newFile().toPath(), skeleton);
+        new StreamingMetsWriter("NewspaperVolume", "NewspaperIssue", "TitleDocMain", "DateIssued", p -> "Page " + p.getPageNumber(),
+                StreamingMetsWriterBenchmarkTest::getContentFiles, threads).write(file, issues);
+        return Files.readAllBytes(file);
+    }
+
+    private static List<IssuePlan> createIssues(int numberOfIssues) {
+        EditionClassifier classifier = EditionClassifier.builder(new Edition("regular", 1, "Ausgabe vom")).build();
+        List<IssuePlan> issues = new ArrayList<>();
+        LocalDate date = LocalDate.of(1900, 1, 1);
+        for (int i = 0; i < numberOfIssues; i++) {
+            List<NewspaperPage> pages = new ArrayList<>();
+            for (int p = 1; p <= PAGES_PER_ISSUE; p++) {
+                pages.add(new NewspaperPage(Paths.get(String.format("%s_%03d.tif", date, p)), classifier));
+            }
+            List<ImportMetadata> metadata = List.of(new ImportMetadata("CurrentNo", "Nr. " + (i + 1), List.of(), false),
+                    new ImportMetadata("Editor", "Hans Muster", List.of(), true));
+            issues.add(new IssuePlan(date.toString(), "Ausgabe vom " + date, pages, metadata, new MetadataTemplate.Scope()));
+            date = date.plusDays(1);
+        }
+        return issues;
+    }
+
+    private static List<ContentFile> getContentFiles(NewspaperPage page) {
+        ContentFile cf = new ContentFile();
+        cf.setMimetype("image/tiff");
+        cf.setLocation("file://" + page.getFileName());
+        return Collections.singletonList(cf);
+    }
+
+    private static Fileformat createSkeleton(Prefs prefs) throws Exception {
+        Fileformat fileformat = new MetsMods(prefs);
+        DigitalDocument dd = new DigitalDocument();
+        fileformat.setDigitalDocument(dd);
+        DocStruct physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        dd.setPhysicalDocStruct(physical);
+        Metadata path = new Metadata(prefs.getMetadataTypeByName("pathimagefiles"));
+        path.setValue("file:///");
+        physical.addMetadata(path);
+        DocStruct logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Newspaper"));
+        dd.setLogicalDocStruct(logical);
+        logical.addChild(dd.createDocStruct(prefs.getDocStrctTypeByName("NewspaperVolume")));
+        return fileformat;
+    }
+
+    private static void writeWithUgh(Prefs prefs, List<IssuePlan> issues, Path file) throws Exception {
+        writeWithUgh(prefs, issues, file, TechnicalMetadata.NONE);
+    }
+
+    private static void writeWithUgh(Prefs prefs, List<IssuePlan> issues, Path file, TechnicalMetadata technicalMetadata) throws Exception {
+        Fileformat fileformat = createSkeleton(prefs);
+        DigitalDocument dd = fileformat.getDigitalDocument();
+        DocStruct physical = dd.getPhysicalDocStruct();
+        DocStruct volume = dd.getLogicalDocStruct().getAllChildren().get(0);
+        for (IssuePlan issuePlan : issues) {
+            DocStruct issue = dd.createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
+            Metadata title = new Metadata(prefs.getMetadataTypeByName("TitleDocMain"));
+            title.setValue(issuePlan.getTitle());
+            issue.addMetadata(title);
+            Metadata date = new Metadata(prefs.getMetadataTypeByName("DateIssued"));
+            date.setValue(issuePlan.getDate());
+            issue.addMetadata(date);
+            for (ImportMetadata md : issuePlan.getMetadata()) {
+                if (md.isPerson()) {
+                    // split like by the plugin
+                    Person person = new Person(prefs.getMetadataTypeByName(md.getType()));
+                    int splitIndex = md.getValue().indexOf(' ');
+                    person.setFirstname(md.getValue().substring(0, splitIndex));
+                    person.setLastname(md.getValue().substring(splitIndex));
+                    issue.addPerson(person);
+                } else {
+                    Metadata metadata = new Metadata(prefs.getMetadataTypeByName(md.getType()));
+                    metadata.setValue(md.getValue());
+                    issue.addMetadata(metadata);
+                }
+            }
+            volume.addChild(issue);
+            for (NewspaperPage page : issuePlan.getPages()) {
+                DocStruct dsPage = dd.createDocStruct(prefs.getDocStrctTypeByName("page"));
+                physical.addChild(dsPage);
+                Metadata physPageNumber = new Metadata(prefs.getMetadataTypeByName("physPageNumber"));
+                physPageNumber.setValue(String.valueOf(physical.getAllChildren().size()));
+                dsPage.addMetadata(physPageNumber);
+                Metadata logicalPageNumber = new Metadata(prefs.getMetadataTypeByName("logicalPageNumber"));
+                logicalPageNumber.setValue("Page " + page.getPageNumber());
+                dsPage.addMetadata(logicalPageNumber);
+                for (ImportMetadata md : technicalMetadata.getMetadata(page.getImageInfo())) {
+                    Metadata metadata = new Metadata(prefs.getMetadataTypeByName(md.getType()));
+                    metadata.setValue(md.getValue());
+                    dsPage.addMetadata(metadata);
+                }
+                volume.addReferenceTo(dsPage, "logical_physical");
+                issue.addReferenceTo(dsPage, "logical_physical");
+                dsPage.addContentFile(getContentFiles(page).get(0));
+            }
+        }
+        fileformat.write(file.toString());
+    }
+
+    private static String countPagesAndIssues(Prefs prefs, Path file) throws Exception {
+        Fileformat fileformat = new MetsMods(prefs);
+        fileformat.read(file.toString());
+        DigitalDocument dd = fileformat.getDigitalDocument();
+        DocStruct volume = dd.getLogicalDocStruct().getAllChildren().get(0);
+        int linkedPages = 0;
+        for (DocStruct issue : volume.getAllChildren()) {
+            linkedPages += issue.getAllToReferences("logical_physical").size();
+        }
+        return volume.getAllChildren().size() + " issues, " + dd.getPhysicalDocStruct().getAllChildren().size() + " pages, " + linkedPages
+                + " linked pages";
+    }
+
+    /**
+     * read a METS file with ugh and describe the issues, the pages and the links of the volume, one line per issue and page
+     */
+    private static List<String> describe(Prefs prefs, Path file) throws Exception {
+        Fileformat fileformat = new MetsMods(prefs);
+        fileformat.read(file.toString());
+        DigitalDocument dd = fileformat.getDigitalDocument();
+        DocStruct volume = dd.getLogicalDocStruct().getAllChildren().get(0);
+        List<String> lines = new ArrayList<>();
+        for (DocStruct issue : volume.getAllChildren()) {
+            lines.add(issue.getType().getName() + " " + describeMetadata(issue) + " -> " + describeLinks(issue));
+        }
+        for (DocStruct page : dd.getPhysicalDocStruct().getAllChildren()) {
+            String files = page.getAllContentFiles()
+                    .stream()
+                    .map(cf -> cf.getMimetype() + " " + cf.getLocation())
+                    .collect(Collectors.joining(", "));
+            lines.add(page.getType().getName() + " " + describeMetadata(page) + " [" + files + "]");
+        }
+        lines.add(volume.getType().getName() + " -> " + describeLinks(volume));
+        return lines;
+    }
+
+    private static String describeMetadata(DocStruct ds) {
+        List<String> values = new ArrayList<>();
+        if (ds.getAllMetadata() != null) {
+            for (Metadata md : ds.getAllMetadata()) {
+                values.add(md.getType().getName() + "=" + md.getValue());
+            }
+        }
+        if (ds.getAllPersons() != null) {
+            for (Person person : ds.getAllPersons()) {
+                values.add(person.getType().getName() + "=" + person.getFirstname() + "|" + person.getLastname());
+            }
+        }
+        Collections.sort(values);
+        return values.toString();
+    }
+
+    /**
+     * the linked pages are identified by their physical page number
+     */
+    private static String describeLinks(DocStruct ds) {
+        List<String> pages = new ArrayList<>();
+        for (Reference reference : ds.getAllToReferences("logical_physical")) {
+            for (Metadata md : reference.getTarget().getAllMetadata()) {
+                if ("physPageNumber".equals(md.getType().getName())) {
+                    pages.add(md.getValue());
+                }
+            }
+        }
+        return pages.toString();
+    }
+
+    /**
+     * run the action and measure the peak heap usage and the duration
+     */
+    private static long[] measure(ThrowingRunnable action) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long start = System.currentTimeMillis();
+        action.run();
+        long duration = System.currentTimeMillis() - start;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return new long[] { peak, duration };
+    }
+
+    @FunctionalInterface
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
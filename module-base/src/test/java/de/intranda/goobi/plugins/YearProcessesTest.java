@@ -0,0 +1,177 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class YearProcessesTest {
+
+    private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+    private static final String SET = "Newspaper";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path importFolder;
+    private Path processesFolder;
+    private List<Path> sources;
+    private Map<String, TestProcess> processes;
+    private AtomicInteger created;
+
+    /**
+     * a process with the pages referenced by its METS file
+     */
+    private static class TestProcess {
+        private final Path folder;
+        private final List<String> pages = new ArrayList<>();
+
+        TestProcess(Path folder) {
+            this.folder = folder;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        importFolder = folder.newFolder("import").toPath();
+        processesFolder = folder.newFolder("processes").toPath();
+        sources = new ArrayList<>();
+        for (int page = 1; page <= 3; page++) {
+            Path source = importFolder.resolve("1867-01-05_00" + page + ".tif");
+            Files.write(source, ("page " + page).getBytes(StandardCharsets.UTF_8));
+            sources.add(source);
+        }
+        processes = new ConcurrentHashMap<>();
+        created = new AtomicInteger();
+    }
+
+    private YearProcesses<TestProcess> newYearProcesses() {
+        return new YearProcesses<>(processes::get, title -> {
+            created.incrementAndGet();
+            return processes.computeIfAbsent(title, key -> new TestProcess(processesFolder.resolve(key)));
+        });
+    }
+
+    private static int count(Path directory) throws Exception {
+        if (!Files.exists(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return (int) files.count();
+        }
+    }
+
+    /**
+     * import a year in the order of the plugin, the METS file is only written and the stage only committed while the node holds the lease
+     */
+    private boolean importYear(StagedIngest ingest, DistributedImport.WorkUnit unit, String worker, CountDownLatch staged) throws Exception {
+        TestProcess process = newYearProcesses().open("mytitle_" + unit.getYear()).getProcess();
+        StagedIngest.Stage stage = ingest.open(SET, worker, process.folder, process.folder.resolve("master"));
+        for (Path source : sources) {
+            stage.add(source);
+        }
+        if (staged != null) {
+            // the node stalls after staging the files until another node took the year over
+            staged.countDown();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!unit.isLeaseLost() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+        if (unit.isLeaseLost()) {
+            stage.rollback();
+            return false;
+        }
+        stage.prepare();
+        for (Path source : sources) {
+            process.pages.add(source.getFileName().toString());
+        }
+        stage.commit();
+        stage.complete();
+        unit.addPages(sources.size());
+        return true;
+    }
+
+    @Test
+    public void testProcessIsCreatedOnce() {
+        YearProcesses.YearProcess<TestProcess> first = newYearProcesses().open("mytitle_1867");
+        assertFalse(first.isReused());
+        YearProcesses.YearProcess<TestProcess> second = newYearProcesses().open("mytitle_1867");
+        assertTrue(second.isReused());
+        assertSame(first.getProcess(), second.getProcess());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testTakenOverUnitReusesItsProcess() throws Exception {
+        String url = "jdbc:h2:mem:processes" + DATABASE_COUNTER.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        AtomicLong clock = new AtomicLong(1000);
+        WorkUnitStore store = new WorkUnitStore(() -> DriverManager.getConnection(url), clock::get);
+        store.createTable();
+        store.publish(SET, Map.of(1867, sources.size()));
+        StagedIngest ingest = new StagedIngest(folder.getRoot().toPath().resolve("stages"), new LocalSourceStorage(importFolder));
+
+        CountDownLatch staged = new CountDownLatch(1);
+        CountDownLatch gaveUp = new CountDownLatch(1);
+        DistributedImport stalledNode = new DistributedImport(store, SET, "stalled", 100, 3, 10);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> stalled = executor.submit(() -> {
+            ImportControl control = new ImportControl();
+            control.start();
+            stalledNode.run(control, unit -> {
+                boolean completed = importYear(ingest, unit, "stalled", staged);
+                gaveUp.countDown();
+                return completed;
+            }, progress -> {
+            });
+            return null;
+        });
+        assertTrue(staged.await(10, TimeUnit.SECONDS));
+
+        // the lease of the stalled node expires, the other node claims the year
+        clock.addAndGet(1000);
+        DistributedImport otherNode = new DistributedImport(store, SET, "other", 100000, 3, 10);
+        ImportControl control = new ImportControl();
+        control.start();
+        otherNode.run(control, unit -> {
+            assertTrue(gaveUp.await(10, TimeUnit.SECONDS));
+            // the stalled node left the sources and wrote no METS file
+            assertEquals(sources.size(), count(importFolder));
+            assertTrue(processes.get("mytitle_1867").pages.isEmpty());
+            return importYear(ingest, unit, "other", null);
+        }, progress -> {
+        });
+        stalled.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertEquals(1, processes.size());
+        assertEquals(1, created.get());
+        TestProcess process = processes.get("mytitle_1867");
+        assertEquals(sources.size(), process.pages.size());
+        assertEquals(sources.size(), count(process.folder.resolve("master")));
+        assertEquals(0, count(importFolder));
+        assertEquals(1, store.getProgress(SET).getDone());
+    }
+}
@@ -0,0 +1,65 @@
+package de.intranda.goobi.plugins.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CompletenessReportTest {
+
+    private static final EditionClassifier CLASSIFIER = EditionClassifier.builder(new Edition("regular", 1, "Ausgabe vom")).build();
+
+    @Test
+    public void testMissingAndDuplicatePages() {
+        List<Path> files = new ArrayList<>();
+        for (String fileName : new String[] { "1867-04-05_001.tif", "1867-04-05_002.tif", "1867-04-05_004.tif", "1867-04-05_004.jpg",
+                "1867-04-05_006.tif" }) {
+            files.add(Paths.get("/import", fileName));
+        }
+        CompletenessReport report = CompletenessReport.analyze(ImportPlan.create(files, CLASSIFIER));
+        assertEquals(2, report.getMissingPages());
+        assertEquals(1, report.getDuplicatePages());
+        assertFalse(report.isComplete());
+        assertEquals("Issue 1867-04-05 (regular) misses pages 3, 5", report.getProblems().get(0));
+        assertEquals("Issue 1867-04-05 (regular) contains pages 4 more than once", report.getProblems().get(1));
+    }
+
+    @Test
+    public void testGapsOnPublishingDays() {
+        // a paper published from Monday to Saturday, missing the issues from Tuesday to Thursday of the second week
+        List<Path> files = new ArrayList<>();
+        LocalDate monday = LocalDate.of(1900, 1, 1);
+        for (int day = 0; day < 28; day++) {
+            LocalDate date = monday.plusDays(day);
+            if (date.getDayOfWeek() != DayOfWeek.SUNDAY && (day < 8 || day > 10)) {
+                files.add(Paths.get("/import", date + "_001.tif"));
+            }
+        }
+        CompletenessReport report = CompletenessReport.analyze(ImportPlan.create(files, CLASSIFIER));
+        assertEquals(EnumSet.complementOf(EnumSet.of(DayOfWeek.SUNDAY)), report.getPublishingDays());
+        assertEquals(3, report.getMissingIssues());
+        assertEquals(0, report.getMissingPages());
+        assertEquals("No issues found from 1900-01-09 to 1900-01-11, 3 issues expected", report.getProblems().get(0));
+        assertEquals(1, report.getProblems().size());
+    }
+
+    @Test
+    public void testCompletePlan() {
+        List<Path> files = new ArrayList<>();
+        files.add(Paths.get("/import", "1900-12-31_001.tif"));
+        files.add(Paths.get("/import", "1900-12-31_002.tif"));
+        files.add(Paths.get("/import", "1901-01-01_001.tif"));
+        CompletenessReport report = CompletenessReport.analyze(ImportPlan.create(files, CLASSIFIER));
+        assertTrue(report.isComplete());
+        assertTrue(report.getProblems().isEmpty());
+    }
+}
@@ -0,0 +1,105 @@
+package de.intranda.goobi.plugins.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EditionClassifierTest {
+
+    private Edition regular;
+    private Edition morning;
+    private Edition evening;
+    private Edition supplement;
+
+    @Before
+    public void setUp() {
+        regular = new Edition("regular", 1, "Ausgabe vom");
+        morning = new Edition("morning", 0, "Morgenausgabe vom");
+        evening = new Edition("evening", 2, "Abendausgabe vom");
+        supplement = new Edition("supplement", 3, "Beilage vom");
+    }
+
+    @Test
+    public void testWithoutRules() {
+        EditionClassifier classifier = EditionClassifier.builder(regular).build();
+        assertEquals(regular, classifier.classify("1867-04-06_a_001.tif"));
+    }
+
+    @Test
+    public void testIdentifierRules() {
+        EditionClassifier classifier = EditionClassifier.builder(regular)
+                .addIdentifierRule("_b_", evening)
+                .addIdentifierRule("_a_", morning)
+                .build();
+        assertEquals(morning, classifier.classify("1867-04-06_a_001.tif"));
+        assertEquals(evening, classifier.classify("1867-04-06_b_001.tif"));
+        assertEquals(regular, classifier.classify("1867-04-06_001.tif"));
+    }
+
+    @Test
+    public void testFirstRuleWinsIndependentOfPosition() {
+        EditionClassifier classifier = EditionClassifier.builder(regular)
+                .addRule("_beilage", supplement)
+                .addIdentifierRule("_a_", morning)
+                .build();
+        // the morning identifier is found first, but the supplement rule has precedence
+        assertEquals(supplement, classifier.classify("1867-04-06_a_beilage_001.tif"));
+    }
+
+    @Test
+    public void testOverlappingMatches() {
+        EditionClassifier classifier = EditionClassifier.builder(regular)
+                .addRule("a_0", supplement)
+                .addIdentifierRule("_a_", morning)
+                .build();
+        assertEquals(supplement, classifier.classify("1867-04-06_a_001.tif"));
+    }
+
+    @Test
+    public void testIdentifierIsNoRegex() {
+        EditionClassifier classifier = EditionClassifier.builder(regular)
+                .addIdentifierRule(".", morning)
+                .build();
+        assertEquals(regular, classifier.classify("1867-04-06_001"));
+    }
+
+    @Test
+    public void testRulesDoNotAffectEachOther() {
+        EditionClassifier classifier = EditionClassifier.builder(regular)
+                .addRule("(?i)_X_", supplement)
+                .addRule("_(a)\\1_", morning)
+                .addRule("_b_", evening)
+                .build();
+        // the backreference refers to the group of its own rule
+        assertEquals(morning, classifier.classify("1867-04-06_aa_001.tif"));
+        assertEquals(regular, classifier.classify("1867-04-06_a_001.tif"));
+        // the inline flag of the first rule does not apply to the following rules
+        assertEquals(supplement, classifier.classify("1867-04-06_x_001.tif"));
+        assertEquals(regular, classifier.classify("1867-04-06_B_001.tif"));
+    }
+
+    @Test
+    public void testSeparateRulesKeepTheirOrder() {
+        EditionClassifier classifier = EditionClassifier.builder(regular)
+                .addRule("_b", evening)
+                .addRule("_(?<letter>a)\\k<letter>_", supplement)
+                .addRule("_a", morning)
+                .build();
+        assertEquals(supplement, classifier.classify("1867-04-06_aa_001.tif"));
+        assertEquals(morning, classifier.classify("1867-04-06_ab_001.tif"));
+        assertEquals(evening, classifier.classify("1867-04-06_aa_b_001.tif"));
+    }
+
+    @Test
+    public void testCombinableRules() {
+        assertTrue(EditionClassifier.isCombinable("(?i)_a_(\\d+)"));
+        assertTrue(EditionClassifier.isCombinable("\\Q\\1(?<x>\\E"));
+        assertTrue(EditionClassifier.isCombinable("(?<=_)a\\0101"));
+        assertFalse(EditionClassifier.isCombinable("_(a)\\1_"));
+        assertFalse(EditionClassifier.isCombinable("(?<letter>a)"));
+        assertFalse(EditionClassifier.isCombinable("(?ix)a # comment"));
+    }
+}
@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImportPlanTest {
+
+    private EditionClassifier classifier;
+
+    @Before
+    public void setUp() {
+        classifier = EditionClassifier.builder(new Edition("regular", 1, "Ausgabe vom"))
+                .addIdentifierRule("_b_", new Edition("evening", 2, "Abendausgabe vom"))
+                .addIdentifierRule("_a_", new Edition("morning", 0, "Morgenausgabe vom"))
+                .build();
+    }
+
+    private static List<Path> paths(String... fileNames) {
+        List<Path> paths = new ArrayList<>();
+        for (String fileName : fileNames) {
+            paths.add(Paths.get("/import", fileName));
+        }
+        return paths;
+    }
+
+    @Test
+    public void testSortedByDateAndEdition() {
+        ImportPlan plan = ImportPlan.create(paths("1867-04-06_b_001.tif", "1867-04-06_001.tif", "1867-04-05_001.tif", "1867-04-06_a_001.tif"),
+                classifier);
+        assertEquals(4, plan.size());
+        assertEquals("1867-04-05_001.tif", plan.getPath(0).getFileName().toString());
+        assertEquals("morning", plan.getEdition(1).getKey());
+        assertEquals("regular", plan.getEdition(2).getKey());
+        assertEquals("evening", plan.getEdition(3).getKey());
+    }
+
+    @Test
+    public void testIssuesAndYears() {
+        ImportPlan plan = ImportPlan.create(paths("1867-12-31_001.tif", "1868-01-02_002.tif", "1867-12-31_002.tif", "1868-01-02_b_001.tif",
+                "1868-01-02_001.tif"), classifier);
+        assertEquals(3, plan.getNumberOfIssues());
+        assertEquals(2, plan.getNumberOfYears());
+
+        // pages of one issue keep the order of the files
+        assertEquals(0, plan.getIssueStart(0));
+        assertEquals(2, plan.getIssueEnd(0));
+        assertEquals(1, plan.getPageNumber(0));
+        assertEquals(2, plan.getPageNumber(1));
+
+        assertEquals(1, plan.getYearStart(1));
+        assertEquals(3, plan.getYearEnd(1));
+        assertEquals(2, plan.getIssueStart(1));
+        assertEquals(4, plan.getIssueStart(2));
+    }
+
+    @Test
+    public void testInvalidFileNames() {
+        ImportPlan plan = ImportPlan.create(paths("1867-04-06_x.tif", "1867-13-45_001.tif"), classifier);
+        // pages without a valid date are sorted first
+        assertFalse(plan.isDateValid(0));
+        assertTrue(plan.isPageNumberValid(0));
+        assertTrue(plan.isDateValid(1));
+        assertFalse(plan.isPageNumberValid(1));
+    }
+
+    @Test
+    public void testImportedPages() {
+        ImportPlan plan = ImportPlan.create(paths("1867-04-06_001.tif", "1867-04-06_002.tif", "1867-04-06_003.tif"), classifier);
+        plan.markImported(0);
+        plan.markImported(2);
+        plan.markDerivativeCreated(2);
+
+        List<NewspaperPage> pages = plan.getImportedPages(0);
+        assertEquals(2, pages.size());
+        assertEquals("001", pages.get(0).getPageNumber());
+        assertFalse(pages.get(0).isDerivativeCreated());
+        assertEquals("003", pages.get(1).getPageNumber());
+        assertTrue(pages.get(1).isDerivativeCreated());
+    }
+
+    @Test
+    public void testImageInfo() {
+        ImportPlan plan = ImportPlan.create(paths("1867-04-06_001.tif", "1867-04-06_002.tif", "1867-04-06_003.tif"), classifier);
+        ImageInfo first = new ImageInfo("TIFF", 3000, 4000, 8, 3, "LZW", 400, 400);
+        ImageInfo second = new ImageInfo("TIFF", 3010, 3990, 8, 3, "LZW", 400, 400);
+        plan.setImageInfo(0, first);
+        plan.setImageInfo(2, second);
+
+        assertEquals(first, plan.getImageInfo(0));
+        assertNull(plan.getImageInfo(1));
+        assertEquals(second, plan.getImageInfo(2));
+        plan.markImported(0);
+        plan.markImported(1);
+        List<NewspaperPage> pages = plan.getImportedPages(0);
+        assertEquals(first, pages.get(0).getImageInfo());
+        assertNull(pages.get(1).getImageInfo());
+    }
+}
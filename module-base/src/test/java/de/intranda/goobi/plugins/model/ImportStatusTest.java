@@ -0,0 +1,28 @@
+package de.intranda.goobi.plugins.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ImportStatusTest {
+
+    @Test
+    public void testJson() {
+        ImportStatus status = new ImportStatus("sample", "RUNNING", 42, 420, 1000, 1, null);
+        assertEquals("{\"set\":\"sample\",\"state\":\"RUNNING\",\"progress\":42,\"itemCurrent\":420,\"itemsTotal\":1000,\"errors\":1,\"message\":null}",
+                status.toJson());
+        assertTrue(status.isActive());
+        assertFalse(new ImportStatus("sample", ImportStatus.IDLE, 100, 1000, 1000, 0, null).isActive());
+        assertFalse(new ImportStatus("sample", ImportStatus.LOCKED, 0, 0, 0, 0, null).isActive());
+    }
+
+    @Test
+    public void testJsonEscaping() {
+        ImportStatus status = new ImportStatus("a \"b\" \\ c", "IDLE", 0, 0, 0, 0, "line 1\nline 2\r\tend\u0001 \u00e4");
+        String json = status.toJson();
+        assertTrue(json, json.startsWith("{\"set\":\"a \\\"b\\\" \\\\ c\","));
+        assertTrue(json, json.endsWith(",\"message\":\"line 1\\nline 2\\r\\tend\\u0001 \u00e4\"}"));
+    }
+}
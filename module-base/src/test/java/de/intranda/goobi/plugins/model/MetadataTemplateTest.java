@@ -0,0 +1,60 @@
+package de.intranda.goobi.plugins.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.model.MetadataTemplate.Variable;
+
+public class MetadataTemplateTest {
+
+    private MetadataTemplate.Scope scope;
+
+    @Before
+    public void setUp() {
+        scope = new MetadataTemplate.Scope().set(Variable.YEAR, "1867")
+                .set(Variable.DATE, "1867-01-05")
+                .set(Variable.DATEFINE, "05. Jan 1867")
+                .set(Variable.ISSUENO, "3");
+    }
+
+    @Test
+    public void testSingleVariable() {
+        MetadataTemplate template = MetadataTemplate.compile("Liechtensteiner Volksblatt (_YEAR_)", List.of("YEAR"));
+        assertFalse(template.isConstant());
+        assertEquals("Liechtensteiner Volksblatt (1867)", template.evaluate(scope));
+    }
+
+    @Test
+    public void testSeveralVariables() {
+        MetadataTemplate template = MetadataTemplate.compile("_date_-_ISSUENO_ (_year_, _date_)", List.of("date", "ISSUENO", "year"));
+        assertEquals("1867-01-05-3 (1867, 1867-01-05)", template.evaluate(scope));
+    }
+
+    @Test
+    public void testUndeclaredAndUnknownVariables() {
+        // only declared names are replaced, unknown names are replaced by themselves
+        assertEquals("_Year_ 1867", MetadataTemplate.compile("_Year_ _YEAR_", List.of("YEAR")).evaluate(scope));
+        MetadataTemplate template = MetadataTemplate.compile("_unknown_ value", List.of("unknown"));
+        assertTrue(template.isConstant());
+        assertEquals("unknown value", template.evaluate(null));
+        // nested scopes keep the values of their parents
+        assertEquals("3 7", MetadataTemplate.compile("_ISSUENO_ _IMAGENO_", List.of("ISSUENO", "IMAGENO"))
+                .evaluate(scope.copy().set(Variable.IMAGENO, "7")));
+        assertEquals("", scope.get(Variable.IMAGENO));
+    }
+
+    @Test
+    public void testResolvedMetadata() {
+        ImportMetadata constant = new ImportMetadata("SubjectTopic", "zeitungen#livb", List.of(), false);
+        assertSame(constant, constant.resolve(scope));
+        ImportMetadata id = new ImportMetadata("CatalogIDDigital", "Newspaper Volume _DATEFINE_", List.of("DATEFINE"), false);
+        assertEquals("NewspaperVolume05.Jan1867", id.resolve(scope).getValue());
+    }
+}
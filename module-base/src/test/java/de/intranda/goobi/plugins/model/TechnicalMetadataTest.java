@@ -0,0 +1,49 @@
+package de.intranda.goobi.plugins.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TechnicalMetadataTest {
+
+    private static List<String> describe(List<ImportMetadata> metadata) {
+        List<String> values = new ArrayList<>();
+        for (ImportMetadata md : metadata) {
+            values.add(md.getType() + "=" + md.getValue());
+        }
+        return values;
+    }
+
+    @Test
+    public void testOnlyMappedPropertiesAreWritten() {
+        Map<TechnicalMetadata.Property, String> types = new EnumMap<>(TechnicalMetadata.Property.class);
+        types.put(TechnicalMetadata.Property.X_RESOLUTION, "ImageResolution");
+        types.put(TechnicalMetadata.Property.WIDTH, "ImageWidth");
+        types.put(TechnicalMetadata.Property.COMPRESSION, "ImageCompression");
+        TechnicalMetadata technicalMetadata = new TechnicalMetadata(types);
+
+        ImageInfo imageInfo = new ImageInfo("TIFF", 3000, 4000, 8, 3, "LZW", 399.6, 400);
+        assertEquals(List.of("ImageWidth=3000", "ImageCompression=LZW", "ImageResolution=400"), describe(technicalMetadata.getMetadata(imageInfo)));
+    }
+
+    @Test
+    public void testUnknownValuesAreSkipped() {
+        Map<TechnicalMetadata.Property, String> types = new EnumMap<>(TechnicalMetadata.Property.class);
+        types.put(TechnicalMetadata.Property.HEIGHT, "ImageHeight");
+        types.put(TechnicalMetadata.Property.Y_RESOLUTION, "ImageResolution");
+        TechnicalMetadata technicalMetadata = new TechnicalMetadata(types);
+
+        // the header defines no resolution
+        ImageInfo imageInfo = new ImageInfo("JPEG", 40, 25, 8, 3, "baseline", 0, 0);
+        assertEquals(List.of("ImageHeight=25"), describe(technicalMetadata.getMetadata(imageInfo)));
+        // the header of the page could not be read
+        assertTrue(technicalMetadata.getMetadata(null).isEmpty());
+        assertTrue(TechnicalMetadata.NONE.getMetadata(imageInfo).isEmpty());
+    }
+}